@@ -516,7 +516,7 @@ public class QEFXMainController implements Initializable {
         if (!RunningManager.getInstance().isEmpty()) {
             Alert alert = new Alert(AlertType.WARNING);
             QEFXMain.initializeDialogOwner(alert);
-            alert.setHeaderText("Calculations are running. Do you delete them ?");
+            alert.setHeaderText("Calculations are running. They are continued at the next start. Do you quit ?");
             alert.getButtonTypes().clear();
             alert.getButtonTypes().add(ButtonType.YES);
             alert.getButtonTypes().add(ButtonType.NO);
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.app.explorer.body;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.Initializable;
+import javafx.scene.Node;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.DialogPane;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import burai.app.QEFXMain;
+import burai.com.consts.ConstantStyles;
+import burai.com.env.Environments;
+import burai.project.Project;
+import burai.run.RunningType;
+import burai.ssh.SSHBatchJob;
+import burai.ssh.SSHJob;
+import burai.ssh.SSHServer;
+import burai.ssh.SSHServerList;
+
+/**
+ * a dialog to run many projects on a SSH server, as one job of SSHBatchJob.
+ * #Processes of Allocation is the number of MPI processes, which the job scheduler allocates to the job,
+ * and projects are run concurrently within it.
+ */
+public class QEFXBatchRunDialog extends Dialog<SSHBatchJob> implements Initializable {
+
+    private static final String PROP_KEY_MPI = "number_of_processes";
+    private static final String PROP_KEY_OPENMP = "number_of_threads";
+    private static final String PROP_KEY_HOST = "host_name";
+
+    private static final String ERROR_STYLE = ConstantStyles.ERROR_COLOR;
+
+    private List<Project> projects;
+
+    @FXML
+    private ComboBox<RunningType> jobCombo;
+
+    @FXML
+    private TextField mpiField;
+
+    @FXML
+    private TextField ompField;
+
+    @FXML
+    private TextField allocField;
+
+    @FXML
+    private ComboBox<String> hostCombo;
+
+    public QEFXBatchRunDialog(List<Project> projects) {
+        super();
+
+        if (projects == null || projects.isEmpty()) {
+            throw new IllegalArgumentException("projects is empty.");
+        }
+
+        this.projects = projects;
+
+        DialogPane dialogPane = this.getDialogPane();
+        QEFXMain.initializeStyleSheets(dialogPane.getStylesheets());
+        QEFXMain.initializeDialogOwner(this);
+
+        this.setResizable(false);
+        this.setTitle("Run projects");
+        this.setHeaderText("Run " + projects.size() + " projects on a server.");
+        this.setupButtonTypes(false);
+
+        Node node = null;
+        try {
+            node = this.createContent();
+        } catch (Exception e) {
+            node = new Label("ERROR: cannot show QEFXBatchRunDialog.");
+            e.printStackTrace();
+        }
+
+        dialogPane.setContent(node);
+
+        this.setResultConverter(buttonType -> {
+            if (ButtonType.OK.equals(buttonType)) {
+                return this.createBatchJob();
+            }
+
+            return null;
+        });
+    }
+
+    private Node createContent() throws IOException {
+        FXMLLoader fxmlLoader = new FXMLLoader(this.getClass().getResource("QEFXBatchRunDialog.fxml"));
+        fxmlLoader.setController(this);
+        return fxmlLoader.load();
+    }
+
+    private void setupButtonTypes(boolean withOK) {
+        DialogPane dialogPane = this.getDialogPane();
+        if (dialogPane == null) {
+            return;
+        }
+
+        dialogPane.getButtonTypes().clear();
+        if (withOK) {
+            dialogPane.getButtonTypes().add(ButtonType.OK);
+        }
+        dialogPane.getButtonTypes().add(ButtonType.CANCEL);
+    }
+
+    private void resetButtonTypes() {
+        this.setupButtonTypes(this.isCorrectNumber(this.mpiField) && this.isCorrectNumber(this.ompField)
+                && this.isCorrectNumber(this.allocField) && this.getSSHServer() != null);
+    }
+
+    private boolean isCorrectNumber(TextField field) {
+        if (field != null) {
+            try {
+                int number = Integer.parseInt(field.getText());
+                if (number < 1) {
+                    return false;
+                }
+
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int textFiledToInteger(TextField field, int value) {
+        if (field == null) {
+            return value;
+        }
+
+        String text = field.getText();
+        if (text == null || text.isEmpty()) {
+            return value;
+        }
+
+        int i = value;
+        try {
+            i = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+
+        return i;
+    }
+
+    private SSHServer getSSHServer() {
+        String hostName = this.hostCombo == null ? null : this.hostCombo.getValue();
+        hostName = hostName == null ? null : hostName.trim();
+        if (hostName == null || hostName.isEmpty()) {
+            return null;
+        }
+
+        return SSHServerList.getInstance().getSSHServer(hostName);
+    }
+
+    private SSHBatchJob createBatchJob() {
+        SSHServer sshServer = this.getSSHServer();
+        if (sshServer == null) {
+            return null;
+        }
+
+        RunningType runningType = null;
+        if (this.jobCombo != null) {
+            runningType = this.jobCombo.getValue();
+        }
+        if (runningType == null) {
+            runningType = RunningType.SCF;
+        }
+
+        int numMPI = this.textFiledToInteger(this.mpiField, 1);
+        int numOMP = this.textFiledToInteger(this.ompField, 1);
+        int numAlloc = this.textFiledToInteger(this.allocField, numMPI);
+
+        SSHBatchJob batchJob = new SSHBatchJob(sshServer);
+        batchJob.setNumProcesses(Math.max(numMPI, numAlloc));
+        batchJob.setNumThreads(numOMP);
+
+        for (Project project : this.projects) {
+            SSHJob sshJob = new SSHJob(project, sshServer);
+            sshJob.setType(runningType);
+            sshJob.setNumProcesses(numMPI);
+            sshJob.setNumThreads(numOMP);
+            batchJob.addJob(sshJob);
+        }
+
+        Environments.setProperty(PROP_KEY_HOST, sshServer.getTitle());
+
+        return batchJob;
+    }
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        this.setupJobCombo();
+        this.setupNumberField(this.mpiField, PROP_KEY_MPI);
+        this.setupNumberField(this.ompField, PROP_KEY_OPENMP);
+        this.setupNumberField(this.allocField, PROP_KEY_MPI);
+        this.setupHostCombo();
+        this.resetButtonTypes();
+    }
+
+    private void setupJobCombo() {
+        if (this.jobCombo == null) {
+            return;
+        }
+
+        for (RunningType runningType : RunningType.values()) {
+            if (runningType != null) {
+                this.jobCombo.getItems().add(runningType);
+            }
+        }
+
+        this.jobCombo.setValue(RunningType.SCF);
+    }
+
+    private void setupNumberField(TextField field, String propKey) {
+        if (field == null) {
+            return;
+        }
+
+        int number = 1;
+        if (Environments.hasProperty(propKey)) {
+            number = Math.max(1, Environments.getIntProperty(propKey));
+        }
+
+        field.setText(Integer.toString(number));
+
+        field.textProperty().addListener(o -> {
+            if (this.isCorrectNumber(field)) {
+                field.setStyle("");
+            } else {
+                field.setStyle(ERROR_STYLE);
+            }
+
+            this.resetButtonTypes();
+            field.requestFocus();
+        });
+    }
+
+    private void setupHostCombo() {
+        if (this.hostCombo == null) {
+            return;
+        }
+
+        SSHServer[] sshServers = SSHServerList.getInstance().listSSHServers();
+        if (sshServers != null) {
+            for (SSHServer sshServer : sshServers) {
+                String sshName = sshServer == null ? null : sshServer.getTitle();
+                if (sshName != null && (!sshName.isEmpty())) {
+                    this.hostCombo.getItems().add(sshName);
+                }
+            }
+        }
+
+        String hostName = Environments.getProperty(PROP_KEY_HOST);
+        hostName = hostName == null ? null : hostName.trim();
+        if (hostName != null && this.hostCombo.getItems().contains(hostName)) {
+            this.hostCombo.setValue(hostName);
+        } else if (!this.hostCombo.getItems().isEmpty()) {
+            this.hostCombo.setValue(this.hostCombo.getItems().get(0));
+        }
+
+        this.hostCombo.valueProperty().addListener(o -> this.resetButtonTypes());
+    }
+}
@@ -18,6 +18,8 @@ package burai.app.explorer.body;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -42,6 +44,9 @@ import burai.matapi.MaterialsAPILoader;
 import burai.matapi.MaterialsAPIQueue;
 import burai.project.Project;
 import burai.run.RunningNode;
+import burai.run.RunningStatus;
+import burai.ssh.SSHBatchJob;
+import burai.ssh.SSHJob;
 
 public abstract class QEFXExplorerBody {
 
@@ -711,6 +716,88 @@ public abstract class QEFXExplorerBody {
         }
     }
 
+    /**
+     * projects in the folder of the icon (or in this directory, if icon is null)
+     * are posted to a SSH server as one job.
+     */
+    public void runProjectsOnServer(QEFXIcon icon) {
+        if (!this.isExplorerMode()) {
+            return;
+        }
+
+        File directory = null;
+        if (icon != null && (icon instanceof QEFXFolderIcon)) {
+            directory = icon.getCorrespondingFile();
+        } else if (this.directoryName != null && (!this.directoryName.isEmpty())) {
+            directory = new File(this.directoryName);
+        }
+        if (directory == null) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+        }
+
+        List<Project> projects = new ArrayList<Project>();
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (files[i].isDirectory() && Project.isProjectDirectory(files[i].getPath())) {
+                projects.add(Project.getInstance(files[i].getPath()));
+            }
+        }
+
+        if (projects.isEmpty()) {
+            Alert alert = new Alert(AlertType.ERROR);
+            QEFXMain.initializeDialogOwner(alert);
+            alert.setHeaderText("No projects in: " + directory.getName() + ".");
+            alert.showAndWait();
+            return;
+        }
+
+        QEFXBatchRunDialog dialog = new QEFXBatchRunDialog(projects);
+        Optional<SSHBatchJob> optBatchJob = dialog.showAndWait();
+        if (optBatchJob == null || (!optBatchJob.isPresent())) {
+            return;
+        }
+
+        SSHBatchJob batchJob = optBatchJob.get();
+        if (batchJob == null) {
+            return;
+        }
+
+        // an error in each project is reported when the job is finished
+        for (SSHJob sshJob : batchJob.getJobs()) {
+            sshJob.addOnStatusChanged(status -> {
+                String message = status == RunningStatus.DONE ? sshJob.getErrorMessage() : null;
+                if (message != null) {
+                    Platform.runLater(() -> {
+                        Alert alert = new Alert(AlertType.ERROR);
+                        QEFXMain.initializeDialogOwner(alert);
+                        alert.setHeaderText("ERROR in the job on " + batchJob.getSSHServer().toString());
+                        alert.setContentText(sshJob.getProject().getDirectoryPath() + "\n" + message);
+                        alert.showAndWait();
+                    });
+                }
+            });
+        }
+
+        // posting a job needs network round trips, which should not block the UI
+        Thread thread = new Thread(() -> {
+            if (!batchJob.postJobsToServer()) {
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(AlertType.ERROR);
+                    QEFXMain.initializeDialogOwner(alert);
+                    alert.setHeaderText("Cannot post the job to " + batchJob.getSSHServer().toString());
+                    alert.showAndWait();
+                });
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     public void refreshProject(Project project) {
         if (project == null) {
             return;
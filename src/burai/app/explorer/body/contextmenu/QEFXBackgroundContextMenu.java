@@ -19,6 +19,7 @@ package burai.app.explorer.body.contextmenu;
 import burai.app.explorer.body.QEFXExplorerBody;
 import burai.app.explorer.body.menuitem.QEFXMakeDirectoryMenuItem;
 import burai.app.explorer.body.menuitem.QEFXPasteFileMenuItem;
+import burai.app.explorer.body.menuitem.QEFXRunProjectsMenuItem;
 import burai.app.icon.QEFXIcon;
 
 public class QEFXBackgroundContextMenu extends QEFXContextMenu<QEFXIcon> {
@@ -34,5 +35,7 @@ public class QEFXBackgroundContextMenu extends QEFXContextMenu<QEFXIcon> {
         this.getItems().add(new QEFXPasteFileMenuItem(null, this.body));
 
         this.getItems().add(new QEFXMakeDirectoryMenuItem(null, this.body));
+
+        this.getItems().add(new QEFXRunProjectsMenuItem(null, this.body));
     }
 }
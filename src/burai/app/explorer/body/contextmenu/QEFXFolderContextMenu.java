@@ -21,6 +21,7 @@ import burai.app.explorer.body.menuitem.QEFXCopyFileMenuItem;
 import burai.app.explorer.body.menuitem.QEFXDeleteFileMenuItem;
 import burai.app.explorer.body.menuitem.QEFXMakeDirectoryMenuItem;
 import burai.app.explorer.body.menuitem.QEFXPasteFileMenuItem;
+import burai.app.explorer.body.menuitem.QEFXRunProjectsMenuItem;
 import burai.app.explorer.body.menuitem.QEFXRenameFileMenuItem;
 import burai.app.icon.QEFXFolderIcon;
 
@@ -42,5 +43,7 @@ public class QEFXFolderContextMenu extends QEFXContextMenu<QEFXFolderIcon> {
         this.getItems().add(new QEFXDeleteFileMenuItem(this.icon, this.body));
 
         this.getItems().add(new QEFXMakeDirectoryMenuItem(this.icon, this.body));
+
+        this.getItems().add(new QEFXRunProjectsMenuItem(this.icon, this.body));
     }
 }
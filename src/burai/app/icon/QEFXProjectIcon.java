@@ -18,6 +18,7 @@ package burai.app.icon;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javafx.application.Platform;
@@ -441,16 +442,7 @@ public class QEFXProjectIcon extends QEFXIconBase<Project> implements AtomEventL
         }
         atom.addListener(this);
 
-        StringProperty caption = this.subCaptionProperty();
-        caption.set(this.initSubCaption());
-
-        if (this.atomsBase != null) {
-            Node atomsFigure = this.getAtomsFigure(this.atomsSize);
-            if (atomsFigure != null) {
-                this.atomsBase.getChildren().clear();
-                this.atomsBase.getChildren().add(atomsFigure);
-            }
-        }
+        this.updateCaptionAndFigure();
     }
 
     @Override
@@ -460,6 +452,10 @@ public class QEFXProjectIcon extends QEFXIconBase<Project> implements AtomEventL
             return;
         }
 
+        this.updateCaptionAndFigure();
+    }
+
+    private void updateCaptionAndFigure() {
         StringProperty caption = this.subCaptionProperty();
         caption.set(this.initSubCaption());
 
@@ -482,6 +478,36 @@ public class QEFXProjectIcon extends QEFXIconBase<Project> implements AtomEventL
         // NOP
     }
 
+    @Override
+    public void onBatchCommitted(CellEvent event) {
+        boolean anyAtoms = false;
+
+        List<Atom> addedAtoms = event.getAddedAtoms();
+        if (addedAtoms != null) {
+            for (Atom atom : addedAtoms) {
+                if (atom != null && (!atom.isSlaveAtom())) {
+                    atom.addListener(this);
+                    anyAtoms = true;
+                }
+            }
+        }
+
+        List<Atom> removedAtoms = event.getRemovedAtoms();
+        if (removedAtoms != null) {
+            for (Atom atom : removedAtoms) {
+                if (atom != null && (!atom.isSlaveAtom())) {
+                    anyAtoms = true;
+                    break;
+                }
+            }
+        }
+
+        // caption and figure are updated once for all atoms
+        if (anyAtoms) {
+            this.updateCaptionAndFigure();
+        }
+    }
+
     @Override
     public void onAtomRenamed(AtomEvent event) {
         Object source = event.getSource();
@@ -491,16 +517,7 @@ public class QEFXProjectIcon extends QEFXIconBase<Project> implements AtomEventL
             }
         }
 
-        StringProperty caption = this.subCaptionProperty();
-        caption.set(this.initSubCaption());
-
-        if (this.atomsBase != null) {
-            Node atomsFigure = this.getAtomsFigure(this.atomsSize);
-            if (atomsFigure != null) {
-                this.atomsBase.getChildren().clear();
-                this.atomsBase.getChildren().add(atomsFigure);
-            }
-        }
+        this.updateCaptionAndFigure();
     }
 
     @Override
@@ -16,27 +16,42 @@
 
 package burai.app.project.editor.result.movie;
 
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javafx.application.Platform;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
 
-import org.jcodec.api.awt.AWTSequenceEncoder8Bit;
+import org.jcodec.api.SequenceEncoder8Bit;
 import org.jcodec.codecs.h264.H264Encoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture8Bit;
 
 import burai.app.QEFXMain;
 import burai.app.project.QEFXProjectController;
 import burai.app.project.viewer.result.movie.QEFXMovieViewerController;
-import burai.com.fx.FXThread;
 
+/**
+ * snapshots are taken in FX thread, and encoded in another thread.
+ * they are passed through a bounded queue of reusable frame buffers,
+ * so that FX thread does not wait for encoding, and the encoder does not wait for FX thread.
+ */
 public class MP4Maker {
 
+    private static final int NUM_FRAME_BUFFERS = 4;
+
+    private static final long WAIT_TIME = 100L; // msec
+
+    private static final MovieFrame END_OF_FRAMES = new MovieFrame();
+
     private QEFXProjectController projectController;
 
     private QEFXMovieViewerController viewerController;
@@ -45,6 +60,9 @@ public class MP4Maker {
 
     private MovieProgress movieProgress;
 
+    // only in FX thread
+    private WritableImage fxImage;
+
     protected MP4Maker(QEFXProjectController projectController, QEFXMovieViewerController viewerController) {
         if (projectController == null) {
             throw new IllegalArgumentException("projectController is null.");
@@ -59,6 +77,7 @@ public class MP4Maker {
 
         this.movieMaking = false;
         this.movieProgress = null;
+        this.fxImage = null;
     }
 
     private synchronized boolean isMovieMaking() {
@@ -78,6 +97,9 @@ public class MP4Maker {
             return;
         }
 
+        // the size of the viewer may be changed after the last movie
+        this.fxImage = null;
+
         this.movieProgress = new MovieProgress(file);
         this.movieProgress.showProgress(event -> this.setMovieMaking(false));
         this.setMovieMaking(true);
@@ -120,10 +142,111 @@ public class MP4Maker {
             return false;
         }
 
-        AWTSequenceEncoder8Bit encoder = null;
+        BlockingQueue<MovieFrame> freeFrames = new ArrayBlockingQueue<MovieFrame>(NUM_FRAME_BUFFERS);
+        BlockingQueue<MovieFrame> filledFrames = new ArrayBlockingQueue<MovieFrame>(NUM_FRAME_BUFFERS + 1);
+        for (int i = 0; i < NUM_FRAME_BUFFERS; i++) {
+            freeFrames.add(new MovieFrame());
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread thread = new Thread(() -> {
+            this.produceFrames(numGeoms, freeFrames, filledFrames, running);
+        });
+
+        thread.start();
 
         try {
-            encoder = AWTSequenceEncoder8Bit.create30Fps(file);
+            return this.encodeFrames(file, numGeoms, freeFrames, filledFrames);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private boolean isRunning(AtomicBoolean running) {
+        return running.get() && this.isMovieMaking();
+    }
+
+    /**
+     * request snapshots to FX thread, as long as free buffers are left.
+     */
+    private void produceFrames(int numGeoms,
+            BlockingQueue<MovieFrame> freeFrames, BlockingQueue<MovieFrame> filledFrames, AtomicBoolean running) {
+
+        for (int i = 0; i < numGeoms; i++) {
+            int i_ = i;
+
+            MovieFrame frame = null;
+            while (frame == null) {
+                if (!this.isRunning(running)) {
+                    return;
+                }
+
+                try {
+                    frame = freeFrames.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+
+            MovieFrame frame_ = frame;
+
+            Platform.runLater(() -> {
+                frame_.valid = this.isRunning(running) && this.takeSnapshot(i_, frame_);
+                filledFrames.offer(frame_);
+            });
+        }
+
+        Platform.runLater(() -> {
+            filledFrames.offer(END_OF_FRAMES);
+        });
+    }
+
+    /**
+     * this method is called in FX thread.
+     */
+    private boolean takeSnapshot(int index, MovieFrame frame) {
+        if (!this.viewerController.showGeometry(index)) {
+            return false;
+        }
+
+        Node subject = this.projectController.getViewerPane();
+        if (subject == null) {
+            return false;
+        }
+
+        // the image of the first snapshot is reused, so that the size of movie is fixed.
+        WritableImage image = subject.snapshot(null, this.fxImage);
+        if (image == null) {
+            return false;
+        }
+
+        this.fxImage = image;
+
+        PixelReader pixelReader = image.getPixelReader();
+        if (pixelReader == null) {
+            return false;
+        }
+
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        if (width < 1 || height < 1) {
+            return false;
+        }
+
+        frame.setSize(width, height);
+        pixelReader.getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), frame.pixels, 0, width);
+        return true;
+    }
+
+    private boolean encodeFrames(File file, int numGeoms,
+            BlockingQueue<MovieFrame> freeFrames, BlockingQueue<MovieFrame> filledFrames) {
+
+        SequenceEncoder8Bit encoder = null;
+
+        try {
+            encoder = SequenceEncoder8Bit.create30Fps(file);
             if (encoder == null) {
                 return false;
             }
@@ -133,52 +256,53 @@ public class MP4Maker {
                 h264Encoder.setKeyInterval(30);
             }
 
-            for (int i = 0; i < numGeoms; i++) {
-                int i_ = i;
+            Picture8Bit picture = null;
+            int[] columns = null;
 
+            long startTime = System.currentTimeMillis();
+            int numDone = 0;
+
+            while (true) {
                 if (!this.isMovieMaking()) {
                     return false;
                 }
 
-                FXThread<BufferedImage> thread1 = new FXThread<BufferedImage>(() -> {
-                    if (!this.viewerController.showGeometry(i_)) {
-                        return null;
-                    }
-
-                    Node subject = this.projectController.getViewerPane();
-                    Image image = subject == null ? null : subject.snapshot(null, null);
-                    return image == null ? null : SwingFXUtils.fromFXImage(image, null);
-                });
-
-                BufferedImage swingImage = thread1.getResult();
-                swingImage = swingImage == null ? null : this.resizeSwingImage(swingImage);
-                if (swingImage == null) {
-                    return false;
+                MovieFrame frame = filledFrames.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
                 }
 
-                if (!this.isMovieMaking()) {
-                    return false;
+                if (frame == END_OF_FRAMES) {
+                    break;
                 }
 
-                encoder.encodeImage(swingImage);
-
-                if (!this.isMovieMaking()) {
-                    return false;
-                }
+                try {
+                    if (!frame.valid) {
+                        return false;
+                    }
 
-                numGeoms = this.viewerController.numGeometries();
-                double valueDone = (double) (i + 1);
-                double valueTotal = (double) numGeoms;
-                double rate = valueDone / valueTotal;
+                    if (picture == null) {
+                        picture = createPicture(frame.width, frame.height);
+                        if (picture == null) {
+                            return false;
+                        }
+                    }
 
-                FXThread<Double> thread2 = new FXThread<Double>(() -> {
-                    if (this.movieProgress != null) {
-                        this.movieProgress.setProgress(rate);
+                    if (columns == null || columns.length != picture.getWidth()) {
+                        columns = new int[picture.getWidth()];
                     }
-                    return rate;
-                });
 
-                thread2.runAndWait();
+                    copyFrame(frame, picture, columns);
+
+                } finally {
+                    freeFrames.offer(frame);
+                }
+
+                // RGB -> YUV420 and H.264, with buffers in the encoder
+                encoder.encodeNativeFrame(picture);
+
+                numDone++;
+                this.showProgress(numDone, numGeoms, startTime);
             }
 
         } catch (Exception e1) {
@@ -200,34 +324,84 @@ public class MP4Maker {
         return true;
     }
 
-    private BufferedImage resizeSwingImage(BufferedImage swingImage1) {
-        if (swingImage1 == null) {
-            return null;
-        }
+    private void showProgress(int numDone, int numGeoms, long startTime) {
+        double rate = ((double) numDone) / ((double) numGeoms);
+
+        long time = System.currentTimeMillis() - startTime;
+        double framesPerSec = time > 0L ? (1000.0 * numDone / time) : 0.0;
 
-        int width1 = swingImage1.getWidth();
-        int height1 = swingImage1.getHeight();
+        Platform.runLater(() -> {
+            if (this.movieProgress != null) {
+                this.movieProgress.setProgress(rate);
+                this.movieProgress.setThroughput(numDone, numGeoms, framesPerSec);
+            }
+        });
+    }
+
+    /**
+     * size of picture is a multiple of 8, for H.264.
+     */
+    private static Picture8Bit createPicture(int width1, int height1) {
         int width2 = 8 * ((int) (Math.rint(((double) width1) / 8.0) + 0.1));
         int height2 = 8 * ((int) (Math.rint(((double) height1) / 8.0) + 0.1));
         if (width2 <= 0 || height2 <= 0) {
             return null;
         }
 
-        BufferedImage swingImage2 = new BufferedImage(width2, height2, swingImage1.getType());
+        return Picture8Bit.create(width2, height2, ColorSpace.RGB);
+    }
 
-        Graphics graphics1 = swingImage1.getGraphics();
-        Graphics graphics2 = swingImage2.getGraphics();
-        if (graphics1 == null || graphics2 == null) {
-            return null;
+    /**
+     * copy ARGB pixels into RGB picture of jcodec (value - 128), scaling by nearest neighbor.
+     */
+    private static void copyFrame(MovieFrame frame, Picture8Bit picture, int[] columns) {
+        int width1 = frame.width;
+        int height1 = frame.height;
+        int width2 = picture.getWidth();
+        int height2 = picture.getHeight();
+
+        for (int x2 = 0; x2 < width2; x2++) {
+            columns[x2] = (int) (((long) x2) * width1 / width2);
         }
 
-        java.awt.Image image1 = swingImage1.getScaledInstance(width2, height2, java.awt.Image.SCALE_DEFAULT);
-        if (image1 == null) {
-            return null;
+        byte[] data = picture.getPlaneData(0);
+        int k = 0;
+
+        for (int y2 = 0; y2 < height2; y2++) {
+            int y1 = (int) (((long) y2) * height1 / height2);
+            int offset1 = y1 * width1;
+
+            for (int x2 = 0; x2 < width2; x2++) {
+                int argb = frame.pixels[offset1 + columns[x2]];
+                data[k++] = (byte) (((argb >> 16) & 0xff) - 128);
+                data[k++] = (byte) (((argb >> 8) & 0xff) - 128);
+                data[k++] = (byte) ((argb & 0xff) - 128);
+            }
         }
+    }
+
+    private static class MovieFrame {
 
-        graphics2.drawImage(image1, 0, 0, null);
+        public int width;
+        public int height;
+        public int[] pixels;
+        public boolean valid;
 
-        return swingImage2;
+        public MovieFrame() {
+            this.width = 0;
+            this.height = 0;
+            this.pixels = null;
+            this.valid = false;
+        }
+
+        public void setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+
+            int size = width * height;
+            if (this.pixels == null || this.pixels.length < size) {
+                this.pixels = new int[size];
+            }
+        }
     }
 }
@@ -38,6 +38,12 @@ public class MovieProgress {
         }
     }
 
+    protected void setThroughput(int numDone, int numTotal, double framesPerSec) {
+        if (this.dialog != null) {
+            this.dialog.setThroughput(numDone, numTotal, framesPerSec);
+        }
+    }
+
     protected void showProgress() {
         this.showProgress(null);
     }
@@ -39,6 +39,8 @@ public class QEFXMovieProgressDialog extends Dialog<File> implements Initializab
 
     private File movieFile;
 
+    private String progressText;
+
     @FXML
     private Label progressLabel;
 
@@ -56,6 +58,7 @@ public class QEFXMovieProgressDialog extends Dialog<File> implements Initializab
         }
 
         this.movieFile = movieFile;
+        this.progressText = null;
 
         DialogPane dialogPane = this.getDialogPane();
         QEFXMain.initializeStyleSheets(dialogPane.getStylesheets());
@@ -102,6 +105,7 @@ public class QEFXMovieProgressDialog extends Dialog<File> implements Initializab
         text = text == null ? "" : text;
         text = text + System.lineSeparator() + this.movieFile.getPath();
         this.progressLabel.setText(text);
+        this.progressText = text;
     }
 
     private void setupProgressIndicator() {
@@ -126,6 +130,15 @@ public class QEFXMovieProgressDialog extends Dialog<File> implements Initializab
         }
     }
 
+    public void setThroughput(int numDone, int numTotal, double framesPerSec) {
+        if (this.progressLabel == null || this.progressText == null) {
+            return;
+        }
+
+        String text = String.format("%d / %d frames (%.1f frames/sec)", numDone, numTotal, framesPerSec);
+        this.progressLabel.setText(this.progressText + System.lineSeparator() + text);
+    }
+
     public void showProgress() {
         this.setProgress(0.0);
         DialogPane dialogPane = this.getDialogPane();
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.app.project.editor.result.movie;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import burai.atoms.design.Design;
+import burai.com.parallel.Parallel;
+import burai.com.parallel.ParallelRange;
+import burai.project.property.ProjectGeometryList;
+import burai.project.property.ProjectProperty;
+
+/**
+ * exports movies of many projects in parallel, without GUI.
+ * each project is rendered by its own TrajectoryExporter in a thread of ParallelPool.
+ */
+public class TrajectoryBatch {
+
+    private static final String PREFIX_NAME = "espresso"; // as ProjectBody
+
+    private static final String DESIGN_FILE_NAME = ".design"; // as AtomsAction
+
+    private static final int DEFAULT_SIZE = 480;
+
+    private int width;
+
+    private int height;
+
+    private double[][] rotation;
+
+    private List<TrajectoryJob> jobs;
+
+    public TrajectoryBatch(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("size is not positive.");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.rotation = null;
+        this.jobs = new ArrayList<TrajectoryJob>();
+    }
+
+    public void setRotation(double[][] rotation) {
+        this.rotation = rotation;
+    }
+
+    /**
+     * @param md true for MD trajectory, false for optimization
+     * @param file MP4 file, or directory of PNG files if png is true
+     */
+    public void addProject(String directoryPath, String prefixName, boolean md, boolean png, File file) {
+        if (directoryPath == null || file == null) {
+            return;
+        }
+
+        TrajectoryJob job = new TrajectoryJob();
+        job.directoryPath = directoryPath;
+        job.prefixName = prefixName == null ? PREFIX_NAME : prefixName;
+        job.md = md;
+        job.png = png;
+        job.file = file;
+        this.jobs.add(job);
+    }
+
+    public int numProjects() {
+        return this.jobs.size();
+    }
+
+    /**
+     * @return number of projects exported successfully.
+     */
+    public int exportAll() {
+        if (this.jobs.isEmpty()) {
+            return 0;
+        }
+
+        ParallelRange<Integer> range = new ParallelRange<Integer>(this.jobs.size());
+        range.setChunkSize(1);
+        range.setSumRule(Parallel.integerSumRule());
+
+        Integer numDone = range.forEach(i -> {
+            TrajectoryJob job = this.jobs.get(i);
+            job.exported = this.export(job);
+            return job.exported ? 1 : 0;
+        });
+
+        return numDone == null ? 0 : numDone.intValue();
+    }
+
+    /**
+     * @return directories of projects, which are not exported by the last exportAll.
+     */
+    public List<String> getFailedProjects() {
+        List<String> directoryPaths = new ArrayList<String>();
+        for (TrajectoryJob job : this.jobs) {
+            if (!job.exported) {
+                directoryPaths.add(job.directoryPath);
+            }
+        }
+
+        return directoryPaths;
+    }
+
+    private boolean export(TrajectoryJob job) {
+        ProjectProperty property = new ProjectProperty(job.directoryPath, job.prefixName);
+        ProjectGeometryList geometryList = job.md ? property.getMdList() : property.getOptList();
+        if (geometryList == null || geometryList.numGeometries() < 1) {
+            return false;
+        }
+
+        TrajectoryExporter exporter = new TrajectoryExporter(geometryList, this.width, this.height);
+        exporter.setRotation(this.rotation);
+
+        File designFile = new File(job.directoryPath, DESIGN_FILE_NAME);
+        if (designFile.isFile()) {
+            Design design = new Design();
+            design.readDesign(designFile.getPath());
+            exporter.setDesign(design);
+        }
+
+        boolean status = false;
+
+        try {
+            if (job.png) {
+                status = exporter.exportPNG(job.file, job.md ? "md" : "opt");
+            } else {
+                status = exporter.exportMP4(job.file);
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = false;
+        }
+
+        return status;
+    }
+
+    private static class TrajectoryJob {
+
+        public String directoryPath;
+        public String prefixName;
+        public boolean md;
+        public boolean png;
+        public File file;
+        public boolean exported;
+
+        public TrajectoryJob() {
+            this.directoryPath = null;
+            this.prefixName = null;
+            this.md = false;
+            this.png = false;
+            this.file = null;
+            this.exported = false;
+        }
+    }
+
+    /**
+     * usage: TrajectoryBatch [-opt] [-png] [-size WIDTHxHEIGHT] directory ...
+     * movies are written as md.mp4 (opt.mp4), or md_png/ (opt_png/), in each project directory.
+     */
+    public static void main(String[] args) {
+        boolean md = true;
+        boolean png = false;
+        int width = DEFAULT_SIZE;
+        int height = DEFAULT_SIZE;
+        List<String> directories = new ArrayList<String>();
+
+        for (int i = 0; args != null && i < args.length; i++) {
+            String arg = args[i] == null ? "" : args[i].trim();
+            if ("-opt".equals(arg)) {
+                md = false;
+
+            } else if ("-png".equals(arg)) {
+                png = true;
+
+            } else if ("-size".equals(arg) && (i + 1) < args.length) {
+                String[] sizes = args[++i].toLowerCase().split("x");
+                try {
+                    width = Integer.parseInt(sizes[0].trim());
+                    height = sizes.length > 1 ? Integer.parseInt(sizes[1].trim()) : width;
+                } catch (NumberFormatException e) {
+                    System.err.println("illegal size: " + args[i]);
+                    return;
+                }
+
+            } else if (!arg.isEmpty()) {
+                directories.add(arg);
+            }
+        }
+
+        if (directories.isEmpty()) {
+            System.err.println("usage: TrajectoryBatch [-opt] [-png] [-size WIDTHxHEIGHT] directory ...");
+            return;
+        }
+
+        TrajectoryBatch batch = new TrajectoryBatch(width, height);
+        String name = md ? "md" : "opt";
+        for (String directory : directories) {
+            File file = new File(directory, png ? (name + "_png") : (name + ".mp4"));
+            batch.addProject(directory, PREFIX_NAME, md, png, file);
+        }
+
+        int numDone = batch.exportAll();
+        for (String directory : batch.getFailedProjects()) {
+            System.err.println("cannot export: " + directory);
+        }
+
+        System.out.println(numDone + " / " + batch.numProjects() + " projects are exported.");
+    }
+}
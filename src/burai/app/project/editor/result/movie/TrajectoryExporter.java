@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.app.project.editor.result.movie;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.jcodec.api.SequenceEncoder8Bit;
+import org.jcodec.codecs.h264.H264Encoder;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture8Bit;
+
+import burai.atoms.design.Design;
+import burai.atoms.render.AtomsRenderer;
+import burai.com.consts.Constants;
+import burai.project.property.ProjectGeometry;
+import burai.project.property.ProjectGeometryList;
+
+/**
+ * renders a trajectory with AtomsRenderer, and writes MP4 or PNG files, without FX toolkit.
+ */
+public class TrajectoryExporter {
+
+    private static final String PNG_EXTENSION = "png";
+
+    private ProjectGeometryList geometryList;
+
+    private AtomsRenderer renderer;
+
+    /**
+     * size of images is rounded up to a multiple of 8, for H.264.
+     */
+    public TrajectoryExporter(ProjectGeometryList geometryList, int width, int height) {
+        if (geometryList == null) {
+            throw new IllegalArgumentException("geometryList is null.");
+        }
+
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("size is not positive.");
+        }
+
+        this.geometryList = geometryList;
+        this.renderer = new AtomsRenderer(8 * ((width + 7) / 8), 8 * ((height + 7) / 8));
+    }
+
+    public void setDesign(Design design) {
+        this.renderer.setDesign(design);
+    }
+
+    public void setRotation(double[][] rotation) {
+        this.renderer.setRotation(rotation);
+    }
+
+    public int numGeometries() {
+        return this.geometryList.numGeometries();
+    }
+
+    private boolean renderGeometry(int index) {
+        ProjectGeometry geometry = null;
+
+        try {
+            geometry = this.geometryList.getGeometry(index);
+        } catch (IndexOutOfBoundsException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        // geometry is read from the file, and can be lost if the file is rewritten
+        if (geometry == null) {
+            return false;
+        }
+
+        double[][] lattice = null;
+        if (!this.geometryList.isMolecule()) {
+            lattice = geometry.getCell();
+        }
+
+        if (lattice != null) {
+            for (double[] vector : lattice) {
+                for (int k = 0; vector != null && k < vector.length; k++) {
+                    vector[k] *= Constants.BOHR_RADIUS_ANGS;
+                }
+            }
+        }
+
+        this.renderer.setLattice(lattice);
+        this.renderer.clearAtoms();
+
+        int natom = geometry.numAtoms();
+        for (int i = 0; i < natom; i++) {
+            double x = geometry.getX(i) * Constants.BOHR_RADIUS_ANGS;
+            double y = geometry.getY(i) * Constants.BOHR_RADIUS_ANGS;
+            double z = geometry.getZ(i) * Constants.BOHR_RADIUS_ANGS;
+            this.renderer.addAtom(geometry.getName(i), x, y, z);
+        }
+
+        this.renderer.render();
+        return true;
+    }
+
+    /**
+     * @param directory where files of prefix_00000.png, prefix_00001.png, ... are written.
+     */
+    public boolean exportPNG(File directory, String prefix) throws IOException {
+        if (directory == null) {
+            return false;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create directory: " + directory.getPath());
+        }
+
+        String prefix_ = (prefix == null || prefix.trim().isEmpty()) ? "frame" : prefix.trim();
+
+        int width = this.renderer.getWidth();
+        int height = this.renderer.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        int numGeoms = this.numGeometries();
+        for (int i = 0; i < numGeoms; i++) {
+            if (!this.renderGeometry(i)) {
+                return false;
+            }
+
+            image.setRGB(0, 0, width, height, this.renderer.getPixels(), 0, width);
+
+            File file = new File(directory, String.format("%s_%05d.%s", prefix_, i, PNG_EXTENSION));
+            if (!ImageIO.write(image, PNG_EXTENSION, file)) {
+                return false;
+            }
+        }
+
+        return numGeoms > 0;
+    }
+
+    public boolean exportMP4(File file) throws IOException {
+        if (file == null) {
+            return false;
+        }
+
+        int numGeoms = this.numGeometries();
+        if (numGeoms < 1) {
+            return false;
+        }
+
+        int width = this.renderer.getWidth();
+        int height = this.renderer.getHeight();
+        Picture8Bit picture = Picture8Bit.create(width, height, ColorSpace.RGB);
+
+        SequenceEncoder8Bit encoder = SequenceEncoder8Bit.create30Fps(file);
+        if (encoder == null) {
+            return false;
+        }
+
+        H264Encoder h264Encoder = encoder.getEncoder();
+        if (h264Encoder != null) {
+            h264Encoder.setKeyInterval(30);
+        }
+
+        try {
+            for (int i = 0; i < numGeoms; i++) {
+                if (!this.renderGeometry(i)) {
+                    return false;
+                }
+
+                copyPixels(this.renderer.getPixels(), picture);
+                encoder.encodeNativeFrame(picture);
+            }
+
+        } finally {
+            encoder.finish();
+        }
+
+        return true;
+    }
+
+    /**
+     * copy ARGB pixels into RGB picture of jcodec (value - 128).
+     */
+    private static void copyPixels(int[] pixels, Picture8Bit picture) {
+        byte[] data = picture.getPlaneData(0);
+        int size = picture.getWidth() * picture.getHeight();
+
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            int argb = pixels[i];
+            data[k++] = (byte) (((argb >> 16) & 0xff) - 128);
+            data[k++] = (byte) (((argb >> 8) & 0xff) - 128);
+            data[k++] = (byte) ((argb & 0xff) - 128);
+        }
+    }
+}
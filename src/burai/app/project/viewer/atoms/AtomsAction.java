@@ -17,12 +17,17 @@
 package burai.app.project.viewer.atoms;
 
 import java.io.File;
+import java.io.IOException;
 
 import burai.app.project.QEFXProjectController;
 import burai.atoms.design.Design;
 import burai.atoms.model.Cell;
+import burai.atoms.model.VolumeGrid;
+import burai.atoms.reader.CubeReader;
 import burai.atoms.viewer.AtomsViewer;
+import burai.atoms.visible.Isosurface;
 import burai.project.Project;
+import javafx.application.Platform;
 import javafx.scene.layout.BorderPane;
 
 public class AtomsAction {
@@ -35,6 +40,8 @@ public class AtomsAction {
 
     private static final String ATOMS_DESIGN_FILE_NAME = ".design";
 
+    private static final String[] CUBE_FILE_EXTS = { ".cube", ".cub" };
+
     public static File getAtomsDesignFile(Project project) {
         File directory = project == null ? null : project.getDirectory();
         if (directory != null) {
@@ -57,6 +64,8 @@ public class AtomsAction {
 
     private AtomsViewer atomsViewer;
 
+    private QEFXIsosurfaceBar isosurfaceBar;
+
     public AtomsAction(Project project, QEFXProjectController controller) {
         if (project == null) {
             throw new IllegalArgumentException("project is null.");
@@ -70,6 +79,7 @@ public class AtomsAction {
         this.controller = controller;
 
         this.atomsViewer = null;
+        this.isosurfaceBar = null;
     }
 
     public QEFXProjectController getController() {
@@ -83,6 +93,13 @@ public class AtomsAction {
 
         if (this.atomsViewer != null) {
             this.controller.setViewerPane(this.atomsViewer);
+            this.stackIsosurfaceBar();
+        }
+    }
+
+    private void stackIsosurfaceBar() {
+        if (this.isosurfaceBar != null) {
+            this.controller.stackOnViewerPane(this.isosurfaceBar.getNode());
         }
     }
 
@@ -127,5 +144,91 @@ public class AtomsAction {
                 return projectPane.getBottom();
             });
         }
+
+        this.loadIsosurface();
+    }
+
+    private File getCubeFile() {
+        File rootFile = this.project.getRootFile();
+        String rootName = rootFile == null ? null : rootFile.getName().toLowerCase();
+        if (rootName == null) {
+            return null;
+        }
+
+        for (String ext : CUBE_FILE_EXTS) {
+            if (rootName.endsWith(ext)) {
+                return rootFile;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * if the project is opened from a cube file, its volumetric data are shown as an isosurface.
+     * the grid is read in background, because the cell of the project is read without the grid.
+     */
+    private void loadIsosurface() {
+        File cubeFile = this.getCubeFile();
+        if (cubeFile == null) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            VolumeGrid grid = null;
+            CubeReader reader = null;
+
+            try {
+                reader = new CubeReader(cubeFile);
+                reader.setReadingGrid(true);
+                reader.readCell();
+                grid = reader.getGrid();
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                grid = null;
+
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            if (grid == null || grid.numValues() < 1) {
+                return;
+            }
+
+            VolumeGrid grid_ = grid;
+            Platform.runLater(() -> this.showIsosurface(grid_));
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void showIsosurface(VolumeGrid grid) {
+        if (this.atomsViewer == null) {
+            return;
+        }
+
+        Isosurface isosurface = new Isosurface(grid);
+
+        try {
+            this.isosurfaceBar = new QEFXIsosurfaceBar(this.controller, isosurface);
+        } catch (IOException e) {
+            this.isosurfaceBar = null;
+            e.printStackTrace();
+            return;
+        }
+
+        this.atomsViewer.setIsosurface(isosurface);
+
+        if (this.controller.getViewerPane() == this.atomsViewer) {
+            this.stackIsosurfaceBar();
+        }
     }
 }
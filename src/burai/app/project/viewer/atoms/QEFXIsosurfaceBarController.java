@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.app.project.viewer.atoms;
+
+import java.net.URL;
+import java.util.ResourceBundle;
+
+import javafx.fxml.FXML;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.StackPane;
+import burai.app.QEFXAppController;
+import burai.app.project.QEFXProjectController;
+import burai.atoms.model.VolumeGrid;
+import burai.atoms.visible.Isosurface;
+
+/**
+ * a slider of the isovalue of an Isosurface.
+ * if all values of the grid are positive (e.g. charge density), the slider is in logarithmic scale.
+ */
+public class QEFXIsosurfaceBarController extends QEFXAppController {
+
+    private static final double INSETS_SIZE = 4.0;
+
+    private static final double LOG_RANGE = 4.0; // decades
+
+    private static final double DEFAULT_VALUE = 0.75;
+
+    private Isosurface isosurface;
+
+    private double minValue;
+
+    private double maxValue;
+
+    private boolean logScale;
+
+    @FXML
+    private BorderPane basePane;
+
+    @FXML
+    private Slider isoSlider;
+
+    @FXML
+    private Label isoLabel;
+
+    public QEFXIsosurfaceBarController(QEFXProjectController projectController, Isosurface isosurface) {
+        super(projectController == null ? null : projectController.getMainController());
+
+        if (isosurface == null) {
+            throw new IllegalArgumentException("isosurface is null.");
+        }
+
+        this.isosurface = isosurface;
+
+        VolumeGrid grid = isosurface.getGrid();
+        this.maxValue = (double) grid.getMaxValue();
+        this.logScale = grid.getMinValue() >= 0.0f && this.maxValue > 0.0;
+        if (this.logScale) {
+            this.minValue = this.maxValue * Math.pow(10.0, -LOG_RANGE);
+        } else {
+            this.minValue = (double) grid.getMinValue();
+        }
+    }
+
+    @Override
+    public void initialize(URL location, ResourceBundle resources) {
+        this.setupBasePane();
+        this.setupIsoSlider();
+    }
+
+    private void setupBasePane() {
+        if (this.basePane == null) {
+            return;
+        }
+
+        StackPane.setMargin(this.basePane, new Insets(INSETS_SIZE));
+        StackPane.setAlignment(this.basePane, Pos.BOTTOM_CENTER);
+    }
+
+    private void setupIsoSlider() {
+        if (this.isoSlider == null) {
+            return;
+        }
+
+        this.isoSlider.valueProperty().addListener(o -> {
+            this.updateIsovalue(this.isoSlider.getValue());
+        });
+
+        this.isoSlider.setValue(DEFAULT_VALUE);
+        this.updateIsovalue(this.isoSlider.getValue());
+    }
+
+    private double toIsovalue(double value) {
+        double value_ = Math.min(Math.max(0.0, value), 1.0);
+        if (this.logScale) {
+            return this.minValue * Math.pow(this.maxValue / this.minValue, value_);
+        } else {
+            return this.minValue + value_ * (this.maxValue - this.minValue);
+        }
+    }
+
+    private void updateIsovalue(double value) {
+        double isovalue = this.toIsovalue(value);
+
+        // a stale computation is cancelled by Isosurface
+        this.isosurface.setIsovalue(isovalue);
+
+        if (this.isoLabel != null) {
+            this.isoLabel.setText(String.format("%.3e", isovalue));
+        }
+    }
+}
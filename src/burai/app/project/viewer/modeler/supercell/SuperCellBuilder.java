@@ -18,18 +18,14 @@ package burai.app.project.viewer.modeler.supercell;
 
 import burai.app.project.viewer.modeler.ModelerBase;
 import burai.atoms.model.Atom;
+import burai.atoms.model.AtomsBuffer;
 import burai.atoms.model.Cell;
 import burai.atoms.model.exception.ZeroVolumCellException;
-import burai.atoms.model.property.AtomProperty;
 import burai.atoms.model.property.CellProperty;
-import burai.com.env.Environments;
 import burai.com.math.Matrix3D;
-import burai.com.parallel.Parallel;
 
 public class SuperCellBuilder {
 
-    private static final int NUM_THREADS = Math.max(1, Environments.getNumCUPs() - 1);
-
     private Cell cell;
 
     public SuperCellBuilder(Cell cell) {
@@ -103,17 +99,15 @@ public class SuperCellBuilder {
                 return true;
             }
 
-            Atom[][] atomsBuffer = new Atom[nt][];
-
-            Integer[] indexes = new Integer[nt];
-            for (int it = 0; it < indexes.length; it++) {
-                indexes[it] = it;
+            AtomsBuffer primBuffer = new AtomsBuffer(natom);
+            for (int i = 0; i < natom; i++) {
+                primBuffer.addAtom(atoms[i]);
             }
 
-            Parallel<Integer, Object> parallel = new Parallel<Integer, Object>(indexes);
-            parallel.setNumThreads(NUM_THREADS);
-            parallel.forEach(it -> {
+            // atoms are kept as primitive arrays, until they are added to the cell
+            AtomsBuffer atomsBuffer = new AtomsBuffer(nt * primBuffer.numAtoms());
 
+            for (int it = 0; it < nt; it++) {
                 int it0 = it;
                 int ia = it0 / (nb * nc);
                 it0 -= ia * (nb * nc);
@@ -128,45 +122,22 @@ public class SuperCellBuilder {
                 double ty = ra * lattice[0][1] + rb * lattice[1][1] + rc * lattice[2][1];
                 double tz = ra * lattice[0][2] + rb * lattice[1][2] + rc * lattice[2][2];
 
-                Atom[] atoms_ = new Atom[natom];
-                for (int i = 0; i < natom; i++) {
-                    Atom atom = atoms[i];
-                    if (atom == null) {
-                        atoms_[i] = null;
-                    } else {
-                        String name = atom.getName();
-                        double x = atom.getX() + tx;
-                        double y = atom.getY() + ty;
-                        double z = atom.getZ() + tz;
-                        boolean xFix = atom.booleanProperty(AtomProperty.FIXED_X);
-                        boolean yFix = atom.booleanProperty(AtomProperty.FIXED_Y);
-                        boolean zFix = atom.booleanProperty(AtomProperty.FIXED_Z);
-                        atoms_[i] = new Atom(name, x, y, z);
-                        atoms_[i].setProperty(AtomProperty.FIXED_X, xFix);
-                        atoms_[i].setProperty(AtomProperty.FIXED_Y, yFix);
-                        atoms_[i].setProperty(AtomProperty.FIXED_Z, zFix);
-                    }
-                }
-
-                synchronized (atomsBuffer) {
-                    atomsBuffer[it] = atoms_;
-                }
-
-                return null;
-            });
-
-            for (int it = 0; it < nt; it++) {
-                if (atomsBuffer[it] == null || atomsBuffer[it].length < natom) {
-                    continue;
-                }
-                for (int i = 0; i < natom; i++) {
-                    Atom atom = atomsBuffer[it][i];
-                    if (atom != null) {
-                        this.cell.addAtom(atom);
-                    }
+                for (int i = 0; i < primBuffer.numAtoms(); i++) {
+                    String name = primBuffer.getName(i);
+                    double x = primBuffer.getX(i) + tx;
+                    double y = primBuffer.getY(i) + ty;
+                    double z = primBuffer.getZ(i) + tz;
+                    int index = atomsBuffer.addAtom(name, x, y, z);
+
+                    boolean xFix = primBuffer.isFixedX(i);
+                    boolean yFix = primBuffer.isFixedY(i);
+                    boolean zFix = primBuffer.isFixedZ(i);
+                    atomsBuffer.setFixed(index, xFix, yFix, zFix);
                 }
             }
 
+            this.cell.addAtoms(atomsBuffer);
+
             return true;
 
         } finally {
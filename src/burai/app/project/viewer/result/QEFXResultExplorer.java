@@ -48,6 +48,7 @@ import burai.app.project.viewer.result.log.QEFXInputButton;
 import burai.app.project.viewer.result.log.QEFXOutputButton;
 import burai.app.project.viewer.result.movie.QEFXMdMovieButton;
 import burai.app.project.viewer.result.movie.QEFXOptMovieButton;
+import burai.app.project.viewer.result.movie.QEFXTrajMovieButton;
 import burai.com.keys.PriorKeyEvent;
 import burai.project.Project;
 import burai.run.RunningManager;
@@ -151,6 +152,7 @@ public class QEFXResultExplorer {
         this.updateMdButtons();
         this.updateDosButtons();
         this.updateBandButtons();
+        this.updateTrajButtons();
 
         int numNode1 = this.buttonList == null ? 0 : this.buttonList.size();
         int numNode2 = this.tilePane.getChildren().size();
@@ -412,6 +414,12 @@ public class QEFXResultExplorer {
         });
     }
 
+    private void updateTrajButtons() {
+        this.updateButton("QEFXTrajMovieButton", () -> {
+            return QEFXTrajMovieButton.getWrapper(this.projectController, this.project);
+        });
+    }
+
     private <T extends QEFXResultButton<?, ?>> boolean updateButton(String key, ButtonGetter<T> buttonGetter) {
         if (key == null) {
             return false;
@@ -24,6 +24,7 @@ import javafx.scene.control.Alert.AlertType;
 import burai.app.QEFXMain;
 import burai.app.project.QEFXProjectController;
 import burai.app.project.editor.result.QEFXResultFileTree;
+import burai.app.project.viewer.result.movie.QEFXTrajMovieButton;
 import burai.project.Project;
 
 public class ResultAction {
@@ -57,7 +58,7 @@ public class ResultAction {
     }
 
     public void showResult() {
-        if (this.project.getDirectoryPath() == null) {
+        if (this.project.getDirectoryPath() == null && (!QEFXTrajMovieButton.hasTrajectory(this.project))) {
             this.showErrorDialog();
             return;
         }
@@ -32,7 +32,7 @@ import burai.app.project.viewer.result.graph.GraphProperty;
 import burai.app.project.viewer.result.graph.QEFXGraphViewerController;
 import burai.app.project.viewer.result.graph.SeriesProperty;
 import burai.com.env.Environments;
-import burai.com.parallel.Parallel;
+import burai.com.parallel.ParallelRange;
 import burai.project.property.BandData;
 import burai.project.property.ProjectBand;
 import burai.project.property.ProjectBandFactory;
@@ -405,12 +405,7 @@ public class QEFXBandViewerController extends QEFXGraphViewerController {
             @SuppressWarnings("unchecked")
             Data<Number, Number>[] dataList = new Data[numData];
 
-            Integer[] indexes = new Integer[numData];
-            for (int i = 0; i < indexes.length; i++) {
-                indexes[i] = i;
-            }
-
-            Parallel<Integer, Object> parallel = new Parallel<Integer, Object>(indexes);
+            ParallelRange<Object> parallel = new ParallelRange<Object>(numData);
             parallel.setNumThreads(NUM_LOADING_THREADS);
             parallel.forEach(i -> {
                 double coord = bandData1.getCoordinate(i);
@@ -17,12 +17,13 @@
 package burai.app.project.viewer.result.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import burai.app.project.QEFXProjectController;
 import burai.atoms.element.ElementUtil;
 import burai.com.env.Environments;
-import burai.com.parallel.Parallel;
+import burai.com.parallel.ParallelRange;
 import burai.project.property.DosData;
 import burai.project.property.DosInterface;
 import burai.project.property.DosType;
@@ -303,42 +304,43 @@ public class QEFXDosViewerController extends QEFXGraphViewerController {
                 idelta = Math.max(1, idelta);
             }
 
-            List<Integer> indexList = new ArrayList<Integer>();
+            int numIndexes = 0;
+            int[] indexes = new int[(numData + idelta - 1) / idelta];
             for (int i = 0; i < numData; i += idelta) {
                 double energy = dosData.getEnergy(i);
                 if (energy < energyMin || energyMax < energy) {
                     continue;
                 }
-                indexList.add(i);
+                indexes[numIndexes++] = i;
             }
 
-            Integer[] indexes = indexList.toArray(new Integer[indexList.size()]);
-            List<Data<Number, Number>> dataList1 = new ArrayList<Data<Number, Number>>();
-            List<Data<Number, Number>> dataList2 = spinPolarized ? new ArrayList<Data<Number, Number>>() : null;
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Data<Number, Number>[] dataArray1 = new Data[numIndexes];
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Data<Number, Number>[] dataArray2 = spinPolarized ? new Data[numIndexes] : null;
 
-            Parallel<Integer, Object> parallel = new Parallel<Integer, Object>(indexes);
+            ParallelRange<Object> parallel = new ParallelRange<Object>(numIndexes);
             parallel.setNumThreads(NUM_LOADING_THREADS);
-            parallel.forEach(i -> {
+            parallel.forEach(j -> {
+                int i = indexes[j];
                 double energy = dosData.getEnergy(i);
                 energy -= fermi;
 
                 double dos1 = dosData.getDosUp(i);
-                Data<Number, Number> data1 = new Data<Number, Number>(energy, dos1);
-                synchronized (dataList1) {
-                    dataList1.add(data1);
-                }
+                dataArray1[j] = new Data<Number, Number>(energy, dos1);
 
                 if (spinPolarized) {
                     double dos2 = -dosData.getDosDown(i);
-                    Data<Number, Number> data2 = new Data<Number, Number>(energy, dos2);
-                    synchronized (dataList2) {
-                        dataList2.add(data2);
-                    }
+                    dataArray2[j] = new Data<Number, Number>(energy, dos2);
                 }
 
                 return null;
             });
 
+            // each slot is written by one task, and forEach joins all tasks before returning
+            List<Data<Number, Number>> dataList1 = Arrays.asList(dataArray1);
+            List<Data<Number, Number>> dataList2 = spinPolarized ? Arrays.asList(dataArray2) : null;
+
             this.sortDataList(dataList1);
             series1.getData().addAll(dataList1);
             if (spinPolarized) {
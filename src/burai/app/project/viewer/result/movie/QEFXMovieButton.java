@@ -44,19 +44,43 @@ public abstract class QEFXMovieButton extends QEFXResultButton<QEFXMovieViewer,
     protected QEFXMovieButton(QEFXProjectController projectController,
             Project project, ProjectProperty projectProperty, String title, String subTitle, boolean mdMode) {
 
+        this(projectController, project, title, subTitle);
+
+        if (projectProperty == null) {
+            throw new IllegalArgumentException("projectProperty is null.");
+        }
+
+        this.projectProperty = projectProperty;
+        this.mdMode = mdMode;
+    }
+
+    /**
+     * geometries are given by getGeometryList(), which has to be overridden.
+     */
+    protected QEFXMovieButton(QEFXProjectController projectController,
+            Project project, String title, String subTitle) {
+
         super(projectController, title, subTitle);
 
         if (project == null) {
             throw new IllegalArgumentException("project is null.");
         }
 
-        if (projectProperty == null) {
-            throw new IllegalArgumentException("projectProperty is null.");
+        this.project = project;
+        this.projectProperty = null;
+        this.mdMode = false;
+    }
+
+    protected ProjectGeometryList getGeometryList() throws IOException {
+        if (this.projectProperty == null) {
+            return null;
         }
 
-        this.project = project;
-        this.projectProperty = projectProperty;
-        this.mdMode = mdMode;
+        if (this.mdMode) {
+            return this.projectProperty.getMdList();
+        } else {
+            return this.projectProperty.getOptList();
+        }
     }
 
     private Design createDesign() {
@@ -78,13 +102,7 @@ public abstract class QEFXMovieButton extends QEFXResultButton<QEFXMovieViewer,
             return null;
         }
 
-        ProjectGeometryList projectGeometryList = null;
-        if (this.mdMode) {
-            projectGeometryList = this.projectProperty.getMdList();
-        } else {
-            projectGeometryList = this.projectProperty.getOptList();
-        }
-
+        ProjectGeometryList projectGeometryList = this.getGeometryList();
         if (projectGeometryList == null || projectGeometryList.numGeometries() < 1) {
             return null;
         }
@@ -131,7 +149,7 @@ public abstract class QEFXMovieButton extends QEFXResultButton<QEFXMovieViewer,
         }
 
         QEFXMovieViewer movieViewer = new QEFXMovieViewer(
-                this.projectController, this.projectProperty, cell, this.mdMode);
+                this.projectController, projectGeometryList, cell);
 
         Design design = this.createDesign();
         if (design != null) {
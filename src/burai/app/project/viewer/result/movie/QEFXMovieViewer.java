@@ -23,6 +23,7 @@ import burai.atoms.design.Design;
 import burai.atoms.model.Cell;
 import burai.atoms.viewer.AtomsViewer;
 import burai.atoms.viewer.AtomsViewerInterface;
+import burai.project.property.ProjectGeometryList;
 import burai.project.property.ProjectProperty;
 import javafx.scene.layout.BorderPane;
 
@@ -43,6 +44,19 @@ public class QEFXMovieViewer extends QEFXResultViewer<QEFXMovieViewerController>
         this.design = null;
     }
 
+    public QEFXMovieViewer(QEFXProjectController projectController, ProjectGeometryList projectGeometryList,
+            Cell cell) {
+
+        super(cell == null ? null : new AtomsViewer(cell, AtomsAction.getAtomsViewerSize(), true),
+                new QEFXMovieViewerController(projectController, projectGeometryList, cell));
+
+        if (this.node != null && (this.node instanceof AtomsViewerInterface)) {
+            this.setupAtomsViewer((AtomsViewerInterface) this.node, projectController);
+        }
+
+        this.design = null;
+    }
+
     private void setupAtomsViewer(AtomsViewerInterface atomsViewer, QEFXProjectController projectController) {
         if (atomsViewer == null) {
             return;
@@ -53,22 +53,22 @@ public class QEFXMovieViewerController extends QEFXResultViewerController {
     public QEFXMovieViewerController(QEFXProjectController projectController, ProjectProperty projectProperty,
             Cell cell, boolean mdMode) {
 
-        super(projectController);
+        this(projectController, getGeometryList(projectProperty, mdMode), cell);
+    }
 
-        if (projectProperty == null) {
-            throw new IllegalArgumentException("projectProperty is null.");
-        }
+    /**
+     * geometries can be of an external trajectory, e.g. ProjectGeometryList.readAXSFFile (see QEFXTrajMovieButton).
+     */
+    public QEFXMovieViewerController(QEFXProjectController projectController, ProjectGeometryList projectGeometryList,
+            Cell cell) {
+
+        super(projectController);
 
         if (cell == null) {
             throw new IllegalArgumentException("cell is null.");
         }
 
-        if (mdMode) {
-            this.projectGeometryList = projectProperty.getMdList();
-        } else {
-            this.projectGeometryList = projectProperty.getOptList();
-        }
-
+        this.projectGeometryList = projectGeometryList;
         this.projectGeometryListSaved = null;
 
         this.cell = cell;
@@ -83,6 +83,18 @@ public class QEFXMovieViewerController extends QEFXResultViewerController {
         }
     }
 
+    private static ProjectGeometryList getGeometryList(ProjectProperty projectProperty, boolean mdMode) {
+        if (projectProperty == null) {
+            throw new IllegalArgumentException("projectProperty is null.");
+        }
+
+        if (mdMode) {
+            return projectProperty.getMdList();
+        } else {
+            return projectProperty.getOptList();
+        }
+    }
+
     public void setOnGeometryShown(GeometryShown onGeometryShown) {
         this.onGeometryShown = onGeometryShown;
     }
@@ -219,6 +231,11 @@ public class QEFXMovieViewerController extends QEFXResultViewerController {
             return false;
         }
 
+        // geometry is read from the file, and can be lost if the file is rewritten
+        if (projectGeometry == null) {
+            return false;
+        }
+
         double[][] lattice = projectGeometry.getCell();
         lattice = Matrix3D.mult(Constants.BOHR_RADIUS_ANGS, lattice);
         if (lattice == null || lattice.length < 3) {
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.app.project.viewer.result.movie;
+
+import java.io.File;
+import java.io.IOException;
+
+import burai.app.project.QEFXProjectController;
+import burai.app.project.viewer.result.QEFXResultButtonWrapper;
+import burai.project.Project;
+import burai.project.property.ProjectGeometryList;
+
+/**
+ * movie of the trajectory, of a project which is opened from an AXSF file (animated XSF).
+ * frames are indexed when the movie is opened, and are read from the file while playing.
+ */
+public class QEFXTrajMovieButton extends QEFXMovieButton {
+
+    private static final String FILE_EXT = ".axsf";
+
+    private static final String BUTTON_TITLE = "TRAJ";
+    private static final String BUTTON_SUBTITLE = ".movie";
+    private static final String BUTTON_FONT_COLOR = "-fx-text-fill: snow";
+    private static final String BUTTON_BACKGROUND = "-fx-background-color: derive(darkcyan, 10.0%)";
+
+    public static QEFXResultButtonWrapper<QEFXTrajMovieButton> getWrapper(QEFXProjectController projectController, Project project) {
+        if (projectController == null) {
+            return null;
+        }
+
+        if (!hasTrajectory(project)) {
+            return null;
+        }
+
+        File file = project.getRootFile();
+        return () -> new QEFXTrajMovieButton(projectController, project, file);
+    }
+
+    /**
+     * @return true if the project is opened from an AXSF file, which can be shown without saving the project.
+     */
+    public static boolean hasTrajectory(Project project) {
+        if (project == null) {
+            return false;
+        }
+
+        File file = project.getRootFile();
+        String fileName = file == null ? null : file.getName();
+        if (fileName == null || !fileName.toLowerCase().endsWith(FILE_EXT)) {
+            return false;
+        }
+
+        try {
+            return file.isFile();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private File file;
+
+    private ProjectGeometryList projectGeometryList;
+
+    private QEFXTrajMovieButton(QEFXProjectController projectController, Project project, File file) {
+        super(projectController, project, BUTTON_TITLE, BUTTON_SUBTITLE);
+
+        this.file = file;
+        this.projectGeometryList = null;
+
+        this.setIconStyle(BUTTON_BACKGROUND);
+        this.setLabelStyle(BUTTON_FONT_COLOR);
+    }
+
+    @Override
+    protected ProjectGeometryList getGeometryList() throws IOException {
+        // the file is scanned only once, and frames are cached by ProjectGeometryList
+        if (this.projectGeometryList == null) {
+            this.projectGeometryList = ProjectGeometryList.readAXSFFile(this.file);
+        }
+
+        return this.projectGeometryList;
+    }
+}
@@ -16,10 +16,15 @@
 
 package burai.app.project.viewer.run;
 
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import burai.app.QEFXMain;
 import burai.app.QEFXMainController;
 import burai.app.project.QEFXProjectController;
 import burai.run.RunningManager;
 import burai.run.RunningNode;
+import burai.run.RunningStatus;
 import burai.ssh.SSHJob;
 
 public class RunAction {
@@ -73,6 +78,33 @@ public class RunAction {
             return;
         }
 
-        sshJob.postJobToServer();
+        // an error in the posted job is reported when the job is finished
+        sshJob.addOnStatusChanged(status -> {
+            String message = status == RunningStatus.DONE ? sshJob.getErrorMessage() : null;
+            if (message != null) {
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(AlertType.ERROR);
+                    QEFXMain.initializeDialogOwner(alert);
+                    alert.setHeaderText("ERROR in the job on " + sshJob.getSSHServer().toString());
+                    alert.setContentText(message);
+                    alert.showAndWait();
+                });
+            }
+        });
+
+        // posting a job needs network round trips, which should not block the UI
+        Thread thread = new Thread(() -> {
+            if (!sshJob.postJobToServer()) {
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(AlertType.ERROR);
+                    QEFXMain.initializeDialogOwner(alert);
+                    alert.setHeaderText("Cannot post the job to " + sshJob.getSSHServer().toString());
+                    alert.showAndWait();
+                });
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
     }
 }
@@ -176,6 +176,14 @@ public class Atom extends Model<AtomEvent, AtomEventListener> {
         return false;
     }
 
+    protected Bond[] listBonds() {
+        if (this.bonds == null) {
+            return null;
+        }
+
+        return this.bonds.toArray(new Bond[this.bonds.size()]);
+    }
+
     public String getName() {
         return this.name;
     }
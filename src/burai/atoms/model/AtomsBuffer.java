@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burai.atoms.element.ElementUtil;
+import burai.atoms.model.property.AtomProperty;
+
+/**
+ * compact list of atoms, as primitive arrays of species, coordinates and fixed flags.
+ * element data are shared among atoms of the same species,
+ * and instances of Atom are created only by createAtom (or Cell#addAtoms).
+ */
+public class AtomsBuffer {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final byte FIXED_X = 0x01;
+    private static final byte FIXED_Y = 0x02;
+    private static final byte FIXED_Z = 0x04;
+
+    private int numAtoms;
+
+    private int[] species;
+
+    private double[] x;
+    private double[] y;
+    private double[] z;
+
+    private byte[] fixed;
+
+    private List<Species> speciesList;
+
+    private Map<String, Integer> speciesIndexes;
+
+    public AtomsBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AtomsBuffer(int capacity) {
+        int capacity_ = Math.max(1, capacity);
+
+        this.numAtoms = 0;
+        this.species = new int[capacity_];
+        this.x = new double[capacity_];
+        this.y = new double[capacity_];
+        this.z = new double[capacity_];
+        this.fixed = null;
+
+        this.speciesList = new ArrayList<Species>();
+        this.speciesIndexes = new HashMap<String, Integer>();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.species.length) {
+            return;
+        }
+
+        int capacity_ = Math.max(capacity, 2 * this.species.length);
+        this.species = Arrays.copyOf(this.species, capacity_);
+        this.x = Arrays.copyOf(this.x, capacity_);
+        this.y = Arrays.copyOf(this.y, capacity_);
+        this.z = Arrays.copyOf(this.z, capacity_);
+        if (this.fixed != null) {
+            this.fixed = Arrays.copyOf(this.fixed, capacity_);
+        }
+    }
+
+    private int toSpecies(String name) {
+        String name_ = name == null ? "" : name;
+
+        Integer index = this.speciesIndexes.get(name_);
+        if (index != null) {
+            return index.intValue();
+        }
+
+        Species species = new Species();
+        species.name = ElementUtil.toAvailableName(name_);
+        species.atomNum = ElementUtil.getAtomicNumber(name_);
+        species.radius = ElementUtil.getCovalentRadius(name_);
+
+        int index_ = this.speciesList.size();
+        this.speciesList.add(species);
+        this.speciesIndexes.put(name_, index_);
+        return index_;
+    }
+
+    public int numAtoms() {
+        return this.numAtoms;
+    }
+
+    public int numSpecies() {
+        return this.speciesList.size();
+    }
+
+    public String getSpeciesName(int index) {
+        return this.speciesList.get(index).name;
+    }
+
+    /**
+     * @return index of the added atom
+     */
+    public int addAtom(String name, double x, double y, double z) {
+        this.ensureCapacity(this.numAtoms + 1);
+
+        int i = this.numAtoms;
+        this.species[i] = this.toSpecies(name);
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+        if (this.fixed != null) {
+            this.fixed[i] = 0;
+        }
+
+        this.numAtoms++;
+        return i;
+    }
+
+    /**
+     * name, position and fixed flags are copied, and other properties are not.
+     * @return index of the added atom, or -1 if atom is null
+     */
+    public int addAtom(Atom atom) {
+        if (atom == null) {
+            return -1;
+        }
+
+        int i = this.addAtom(atom.getName(), atom.getX(), atom.getY(), atom.getZ());
+
+        this.setFixed(i,
+                atom.booleanProperty(AtomProperty.FIXED_X),
+                atom.booleanProperty(AtomProperty.FIXED_Y),
+                atom.booleanProperty(AtomProperty.FIXED_Z));
+
+        return i;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= this.numAtoms) {
+            throw new IndexOutOfBoundsException("index is out of range: " + i);
+        }
+    }
+
+    public int getSpecies(int i) {
+        this.checkIndex(i);
+        return this.species[i];
+    }
+
+    public String getName(int i) {
+        this.checkIndex(i);
+        return this.speciesList.get(this.species[i]).name;
+    }
+
+    public double getX(int i) {
+        this.checkIndex(i);
+        return this.x[i];
+    }
+
+    public double getY(int i) {
+        this.checkIndex(i);
+        return this.y[i];
+    }
+
+    public double getZ(int i) {
+        this.checkIndex(i);
+        return this.z[i];
+    }
+
+    public void setPosition(int i, double x, double y, double z) {
+        this.checkIndex(i);
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+    }
+
+    public void moveAllBy(double dx, double dy, double dz) {
+        for (int i = 0; i < this.numAtoms; i++) {
+            this.x[i] += dx;
+            this.y[i] += dy;
+            this.z[i] += dz;
+        }
+    }
+
+    /**
+     * fixed flags are allocated at the first call of this method,
+     * and properties FIXED_X/Y/Z are set to all atoms created after that.
+     */
+    public void setFixed(int i, boolean xFix, boolean yFix, boolean zFix) {
+        this.checkIndex(i);
+
+        if (this.fixed == null) {
+            this.fixed = new byte[this.species.length];
+        }
+
+        byte flags = 0;
+        flags |= xFix ? FIXED_X : 0;
+        flags |= yFix ? FIXED_Y : 0;
+        flags |= zFix ? FIXED_Z : 0;
+        this.fixed[i] = flags;
+    }
+
+    public boolean hasFixed() {
+        return this.fixed != null;
+    }
+
+    public boolean isFixedX(int i) {
+        this.checkIndex(i);
+        return this.fixed != null && (this.fixed[i] & FIXED_X) != 0;
+    }
+
+    public boolean isFixedY(int i) {
+        this.checkIndex(i);
+        return this.fixed != null && (this.fixed[i] & FIXED_Y) != 0;
+    }
+
+    public boolean isFixedZ(int i) {
+        this.checkIndex(i);
+        return this.fixed != null && (this.fixed[i] & FIXED_Z) != 0;
+    }
+
+    /**
+     * a new instance of Atom is created at each call.
+     */
+    public Atom createAtom(int i) {
+        this.checkIndex(i);
+
+        Species species = this.speciesList.get(this.species[i]);
+        Atom atom = new Atom(species.name, species.atomNum, species.radius, this.x[i], this.y[i], this.z[i]);
+
+        if (this.fixed != null) {
+            atom.setProperty(AtomProperty.FIXED_X, (this.fixed[i] & FIXED_X) != 0);
+            atom.setProperty(AtomProperty.FIXED_Y, (this.fixed[i] & FIXED_Y) != 0);
+            atom.setProperty(AtomProperty.FIXED_Z, (this.fixed[i] & FIXED_Z) != 0);
+        }
+
+        return atom;
+    }
+
+    public void clear() {
+        this.numAtoms = 0;
+    }
+
+    private static class Species {
+
+        public String name;
+        public int atomNum;
+        public double radius;
+
+        public Species() {
+            this.name = null;
+            this.atomNum = 0;
+            this.radius = 0.0;
+        }
+    }
+}
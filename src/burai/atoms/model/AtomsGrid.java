@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * linked-cell (spatial hashing) index of atoms.
+ * atoms are binned by Cartesian position, with the width of bins being
+ * radiusScale * (the largest diameter of atoms), so that all pairs within radiusScale * (r1 + r2)
+ * are found in the neighboring 27 bins.
+ */
+public class AtomsGrid {
+
+    private static final double MIN_WIDTH = 1.0e-3;
+
+    private static final int KEY_BITS = 21;
+
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1L;
+
+    private double radiusScale;
+
+    private double maxRadius;
+
+    private double width;
+
+    private Map<Long, List<Atom>> bins;
+
+    private Map<Atom, Long> keys;
+
+    protected AtomsGrid(double radiusScale) {
+        if (radiusScale <= 0.0) {
+            throw new IllegalArgumentException("radiusScale is not positive.");
+        }
+
+        this.radiusScale = radiusScale;
+        this.maxRadius = 0.0;
+        this.width = MIN_WIDTH;
+        this.bins = new HashMap<Long, List<Atom>>();
+        this.keys = new IdentityHashMap<Atom, Long>();
+    }
+
+    private static long toKey(int ix, int iy, int iz) {
+        long key = 0L;
+        key |= (((long) ix) & KEY_MASK) << (2 * KEY_BITS);
+        key |= (((long) iy) & KEY_MASK) << KEY_BITS;
+        key |= (((long) iz) & KEY_MASK);
+        return key;
+    }
+
+    private int toIndex(double r) {
+        return (int) Math.floor(r / this.width);
+    }
+
+    private long toKey(Atom atom) {
+        int ix = this.toIndex(atom.getX());
+        int iy = this.toIndex(atom.getY());
+        int iz = this.toIndex(atom.getZ());
+        return toKey(ix, iy, iz);
+    }
+
+    private void putAtom(Atom atom, long key) {
+        Long key_ = key;
+        List<Atom> bin = this.bins.get(key_);
+        if (bin == null) {
+            bin = new ArrayList<Atom>();
+            this.bins.put(key_, bin);
+        }
+
+        bin.add(atom);
+        this.keys.put(atom, key_);
+    }
+
+    private void takeAtom(Atom atom, Long key) {
+        List<Atom> bin = this.bins.get(key);
+        if (bin == null) {
+            return;
+        }
+
+        bin.remove(atom); // Atom#equals is identity
+        if (bin.isEmpty()) {
+            this.bins.remove(key);
+        }
+    }
+
+    private void rehash() {
+        this.width = Math.max(MIN_WIDTH, 2.0 * this.radiusScale * this.maxRadius);
+
+        Atom[] atoms = this.keys.keySet().toArray(new Atom[this.keys.size()]);
+        this.bins.clear();
+        this.keys.clear();
+
+        for (Atom atom : atoms) {
+            this.putAtom(atom, this.toKey(atom));
+        }
+    }
+
+    protected double getWidth() {
+        return this.width;
+    }
+
+    protected int numAtoms() {
+        return this.keys.size();
+    }
+
+    protected boolean hasAtom(Atom atom) {
+        if (atom == null) {
+            return false;
+        }
+
+        return this.keys.containsKey(atom);
+    }
+
+    protected void addAtom(Atom atom) {
+        if (atom == null) {
+            return;
+        }
+
+        if (this.keys.containsKey(atom)) {
+            this.updateAtom(atom);
+            return;
+        }
+
+        this.putAtom(atom, this.toKey(atom));
+
+        if (atom.getRadius() > this.maxRadius) {
+            this.maxRadius = atom.getRadius();
+            this.rehash();
+        }
+    }
+
+    protected void removeAtom(Atom atom) {
+        if (atom == null) {
+            return;
+        }
+
+        Long key = this.keys.remove(atom);
+        if (key != null) {
+            this.takeAtom(atom, key);
+        }
+    }
+
+    /**
+     * to be called, when an atom is moved or renamed.
+     */
+    protected void updateAtom(Atom atom) {
+        if (atom == null) {
+            return;
+        }
+
+        Long oldKey = this.keys.get(atom);
+        if (oldKey == null) {
+            return;
+        }
+
+        if (atom.getRadius() > this.maxRadius) {
+            this.maxRadius = atom.getRadius();
+            this.rehash();
+            return;
+        }
+
+        long newKey = this.toKey(atom);
+        if (oldKey.longValue() == newKey) {
+            return;
+        }
+
+        this.takeAtom(atom, oldKey);
+        this.putAtom(atom, newKey);
+    }
+
+    protected void clear() {
+        this.maxRadius = 0.0;
+        this.width = MIN_WIDTH;
+        this.bins.clear();
+        this.keys.clear();
+    }
+
+    /**
+     * list atoms in the 27 bins around the position.
+     * the result is a superset of atoms within this.getWidth().
+     */
+    protected List<Atom> listNeighbors(double x, double y, double z) {
+        int ix = this.toIndex(x);
+        int iy = this.toIndex(y);
+        int iz = this.toIndex(z);
+
+        List<Atom> neighbors = new ArrayList<Atom>();
+
+        for (int jx = ix - 1; jx <= ix + 1; jx++) {
+            for (int jy = iy - 1; jy <= iy + 1; jy++) {
+                for (int jz = iz - 1; jz <= iz + 1; jz++) {
+                    List<Atom> bin = this.bins.get(toKey(jx, jy, jz));
+                    if (bin != null && !bin.isEmpty()) {
+                        neighbors.addAll(bin);
+                    }
+                }
+            }
+        }
+
+        return neighbors;
+    }
+
+    protected List<Atom> listNeighbors(Atom atom) {
+        if (atom == null) {
+            return null;
+        }
+
+        return this.listNeighbors(atom.getX(), atom.getY(), atom.getZ());
+    }
+}
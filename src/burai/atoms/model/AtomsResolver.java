@@ -16,6 +16,8 @@
 
 package burai.atoms.model;
 
+import java.util.List;
+
 import burai.atoms.model.event.AtomEvent;
 import burai.atoms.model.event.AtomEventListener;
 import burai.atoms.model.event.CellEvent;
@@ -324,22 +326,85 @@ public class AtomsResolver implements AtomEventListener, CellEventListener {
     }
 
     @Override
-    public void onBondRemoved(CellEvent event) {
-        // NOP
+    public void onBatchCommitted(CellEvent event) {
+        if (event == null) {
+            return;
+        }
+
+        if (this.cell != event.getSource()) {
+            return;
+        }
+
+        List<Atom> addedAtoms = event.getAddedAtoms();
+        if (addedAtoms != null) {
+            for (Atom atom : addedAtoms) {
+                atom.addListenerFirst(this);
+            }
+        }
+
+        if (!this.auto) {
+            return;
+        }
+
+        // slave atoms are also added or removed in one batch
+        this.cell.beginBatch();
+
+        try {
+            List<Atom> removedAtoms = event.getRemovedAtoms();
+            if (removedAtoms != null) {
+                for (Atom atom : removedAtoms) {
+                    Atom[] slaveAtoms = atom.listSlaveAtoms();
+                    if (slaveAtoms != null && slaveAtoms.length > 0) {
+                        for (Atom slaveAtom : slaveAtoms) {
+                            this.cell.removeAtom(slaveAtom);
+                        }
+                    }
+                }
+            }
+
+            if (addedAtoms != null) {
+                for (Atom atom : addedAtoms) {
+                    if (atom.isSlaveAtom()) {
+                        continue;
+                    }
+
+                    Atom[] subAtoms = this.listAtomsOnCell(atom);
+                    if (subAtoms != null && subAtoms.length > 0) {
+                        for (Atom subAtom : subAtoms) {
+                            subAtom.setMasterAtom(atom);
+                            this.cell.addAtom(subAtom);
+                        }
+                    }
+                }
+            }
+
+        } finally {
+            this.cell.commitBatch();
+        }
     }
 
     @Override
-    public void onAtomRenamed(AtomEvent event) {
+    public void onBondRemoved(CellEvent event) {
         // NOP
     }
 
     @Override
-    public void onAtomMoved(AtomEvent event) {
+    public void onAtomRenamed(AtomEvent event) {
         if (event == null) {
             return;
         }
 
-        if (!this.auto) {
+        Object obj = event.getSource();
+        if (obj == null || !(obj instanceof Atom)) {
+            return;
+        }
+
+        this.cell.updateAtomInGrid((Atom) obj);
+    }
+
+    @Override
+    public void onAtomMoved(AtomEvent event) {
+        if (event == null) {
             return;
         }
 
@@ -349,6 +414,12 @@ public class AtomsResolver implements AtomEventListener, CellEventListener {
         }
 
         Atom atom = (Atom) obj;
+        this.cell.updateAtomInGrid(atom);
+
+        if (!this.auto) {
+            return;
+        }
+
         if (atom.isSlaveAtom()) {
             return;
         }
@@ -17,7 +17,9 @@
 package burai.atoms.model;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import burai.atoms.model.event.AtomEvent;
 import burai.atoms.model.event.AtomEventListener;
@@ -25,16 +27,16 @@ import burai.atoms.model.event.CellEvent;
 import burai.atoms.model.event.CellEventListener;
 import burai.atoms.model.event.ModelEvent;
 import burai.com.env.Environments;
-import burai.com.parallel.Parallel;
+import burai.com.parallel.ParallelRange;
 import javafx.application.Platform;
 
 public class BondsResolver implements AtomEventListener, CellEventListener {
 
     private static final double THR_DENSITY = 0.50;
 
-    private static final double BOND_SCALE1 = 0.50;
+    public static final double BOND_SCALE1 = 0.50;
 
-    private static final double BOND_SCALE2 = 1.50;
+    public static final double BOND_SCALE2 = 1.50;
 
     private static final double THR_ATOM_MOTION = 1.0e-3;
 
@@ -50,6 +52,8 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
 
     private Cell cell;
 
+    private AtomsGrid grid;
+
     boolean auto;
 
     protected BondsResolver(Cell cell) {
@@ -60,11 +64,14 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         this.cell = cell;
         this.cell.addListenerFirst(this);
 
+        this.grid = new AtomsGrid(BOND_SCALE2);
+
         Atom[] atoms = this.cell.listAtoms();
         if (atoms != null) {
             for (Atom atom : atoms) {
                 if (atom != null) {
                     atom.addListenerFirst(this);
+                    this.grid.addAtom(atom);
                 }
             }
         }
@@ -93,6 +100,18 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
     }
 
     private void resolveAll() {
+        // bonds are notified to listeners at once
+        this.cell.beginBatch();
+
+        try {
+            this.resolveAllBonds();
+
+        } finally {
+            this.cell.commitBatch();
+        }
+    }
+
+    private void resolveAllBonds() {
 
         this.removeNotUsedBonds();
 
@@ -108,6 +127,11 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         int natom = atoms.size();
         int nbond = this.cell.numBonds();
 
+        Map<Atom, Integer> atomIndexes = new IdentityHashMap<Atom, Integer>();
+        for (int i = 0; i < natom; i++) {
+            atomIndexes.put(atoms.get(i), i);
+        }
+
         List<Bond> bondsToAdd = new ArrayList<Bond>();
         List<Bond> bondsToRemove = new ArrayList<Bond>();
 
@@ -115,7 +139,7 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             // serial calculation
             for (int i = 0; i < natom; i++) {
                 Atom atom = atoms.get(i);
-                Bond[][] bondsBuffer = this.resolve(atom, i, atoms, nbond == 0);
+                Bond[][] bondsBuffer = this.resolve(atom, i, atomIndexes, nbond == 0);
                 if (bondsBuffer == null || bondsBuffer.length < 2) {
                     continue;
                 }
@@ -143,17 +167,12 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
 
         } else {
             // parallel calculation
-            Integer[] iatom = new Integer[natom];
-            for (int i = 0; i < iatom.length; i++) {
-                iatom[i] = i;
-            }
-
-            Parallel<Integer, Object> parallel = new Parallel<Integer, Object>(iatom);
+            ParallelRange<Object> parallel = new ParallelRange<Object>(natom);
             parallel.setNumThreads(NUM_THREADS);
             parallel.forEach(i -> {
 
                 Atom atom = atoms.get(i);
-                Bond[][] bondsBuffer = this.resolve(atom, i, atoms, nbond == 0);
+                Bond[][] bondsBuffer = this.resolve(atom, i, atomIndexes, nbond == 0);
                 if (bondsBuffer == null || bondsBuffer.length < 2) {
                     return null;
                 }
@@ -205,7 +224,11 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
-        Bond[][] bondsBuffer = this.resolve(atom, atoms.size(), atoms, false);
+        if (!this.grid.hasAtom(atom)) {
+            return;
+        }
+
+        Bond[][] bondsBuffer = this.resolve(atom, -1, null, false);
         if (bondsBuffer == null || bondsBuffer.length < 2) {
             return;
         }
@@ -231,6 +254,26 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         }
     }
 
+    /**
+     * bonds of atoms added in a batch, which are notified to listeners at once.
+     */
+    protected void resolve(List<Atom> atoms) {
+        if (atoms == null || atoms.isEmpty()) {
+            return;
+        }
+
+        this.cell.beginBatch();
+
+        try {
+            for (Atom atom : atoms) {
+                this.resolve(atom);
+            }
+
+        } finally {
+            this.cell.commitBatch();
+        }
+    }
+
     private boolean isAbleToResolve(boolean fullCheck) {
         double ratom = (double) this.cell.numAtoms();
 
@@ -261,27 +304,36 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         return true;
     }
 
-    private Bond[][] resolve(Atom atom1, int maxAtom, List<Atom> atoms, boolean fromBeginning) {
+    /**
+     * atoms to be bonded are searched in the neighboring bins of this.grid,
+     * and only atoms whose index is less than maxIndex are considered, if atomIndexes is given.
+     */
+    private Bond[][] resolve(Atom atom1, int maxIndex, Map<Atom, Integer> atomIndexes, boolean fromBeginning) {
         if (atom1 == null) {
             return null;
         }
 
-        if (maxAtom < 1) {
+        if (atomIndexes != null && maxIndex < 1) {
             return null;
         }
 
-        if (atoms == null || atoms.size() < maxAtom) {
+        List<Atom> neighbors = this.grid.listNeighbors(atom1);
+        if (neighbors == null) {
             return null;
         }
 
-        double x1 = atom1.getX();
-        double y1 = atom1.getY();
-        double z1 = atom1.getZ();
-        double rcov1 = atom1.getRadius();
-
         List<Bond> bonds = null;
         if (!fromBeginning) {
-            bonds = this.cell.pickBonds(atom1);
+            Bond[] bonds_ = null;
+            synchronized (atom1) { // Bond's constructor can modify bonds of atom1
+                bonds_ = atom1.listBonds();
+            }
+            if (bonds_ != null && bonds_.length > 0) {
+                bonds = new ArrayList<Bond>(bonds_.length);
+                for (Bond bond : bonds_) {
+                    bonds.add(bond);
+                }
+            }
         }
 
         int numToAdd = 0;
@@ -289,55 +341,59 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         Bond[] bondsToAdd = null;
         Bond[] bondsToRemove = null;
 
-        for (int i = 0; i < maxAtom; i++) {
-            Atom atom2 = atoms.get(i);
+        for (Atom atom2 : neighbors) {
             if (atom1 == atom2) {
                 continue;
             }
 
-            double x2 = atom2.getX();
-            double y2 = atom2.getY();
-            double z2 = atom2.getZ();
-            double rcov2 = atom2.getRadius();
+            if (!this.isToResolve(atom2, maxIndex, atomIndexes)) {
+                continue;
+            }
 
-            double rr = (x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2) + (z1 - z2) * (z1 - z2);
-            double rcov = rcov1 + rcov2;
-            double rrcov = rcov * rcov;
-            double rrmin = BOND_SCALE1 * BOND_SCALE1 * rrcov;
-            double rrmax = BOND_SCALE2 * BOND_SCALE2 * rrcov;
+            if (!this.isBonded(atom1, atom2)) {
+                continue;
+            }
 
             Bond bond = null;
             if (!fromBeginning) {
                 bond = this.cell.pickBond(atom1, atom2, bonds);
             }
 
-            if (rrmin <= rr && rr <= rrmax) {
-                if (bond == null) {
-                    if (bondsToAdd == null || numToAdd >= bondsToAdd.length) {
-                        Bond[] bondsTmp = new Bond[numToAdd + DIM_BONDS];
-                        for (int j = 0; j < numToAdd; j++) {
-                            bondsTmp[j] = bondsToAdd[j];
-                        }
-                        bondsToAdd = bondsTmp;
+            if (bond == null) {
+                if (bondsToAdd == null || numToAdd >= bondsToAdd.length) {
+                    Bond[] bondsTmp = new Bond[numToAdd + DIM_BONDS];
+                    for (int j = 0; j < numToAdd; j++) {
+                        bondsTmp[j] = bondsToAdd[j];
                     }
+                    bondsToAdd = bondsTmp;
+                }
 
-                    bondsToAdd[numToAdd] = new Bond(atom1, atom2);
-                    numToAdd++;
+                bondsToAdd[numToAdd] = new Bond(atom1, atom2);
+                numToAdd++;
+            }
+        }
+
+        if (bonds != null) {
+            for (Bond bond : bonds) {
+                Atom atom2 = bond.getAtom1() == atom1 ? bond.getAtom2() : bond.getAtom1();
+                if (!this.isToResolve(atom2, maxIndex, atomIndexes)) {
+                    continue;
                 }
 
-            } else {
-                if (bond != null) {
-                    if (bondsToRemove == null || numToRemove >= bondsToRemove.length) {
-                        Bond[] bondsTmp = new Bond[numToRemove + DIM_BONDS];
-                        for (int j = 0; j < numToRemove; j++) {
-                            bondsTmp[j] = bondsToRemove[j];
-                        }
-                        bondsToRemove = bondsTmp;
-                    }
+                if (this.isBonded(atom1, atom2)) {
+                    continue;
+                }
 
-                    bondsToRemove[numToRemove] = bond;
-                    numToRemove++;
+                if (bondsToRemove == null || numToRemove >= bondsToRemove.length) {
+                    Bond[] bondsTmp = new Bond[numToRemove + DIM_BONDS];
+                    for (int j = 0; j < numToRemove; j++) {
+                        bondsTmp[j] = bondsToRemove[j];
+                    }
+                    bondsToRemove = bondsTmp;
                 }
+
+                bondsToRemove[numToRemove] = bond;
+                numToRemove++;
             }
         }
 
@@ -347,22 +403,39 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         return bondsBuffer;
     }
 
+    private boolean isToResolve(Atom atom2, int maxIndex, Map<Atom, Integer> atomIndexes) {
+        if (atomIndexes == null) {
+            return this.grid.hasAtom(atom2);
+        }
+
+        Integer index = atomIndexes.get(atom2);
+        return index != null && index.intValue() < maxIndex;
+    }
+
+    private boolean isBonded(Atom atom1, Atom atom2) {
+        double dx = atom1.getX() - atom2.getX();
+        double dy = atom1.getY() - atom2.getY();
+        double dz = atom1.getZ() - atom2.getZ();
+        double rr = dx * dx + dy * dy + dz * dz;
+        double rcov = atom1.getRadius() + atom2.getRadius();
+        double rrcov = rcov * rcov;
+        double rrmin = BOND_SCALE1 * BOND_SCALE1 * rrcov;
+        double rrmax = BOND_SCALE2 * BOND_SCALE2 * rrcov;
+        return rrmin <= rr && rr <= rrmax;
+    }
+
     private void removeAllBondsLinkedWith(Atom atom) {
         if (atom == null) {
             throw new IllegalArgumentException("atom is null.");
         }
 
-        Bond[] bonds = this.cell.listBonds();
+        Bond[] bonds = atom.listBonds();
         if (bonds == null || bonds.length < 1) {
             return;
         }
 
         for (Bond bond : bonds) {
-            Atom atom1 = bond.getAtom1();
-            Atom atom2 = bond.getAtom2();
-            if (atom == atom1 || atom == atom2) {
-                this.cell.removeBond(bond);
-            }
+            this.cell.removeBond(bond);
         }
     }
 
@@ -372,29 +445,10 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
-        List<Atom> atoms = this.cell.getAtoms();
-        if (atoms == null || atoms.isEmpty()) {
-            for (Bond bond : bonds) {
-                this.cell.removeBond(bond);
-            }
-            return;
-        }
-
         for (Bond bond : bonds) {
             Atom atom1 = bond.getAtom1();
             Atom atom2 = bond.getAtom2();
-            boolean hasAtom1 = false;
-            boolean hasAtom2 = false;
-            for (Atom atom : atoms) {
-                if (hasAtom1 && hasAtom2) {
-                    break;
-                } else if (!hasAtom1) {
-                    hasAtom1 = (atom == atom1);
-                } else if (!hasAtom2) {
-                    hasAtom2 = (atom == atom2);
-                }
-            }
-            if (!(hasAtom1 && hasAtom2)) {
+            if (!(this.grid.hasAtom(atom1) && this.grid.hasAtom(atom2))) {
                 this.cell.removeBond(bond);
             }
         }
@@ -448,6 +502,7 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         }
 
         atom.addListenerFirst(this);
+        this.grid.addAtom(atom);
 
         if (!this.auto) {
             return;
@@ -471,6 +526,8 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
+        this.grid.removeAtom(atom);
+
         if (!this.auto) {
             return;
         }
@@ -483,6 +540,35 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
         // NOP
     }
 
+    @Override
+    public void onBatchCommitted(CellEvent event) {
+        if (event == null) {
+            return;
+        }
+
+        if (this.cell != event.getSource()) {
+            return;
+        }
+
+        List<Atom> removedAtoms = event.getRemovedAtoms();
+        if (removedAtoms != null) {
+            for (Atom atom : removedAtoms) {
+                this.grid.removeAtom(atom);
+                this.removeAllBondsLinkedWith(atom);
+            }
+        }
+
+        List<Atom> addedAtoms = event.getAddedAtoms();
+        if (addedAtoms != null) {
+            for (Atom atom : addedAtoms) {
+                atom.addListenerFirst(this);
+                this.grid.addAtom(atom);
+            }
+        }
+
+        // other bonds are resolved by the cell, after the batch is committed
+    }
+
     @Override
     public void onBondRemoved(CellEvent event) {
         // NOP
@@ -494,6 +580,14 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
+        Object obj = event.getSource();
+        if (obj == null || !(obj instanceof Atom)) {
+            return;
+        }
+
+        Atom atom = (Atom) obj;
+        this.grid.updateAtom(atom);
+
         if (!this.auto) {
             return;
         }
@@ -504,12 +598,6 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
-        Object obj = event.getSource();
-        if (obj == null || !(obj instanceof Atom)) {
-            return;
-        }
-
-        Atom atom = (Atom) obj;
         this.resolve(atom);
     }
 
@@ -519,6 +607,14 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
+        Object obj = event.getSource();
+        if (obj == null || !(obj instanceof Atom)) {
+            return;
+        }
+
+        Atom atom = (Atom) obj;
+        this.grid.updateAtom(atom);
+
         if (!this.auto) {
             return;
         }
@@ -531,12 +627,6 @@ public class BondsResolver implements AtomEventListener, CellEventListener {
             return;
         }
 
-        Object obj = event.getSource();
-        if (obj == null || !(obj instanceof Atom)) {
-            return;
-        }
-
-        Atom atom = (Atom) obj;
         this.resolve(atom);
     }
 }
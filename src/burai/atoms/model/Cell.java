@@ -17,7 +17,11 @@
 package burai.atoms.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import burai.atoms.model.event.CellEvent;
 import burai.atoms.model.event.CellEventListener;
@@ -40,6 +44,8 @@ public class Cell extends Model<CellEvent, CellEventListener> {
 
     private static final double THR_LATTICE = 1.0e-4;
 
+    private static final double GRID_SCALE = 0.50;
+
     private double[][] lattice;
 
     private double volume;
@@ -52,6 +58,14 @@ public class Cell extends Model<CellEvent, CellEventListener> {
 
     private List<Bond> bonds;
 
+    private IndexMap<Atom> atomIndexes;
+
+    private IndexMap<Bond> bondIndexes;
+
+    private Map<Atom, List<Bond>> atomBonds;
+
+    private AtomsGrid atomsGrid;
+
     private int maxAtomsToResolve;
 
     private boolean resolverStopping;
@@ -60,6 +74,10 @@ public class Cell extends Model<CellEvent, CellEventListener> {
 
     private BondsResolver bondsResolver;
 
+    private int batchDepth;
+
+    private CellBatch batch;
+
     public static Cell getEmptyCell() {
         try {
             return new Cell(Matrix3D.unit());
@@ -81,10 +99,18 @@ public class Cell extends Model<CellEvent, CellEventListener> {
         this.atoms = null;
         this.bonds = null;
 
+        this.atomIndexes = new IndexMap<Atom>();
+        this.bondIndexes = new IndexMap<Bond>();
+        this.atomBonds = new IdentityHashMap<Atom, List<Bond>>();
+        this.atomsGrid = new AtomsGrid(GRID_SCALE);
+
         this.maxAtomsToResolve = Math.max(0, maxAtomsToResolve);
 
         this.resolverStopping = false;
 
+        this.batchDepth = 0;
+        this.batch = null;
+
         this.atomsResolver = new AtomsResolver(this);
 
         this.bondsResolver = null;
@@ -559,7 +585,12 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             this.atomsResolver.packAtomIntoCell(atom);
         }
 
-        for (Atom atom2 : this.atoms) {
+        List<Atom> neighbors = this.atomsGrid.listNeighbors(atom);
+        if (neighbors == null || neighbors.isEmpty()) {
+            return false;
+        }
+
+        for (Atom atom2 : neighbors) {
             if (atom.equalsPosition(atom2)) {
                 return true;
             }
@@ -568,13 +599,25 @@ public class Cell extends Model<CellEvent, CellEventListener> {
         return false;
     }
 
+    /**
+     * to be called, when an atom in this cell is moved or renamed.
+     */
+    protected void updateAtomInGrid(Atom atom) {
+        this.atomsGrid.updateAtom(atom);
+
+        // bonds of the atom are resolved, after the batch is committed
+        if (this.batch != null) {
+            this.batch.moveAtom(atom);
+        }
+    }
+
     public int indexOfAtom(Atom atom) {
         if (atom == null) {
             return -1;
         }
 
         if (this.atoms != null) {
-            return this.atoms.indexOf(atom);
+            return this.atomIndexes.indexOf(atom, this.atoms);
         }
 
         return -1;
@@ -603,7 +646,7 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             }
         }
 
-        if (this.atoms.contains(atom)) {
+        if (this.atomIndexes.contains(atom)) {
             return false;
         }
 
@@ -612,6 +655,14 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return false;
         }
 
+        this.atomIndexes.addLast(atom, this.atoms);
+        this.atomsGrid.addAtom(atom);
+
+        if (this.batch != null) {
+            this.batch.addAtom(atom);
+            return true;
+        }
+
         if (this.bondsResolver != null && (!this.resolverStopping)) {
             boolean auto1 = this.bondsResolver.isAuto();
             boolean auto2 = this.isResolving();
@@ -632,6 +683,34 @@ public class Cell extends Model<CellEvent, CellEventListener> {
         return true;
     }
 
+    /**
+     * atoms of the buffer are created, and added in one batch.
+     * @return number of added atoms
+     */
+    public int addAtoms(AtomsBuffer buffer) {
+        if (buffer == null) {
+            return 0;
+        }
+
+        int numAdded = 0;
+
+        this.beginBatch();
+
+        try {
+            int natom = buffer.numAtoms();
+            for (int i = 0; i < natom; i++) {
+                if (this.addAtom(buffer.createAtom(i))) {
+                    numAdded++;
+                }
+            }
+
+        } finally {
+            this.commitBatch();
+        }
+
+        return numAdded;
+    }
+
     public boolean removeAtom(Atom atom) {
         if (atom == null) {
             return false;
@@ -641,17 +720,24 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return false;
         }
 
-        int index = this.atoms.indexOf(atom);
+        int index = this.atomIndexes.indexOf(atom, this.atoms);
         if (index < 0) {
             return false;
         }
 
         Atom atom2 = this.atoms.remove(index);
+        this.atomIndexes.remove(atom2, index);
+        this.atomsGrid.removeAtom(atom2);
         atom2.notDisplay();
         if (atom2.isSlaveAtom()) {
             atom2.setMasterAtom(null);
         }
 
+        if (this.batch != null) {
+            this.batch.removeAtom(atom2);
+            return true;
+        }
+
         if (this.listeners != null) {
             CellEvent event = new CellEvent(this);
             event.setAtom(atom2);
@@ -678,24 +764,25 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return;
         }
 
-        boolean orgAuto = false;
-        if (this.bondsResolver != null) {
-            orgAuto = this.bondsResolver.isAuto();
-            this.bondsResolver.setAuto(false);
-        }
+        this.beginBatch();
 
-        for (Atom atom : atomList) {
-            this.removeAtom(atom);
-        }
+        try {
+            // removed from the last, not to shift the list
+            for (int i = (atomList.length - 1); i >= 0; i--) {
+                this.removeAtom(atomList[i]);
+            }
 
-        if (this.bondsResolver != null) {
-            this.bondsResolver.setAuto(orgAuto);
-            this.bondsResolver.resolve();
+        } finally {
+            this.commitBatch();
         }
     }
 
     protected Bond pickBond(Atom atom1, Atom atom2) {
-        return this.pickBond(atom1, atom2, this.bonds);
+        if (this.bonds == null || this.bonds.isEmpty()) {
+            return null;
+        }
+
+        return this.pickBond(atom1, atom2, this.atomBonds.get(atom1));
     }
 
     protected Bond pickBond(Atom atom1, Atom atom2, List<Bond> bonds) {
@@ -722,17 +809,40 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return null;
         }
 
-        List<Bond> bonds = new ArrayList<Bond>();
+        List<Bond> bonds = this.atomBonds.get(atom1);
+        if (bonds == null) {
+            return new ArrayList<Bond>();
+        }
 
-        for (Bond bond : this.bonds) {
-            Atom refAtom1 = bond.getAtom1();
-            Atom refAtom2 = bond.getAtom2();
-            if (refAtom1 == atom1 || refAtom2 == atom1) {
-                bonds.add(bond);
+        return new ArrayList<Bond>(bonds);
+    }
+
+    private void putBondOfAtom(Atom atom, Bond bond) {
+        List<Bond> bonds = this.atomBonds.get(atom);
+        if (bonds == null) {
+            bonds = new ArrayList<Bond>();
+            this.atomBonds.put(atom, bonds);
+        }
+
+        bonds.add(bond);
+    }
+
+    private void takeBondOfAtom(Atom atom, Bond bond) {
+        List<Bond> bonds = this.atomBonds.get(atom);
+        if (bonds == null) {
+            return;
+        }
+
+        for (int i = 0; i < bonds.size(); i++) {
+            if (bonds.get(i) == bond) {
+                bonds.remove(i);
+                break;
             }
         }
 
-        return bonds;
+        if (bonds.isEmpty()) {
+            this.atomBonds.remove(atom);
+        }
     }
 
     protected boolean addBond(Bond bond) {
@@ -744,7 +854,12 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             this.bonds = new ArrayList<Bond>();
         }
 
-        if (this.bonds.contains(bond)) {
+        if (this.bondIndexes.contains(bond)) {
+            return false;
+        }
+
+        // Bond#equals is true for the same pair of atoms
+        if (this.pickBond(bond.getAtom1(), bond.getAtom2()) != null) {
             return false;
         }
 
@@ -753,6 +868,15 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return false;
         }
 
+        this.bondIndexes.addLast(bond, this.bonds);
+        this.putBondOfAtom(bond.getAtom1(), bond);
+        this.putBondOfAtom(bond.getAtom2(), bond);
+
+        if (this.batch != null) {
+            this.batch.addBond(bond);
+            return true;
+        }
+
         if (this.listeners != null) {
             CellEvent event = new CellEvent(this);
             event.setBond(bond);
@@ -773,15 +897,29 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             return false;
         }
 
-        int index = this.bonds.indexOf(bond);
+        Bond bond1 = bond;
+        if (!this.bondIndexes.contains(bond1)) {
+            // Bond#equals is true for the same pair of atoms
+            bond1 = this.pickBond(bond.getAtom1(), bond.getAtom2());
+        }
+
+        int index = this.bondIndexes.indexOf(bond1, this.bonds);
         if (index < 0) {
             return false;
         }
 
         Bond bond2 = this.bonds.remove(index);
+        this.bondIndexes.remove(bond2, index);
+        this.takeBondOfAtom(bond2.getAtom1(), bond2);
+        this.takeBondOfAtom(bond2.getAtom2(), bond2);
         bond2.notDisplay();
         bond2.detachFromAtoms();
 
+        if (this.batch != null) {
+            this.batch.removeBond(bond2);
+            return true;
+        }
+
         if (this.listeners != null) {
             CellEvent event = new CellEvent(this);
             event.setBond(bond2);
@@ -795,9 +933,19 @@ public class Cell extends Model<CellEvent, CellEventListener> {
 
     protected void removeAllBonds() {
         Bond[] bondList = this.listBonds();
+        if (bondList == null || bondList.length < 1) {
+            return;
+        }
+
+        this.beginBatch();
+
+        try {
+            for (int i = (bondList.length - 1); i >= 0; i--) {
+                this.removeBond(bondList[i]);
+            }
 
-        for (Bond bond : bondList) {
-            this.removeBond(bond);
+        } finally {
+            this.commitBatch();
         }
     }
 
@@ -851,4 +999,285 @@ public class Cell extends Model<CellEvent, CellEventListener> {
             }
         }
     }
+
+    public boolean isInBatch() {
+        return this.batch != null;
+    }
+
+    /**
+     * atoms and bonds, which are added or removed until commitBatch(),
+     * are notified to listeners at once by onBatchCommitted.
+     * bonds of atoms, which are added or moved until commitBatch(), are resolved at once.
+     * batches can be nested, and only the outermost commitBatch() fires the event.
+     */
+    public void beginBatch() {
+        if (this.batchDepth < 1) {
+            this.batch = new CellBatch();
+            if (this.bondsResolver != null) {
+                this.batch.autoBonds = this.bondsResolver.isAuto();
+                this.bondsResolver.setAuto(false);
+            }
+        }
+
+        this.batchDepth++;
+    }
+
+    public void commitBatch() {
+        if (this.batchDepth < 1) {
+            return;
+        }
+
+        if (this.batchDepth > 1) {
+            this.batchDepth--;
+            return;
+        }
+
+        CellBatch batch = this.batch;
+        boolean autoBonds = batch.autoBonds;
+        boolean anyAtoms = false;
+        List<Atom> changedAtoms = new ArrayList<Atom>();
+
+        try {
+            // atoms or bonds changed by listeners are accumulated to the next batch
+            while (batch != null) {
+                // moved atoms are not notified by onBatchCommitted, but their bonds are resolved
+                changedAtoms.addAll(batch.listMovedAtoms());
+                anyAtoms = anyAtoms || batch.hasMovedAtoms();
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                this.batch = new CellBatch();
+                anyAtoms = anyAtoms || batch.hasAtoms();
+                for (Atom atom : batch.listAddedAtoms()) {
+                    // atoms can be moved in the batch, before being listened by AtomsResolver
+                    this.atomsGrid.updateAtom(atom);
+                    changedAtoms.add(atom);
+                }
+                this.fireBatch(batch);
+                batch = this.batch;
+            }
+
+        } finally {
+            this.batch = null;
+            this.batchDepth = 0;
+        }
+
+        if (this.bondsResolver == null) {
+            return;
+        }
+
+        this.bondsResolver.setAuto(autoBonds);
+
+        if ((!anyAtoms) || this.resolverStopping) {
+            return;
+        }
+
+        // bonds of removed atoms are already removed by BondsResolver
+        boolean auto1 = autoBonds;
+        boolean auto2 = this.isResolving();
+        if (auto1 && (!auto2)) {
+            this.bondsResolver.setAuto(false);
+            this.removeAllBonds();
+
+        } else if ((!auto1) && auto2) {
+            this.bondsResolver.setAuto(true);
+            this.bondsResolver.resolve();
+
+        } else if (auto1) {
+            this.bondsResolver.resolve(listDistinct(changedAtoms));
+        }
+    }
+
+    private static List<Atom> listDistinct(List<Atom> atoms) {
+        List<Atom> atoms2 = new ArrayList<Atom>();
+        Set<Atom> atomSet = Collections.newSetFromMap(new IdentityHashMap<Atom, Boolean>());
+        for (Atom atom : atoms) {
+            if (atomSet.add(atom)) {
+                atoms2.add(atom);
+            }
+        }
+
+        return atoms2;
+    }
+
+    private void fireBatch(CellBatch batch) {
+        if (this.listeners == null) {
+            return;
+        }
+
+        CellEvent event = new CellEvent(this);
+        event.setAddedAtoms(batch.listAddedAtoms());
+        event.setRemovedAtoms(batch.listRemovedAtoms());
+        event.setAddedBonds(batch.listAddedBonds());
+        event.setRemovedBonds(batch.listRemovedBonds());
+        for (CellEventListener listener : this.listeners) {
+            listener.onBatchCommitted(event);
+        }
+    }
+
+    private static class CellBatch {
+
+        public boolean autoBonds;
+
+        private List<Atom> addedAtoms;
+        private Set<Atom> addedAtomSet;
+
+        private List<Atom> removedAtoms;
+
+        private List<Atom> movedAtoms;
+        private Set<Atom> movedAtomSet;
+
+        private List<Bond> addedBonds;
+        private Set<Bond> addedBondSet;
+
+        private List<Bond> removedBonds;
+
+        public CellBatch() {
+            this.autoBonds = false;
+            this.addedAtoms = new ArrayList<Atom>();
+            this.addedAtomSet = Collections.newSetFromMap(new IdentityHashMap<Atom, Boolean>());
+            this.removedAtoms = new ArrayList<Atom>();
+            this.movedAtoms = new ArrayList<Atom>();
+            this.movedAtomSet = Collections.newSetFromMap(new IdentityHashMap<Atom, Boolean>());
+            this.addedBonds = new ArrayList<Bond>();
+            this.addedBondSet = Collections.newSetFromMap(new IdentityHashMap<Bond, Boolean>());
+            this.removedBonds = new ArrayList<Bond>();
+        }
+
+        public boolean hasAtoms() {
+            return !(this.addedAtomSet.isEmpty() && this.removedAtoms.isEmpty());
+        }
+
+        public boolean hasMovedAtoms() {
+            return !this.movedAtomSet.isEmpty();
+        }
+
+        public boolean isEmpty() {
+            return !(this.hasAtoms() || (!this.addedBondSet.isEmpty()) || (!this.removedBonds.isEmpty()));
+        }
+
+        public void addAtom(Atom atom) {
+            if (this.addedAtomSet.add(atom)) {
+                this.addedAtoms.add(atom);
+            }
+        }
+
+        public void removeAtom(Atom atom) {
+            // an atom added in this batch, is not notified at all
+            if (!this.addedAtomSet.remove(atom)) {
+                this.removedAtoms.add(atom);
+            }
+        }
+
+        public void moveAtom(Atom atom) {
+            // an atom added in this batch, is resolved as an added atom
+            if ((!this.addedAtomSet.contains(atom)) && this.movedAtomSet.add(atom)) {
+                this.movedAtoms.add(atom);
+            }
+        }
+
+        public void addBond(Bond bond) {
+            if (this.addedBondSet.add(bond)) {
+                this.addedBonds.add(bond);
+            }
+        }
+
+        public void removeBond(Bond bond) {
+            if (!this.addedBondSet.remove(bond)) {
+                this.removedBonds.add(bond);
+            }
+        }
+
+        public List<Atom> listAddedAtoms() {
+            return listAdded(this.addedAtoms, this.addedAtomSet);
+        }
+
+        public List<Atom> listRemovedAtoms() {
+            return this.removedAtoms;
+        }
+
+        public List<Atom> listMovedAtoms() {
+            return this.movedAtoms;
+        }
+
+        public List<Bond> listAddedBonds() {
+            return listAdded(this.addedBonds, this.addedBondSet);
+        }
+
+        public List<Bond> listRemovedBonds() {
+            return this.removedBonds;
+        }
+
+        private static <T> List<T> listAdded(List<T> addedList, Set<T> addedSet) {
+            if (addedList.size() == addedSet.size()) {
+                return addedList;
+            }
+
+            List<T> list = new ArrayList<T>();
+            Set<T> set = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+            for (T obj : addedList) {
+                if (addedSet.contains(obj) && set.add(obj)) {
+                    list.add(obj);
+                }
+            }
+
+            return list;
+        }
+    }
+
+    /**
+     * identity map of objects to indexes in a list.
+     * only indexes less than numIndexed are valid, and others are recounted when needed,
+     * so that removing an object does not shift all indexes at once.
+     */
+    private static class IndexMap<T> {
+
+        private Map<T, Integer> indexes;
+
+        private int numIndexed;
+
+        public IndexMap() {
+            this.indexes = new IdentityHashMap<T, Integer>();
+            this.numIndexed = 0;
+        }
+
+        public boolean contains(T obj) {
+            return this.indexes.containsKey(obj);
+        }
+
+        public void addLast(T obj, List<T> list) {
+            int index = list.size() - 1;
+            this.indexes.put(obj, index);
+            if (this.numIndexed == index) {
+                this.numIndexed++;
+            }
+        }
+
+        public void remove(T obj, int index) {
+            this.indexes.remove(obj);
+            this.numIndexed = Math.min(this.numIndexed, index);
+        }
+
+        public int indexOf(T obj, List<T> list) {
+            Integer index = this.indexes.get(obj);
+            if (index == null) {
+                return -1;
+            }
+
+            if (index.intValue() < this.numIndexed) {
+                return index.intValue();
+            }
+
+            int size = list.size();
+            for (int i = this.numIndexed; i < size; i++) {
+                this.indexes.put(list.get(i), i);
+            }
+
+            this.numIndexed = size;
+
+            index = this.indexes.get(obj);
+            return index == null ? -1 : index.intValue();
+        }
+    }
 }
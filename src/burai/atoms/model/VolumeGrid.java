@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.model;
+
+/**
+ * volumetric data (e.g. charge density) on a regular grid, as a flat array of float.
+ * the value of (ix, iy, iz) is at (ix * nz * ny + iy * nz + iz), as the order of a cube file,
+ * and its position is ix * step[0] + iy * step[1] + iz * step[2], in Angstrom.
+ */
+public class VolumeGrid {
+
+    private int sizeX;
+    private int sizeY;
+    private int sizeZ;
+
+    private float[] values;
+
+    private double[][] steps;
+
+    private boolean hasRange;
+    private float minValue;
+    private float maxValue;
+
+    public VolumeGrid(int sizeX, int sizeY, int sizeZ, float[] values, double[][] steps) {
+        if (sizeX < 1 || sizeY < 1 || sizeZ < 1) {
+            throw new IllegalArgumentException("size of grid is not positive.");
+        }
+
+        if (values == null || ((long) values.length) < ((long) sizeX) * ((long) sizeY) * ((long) sizeZ)) {
+            throw new IllegalArgumentException("values are not enough.");
+        }
+
+        if (steps == null || steps.length < 3) {
+            throw new IllegalArgumentException("steps are incorrect.");
+        }
+
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.values = values;
+
+        this.steps = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            if (steps[i] == null || steps[i].length < 3) {
+                throw new IllegalArgumentException("steps[" + i + "] is incorrect.");
+            }
+
+            this.steps[i][0] = steps[i][0];
+            this.steps[i][1] = steps[i][1];
+            this.steps[i][2] = steps[i][2];
+        }
+
+        this.hasRange = false;
+        this.minValue = 0.0f;
+        this.maxValue = 0.0f;
+    }
+
+    public int sizeX() {
+        return this.sizeX;
+    }
+
+    public int sizeY() {
+        return this.sizeY;
+    }
+
+    public int sizeZ() {
+        return this.sizeZ;
+    }
+
+    public int numValues() {
+        return this.sizeX * this.sizeY * this.sizeZ;
+    }
+
+    public float getValue(int ix, int iy, int iz) {
+        return this.values[(ix * this.sizeY + iy) * this.sizeZ + iz];
+    }
+
+    /**
+     * the array is not copied, and must not be changed.
+     */
+    public float[] getValues() {
+        return this.values;
+    }
+
+    /**
+     * @return step vector of the axis (0, 1, 2), in Angstrom.
+     */
+    public double[] getStep(int axis) {
+        return new double[] { this.steps[axis][0], this.steps[axis][1], this.steps[axis][2] };
+    }
+
+    public synchronized float getMinValue() {
+        this.setupRange();
+        return this.minValue;
+    }
+
+    public synchronized float getMaxValue() {
+        this.setupRange();
+        return this.maxValue;
+    }
+
+    private void setupRange() {
+        if (this.hasRange) {
+            return;
+        }
+
+        int numValues = this.numValues();
+
+        float minValue = Float.POSITIVE_INFINITY;
+        float maxValue = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < numValues; i++) {
+            float value = this.values[i];
+            if (value < minValue) {
+                minValue = value;
+            }
+            if (value > maxValue) {
+                maxValue = value;
+            }
+        }
+
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.hasRange = true;
+    }
+}
@@ -16,6 +16,8 @@
 
 package burai.atoms.model.event;
 
+import java.util.List;
+
 import burai.atoms.model.Atom;
 import burai.atoms.model.Bond;
 
@@ -27,11 +29,23 @@ public class CellEvent extends ModelEvent {
 
     private Bond bond;
 
+    private List<Atom> addedAtoms;
+
+    private List<Atom> removedAtoms;
+
+    private List<Bond> addedBonds;
+
+    private List<Bond> removedBonds;
+
     public CellEvent(Object source) {
         super(source);
         this.lattice = null;
         this.atom = null;
         this.bond = null;
+        this.addedAtoms = null;
+        this.removedAtoms = null;
+        this.addedBonds = null;
+        this.removedBonds = null;
     }
 
     public void setLattice(double[][] lattice) {
@@ -57,4 +71,78 @@ public class CellEvent extends ModelEvent {
     public Bond getBond() {
         return this.bond;
     }
+
+    public void setAddedAtoms(List<Atom> addedAtoms) {
+        this.addedAtoms = addedAtoms;
+    }
+
+    public List<Atom> getAddedAtoms() {
+        return this.addedAtoms;
+    }
+
+    public void setRemovedAtoms(List<Atom> removedAtoms) {
+        this.removedAtoms = removedAtoms;
+    }
+
+    public List<Atom> getRemovedAtoms() {
+        return this.removedAtoms;
+    }
+
+    public void setAddedBonds(List<Bond> addedBonds) {
+        this.addedBonds = addedBonds;
+    }
+
+    public List<Bond> getAddedBonds() {
+        return this.addedBonds;
+    }
+
+    public void setRemovedBonds(List<Bond> removedBonds) {
+        this.removedBonds = removedBonds;
+    }
+
+    public List<Bond> getRemovedBonds() {
+        return this.removedBonds;
+    }
+
+    /**
+     * fires a batched event as single events, for a listener which treats atoms one by one.
+     * order of events is : removed bonds, removed atoms, added atoms, added bonds.
+     */
+    public void fireOneByOne(CellEventListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        if (this.removedBonds != null) {
+            for (Bond bond : this.removedBonds) {
+                CellEvent event = new CellEvent(this.getSource());
+                event.setBond(bond);
+                listener.onBondRemoved(event);
+            }
+        }
+
+        if (this.removedAtoms != null) {
+            for (Atom atom : this.removedAtoms) {
+                CellEvent event = new CellEvent(this.getSource());
+                event.setAtom(atom);
+                listener.onAtomRemoved(event);
+            }
+        }
+
+        if (this.addedAtoms != null) {
+            for (Atom atom : this.addedAtoms) {
+                CellEvent event = new CellEvent(this.getSource());
+                event.setAtom(atom);
+                listener.onAtomAdded(event);
+            }
+        }
+
+        if (this.addedBonds != null) {
+            for (Bond bond : this.addedBonds) {
+                CellEvent event = new CellEvent(this.getSource());
+                event.setBond(bond);
+                listener.onBondAdded(event);
+            }
+        }
+    }
 }
@@ -28,4 +28,9 @@ public interface CellEventListener extends ModelEventListener {
 
     public abstract void onBondRemoved(CellEvent event);
 
+    /**
+     * called once by Cell.commitBatch(), with atoms and bonds added or removed in the batch.
+     */
+    public abstract void onBatchCommitted(CellEvent event);
+
 }
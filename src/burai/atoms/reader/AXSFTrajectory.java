@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.reader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import burai.atoms.element.ElementUtil;
+import burai.atoms.model.AtomsBuffer;
+
+/**
+ * frames of an animated XSF file (AXSF).
+ * offsets of frames are indexed by one pass of scanning bytes, and each frame is decoded when it is read,
+ * so that memory does not depend on the size of file.
+ * coordinates and lattices are in Angstrom, and forces are in Hartree/Angstrom.
+ */
+public class AXSFTrajectory {
+
+    private static final int SIZE_SCAN_BUFFER = 1 << 20;
+
+    private static final int MAX_TAG = 16;
+
+    private static final double EDGE_OF_MOLECULE = 5.0;
+
+    private static final String TAG_PRIMVEC = "PRIMVEC";
+    private static final String TAG_PRIMCOORD = "PRIMCOORD";
+    private static final String TAG_ATOMS = "ATOMS";
+
+    private static final String[] OTHER_TAGS = {
+            "ANIMSTEPS", "CRYSTAL", "SLAB", "POLYMER", "MOLECULE", "CONVVEC", "CONVCOORD"
+    };
+
+    private File file;
+
+    private int numFrames;
+
+    // offset of the line of PRIMCOORD or ATOMS
+    private long[] frameOffsets;
+
+    // offset of the line of PRIMVEC, or -1 for a molecule
+    private long[] latticeOffsets;
+
+    // number of atom lines, for a frame of ATOMS
+    private int[] numAtomLines;
+
+    private boolean molecule;
+
+    private double[] moleculeShift;
+
+    private double[][] moleculeLattice;
+
+    public AXSFTrajectory(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        this.file = file;
+        this.numFrames = 0;
+        this.frameOffsets = new long[16];
+        this.latticeOffsets = new long[16];
+        this.numAtomLines = new int[16];
+        this.molecule = false;
+        this.moleculeShift = null;
+        this.moleculeLattice = null;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public int numFrames() {
+        return this.numFrames;
+    }
+
+    /**
+     * a molecule has frames of ATOMS, and a lattice is created around the first frame.
+     */
+    public boolean isMolecule() {
+        return this.molecule;
+    }
+
+    private void addFrame(long frameOffset, long latticeOffset) {
+        if (this.numFrames >= this.frameOffsets.length) {
+            int capacity = 2 * this.frameOffsets.length;
+            this.frameOffsets = Arrays.copyOf(this.frameOffsets, capacity);
+            this.latticeOffsets = Arrays.copyOf(this.latticeOffsets, capacity);
+            this.numAtomLines = Arrays.copyOf(this.numAtomLines, capacity);
+        }
+
+        this.frameOffsets[this.numFrames] = frameOffset;
+        this.latticeOffsets[this.numFrames] = latticeOffset;
+        this.numAtomLines[this.numFrames] = 0;
+        this.numFrames++;
+    }
+
+    /**
+     * scan the file once, and index offsets of frames.
+     * lines are not decoded, except for tags at the heads of lines.
+     */
+    public void index() throws IOException {
+        this.numFrames = 0;
+        this.molecule = false;
+        this.moleculeShift = null;
+        this.moleculeLattice = null;
+
+        byte[] buffer = new byte[SIZE_SCAN_BUFFER];
+        byte[] token = new byte[MAX_TAG];
+
+        long latticeOffset = -1L;
+        boolean atomsFrame = false;
+
+        long lineOffset = 0L;
+        long position = 0L;
+
+        // 0: head of line, 1: in a token, 2: rest of line
+        int state = 0;
+        int lenToken = 0;
+
+        try (InputStream stream = new FileInputStream(this.file)) {
+            int length = 0;
+            while ((length = stream.read(buffer)) >= 0) {
+                for (int i = 0; i < length; i++, position++) {
+                    byte c = buffer[i];
+
+                    if (state == 1) {
+                        boolean endOfToken = (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '#' || c == ',');
+                        if (!endOfToken) {
+                            if (lenToken < MAX_TAG) {
+                                token[lenToken] = c;
+                            }
+                            lenToken++;
+                            continue;
+                        }
+
+                        String tag = lenToken > MAX_TAG ? null : toTag(token, lenToken);
+
+                        if (TAG_PRIMVEC.equals(tag)) {
+                            latticeOffset = lineOffset;
+                            atomsFrame = false;
+
+                        } else if (TAG_PRIMCOORD.equals(tag)) {
+                            this.addFrame(lineOffset, latticeOffset);
+                            atomsFrame = false;
+
+                        } else if (TAG_ATOMS.equals(tag)) {
+                            this.addFrame(lineOffset, -1L);
+                            this.molecule = true;
+                            atomsFrame = true;
+
+                        } else if (isOtherTag(tag)) {
+                            atomsFrame = false;
+
+                        } else if (atomsFrame) {
+                            this.numAtomLines[this.numFrames - 1]++;
+                        }
+
+                        state = 2;
+                    }
+
+                    if (c == '\n') {
+                        state = 0;
+                        lineOffset = position + 1L;
+
+                    } else if (state == 0) {
+                        if (c == ' ' || c == '\t' || c == '\r') {
+                            // NOP
+                        } else if (c == '#') {
+                            state = 2;
+                        } else if (Character.isLetter(c)) {
+                            state = 1;
+                            token[0] = c;
+                            lenToken = 1;
+                        } else {
+                            if (atomsFrame) {
+                                this.numAtomLines[this.numFrames - 1]++;
+                            }
+                            state = 2;
+                        }
+                    }
+                }
+            }
+        }
+
+        // a token at the end of file
+        if (state == 1 && lenToken <= MAX_TAG) {
+            String tag = toTag(token, lenToken);
+            if (TAG_PRIMCOORD.equals(tag)) {
+                this.addFrame(lineOffset, latticeOffset);
+            } else if (TAG_ATOMS.equals(tag)) {
+                this.addFrame(lineOffset, -1L);
+                this.molecule = true;
+            } else if (atomsFrame && !isOtherTag(tag)) {
+                this.numAtomLines[this.numFrames - 1]++;
+            }
+        }
+
+        if (this.molecule) {
+            this.setupMolecule();
+        }
+    }
+
+    private static String toTag(byte[] token, int lenToken) {
+        return new String(token, 0, lenToken, StandardCharsets.ISO_8859_1).toUpperCase();
+    }
+
+    private static boolean isOtherTag(String tag) {
+        if (tag == null) {
+            return false;
+        }
+
+        for (String otherTag : OTHER_TAGS) {
+            if (otherTag.equals(tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * a lattice is created around the first frame, and all frames are shifted as the first frame.
+     */
+    private void setupMolecule() throws IOException {
+        if (this.numFrames < 1) {
+            return;
+        }
+
+        Frame frame = this.readFrames(0, 1)[0];
+        AtomsBuffer atoms = frame.atoms;
+        int natom = atoms.numAtoms();
+        if (natom < 1) {
+            throw new IOException("no atoms in a AXSF file.");
+        }
+
+        double xMax = atoms.getX(0);
+        double xMin = atoms.getX(0);
+        double yMax = atoms.getY(0);
+        double yMin = atoms.getY(0);
+        double zMax = atoms.getZ(0);
+        double zMin = atoms.getZ(0);
+
+        for (int i = 1; i < natom; i++) {
+            xMax = Math.max(xMax, atoms.getX(i));
+            xMin = Math.min(xMin, atoms.getX(i));
+            yMax = Math.max(yMax, atoms.getY(i));
+            yMin = Math.min(yMin, atoms.getY(i));
+            zMax = Math.max(zMax, atoms.getZ(i));
+            zMin = Math.min(zMin, atoms.getZ(i));
+        }
+
+        this.moleculeShift = new double[3];
+        this.moleculeShift[0] = EDGE_OF_MOLECULE - xMin;
+        this.moleculeShift[1] = EDGE_OF_MOLECULE - yMin;
+        this.moleculeShift[2] = EDGE_OF_MOLECULE - zMin;
+
+        this.moleculeLattice = new double[3][3];
+        this.moleculeLattice[0][0] = 2.0 * EDGE_OF_MOLECULE + (xMax - xMin);
+        this.moleculeLattice[1][1] = 2.0 * EDGE_OF_MOLECULE + (yMax - yMin);
+        this.moleculeLattice[2][2] = 2.0 * EDGE_OF_MOLECULE + (zMax - zMin);
+    }
+
+    public Frame readFrame(int index) throws IOException {
+        return this.readFrames(index, index + 1)[0];
+    }
+
+    /**
+     * @return frames [from, to), which are read with one opening of the file.
+     */
+    public Frame[] readFrames(int from, int to) throws IOException {
+        if (from < 0 || to > this.numFrames || from > to) {
+            throw new IndexOutOfBoundsException("incorrect range of frames: " + from + ", " + to + ".");
+        }
+
+        Frame[] frames = new Frame[to - from];
+        if (frames.length < 1) {
+            return frames;
+        }
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = accessFile.getChannel();
+
+            double[][] lattice = null;
+            if (this.latticeOffsets[from] >= 0L) {
+                BufferedReader reader = openReader(channel, this.latticeOffsets[from]);
+                readSubLines(reader, 1); // PRIMVEC
+                lattice = readLattice(reader);
+            }
+
+            // frames are contiguous, and read sequentially with one reader
+            BufferedReader reader = openReader(channel, this.frameOffsets[from]);
+
+            for (int i = from; i < to; i++) {
+                Frame frame = new Frame();
+                frame.lattice = lattice == null ? null : copyLattice(lattice);
+                this.readAtoms(reader, frame, this.numAtomLines[i]);
+                lattice = frame.lattice;
+
+                if (this.moleculeShift != null && this.moleculeLattice != null) {
+                    frame.atoms.moveAllBy(this.moleculeShift[0], this.moleculeShift[1], this.moleculeShift[2]);
+                    frame.lattice = copyLattice(this.moleculeLattice);
+                }
+
+                frames[i - from] = frame;
+            }
+        }
+
+        return frames;
+    }
+
+    private static BufferedReader openReader(FileChannel channel, long offset) throws IOException {
+        channel.position(offset);
+        return new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.ISO_8859_1));
+    }
+
+    private static double[][] copyLattice(double[][] lattice) {
+        double[][] lattice2 = new double[3][];
+        for (int i = 0; i < 3; i++) {
+            lattice2[i] = Arrays.copyOf(lattice[i], 3);
+        }
+
+        return lattice2;
+    }
+
+    private static double[][] readLattice(BufferedReader reader) throws IOException {
+        double[][] lattice = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            String[] subLines = readSubLines(reader, 3);
+
+            try {
+                lattice[i][0] = Double.parseDouble(subLines[0]);
+                lattice[i][1] = Double.parseDouble(subLines[1]);
+                lattice[i][2] = Double.parseDouble(subLines[2]);
+            } catch (NumberFormatException e) {
+                throw new IOException(e);
+            }
+        }
+
+        return lattice;
+    }
+
+    /**
+     * lines are read until PRIMCOORD or ATOMS, and the lattice of frame is replaced if PRIMVEC is found.
+     */
+    private void readAtoms(BufferedReader reader, Frame frame, int numAtomLines) throws IOException {
+        String[] subLines = readSubLines(reader, 1);
+        while (!(TAG_PRIMCOORD.equalsIgnoreCase(subLines[0]) || TAG_ATOMS.equalsIgnoreCase(subLines[0]))) {
+            if (TAG_PRIMVEC.equalsIgnoreCase(subLines[0])) {
+                frame.lattice = readLattice(reader);
+            }
+
+            subLines = readSubLines(reader, 1);
+        }
+
+        int natom = numAtomLines;
+        if (TAG_PRIMCOORD.equalsIgnoreCase(subLines[0])) {
+            subLines = readSubLines(reader, 1);
+
+            try {
+                natom = Integer.parseInt(subLines[0]);
+            } catch (NumberFormatException e) {
+                throw new IOException(e);
+            }
+        }
+
+        if (natom < 0) {
+            throw new IOException("incorrect number of atoms: " + natom + ".");
+        }
+
+        frame.atoms = new AtomsBuffer(natom);
+        frame.forces = null;
+
+        for (int i = 0; i < natom; i++) {
+            subLines = readSubLines(reader, 4);
+
+            int ielem = -1;
+            try {
+                ielem = Integer.parseInt(subLines[0]);
+            } catch (NumberFormatException e) {
+                ielem = -1;
+            }
+
+            String elem = ielem < 1 ? null : ElementUtil.toElementName(ielem);
+            if (elem == null) {
+                elem = subLines[0];
+            }
+
+            try {
+                double x = Double.parseDouble(subLines[1]);
+                double y = Double.parseDouble(subLines[2]);
+                double z = Double.parseDouble(subLines[3]);
+                frame.atoms.addAtom(elem, x, y, z);
+
+                if (subLines.length >= 7) {
+                    if (frame.forces == null) {
+                        frame.forces = new double[3 * natom];
+                    }
+
+                    frame.forces[3 * i + 0] = Double.parseDouble(subLines[4]);
+                    frame.forces[3 * i + 1] = Double.parseDouble(subLines[5]);
+                    frame.forces[3 * i + 2] = Double.parseDouble(subLines[6]);
+                }
+
+            } catch (NumberFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static String[] readSubLines(BufferedReader reader, int size) throws IOException {
+        String line = null;
+
+        while (true) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("not enough lines in reading a AXSF file.");
+            }
+
+            int index = line.indexOf('#');
+            if (index >= 0) {
+                line = line.substring(0, index);
+            }
+
+            line = line.trim();
+            if (!line.isEmpty()) {
+                break;
+            }
+        }
+
+        String[] subLines = line.split("[\\s,]+");
+        if (subLines == null || subLines.length < size) {
+            throw new IOException("not enough tokens in reading a AXSF file.");
+        }
+
+        return subLines;
+    }
+
+    public static class Frame {
+
+        // null for a frame without lattice
+        public double[][] lattice;
+
+        public AtomsBuffer atoms;
+
+        // fx, fy, fz of each atom, or null if not written
+        public double[] forces;
+
+        public Frame() {
+            this.lattice = null;
+            this.atoms = null;
+            this.forces = null;
+        }
+    }
+}
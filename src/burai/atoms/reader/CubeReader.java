@@ -19,21 +19,71 @@ package burai.atoms.reader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 
 import burai.atoms.element.ElementUtil;
 import burai.atoms.model.Atom;
 import burai.atoms.model.Cell;
+import burai.atoms.model.VolumeGrid;
 import burai.atoms.model.exception.ZeroVolumCellException;
 import burai.com.consts.Constants;
 
 public class CubeReader extends AtomsReader {
 
+    private static final int SIZE_READ_BUFFER = 1 << 20;
+
+    // a large file is memory-mapped by windows of this size
+    private static final long SIZE_MAP_THRESHOLD = 1L << 25;
+    private static final int SIZE_MAP_WINDOW = 1 << 28;
+
+    private static final double[] POWERS_OF_TEN = {
+            1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7, 1.0e8, 1.0e9, 1.0e10, 1.0e11,
+            1.0e12, 1.0e13, 1.0e14, 1.0e15, 1.0e16, 1.0e17, 1.0e18, 1.0e19, 1.0e20, 1.0e21, 1.0e22
+    };
+
+    private File file;
+
+    private boolean readingGrid;
+
+    private int gridStride;
+
+    private VolumeGrid grid;
+
     public CubeReader(String filePath) throws FileNotFoundException {
-        super(filePath);
+        this(filePath == null || filePath.isEmpty() ? null : new File(filePath));
     }
 
     public CubeReader(File file) throws FileNotFoundException {
         super(file);
+        this.file = file;
+        this.readingGrid = false;
+        this.gridStride = 1;
+        this.grid = null;
+    }
+
+    /**
+     * volumetric data are read by readCell, only if this is set true.
+     */
+    public void setReadingGrid(boolean readingGrid) {
+        this.readingGrid = readingGrid;
+    }
+
+    /**
+     * the grid is downsampled, by taking every stride-th point along each axis.
+     */
+    public void setGridStride(int gridStride) {
+        this.gridStride = Math.max(1, gridStride);
+    }
+
+    /**
+     * @return volumetric data read by readCell, or null if not read.
+     * positions of the grid are relative to the origin of the cube file, as well as positions of atoms.
+     */
+    public VolumeGrid getGrid() {
+        return this.grid;
     }
 
     private double toDouble(String value) throws NumberFormatException {
@@ -61,11 +111,15 @@ public class CubeReader extends AtomsReader {
 
         int numAtoms = 0;
         try {
-            numAtoms = Math.abs(Integer.parseInt(subLines[0]));
+            numAtoms = Integer.parseInt(subLines[0]);
         } catch (NumberFormatException e) {
             throw new IOException("cannot read #atoms from a CUBE file.");
         }
 
+        // negative #atoms means a line of data set IDs after atoms
+        boolean hasDataSets = numAtoms < 0;
+        numAtoms = Math.abs(numAtoms);
+
         double[] origin = new double[3];
         try {
             origin[0] = this.toDouble(subLines[1]);
@@ -78,10 +132,17 @@ public class CubeReader extends AtomsReader {
         /*
          * read lattice
          */
+        int[] numGrids = new int[3];
+        double[][] steps = new double[3][3];
+
         subLines = this.readSubLines(4);
         double[] aVector = new double[3];
         try {
             int numVector = Math.abs(Integer.parseInt(subLines[0]));
+            numGrids[0] = numVector;
+            steps[0][0] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[1]);
+            steps[0][1] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[2]);
+            steps[0][2] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[3]);
             aVector[0] = numVector * this.toDouble(subLines[1]) - origin[0];
             aVector[1] = numVector * this.toDouble(subLines[2]) - origin[1];
             aVector[2] = numVector * this.toDouble(subLines[3]) - origin[2];
@@ -93,6 +154,10 @@ public class CubeReader extends AtomsReader {
         double[] bVector = new double[3];
         try {
             int numVector = Math.abs(Integer.parseInt(subLines[0]));
+            numGrids[1] = numVector;
+            steps[1][0] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[1]);
+            steps[1][1] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[2]);
+            steps[1][2] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[3]);
             bVector[0] = numVector * this.toDouble(subLines[1]) - origin[0];
             bVector[1] = numVector * this.toDouble(subLines[2]) - origin[1];
             bVector[2] = numVector * this.toDouble(subLines[3]) - origin[2];
@@ -104,6 +169,10 @@ public class CubeReader extends AtomsReader {
         double[] cVector = new double[3];
         try {
             int numVector = Math.abs(Integer.parseInt(subLines[0]));
+            numGrids[2] = numVector;
+            steps[2][0] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[1]);
+            steps[2][1] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[2]);
+            steps[2][2] = Constants.BOHR_RADIUS_ANGS * this.toDouble(subLines[3]);
             cVector[0] = numVector * this.toDouble(subLines[1]) - origin[0];
             cVector[1] = numVector * this.toDouble(subLines[2]) - origin[1];
             cVector[2] = numVector * this.toDouble(subLines[3]) - origin[2];
@@ -160,9 +229,306 @@ public class CubeReader extends AtomsReader {
 
         cell.restartResolving();
 
+        /*
+         * read volumetric data
+         */
+        this.grid = null;
+        if (this.readingGrid) {
+            int numHeaderLines = 6 + numAtoms + (hasDataSets ? 1 : 0);
+            int numDataSets = 1;
+            if (hasDataSets) {
+                numDataSets = Math.max(1, this.readNumDataSets());
+            }
+
+            this.grid = this.readGrid(numHeaderLines, numGrids, numDataSets, steps);
+        }
+
         return cell;
     }
 
+    private int readNumDataSets() throws IOException {
+        String[] subLines = this.readSubLines(1);
+        try {
+            return Integer.parseInt(subLines[0]);
+        } catch (NumberFormatException e) {
+            throw new IOException("cannot read #data sets from a CUBE file.");
+        }
+    }
+
+    /**
+     * values are scanned directly from bytes of the file, and only the first data set is kept.
+     */
+    private VolumeGrid readGrid(int numHeaderLines, int[] numGrids, int numDataSets, double[][] steps)
+            throws IOException {
+
+        if (this.file == null) {
+            return null;
+        }
+
+        int stride = this.gridStride;
+        int nx = numGrids[0];
+        int ny = numGrids[1];
+        int nz = numGrids[2];
+        int mx = (nx + stride - 1) / stride;
+        int my = (ny + stride - 1) / stride;
+        int mz = (nz + stride - 1) / stride;
+
+        long numValues = ((long) mx) * ((long) my) * ((long) mz);
+        if (numValues < 1L) {
+            throw new IOException("no grid in a CUBE file.");
+        }
+        if (numValues > Integer.MAX_VALUE) {
+            throw new IOException("too large grid in a CUBE file, which should be downsampled.");
+        }
+
+        float[] values = new float[(int) numValues];
+        long numTotal = ((long) nx) * ((long) ny) * ((long) nz) * ((long) numDataSets);
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = accessFile.getChannel();
+            long fileSize = channel.size();
+            long position = skipLines(channel, numHeaderLines);
+
+            // indexes of the current value
+            long count = 0L;
+            int ix = 0;
+            int iy = 0;
+            int iz = 0;
+            int iset = 0;
+            int index = 0;
+
+            ByteBuffer readBuffer = null;
+
+            while (count < numTotal) {
+                long remaining = fileSize - position;
+                if (remaining <= 0L) {
+                    throw new IOException("not enough values in a CUBE file.");
+                }
+
+                ByteBuffer buffer = null;
+                if (remaining > SIZE_MAP_THRESHOLD) {
+                    // a mapped file cannot be deleted on Windows until GC, however this file is only read.
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(remaining, SIZE_MAP_WINDOW));
+                } else {
+                    if (readBuffer == null) {
+                        readBuffer = ByteBuffer.allocate(SIZE_READ_BUFFER);
+                    }
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(remaining, SIZE_READ_BUFFER));
+                    while (readBuffer.hasRemaining()) {
+                        if (channel.read(readBuffer, position + readBuffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                    readBuffer.flip();
+                    buffer = readBuffer;
+                }
+
+                int length = buffer.limit();
+                boolean lastWindow = (position + length) >= fileSize;
+
+                int i = 0;
+                while (count < numTotal) {
+                    while (i < length && isSeparator(buffer.get(i))) {
+                        i++;
+                    }
+                    if (i >= length) {
+                        break;
+                    }
+
+                    int start = i;
+                    while (i < length && !isSeparator(buffer.get(i))) {
+                        i++;
+                    }
+                    if (i >= length && !lastWindow) {
+                        // a token can continue into the next window
+                        i = start;
+                        break;
+                    }
+
+                    if (iset == 0 && (ix % stride) == 0 && (iy % stride) == 0 && (iz % stride) == 0) {
+                        values[index++] = (float) parseValue(buffer, start, i);
+                    }
+
+                    count++;
+                    if (++iset >= numDataSets) {
+                        iset = 0;
+                        if (++iz >= nz) {
+                            iz = 0;
+                            if (++iy >= ny) {
+                                iy = 0;
+                                ix++;
+                            }
+                        }
+                    }
+                }
+
+                if (i < 1 && !lastWindow) {
+                    throw new IOException("too long token in a CUBE file.");
+                }
+
+                position += i;
+            }
+        }
+
+        double[][] steps2 = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                steps2[i][j] = stride * steps[i][j];
+            }
+        }
+
+        return new VolumeGrid(mx, my, mz, values, steps2);
+    }
+
+    /**
+     * @return position of the head of line, after the lines.
+     */
+    private static long skipLines(FileChannel channel, int numLines) throws IOException {
+        if (numLines < 1) {
+            return 0L;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        int count = 0;
+        long position = 0L;
+        while (true) {
+            buffer.clear();
+            int length = channel.read(buffer, position);
+            if (length < 0) {
+                throw new IOException("not enough lines in reading a CUBE file.");
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    count++;
+                    if (count >= numLines) {
+                        return position + i + 1;
+                    }
+                }
+            }
+
+            position += length;
+        }
+    }
+
+    private static boolean isSeparator(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == ',';
+    }
+
+    /**
+     * parse a number such as -1.23456E-02, without creating a String.
+     * an unusual token (e.g. NaN) is parsed by Double.parseDouble.
+     */
+    private static double parseValue(ByteBuffer buffer, int start, int end) throws IOException {
+        int i = start;
+
+        boolean negative = false;
+        byte c = buffer.get(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+
+        long mantissa = 0L;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean hasDigit = false;
+
+        for (; i < end; i++) {
+            c = buffer.get(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            hasDigit = true;
+            if (numDigits < 18) {
+                mantissa = 10L * mantissa + (c - '0');
+                if (mantissa > 0L) {
+                    numDigits++;
+                }
+            } else {
+                exponent++;
+            }
+        }
+
+        if (i < end && buffer.get(i) == '.') {
+            for (i++; i < end; i++) {
+                c = buffer.get(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                hasDigit = true;
+                if (numDigits < 18) {
+                    mantissa = 10L * mantissa + (c - '0');
+                    if (mantissa > 0L) {
+                        numDigits++;
+                    }
+                    exponent--;
+                }
+            }
+        }
+
+        if (hasDigit && i < end) {
+            c = buffer.get(i);
+            if (c == 'e' || c == 'E' || c == 'd' || c == 'D') {
+                i++;
+                boolean negativeExp = false;
+                if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                    negativeExp = buffer.get(i) == '-';
+                    i++;
+                }
+
+                int exponent2 = 0;
+                boolean hasExp = false;
+                for (; i < end; i++) {
+                    c = buffer.get(i);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    hasExp = true;
+                    exponent2 = Math.min(10000, 10 * exponent2 + (c - '0'));
+                }
+
+                if (!hasExp) {
+                    hasDigit = false;
+                }
+
+                exponent += negativeExp ? -exponent2 : exponent2;
+            }
+        }
+
+        if (!hasDigit || i < end) {
+            return parseValueSlowly(buffer, start, end);
+        }
+
+        double value = (double) mantissa;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value *= POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else {
+            value *= Math.pow(10.0, exponent);
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static double parseValueSlowly(ByteBuffer buffer, int start, int end) throws IOException {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+
+        String value = new String(bytes, StandardCharsets.ISO_8859_1);
+
+        try {
+            return Double.parseDouble(value.replace('d', 'e').replace('D', 'E'));
+        } catch (NumberFormatException e) {
+            throw new IOException("cannot read a value from a CUBE file: " + value);
+        }
+    }
+
     private String readNetLine() throws IOException {
         String line = this.reader.readLine();
         if (line == null) {
@@ -24,6 +24,7 @@ import java.util.List;
 
 import burai.atoms.element.ElementUtil;
 import burai.atoms.model.Atom;
+import burai.atoms.model.AtomsBuffer;
 import burai.atoms.model.Cell;
 import burai.atoms.model.exception.ZeroVolumCellException;
 import burai.atoms.model.property.CellProperty;
@@ -32,15 +33,17 @@ public class XSFReader extends AtomsReader {
 
     private static final double EDGE_OF_MOLECULE = 5.0;
 
+    private File file;
+
     private boolean animation;
 
     public XSFReader(String filePath, boolean animation) throws FileNotFoundException {
-        super(filePath);
-        this.animation = animation;
+        this(filePath == null || filePath.isEmpty() ? null : new File(filePath), animation);
     }
 
     public XSFReader(File file, boolean animation) throws FileNotFoundException {
         super(file);
+        this.file = file;
         this.animation = animation;
     }
 
@@ -58,11 +61,50 @@ public class XSFReader extends AtomsReader {
         }
     }
 
+    /**
+     * the last frame is read, as the final structure of the trajectory.
+     * frames are indexed without decoding, so that a large file can be read.
+     */
     private Cell readAnimationCell() throws IOException {
+        AXSFTrajectory trajectory = new AXSFTrajectory(this.file);
+        trajectory.index();
+
+        int numFrames = trajectory.numFrames();
+        if (numFrames < 1) {
+            throw new IOException("no frames in a AXSF file.");
+        }
+
+        AXSFTrajectory.Frame frame = trajectory.readFrame(numFrames - 1);
+        AtomsBuffer atoms = frame.atoms;
+        if (atoms == null || atoms.numAtoms() < 1) {
+            throw new IOException("no atoms in a AXSF file.");
+        }
+
+        if (frame.lattice == null) {
+            throw new IOException("no lattice in a AXSF file.");
+        }
+
+        /*
+         * create an instance of Cell
+         */
+        Cell cell = null;
+        try {
+            cell = new Cell(frame.lattice);
+        } catch (ZeroVolumCellException e) {
+            throw new IOException(e);
+        }
+
+        if (trajectory.isMolecule()) {
+            cell.setProperty(CellProperty.MOLECULE, true);
+        }
+
+        cell.stopResolving();
 
-        // TODO
+        cell.addAtoms(atoms);
 
-        return null;
+        cell.restartResolving();
+
+        return cell;
     }
 
     private Cell readSingleCell() throws IOException {
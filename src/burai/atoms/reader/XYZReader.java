@@ -20,7 +20,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
-import burai.atoms.model.Atom;
+import burai.atoms.model.AtomsBuffer;
 import burai.atoms.model.Cell;
 import burai.atoms.model.exception.ZeroVolumCellException;
 import burai.atoms.model.property.CellProperty;
@@ -73,8 +73,7 @@ public class XYZReader extends AtomsReader {
         /*
          * read atoms
          */
-        String[] name = new String[numAtoms];
-        double[][] coord = new double[numAtoms][3];
+        AtomsBuffer buffer = new AtomsBuffer(numAtoms);
         for (int i = 0; i < numAtoms; i++) {
             line = this.readNetLine();
             String[] subLines = line.split("[\\s,]+");
@@ -82,11 +81,11 @@ public class XYZReader extends AtomsReader {
                 throw new IOException("cannot read atomic coordinate from a XYZ file: " + line);
             }
 
-            name[i] = subLines[0];
             try {
-                coord[i][0] = this.toDouble(subLines[1]);
-                coord[i][1] = this.toDouble(subLines[2]);
-                coord[i][2] = this.toDouble(subLines[3]);
+                double x = this.toDouble(subLines[1]);
+                double y = this.toDouble(subLines[2]);
+                double z = this.toDouble(subLines[3]);
+                buffer.addAtom(subLines[0], x, y, z);
             } catch (NumberFormatException e) {
                 throw new IOException("cannot read atomic coordinate from a XYZ file: " + line);
             }
@@ -97,8 +96,8 @@ public class XYZReader extends AtomsReader {
          */
         boolean isMolecule = false;
         if (lattice == null) {
-            this.moveAtomsToCenter(coord);
-            lattice = this.createLatticeVector(coord);
+            this.moveAtomsToCenter(buffer);
+            lattice = this.createLatticeVector(buffer);
             isMolecule = true;
         }
 
@@ -115,9 +114,7 @@ public class XYZReader extends AtomsReader {
 
         cell.stopResolving();
 
-        for (int i = 0; i < numAtoms; i++) {
-            cell.addAtom(new Atom(name[i], coord[i][0], coord[i][1], coord[i][2]));
-        }
+        cell.addAtoms(buffer);
 
         cell.restartResolving();
 
@@ -189,33 +186,29 @@ public class XYZReader extends AtomsReader {
         return lattice;
     }
 
-    private void moveAtomsToCenter(double[][] coord) {
-        if (coord == null || coord.length < 1) {
+    private void moveAtomsToCenter(AtomsBuffer buffer) {
+        int natom = buffer == null ? 0 : buffer.numAtoms();
+        if (natom < 1) {
             return;
         }
 
         double xMean = 0.0;
         double yMean = 0.0;
         double zMean = 0.0;
-
-        for (int i = 0; i < coord.length; i++) {
-            xMean += coord[i][0];
-            yMean += coord[i][1];
-            zMean += coord[i][2];
+        for (int i = 0; i < natom; i++) {
+            xMean += buffer.getX(i);
+            yMean += buffer.getY(i);
+            zMean += buffer.getZ(i);
         }
 
-        xMean /= (double) coord.length;
-        yMean /= (double) coord.length;
-        zMean /= (double) coord.length;
+        xMean /= (double) natom;
+        yMean /= (double) natom;
+        zMean /= (double) natom;
 
-        for (int i = 0; i < coord.length; i++) {
-            coord[i][0] -= xMean;
-            coord[i][1] -= yMean;
-            coord[i][2] -= zMean;
-        }
+        buffer.moveAllBy(-xMean, -yMean, -zMean);
     }
 
-    private double[][] createLatticeVector(double[][] coord) {
+    private double[][] createLatticeVector(AtomsBuffer buffer) {
         double[][] lattice = new double[3][3];
         lattice[0][0] = 2.0 * BUFFER_OF_CELL;
         lattice[0][1] = 0.0;
@@ -227,35 +220,32 @@ public class XYZReader extends AtomsReader {
         lattice[2][1] = 0.0;
         lattice[2][2] = 2.0 * BUFFER_OF_CELL;
 
-        if (coord == null || coord.length < 1) {
+        int natom = buffer == null ? 0 : buffer.numAtoms();
+        if (natom < 1) {
             return lattice;
         }
 
-        double xMax = coord[0][0];
-        double xMin = coord[0][0];
-        double yMax = coord[0][1];
-        double yMin = coord[0][1];
-        double zMax = coord[0][2];
-        double zMin = coord[0][2];
-
-        for (int i = 1; i < coord.length; i++) {
-            xMax = Math.max(xMax, coord[i][0]);
-            xMin = Math.min(xMin, coord[i][0]);
-            yMax = Math.max(yMax, coord[i][1]);
-            yMin = Math.min(yMin, coord[i][1]);
-            zMax = Math.max(zMax, coord[i][2]);
-            zMin = Math.min(zMin, coord[i][2]);
+        double xMax = buffer.getX(0);
+        double xMin = buffer.getX(0);
+        double yMax = buffer.getY(0);
+        double yMin = buffer.getY(0);
+        double zMax = buffer.getZ(0);
+        double zMin = buffer.getZ(0);
+
+        for (int i = 1; i < natom; i++) {
+            xMax = Math.max(xMax, buffer.getX(i));
+            xMin = Math.min(xMin, buffer.getX(i));
+            yMax = Math.max(yMax, buffer.getY(i));
+            yMin = Math.min(yMin, buffer.getY(i));
+            zMax = Math.max(zMax, buffer.getZ(i));
+            zMin = Math.min(zMin, buffer.getZ(i));
         }
 
         double xCenter = BUFFER_OF_CELL + 0.5 * (xMax - xMin);
         double yCenter = BUFFER_OF_CELL + 0.5 * (yMax - yMin);
         double zCenter = BUFFER_OF_CELL + 0.5 * (zMax - zMin);
 
-        for (int i = 0; i < coord.length; i++) {
-            coord[i][0] += xCenter;
-            coord[i][1] += yCenter;
-            coord[i][2] += zCenter;
-        }
+        buffer.moveAllBy(xCenter, yCenter, zCenter);
 
         lattice[0][0] += xMax - xMin;
         lattice[1][1] += yMax - yMin;
@@ -0,0 +1,685 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import burai.atoms.design.AtomDesign;
+import burai.atoms.design.AtomsStyle;
+import burai.atoms.design.Design;
+import burai.atoms.element.ElementUtil;
+import burai.atoms.model.BondsResolver;
+import burai.atoms.visible.VisibleAtom;
+import burai.atoms.visible.VisibleBond;
+import javafx.scene.paint.Color;
+
+/**
+ * software rasterizer of atoms, bonds and a cell, which does not need FX toolkit.
+ * shaded spheres and cylinders are drawn into an ARGB buffer with a depth buffer,
+ * in orthographic projection, with the same sizes and colors as burai.atoms.visible.
+ * an instance is not thread-safe, but instances can be used in parallel.
+ */
+public class AtomsRenderer {
+
+    private static final double RADIUS_SCALE = VisibleAtom.RADIUS_SCALE_NORM;
+    private static final double BOND_SCALE = VisibleAtom.BOND_SCALE;
+
+    private static final double BOND_SCALE1 = BondsResolver.BOND_SCALE1;
+    private static final double BOND_SCALE2 = BondsResolver.BOND_SCALE2;
+
+    private static final double SHOWING_RADIUS_SCALE = VisibleBond.SHOWING_RADIUS_SCALE;
+
+    private static final double FIT_MARGIN = 0.90;
+    private static final double MIN_EXTENT = 1.0; // angstrom
+
+    private static final double AMBIENT = 0.30;
+    private static final double DIFFUSE = 0.70;
+    private static final double SPECULAR = 0.35;
+    private static final double SHININESS = 24.0;
+
+    private static final double[] LIGHT_VECTOR = unitVector(-0.4, 0.5, 0.8);
+    private static final double[] HALF_VECTOR = unitVector(LIGHT_VECTOR[0], LIGHT_VECTOR[1], LIGHT_VECTOR[2] + 1.0);
+
+    private static final int SIZE_ATOMS = 64;
+
+    private static double[] unitVector(double x, double y, double z) {
+        double r = Math.sqrt(x * x + y * y + z * z);
+        return new double[] { x / r, y / r, z / r };
+    }
+
+    private int width;
+    private int height;
+
+    private int[] pixels;
+    private float[] depths;
+
+    private Design design;
+    private Map<String, AtomStyle> atomStyles;
+
+    private double[][] rotation;
+
+    private boolean fitted;
+    private double scale;
+    private double centerX;
+    private double centerY;
+
+    private double[][] lattice;
+
+    private int numAtoms;
+    private AtomStyle[] styles;
+    private double[] coords;
+    private double[] screen;
+
+    private Map<Long, Integer> bins;
+    private int[] nextInBin;
+
+    public AtomsRenderer(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("size is not positive.");
+        }
+
+        this.width = width;
+        this.height = height;
+
+        this.pixels = new int[width * height];
+        this.depths = new float[width * height];
+
+        this.design = null;
+        this.atomStyles = new HashMap<String, AtomStyle>();
+
+        this.rotation = new double[][] { { 1.0, 0.0, 0.0 }, { 0.0, 1.0, 0.0 }, { 0.0, 0.0, 1.0 } };
+
+        this.fitted = false;
+        this.scale = 1.0;
+        this.centerX = 0.0;
+        this.centerY = 0.0;
+
+        this.lattice = null;
+
+        this.numAtoms = 0;
+        this.styles = new AtomStyle[SIZE_ATOMS];
+        this.coords = new double[3 * SIZE_ATOMS];
+        this.screen = new double[3 * SIZE_ATOMS];
+
+        this.bins = new HashMap<Long, Integer>();
+        this.nextInBin = new int[SIZE_ATOMS];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return ARGB pixels of the last rendering, which are overwritten by the next rendering.
+     */
+    public int[] getPixels() {
+        return this.pixels;
+    }
+
+    public void setDesign(Design design) {
+        this.design = design;
+        this.atomStyles.clear();
+    }
+
+    /**
+     * @param rotation 3x3 matrix, which rotates atoms before they are projected along z-axis.
+     */
+    public void setRotation(double[][] rotation) {
+        if (rotation == null || rotation.length < 3) {
+            return;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (rotation[i] == null || rotation[i].length < 3) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                this.rotation[i][j] = rotation[i][j];
+            }
+        }
+
+        this.fitted = false;
+    }
+
+    /**
+     * the view is fitted to the first rendered atoms, and is kept for the next renderings,
+     * so that frames of a movie do not shake. this method releases the view.
+     */
+    public void resetView() {
+        this.fitted = false;
+    }
+
+    /**
+     * @param lattice lattice vectors [angstrom], or null if the cell is not drawn.
+     */
+    public void setLattice(double[][] lattice) {
+        if (lattice == null || lattice.length < 3) {
+            this.lattice = null;
+            return;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (lattice[i] == null || lattice[i].length < 3) {
+                this.lattice = null;
+                return;
+            }
+        }
+
+        this.lattice = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                this.lattice[i][j] = lattice[i][j];
+            }
+        }
+    }
+
+    public void clearAtoms() {
+        this.numAtoms = 0;
+    }
+
+    /**
+     * @param x, y, z position [angstrom]
+     */
+    public void addAtom(String name, double x, double y, double z) {
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+
+        if (this.numAtoms >= this.styles.length) {
+            int size = 2 * this.styles.length;
+            this.styles = Arrays.copyOf(this.styles, size);
+            this.coords = Arrays.copyOf(this.coords, 3 * size);
+            this.screen = Arrays.copyOf(this.screen, 3 * size);
+            this.nextInBin = Arrays.copyOf(this.nextInBin, size);
+        }
+
+        int i = this.numAtoms;
+        this.styles[i] = this.getAtomStyle(name.trim());
+        this.coords[3 * i + 0] = x;
+        this.coords[3 * i + 1] = y;
+        this.coords[3 * i + 2] = z;
+        this.numAtoms++;
+    }
+
+    private AtomStyle getAtomStyle(String name) {
+        AtomStyle atomStyle = this.atomStyles.get(name);
+        if (atomStyle != null) {
+            return atomStyle;
+        }
+
+        AtomDesign atomDesign = this.design == null ? null : this.design.getAtomDesign(name);
+
+        Color color = atomDesign == null ? null : atomDesign.getColor();
+        if (color == null) {
+            color = ElementUtil.getColor(name);
+        }
+
+        atomStyle = new AtomStyle();
+        atomStyle.red = color.getRed();
+        atomStyle.green = color.getGreen();
+        atomStyle.blue = color.getBlue();
+        atomStyle.atomNum = ElementUtil.getAtomicNumber(name);
+        atomStyle.covalent = ElementUtil.getCovalentRadius(name);
+
+        atomStyle.radius = atomDesign == null ? -1.0 : atomDesign.getRadius();
+        if (atomStyle.radius <= 0.0) {
+            atomStyle.radius = atomStyle.covalent;
+        }
+
+        AtomsStyle style = atomDesign == null ? null : atomDesign.getAtomsStyle();
+        double bondWidth = atomDesign == null ? 1.0 : atomDesign.getBondWidth();
+        atomStyle.ball = style == AtomsStyle.BALL;
+        atomStyle.bondRadius = BOND_SCALE * bondWidth;
+
+        if (style == AtomsStyle.STICK) {
+            atomStyle.sphereRadius = atomStyle.bondRadius;
+        } else {
+            atomStyle.sphereRadius = RADIUS_SCALE * atomStyle.radius;
+        }
+
+        this.atomStyles.put(name, atomStyle);
+        return atomStyle;
+    }
+
+    private boolean isShowingCell() {
+        return this.lattice != null && (this.design == null || this.design.isShowingCell());
+    }
+
+    private void rotate(double x, double y, double z, double[] result, int offset) {
+        double[][] rot = this.rotation;
+        result[offset + 0] = rot[0][0] * x + rot[0][1] * y + rot[0][2] * z;
+        result[offset + 1] = rot[1][0] * x + rot[1][1] * y + rot[1][2] * z;
+        result[offset + 2] = rot[2][0] * x + rot[2][1] * y + rot[2][2] * z;
+    }
+
+    private void project(double x, double y, double z, double[] result, int offset) {
+        this.rotate(x, y, z, result, offset);
+        result[offset + 0] = 0.5 * this.width + this.scale * (result[offset + 0] - this.centerX);
+        result[offset + 1] = 0.5 * this.height - this.scale * (result[offset + 1] - this.centerY);
+        result[offset + 2] = this.scale * result[offset + 2];
+    }
+
+    private double[][] listCellCorners() {
+        double[][] corners = new double[8][3];
+        for (int i = 0; i < 8; i++) {
+            for (int k = 0; k < 3; k++) {
+                if ((i & 1) != 0) {
+                    corners[i][k] += this.lattice[0][k];
+                }
+                if ((i & 2) != 0) {
+                    corners[i][k] += this.lattice[1][k];
+                }
+                if ((i & 4) != 0) {
+                    corners[i][k] += this.lattice[2][k];
+                }
+            }
+        }
+
+        return corners;
+    }
+
+    private void fitView() {
+        double xmin = Double.POSITIVE_INFINITY;
+        double xmax = Double.NEGATIVE_INFINITY;
+        double ymin = Double.POSITIVE_INFINITY;
+        double ymax = Double.NEGATIVE_INFINITY;
+
+        double[] point = new double[3];
+
+        for (int i = 0; i < this.numAtoms; i++) {
+            double r = this.styles[i].sphereRadius;
+            this.rotate(this.coords[3 * i + 0], this.coords[3 * i + 1], this.coords[3 * i + 2], point, 0);
+            xmin = Math.min(xmin, point[0] - r);
+            xmax = Math.max(xmax, point[0] + r);
+            ymin = Math.min(ymin, point[1] - r);
+            ymax = Math.max(ymax, point[1] + r);
+        }
+
+        if (this.isShowingCell()) {
+            for (double[] corner : this.listCellCorners()) {
+                this.rotate(corner[0], corner[1], corner[2], point, 0);
+                xmin = Math.min(xmin, point[0]);
+                xmax = Math.max(xmax, point[0]);
+                ymin = Math.min(ymin, point[1]);
+                ymax = Math.max(ymax, point[1]);
+            }
+        }
+
+        if (xmin > xmax || ymin > ymax) {
+            return;
+        }
+
+        double xlen = Math.max(xmax - xmin, MIN_EXTENT);
+        double ylen = Math.max(ymax - ymin, MIN_EXTENT);
+        this.centerX = 0.5 * (xmin + xmax);
+        this.centerY = 0.5 * (ymin + ymax);
+        this.scale = FIT_MARGIN * Math.min(this.width / xlen, this.height / ylen);
+        this.fitted = true;
+    }
+
+    /**
+     * render the current atoms and cell.
+     * @return ARGB pixels, which are same as getPixels().
+     */
+    public int[] render() {
+        if (!this.fitted) {
+            this.fitView();
+        }
+
+        Color backColor = this.design == null ? null : this.design.getBackColor();
+        if (backColor == null) {
+            backColor = Color.DIMGRAY;
+        }
+
+        Arrays.fill(this.pixels, toARGB(backColor.getRed(), backColor.getGreen(), backColor.getBlue()));
+        Arrays.fill(this.depths, Float.NEGATIVE_INFINITY);
+
+        for (int i = 0; i < this.numAtoms; i++) {
+            this.project(this.coords[3 * i + 0], this.coords[3 * i + 1], this.coords[3 * i + 2], this.screen, 3 * i);
+        }
+
+        if (this.isShowingCell()) {
+            this.renderCell();
+        }
+
+        this.renderBonds();
+
+        for (int i = 0; i < this.numAtoms; i++) {
+            AtomStyle style = this.styles[i];
+            this.drawSphere(this.screen[3 * i + 0], this.screen[3 * i + 1], this.screen[3 * i + 2],
+                    this.scale * style.sphereRadius, style.red, style.green, style.blue);
+        }
+
+        return this.pixels;
+    }
+
+    private void renderCell() {
+        Color cellColor = this.design == null ? null : this.design.getCellColor();
+        if (cellColor == null) {
+            cellColor = Color.BLACK;
+        }
+
+        double cellWidth = this.design == null ? 1.0 : this.design.getCellWidth();
+        int argb = toARGB(cellColor.getRed(), cellColor.getGreen(), cellColor.getBlue());
+
+        double[][] corners = this.listCellCorners();
+        double[] points = new double[3 * corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            this.project(corners[i][0], corners[i][1], corners[i][2], points, 3 * i);
+        }
+
+        // edges connect corners whose indexes differ by one bit
+        for (int i = 0; i < corners.length; i++) {
+            for (int bit = 1; bit < corners.length; bit <<= 1) {
+                int j = i | bit;
+                if (j == i) {
+                    continue;
+                }
+
+                this.drawLine(points[3 * i + 0], points[3 * i + 1], points[3 * i + 2],
+                        points[3 * j + 0], points[3 * j + 1], points[3 * j + 2], cellWidth, argb);
+            }
+        }
+    }
+
+    private static long toBinKey(int ix, int iy, int iz) {
+        long mask = (1L << 21) - 1L;
+        return ((((long) ix) & mask) << 42) | ((((long) iy) & mask) << 21) | (((long) iz) & mask);
+    }
+
+    /**
+     * bonds are searched with bins of atoms, as AtomsGrid.
+     */
+    private void renderBonds() {
+        double maxCovalent = 0.0;
+        for (int i = 0; i < this.numAtoms; i++) {
+            maxCovalent = Math.max(maxCovalent, this.styles[i].covalent);
+        }
+
+        if (maxCovalent <= 0.0) {
+            return;
+        }
+
+        double binWidth = 2.0 * BOND_SCALE2 * maxCovalent;
+
+        this.bins.clear();
+        for (int i = 0; i < this.numAtoms; i++) {
+            int ix = (int) Math.floor(this.coords[3 * i + 0] / binWidth);
+            int iy = (int) Math.floor(this.coords[3 * i + 1] / binWidth);
+            int iz = (int) Math.floor(this.coords[3 * i + 2] / binWidth);
+            Integer head = this.bins.put(toBinKey(ix, iy, iz), i);
+            this.nextInBin[i] = head == null ? -1 : head.intValue();
+        }
+
+        for (int i = 0; i < this.numAtoms; i++) {
+            int ix = (int) Math.floor(this.coords[3 * i + 0] / binWidth);
+            int iy = (int) Math.floor(this.coords[3 * i + 1] / binWidth);
+            int iz = (int) Math.floor(this.coords[3 * i + 2] / binWidth);
+
+            for (int jx = ix - 1; jx <= ix + 1; jx++) {
+                for (int jy = iy - 1; jy <= iy + 1; jy++) {
+                    for (int jz = iz - 1; jz <= iz + 1; jz++) {
+                        Integer head = this.bins.get(toBinKey(jx, jy, jz));
+                        int j = head == null ? -1 : head.intValue();
+                        while (j > -1) {
+                            if (j > i) {
+                                this.renderBond(i, j);
+                            }
+                            j = this.nextInBin[j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void renderBond(int i, int j) {
+        AtomStyle style1 = this.styles[i];
+        AtomStyle style2 = this.styles[j];
+        if (style1.ball && style2.ball) {
+            return;
+        }
+
+        double dx = this.coords[3 * j + 0] - this.coords[3 * i + 0];
+        double dy = this.coords[3 * j + 1] - this.coords[3 * i + 1];
+        double dz = this.coords[3 * j + 2] - this.coords[3 * i + 2];
+        double rr = dx * dx + dy * dy + dz * dz;
+
+        double rcov = style1.covalent + style2.covalent;
+        double rrmin = BOND_SCALE1 * BOND_SCALE1 * rcov * rcov;
+        double rrmax = BOND_SCALE2 * BOND_SCALE2 * rcov * rcov;
+        if (rr < rrmin || rrmax < rr) {
+            return;
+        }
+
+        double rshow = SHOWING_RADIUS_SCALE * (style1.radius + style2.radius);
+        if (rr > rshow * rshow) {
+            return;
+        }
+
+        double rad1 = Math.sqrt(style1.radius);
+        double rad2 = Math.sqrt(style2.radius);
+        double rate1 = rad1 / (rad1 + rad2);
+        if (style1.atomNum == style2.atomNum) {
+            rate1 = 1.0;
+        }
+
+        double x1 = this.screen[3 * i + 0];
+        double y1 = this.screen[3 * i + 1];
+        double z1 = this.screen[3 * i + 2];
+        double x2 = this.screen[3 * j + 0];
+        double y2 = this.screen[3 * j + 1];
+        double z2 = this.screen[3 * j + 2];
+        double xm = x1 + rate1 * (x2 - x1);
+        double ym = y1 + rate1 * (y2 - y1);
+        double zm = z1 + rate1 * (z2 - z1);
+
+        if (!style1.ball) {
+            this.drawCylinder(x1, y1, z1, xm, ym, zm,
+                    this.scale * style1.bondRadius, style1.red, style1.green, style1.blue);
+        }
+
+        if (!style2.ball && rate1 < 1.0) {
+            this.drawCylinder(xm, ym, zm, x2, y2, z2,
+                    this.scale * style2.bondRadius, style2.red, style2.green, style2.blue);
+        }
+    }
+
+    private static int toARGB(double red, double green, double blue) {
+        int r = (int) (255.0 * Math.min(Math.max(0.0, red), 1.0) + 0.5);
+        int g = (int) (255.0 * Math.min(Math.max(0.0, green), 1.0) + 0.5);
+        int b = (int) (255.0 * Math.min(Math.max(0.0, blue), 1.0) + 0.5);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Phong shading with one directional light, the normal (nx, ny, nz) is of right-handed view coordinates.
+     */
+    private static int shade(double nx, double ny, double nz, double red, double green, double blue) {
+        double diffuse = nx * LIGHT_VECTOR[0] + ny * LIGHT_VECTOR[1] + nz * LIGHT_VECTOR[2];
+        double specular = nx * HALF_VECTOR[0] + ny * HALF_VECTOR[1] + nz * HALF_VECTOR[2];
+
+        double factor = AMBIENT + DIFFUSE * Math.max(0.0, diffuse);
+        double offset = specular > 0.0 ? SPECULAR * Math.pow(specular, SHININESS) : 0.0;
+
+        return toARGB(factor * red + offset, factor * green + offset, factor * blue + offset);
+    }
+
+    private void drawSphere(double cx, double cy, double cz, double r, double red, double green, double blue) {
+        if (r <= 0.0) {
+            return;
+        }
+
+        int xmin = Math.max(0, (int) Math.floor(cx - r));
+        int xmax = Math.min(this.width - 1, (int) Math.ceil(cx + r));
+        int ymin = Math.max(0, (int) Math.floor(cy - r));
+        int ymax = Math.min(this.height - 1, (int) Math.ceil(cy + r));
+
+        double rinv = 1.0 / r;
+
+        for (int y = ymin; y <= ymax; y++) {
+            double ny = (cy - (y + 0.5)) * rinv;
+            int offset = y * this.width;
+
+            for (int x = xmin; x <= xmax; x++) {
+                double nx = ((x + 0.5) - cx) * rinv;
+                double nn = nx * nx + ny * ny;
+                if (nn > 1.0) {
+                    continue;
+                }
+
+                double nz = Math.sqrt(1.0 - nn);
+                float z = (float) (cz + r * nz);
+                if (z <= this.depths[offset + x]) {
+                    continue;
+                }
+
+                this.depths[offset + x] = z;
+                this.pixels[offset + x] = shade(nx, ny, nz, red, green, blue);
+            }
+        }
+    }
+
+    /**
+     * the cylinder is approximated as seen from the side, which is enough for thin bonds.
+     */
+    private void drawCylinder(double x1, double y1, double z1, double x2, double y2, double z2,
+            double r, double red, double green, double blue) {
+
+        if (r <= 0.0) {
+            return;
+        }
+
+        double ex = x2 - x1;
+        double ey = y2 - y1;
+        double ee = ex * ex + ey * ey;
+        if (ee < 1.0e-6) {
+            return;
+        }
+
+        double elen = Math.sqrt(ee);
+        double px = -ey / elen;
+        double py = ex / elen;
+
+        int xmin = Math.max(0, (int) Math.floor(Math.min(x1, x2) - r));
+        int xmax = Math.min(this.width - 1, (int) Math.ceil(Math.max(x1, x2) + r));
+        int ymin = Math.max(0, (int) Math.floor(Math.min(y1, y2) - r));
+        int ymax = Math.min(this.height - 1, (int) Math.ceil(Math.max(y1, y2) + r));
+
+        double rinv = 1.0 / r;
+
+        for (int y = ymin; y <= ymax; y++) {
+            double vy = (y + 0.5) - y1;
+            int offset = y * this.width;
+
+            for (int x = xmin; x <= xmax; x++) {
+                double vx = (x + 0.5) - x1;
+
+                double t = (vx * ex + vy * ey) / ee;
+                if (t < 0.0 || 1.0 < t) {
+                    continue;
+                }
+
+                double u = (vx * px + vy * py) * rinv;
+                if (u < -1.0 || 1.0 < u) {
+                    continue;
+                }
+
+                double nz = Math.sqrt(1.0 - u * u);
+                float z = (float) (z1 + t * (z2 - z1) + r * nz);
+                if (z <= this.depths[offset + x]) {
+                    continue;
+                }
+
+                // y of screen is downward
+                this.depths[offset + x] = z;
+                this.pixels[offset + x] = shade(u * px, -u * py, nz, red, green, blue);
+            }
+        }
+    }
+
+    private void drawLine(double x1, double y1, double z1, double x2, double y2, double z2, double lineWidth, int argb) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        int numSteps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+        numSteps = Math.max(1, numSteps);
+
+        int half = Math.max(0, (int) Math.rint(0.5 * (lineWidth - 1.0)));
+
+        for (int i = 0; i <= numSteps; i++) {
+            double t = ((double) i) / ((double) numSteps);
+            int x0 = (int) Math.floor(x1 + t * dx);
+            int y0 = (int) Math.floor(y1 + t * dy);
+            float z = (float) (z1 + t * (z2 - z1));
+
+            for (int y = y0 - half; y <= y0 + half; y++) {
+                if (y < 0 || this.height <= y) {
+                    continue;
+                }
+
+                int offset = y * this.width;
+                for (int x = x0 - half; x <= x0 + half; x++) {
+                    if (x < 0 || this.width <= x) {
+                        continue;
+                    }
+
+                    if (z <= this.depths[offset + x]) {
+                        continue;
+                    }
+
+                    this.depths[offset + x] = z;
+                    this.pixels[offset + x] = argb;
+                }
+            }
+        }
+    }
+
+    private static class AtomStyle {
+
+        public double red;
+        public double green;
+        public double blue;
+
+        public int atomNum;
+        public double covalent;
+        public double radius;
+        public double sphereRadius;
+        public double bondRadius;
+        public boolean ball;
+
+        public AtomStyle() {
+            this.red = 0.0;
+            this.green = 0.0;
+            this.blue = 0.0;
+            this.atomNum = 0;
+            this.covalent = 0.0;
+            this.radius = 0.0;
+            this.sphereRadius = 0.0;
+            this.bondRadius = 0.0;
+            this.ball = false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import burai.atoms.model.property.CellProperty;
 import burai.atoms.viewer.logger.AtomsLogger;
 import burai.atoms.viewer.logger.AtomsLoggerPFactory;
 import burai.atoms.viewer.operation.ViewerEventManager;
+import burai.atoms.visible.Isosurface;
 import burai.atoms.visible.VisibleAtom;
 import burai.atoms.visible.VisibleCell;
 import javafx.event.EventHandler;
@@ -426,17 +427,26 @@ public class AtomsViewer extends AtomsViewerBase<Group> {
         }
 
         if (visibleCell != null) {
-            List<Node> children = visibleCell.getChildren();
-            for (Node child : children) {
-                if (child instanceof VisibleAtom) {
-                    visibleAtoms.add((VisibleAtom) child);
-                }
-            }
+            visibleAtoms.addAll(visibleCell.listVisibleAtoms());
         }
 
         return visibleAtoms;
     }
 
+    /**
+     * @param isosurface null to remove the isosurface.
+     */
+    public void setIsosurface(Isosurface isosurface) {
+        if (this.viewerCell == null) {
+            return;
+        }
+
+        VisibleCell visibleCell = this.viewerCell.getNode();
+        if (visibleCell != null) {
+            visibleCell.setIsosurface(isosurface);
+        }
+    }
+
     public boolean isInCell(double sceneX, double sceneY, double sceneZ) {
         if (this.viewerCell == null) {
             return false;
@@ -458,6 +468,19 @@ public class AtomsViewer extends AtomsViewerBase<Group> {
         return visibleCell.sceneToLocal(sceneX, sceneY, sceneZ);
     }
 
+    public Point3D cellToScene(double x, double y, double z) {
+        if (this.viewerCell == null) {
+            return null;
+        }
+
+        VisibleCell visibleCell = this.viewerCell.getNode();
+        if (visibleCell == null) {
+            return null;
+        }
+
+        return visibleCell.localToScene(x, y, z);
+    }
+
     public double getSceneZOnCompass(double sceneX, double sceneY) {
         if (!this.compassMode) {
             return 0.0;
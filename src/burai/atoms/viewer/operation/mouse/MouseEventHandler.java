@@ -22,6 +22,7 @@ import javafx.scene.Node;
 import javafx.scene.input.MouseEvent;
 import burai.atoms.viewer.operation.ViewerEventHandler;
 import burai.atoms.viewer.operation.ViewerEventManager;
+import burai.atoms.visible.AtomicMesh;
 import burai.atoms.visible.AtomicSphere;
 import burai.atoms.visible.VisibleAtom;
 
@@ -123,6 +124,10 @@ public class MouseEventHandler extends ViewerEventHandler<MouseEvent> {
             AtomicSphere atomSphere = (AtomicSphere) node;
             VisibleAtom visibleAtom = atomSphere.getVisibleAtom();
             pickedAtom = visibleAtom;
+
+        } else if (node != null && node instanceof AtomicMesh) {
+            AtomicMesh atomMesh = (AtomicMesh) node;
+            pickedAtom = atomMesh.getVisibleAtom(event.getPickResult().getIntersectedFace());
         }
 
         return pickedAtom;
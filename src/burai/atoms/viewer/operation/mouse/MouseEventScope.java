@@ -18,6 +18,7 @@ package burai.atoms.viewer.operation.mouse;
 
 import java.util.List;
 
+import burai.atoms.viewer.AtomsViewer;
 import burai.atoms.viewer.operation.ViewerEventManager;
 import burai.atoms.viewer.operation.ViewerEventScope;
 import burai.atoms.visible.VisibleAtom;
@@ -112,12 +113,18 @@ public class MouseEventScope extends ViewerEventScope<MouseEvent> implements Mou
         double X2 = Math.max(x1, x2);
         double Y2 = Math.max(y1, y2);
 
-        List<VisibleAtom> visibleAtoms = manager.getAtomsViewer().getVisibleAtoms();
+        // VisibleAtom can be out of the scene in the bulk mode, so the cell is used to get the position
+        AtomsViewer atomsViewer = manager.getAtomsViewer();
+        List<VisibleAtom> visibleAtoms = atomsViewer.getVisibleAtoms();
         for (VisibleAtom visibleAtom : visibleAtoms) {
             double atomX = visibleAtom.getX();
             double atomY = visibleAtom.getY();
             double atomZ = visibleAtom.getZ();
-            Point3D point3d = visibleAtom.localToScene(atomX, atomY, atomZ);
+            Point3D point3d = atomsViewer.cellToScene(atomX, atomY, atomZ);
+            if (point3d == null) {
+                continue;
+            }
+
             double X3 = point3d.getX();
             double Y3 = point3d.getY();
             if (X1 <= X3 && X3 <= X2 && Y1 <= Y3 && Y3 <= Y2) {
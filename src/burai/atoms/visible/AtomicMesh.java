@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.visible;
+
+import burai.atoms.model.Atom;
+import javafx.scene.shape.MeshView;
+
+/**
+ * merged mesh of spheres, in the bulk mode of VisibleCell.
+ * a picked atom is found from the index of the intersected face.
+ */
+public class AtomicMesh extends MeshView {
+
+    private BulkAtoms bulkAtoms;
+
+    private Atom[] atoms;
+
+    private int facesPerAtom;
+
+    protected AtomicMesh(BulkAtoms bulkAtoms) {
+        super();
+
+        if (bulkAtoms == null) {
+            throw new IllegalArgumentException("bulkAtoms is null.");
+        }
+
+        this.bulkAtoms = bulkAtoms;
+        this.atoms = null;
+        this.facesPerAtom = 1;
+    }
+
+    protected void setAtoms(Atom[] atoms, int facesPerAtom) {
+        this.atoms = atoms;
+        this.facesPerAtom = Math.max(1, facesPerAtom);
+    }
+
+    protected Atom[] getAtoms() {
+        return this.atoms;
+    }
+
+    public VisibleAtom getVisibleAtom(int faceIndex) {
+        if (this.atoms == null || faceIndex < 0) {
+            return null;
+        }
+
+        int index = faceIndex / this.facesPerAtom;
+        if (index >= this.atoms.length) {
+            return null;
+        }
+
+        return this.bulkAtoms.getVisibleAtom(this.atoms[index]);
+    }
+}
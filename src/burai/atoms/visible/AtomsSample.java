@@ -335,6 +335,11 @@ public class AtomsSample extends Group implements AtomEventListener, CellEventLi
         // NOP
     }
 
+    @Override
+    public void onBatchCommitted(CellEvent event) {
+        event.fireOneByOne(this);
+    }
+
     @Override
     public void onAtomRenamed(AtomEvent event) {
         String newName = event.getName();
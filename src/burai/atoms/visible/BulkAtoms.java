@@ -0,0 +1,849 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.visible;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import burai.atoms.design.AtomDesign;
+import burai.atoms.design.AtomDesignAdaptor;
+import burai.atoms.design.AtomDesignListener;
+import burai.atoms.design.AtomsStyle;
+import burai.atoms.design.Design;
+import burai.atoms.element.ElementUtil;
+import burai.atoms.model.Atom;
+import burai.atoms.model.Bond;
+import burai.atoms.model.Cell;
+import burai.atoms.model.event.AtomEvent;
+import burai.atoms.model.event.AtomEventListener;
+import burai.atoms.model.event.ModelEvent;
+import burai.atoms.model.property.AtomProperty;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Material;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * atoms and bonds of a large cell, which are drawn as a few merged meshes:
+ * spheres are merged for each name of atoms, and halves of bonds are merged for each color.
+ * only selected atoms are drawn as VisibleAtom, and other VisibleAtoms are created when required,
+ * so that the number of nodes does not depend on the number of atoms.
+ */
+public class BulkAtoms extends Group implements AtomEventListener, AtomDesignListener {
+
+    private static final String KEY_SELECTED = AtomProperty.SELECTED;
+
+    private static final int SPHERE_DIV_LON = 12;
+    private static final int SPHERE_DIV_LAT = 6;
+
+    private static final int CYLINDER_DIV = 6;
+
+    private static final float[] SPHERE_POINTS = createSpherePoints();
+    private static final int[] SPHERE_FACES = createSphereFaces();
+
+    private static final float[] CYLINDER_POINTS = createCylinderPoints();
+    private static final int[] CYLINDER_FACES = createCylinderFaces();
+
+    private static final double LMIN = 1.0e-6;
+
+    private static float[] createSpherePoints() {
+        int numRings = SPHERE_DIV_LAT - 1;
+        float[] points = new float[3 * (2 + numRings * SPHERE_DIV_LON)];
+
+        int k = 0;
+        points[k++] = 0.0f;
+        points[k++] = 1.0f;
+        points[k++] = 0.0f;
+
+        for (int i = 1; i <= numRings; i++) {
+            double theta = Math.PI * ((double) i) / ((double) SPHERE_DIV_LAT);
+            for (int j = 0; j < SPHERE_DIV_LON; j++) {
+                double phi = 2.0 * Math.PI * ((double) j) / ((double) SPHERE_DIV_LON);
+                points[k++] = (float) (Math.sin(theta) * Math.cos(phi));
+                points[k++] = (float) (Math.cos(theta));
+                points[k++] = (float) (Math.sin(theta) * Math.sin(phi));
+            }
+        }
+
+        points[k++] = 0.0f;
+        points[k++] = -1.0f;
+        points[k++] = 0.0f;
+
+        return points;
+    }
+
+    private static int[] createSphereFaces() {
+        int numRings = SPHERE_DIV_LAT - 1;
+        int north = 0;
+        int south = 1 + numRings * SPHERE_DIV_LON;
+
+        List<int[]> faces = new ArrayList<int[]>();
+
+        for (int j = 0; j < SPHERE_DIV_LON; j++) {
+            int j1 = (j + 1) % SPHERE_DIV_LON;
+            faces.add(new int[] { north, 1 + j, 1 + j1 });
+        }
+
+        for (int i = 0; i < (numRings - 1); i++) {
+            int ring1 = 1 + i * SPHERE_DIV_LON;
+            int ring2 = ring1 + SPHERE_DIV_LON;
+            for (int j = 0; j < SPHERE_DIV_LON; j++) {
+                int j1 = (j + 1) % SPHERE_DIV_LON;
+                faces.add(new int[] { ring1 + j, ring2 + j, ring1 + j1 });
+                faces.add(new int[] { ring1 + j1, ring2 + j, ring2 + j1 });
+            }
+        }
+
+        int ringLast = 1 + (numRings - 1) * SPHERE_DIV_LON;
+        for (int j = 0; j < SPHERE_DIV_LON; j++) {
+            int j1 = (j + 1) % SPHERE_DIV_LON;
+            faces.add(new int[] { ringLast + j, south, ringLast + j1 });
+        }
+
+        return orientFaces(SPHERE_POINTS, faces, false);
+    }
+
+    /**
+     * unit cylinder along z-axis, without caps (which are covered with spheres).
+     */
+    private static float[] createCylinderPoints() {
+        float[] points = new float[3 * 2 * CYLINDER_DIV];
+
+        for (int i = 0; i < CYLINDER_DIV; i++) {
+            double theta = 2.0 * Math.PI * ((double) i) / ((double) CYLINDER_DIV);
+            int k1 = 3 * i;
+            int k2 = 3 * (i + CYLINDER_DIV);
+            points[k1 + 0] = (float) Math.cos(theta);
+            points[k1 + 1] = (float) Math.sin(theta);
+            points[k1 + 2] = 0.0f;
+            points[k2 + 0] = (float) Math.cos(theta);
+            points[k2 + 1] = (float) Math.sin(theta);
+            points[k2 + 2] = 1.0f;
+        }
+
+        return points;
+    }
+
+    private static int[] createCylinderFaces() {
+        List<int[]> faces = new ArrayList<int[]>();
+
+        for (int i = 0; i < CYLINDER_DIV; i++) {
+            int i1 = (i + 1) % CYLINDER_DIV;
+            faces.add(new int[] { i, i1, i + CYLINDER_DIV });
+            faces.add(new int[] { i1, i1 + CYLINDER_DIV, i + CYLINDER_DIV });
+        }
+
+        return orientFaces(CYLINDER_POINTS, faces, true);
+    }
+
+    /**
+     * faces are turned to be counter-clockwise from outside, which are front faces of JavaFX.
+     */
+    private static int[] orientFaces(float[] points, List<int[]> faces, boolean radial) {
+        int[] faceArray = new int[3 * faces.size()];
+
+        int k = 0;
+        for (int[] face : faces) {
+            double[][] r = new double[3][3];
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    r[i][j] = points[3 * face[i] + j];
+                }
+            }
+
+            double ax = r[1][0] - r[0][0];
+            double ay = r[1][1] - r[0][1];
+            double az = r[1][2] - r[0][2];
+            double bx = r[2][0] - r[0][0];
+            double by = r[2][1] - r[0][1];
+            double bz = r[2][2] - r[0][2];
+            double nx = ay * bz - az * by;
+            double ny = az * bx - ax * bz;
+            double nz = ax * by - ay * bx;
+
+            double cx = r[0][0] + r[1][0] + r[2][0];
+            double cy = r[0][1] + r[1][1] + r[2][1];
+            double cz = radial ? 0.0 : (r[0][2] + r[1][2] + r[2][2]);
+
+            boolean outward = (nx * cx + ny * cy + nz * cz) >= 0.0;
+            faceArray[k++] = face[0];
+            faceArray[k++] = outward ? face[1] : face[2];
+            faceArray[k++] = outward ? face[2] : face[1];
+        }
+
+        return faceArray;
+    }
+
+    private VisibleCell visibleCell;
+
+    private boolean disableToSelect;
+
+    private boolean boldMode;
+
+    private boolean disposed;
+
+    private Set<Atom> listenedAtoms;
+
+    private Set<AtomDesign> listenedDesigns;
+
+    private List<AtomDesignAdaptor> designAdaptors;
+
+    private Map<Atom, VisibleAtom> visibleAtoms;
+
+    private Map<String, MeshEntry> atomEntries;
+
+    private Map<Color, MeshEntry> bondEntries;
+
+    private boolean updateRequested;
+
+    private boolean topologyChanged;
+
+    protected BulkAtoms(VisibleCell visibleCell, boolean disableToSelect, boolean boldMode) {
+        super();
+
+        if (visibleCell == null) {
+            throw new IllegalArgumentException("visibleCell is null.");
+        }
+
+        this.visibleCell = visibleCell;
+        this.disableToSelect = disableToSelect;
+        this.boldMode = boldMode;
+        this.disposed = false;
+
+        this.listenedAtoms = Collections.newSetFromMap(new IdentityHashMap<Atom, Boolean>());
+        this.listenedDesigns = Collections.newSetFromMap(new IdentityHashMap<AtomDesign, Boolean>());
+        this.designAdaptors = new ArrayList<AtomDesignAdaptor>();
+        this.visibleAtoms = new IdentityHashMap<Atom, VisibleAtom>();
+
+        this.atomEntries = new LinkedHashMap<String, MeshEntry>();
+        this.bondEntries = new LinkedHashMap<Color, MeshEntry>();
+
+        this.updateRequested = false;
+        this.topologyChanged = false;
+
+        this.updateMeshes();
+    }
+
+    /**
+     * to be called, when this object is not used any more.
+     */
+    protected void dispose() {
+        this.disposed = true;
+
+        for (AtomDesignAdaptor adaptor : this.designAdaptors) {
+            adaptor.detach();
+        }
+
+        this.designAdaptors.clear();
+        this.listenedDesigns.clear();
+
+        for (Atom atom : this.listenedAtoms) {
+            atom.flushListeners();
+        }
+
+        this.listenedAtoms.clear();
+        this.getChildren().clear();
+    }
+
+    /**
+     * meshes are updated later in FX thread, so that successive changes are merged.
+     * @param topology true if atoms, bonds or designs are changed, false if only positions are changed.
+     */
+    protected void requestUpdate(boolean topology) {
+        if (this.disposed) {
+            return;
+        }
+
+        this.topologyChanged = this.topologyChanged || topology;
+        if (this.updateRequested) {
+            return;
+        }
+
+        this.updateRequested = true;
+
+        Platform.runLater(() -> {
+            boolean topology_ = this.topologyChanged;
+            this.updateRequested = false;
+            this.topologyChanged = false;
+
+            if (this.isToBeFlushed()) {
+                return;
+            }
+
+            if (topology_) {
+                this.updateMeshes();
+            } else {
+                this.updatePoints();
+            }
+        });
+    }
+
+    protected VisibleAtom getVisibleAtom(Atom atom) {
+        if (atom == null) {
+            return null;
+        }
+
+        VisibleAtom visibleAtom = this.visibleAtoms.get(atom);
+        if (visibleAtom == null) {
+            visibleAtom = this.visibleCell.createVisibleAtom(atom);
+            this.visibleAtoms.put(atom, visibleAtom);
+        }
+
+        return visibleAtom;
+    }
+
+    protected void putVisibleAtom(VisibleAtom visibleAtom) {
+        if (visibleAtom == null) {
+            return;
+        }
+
+        this.visibleAtoms.put(visibleAtom.getModel(), visibleAtom);
+    }
+
+    /**
+     * VisibleAtoms of all atoms are created, in the order of the cell.
+     */
+    protected List<VisibleAtom> listVisibleAtoms() {
+        List<VisibleAtom> visibleAtoms = new ArrayList<VisibleAtom>();
+
+        Atom[] atoms = this.visibleCell.getModel().listAtoms();
+        if (atoms != null) {
+            for (Atom atom : atoms) {
+                visibleAtoms.add(this.getVisibleAtom(atom));
+            }
+        }
+
+        return visibleAtoms;
+    }
+
+    private void listenAtom(Atom atom) {
+        if (!this.listenedAtoms.add(atom)) {
+            return;
+        }
+
+        atom.addListener(this);
+
+        if (!this.disableToSelect) {
+            if (!atom.hasProperty(KEY_SELECTED)) {
+                Atom masterAtom = atom.getMasterAtom();
+                atom.setProperty(KEY_SELECTED, masterAtom == null ? false : masterAtom.booleanProperty(KEY_SELECTED));
+            }
+
+            atom.addPropertyListener(KEY_SELECTED, o -> this.requestUpdate(true));
+        }
+    }
+
+    private boolean isSelected(Atom atom) {
+        return !this.disableToSelect && atom.booleanProperty(KEY_SELECTED);
+    }
+
+    private AtomDesign getAtomDesign(String name) {
+        Design design = this.visibleCell.design;
+        AtomDesign atomDesign = design == null ? null : design.getAtomDesign(name);
+
+        if (atomDesign != null && this.listenedDesigns.add(atomDesign)) {
+            AtomDesignAdaptor adaptor = new AtomDesignAdaptor(this);
+            atomDesign.addAdaptor(adaptor);
+            this.designAdaptors.add(adaptor);
+        }
+
+        return atomDesign;
+    }
+
+    private Color getColor(String name, AtomDesign atomDesign) {
+        Color color = null;
+        if (atomDesign != null) {
+            color = atomDesign.getColor();
+        }
+
+        if (color == null) {
+            if (this.boldMode) {
+                color = ElementUtil.getColor(name, VisibleAtom.LIGHT_COLOR);
+            } else {
+                color = ElementUtil.getColor(name);
+            }
+        }
+
+        return color;
+    }
+
+    /**
+     * as VisibleAtom, except for selected atoms.
+     */
+    private double getSphereRadius(Atom atom, AtomDesign atomDesign) {
+        double radius = -1.0;
+
+        if (atomDesign != null && atomDesign.getAtomsStyle() == AtomsStyle.STICK) {
+            radius = (VisibleAtom.BOND_SCALE / VisibleAtom.RADIUS_SCALE_NORM) * atomDesign.getBondWidth();
+
+        } else {
+            if (atomDesign != null) {
+                radius = atomDesign.getRadius();
+            }
+            if (radius <= 0.0) {
+                radius = atom.getRadius();
+            }
+        }
+
+        double scale = this.boldMode ? VisibleAtom.RADIUS_SCALE_BOLD : VisibleAtom.RADIUS_SCALE_NORM;
+        return scale * radius;
+    }
+
+    private double getAtomicRadius(Atom atom, AtomDesign atomDesign) {
+        double radius = atomDesign == null ? -1.0 : atomDesign.getRadius();
+        if (radius <= 0.0) {
+            radius = atom.getRadius();
+        }
+
+        return radius;
+    }
+
+    private double getCylinderRadius(AtomDesign atomDesign) {
+        double scale = this.boldMode ? VisibleBond.CYLINDER_SCALE_BOLD : VisibleBond.CYLINDER_SCALE_NORM;
+        return scale * (atomDesign == null ? 1.0 : atomDesign.getBondWidth());
+    }
+
+    private static boolean isBallStyle(AtomDesign atomDesign) {
+        return atomDesign != null && atomDesign.getAtomsStyle() == AtomsStyle.BALL;
+    }
+
+    private static Material getMaterial(MeshView meshView, Color color) {
+        Material material = meshView.getMaterial();
+        if (material != null && material instanceof PhongMaterial) {
+            if (color.equals(((PhongMaterial) material).getDiffuseColor())) {
+                return material;
+            }
+        }
+
+        PhongMaterial phongMaterial = new PhongMaterial();
+        phongMaterial.setDiffuseColor(color);
+        phongMaterial.setSpecularColor(Color.SILVER);
+        return phongMaterial;
+    }
+
+    private static TriangleMesh getTriangleMesh(MeshView meshView) {
+        if (meshView.getMesh() != null && meshView.getMesh() instanceof TriangleMesh) {
+            return (TriangleMesh) meshView.getMesh();
+        }
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getTexCoords().setAll(0.0f, 0.0f);
+        meshView.setMesh(mesh);
+        return mesh;
+    }
+
+    private static int[] createFaces(int[] template, int numPoints, int numCopies) {
+        int[] faces = new int[2 * template.length * numCopies];
+
+        int k = 0;
+        for (int i = 0; i < numCopies; i++) {
+            int offset = i * numPoints;
+            for (int j = 0; j < template.length; j++) {
+                faces[k++] = offset + template[j];
+                faces[k++] = 0; // texture
+            }
+        }
+
+        return faces;
+    }
+
+    /**
+     * rebuild all meshes, from atoms and bonds of the cell.
+     */
+    private void updateMeshes() {
+        if (this.disposed) {
+            return;
+        }
+
+        Cell cell = this.visibleCell.getModel();
+
+        Set<Atom> currentAtoms = Collections.newSetFromMap(new IdentityHashMap<Atom, Boolean>());
+        Map<String, List<Atom>> atomsByName = new LinkedHashMap<String, List<Atom>>();
+        List<Node> selectedNodes = new ArrayList<Node>();
+
+        Atom[] atoms = cell.listAtoms();
+        for (int i = 0; atoms != null && i < atoms.length; i++) {
+            Atom atom = atoms[i];
+            currentAtoms.add(atom);
+            this.listenAtom(atom);
+
+            if (this.isSelected(atom)) {
+                selectedNodes.add(this.getVisibleAtom(atom));
+                continue;
+            }
+
+            List<Atom> atomList = atomsByName.get(atom.getName());
+            if (atomList == null) {
+                atomList = new ArrayList<Atom>();
+                atomsByName.put(atom.getName(), atomList);
+            }
+
+            atomList.add(atom);
+        }
+
+        this.visibleAtoms.keySet().retainAll(currentAtoms);
+        this.listenedAtoms.retainAll(currentAtoms);
+
+        Map<Color, List<BondPart>> partsByColor = new LinkedHashMap<Color, List<BondPart>>();
+
+        Bond[] bonds = cell.listBonds();
+        for (int i = 0; bonds != null && i < bonds.length; i++) {
+            this.addBondParts(bonds[i], partsByColor);
+        }
+
+        List<Node> nodes = new ArrayList<Node>();
+
+        Map<String, MeshEntry> atomEntries = new LinkedHashMap<String, MeshEntry>();
+        for (Map.Entry<String, List<Atom>> entry : atomsByName.entrySet()) {
+            MeshEntry meshEntry = this.atomEntries.get(entry.getKey());
+            if (meshEntry == null) {
+                meshEntry = new MeshEntry(new AtomicMesh(this));
+            }
+
+            this.setupAtomEntry(meshEntry, entry.getKey(), entry.getValue());
+            atomEntries.put(entry.getKey(), meshEntry);
+            nodes.add(meshEntry.meshView);
+        }
+
+        Map<Color, MeshEntry> bondEntries = new LinkedHashMap<Color, MeshEntry>();
+        for (Map.Entry<Color, List<BondPart>> entry : partsByColor.entrySet()) {
+            MeshEntry meshEntry = this.bondEntries.get(entry.getKey());
+            if (meshEntry == null) {
+                meshEntry = new MeshEntry(new MeshView());
+            }
+
+            this.setupBondEntry(meshEntry, entry.getKey(), entry.getValue());
+            bondEntries.put(entry.getKey(), meshEntry);
+            nodes.add(meshEntry.meshView);
+        }
+
+        this.atomEntries = atomEntries;
+        this.bondEntries = bondEntries;
+
+        nodes.addAll(selectedNodes);
+        this.getChildren().setAll(nodes);
+    }
+
+    private void addBondParts(Bond bond, Map<Color, List<BondPart>> partsByColor) {
+        Atom atom1 = bond.getAtom1();
+        Atom atom2 = bond.getAtom2();
+        AtomDesign atomDesign1 = this.getAtomDesign(atom1.getName());
+        AtomDesign atomDesign2 = this.getAtomDesign(atom2.getName());
+
+        double rad1 = this.getAtomicRadius(atom1, atomDesign1);
+        double rad2 = this.getAtomicRadius(atom2, atomDesign2);
+        boolean sameAtoms = atom1.getAtomNum() == atom2.getAtomNum();
+
+        if (!isBallStyle(atomDesign1)) {
+            BondPart part = new BondPart(bond, true, rad1, rad2, sameAtoms, this.getCylinderRadius(atomDesign1));
+            Color color = this.getColor(atom1.getName(), atomDesign1);
+            this.addBondPart(part, color, partsByColor);
+        }
+
+        if (!isBallStyle(atomDesign2)) {
+            BondPart part = new BondPart(bond, false, rad1, rad2, sameAtoms, this.getCylinderRadius(atomDesign2));
+            Color color = this.getColor(atom2.getName(), atomDesign2);
+            this.addBondPart(part, color, partsByColor);
+        }
+    }
+
+    private void addBondPart(BondPart part, Color color, Map<Color, List<BondPart>> partsByColor) {
+        List<BondPart> parts = partsByColor.get(color);
+        if (parts == null) {
+            parts = new ArrayList<BondPart>();
+            partsByColor.put(color, parts);
+        }
+
+        parts.add(part);
+    }
+
+    private void setupAtomEntry(MeshEntry meshEntry, String name, List<Atom> atomList) {
+        Atom[] atoms = atomList.toArray(new Atom[atomList.size()]);
+        AtomDesign atomDesign = this.getAtomDesign(name);
+
+        meshEntry.atoms = atoms;
+        meshEntry.parts = null;
+        meshEntry.radius = this.getSphereRadius(atoms[0], atomDesign);
+
+        AtomicMesh atomicMesh = (AtomicMesh) meshEntry.meshView;
+        atomicMesh.setAtoms(atoms, SPHERE_FACES.length / 3);
+        atomicMesh.setMaterial(getMaterial(atomicMesh, this.getColor(name, atomDesign)));
+
+        int numPoints = SPHERE_POINTS.length / 3;
+        TriangleMesh mesh = getTriangleMesh(atomicMesh);
+        mesh.getFaces().setAll(createFaces(SPHERE_FACES, numPoints, atoms.length));
+
+        this.updateAtomPoints(meshEntry);
+    }
+
+    private void setupBondEntry(MeshEntry meshEntry, Color color, List<BondPart> partList) {
+        BondPart[] parts = partList.toArray(new BondPart[partList.size()]);
+
+        meshEntry.atoms = null;
+        meshEntry.parts = parts;
+        meshEntry.radius = 0.0;
+
+        MeshView meshView = meshEntry.meshView;
+        meshView.setMaterial(getMaterial(meshView, color));
+
+        int numPoints = CYLINDER_POINTS.length / 3;
+        TriangleMesh mesh = getTriangleMesh(meshView);
+        mesh.getFaces().setAll(createFaces(CYLINDER_FACES, numPoints, parts.length));
+
+        this.updateBondPoints(meshEntry);
+    }
+
+    /**
+     * only positions are updated, when atoms are moved.
+     */
+    private void updatePoints() {
+        if (this.disposed) {
+            return;
+        }
+
+        for (MeshEntry meshEntry : this.atomEntries.values()) {
+            this.updateAtomPoints(meshEntry);
+        }
+
+        for (MeshEntry meshEntry : this.bondEntries.values()) {
+            this.updateBondPoints(meshEntry);
+        }
+    }
+
+    private void updateAtomPoints(MeshEntry meshEntry) {
+        Atom[] atoms = meshEntry.atoms;
+        if (atoms == null) {
+            return;
+        }
+
+        float[] points = meshEntry.getPoints(atoms.length * SPHERE_POINTS.length);
+        float radius = (float) meshEntry.radius;
+
+        int k = 0;
+        for (Atom atom : atoms) {
+            float x = (float) atom.getX();
+            float y = (float) atom.getY();
+            float z = (float) atom.getZ();
+            for (int i = 0; i < SPHERE_POINTS.length; i += 3) {
+                points[k++] = x + radius * SPHERE_POINTS[i + 0];
+                points[k++] = y + radius * SPHERE_POINTS[i + 1];
+                points[k++] = z + radius * SPHERE_POINTS[i + 2];
+            }
+        }
+
+        getTriangleMesh(meshEntry.meshView).getPoints().setAll(points, 0, k);
+    }
+
+    private void updateBondPoints(MeshEntry meshEntry) {
+        BondPart[] parts = meshEntry.parts;
+        if (parts == null) {
+            return;
+        }
+
+        float[] points = meshEntry.getPoints(parts.length * CYLINDER_POINTS.length);
+
+        int k = 0;
+        for (BondPart part : parts) {
+            k = part.putPoints(points, k);
+        }
+
+        getTriangleMesh(meshEntry.meshView).getPoints().setAll(points, 0, k);
+    }
+
+    @Override
+    public boolean isToBeFlushed() {
+        return this.disposed || this.visibleCell.isToBeFlushed();
+    }
+
+    @Override
+    public void onModelDisplayed(ModelEvent event) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onModelNotDisplayed(ModelEvent event) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onAtomRenamed(AtomEvent event) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onAtomMoved(AtomEvent event) {
+        this.requestUpdate(false);
+    }
+
+    @Override
+    public void onAtomicRadiusChanged(AtomDesign atomDesign, double radius) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onAtomicColorChanged(AtomDesign atomDesign, Color color) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onAtomsStyleChanged(AtomDesign atomDesign, AtomsStyle atomsStyle) {
+        this.requestUpdate(true);
+    }
+
+    @Override
+    public void onBondWidthChanged(AtomDesign atomDesign, double bondWidth) {
+        this.requestUpdate(true);
+    }
+
+    private static class MeshEntry {
+
+        public MeshView meshView;
+        public Atom[] atoms;
+        public BondPart[] parts;
+        public double radius;
+
+        private float[] points;
+
+        public MeshEntry(MeshView meshView) {
+            this.meshView = meshView;
+            this.atoms = null;
+            this.parts = null;
+            this.radius = 0.0;
+            this.points = null;
+        }
+
+        public float[] getPoints(int size) {
+            if (this.points == null || this.points.length < size || this.points.length > 2 * size) {
+                this.points = new float[size];
+            }
+
+            return this.points;
+        }
+    }
+
+    /**
+     * a half of bond, as a cylinder of VisibleBond.
+     */
+    private static class BondPart {
+
+        private Bond bond;
+        private boolean first;
+        private double rad1;
+        private double rad2;
+        private boolean sameAtoms;
+        private double radius;
+
+        public BondPart(Bond bond, boolean first, double rad1, double rad2, boolean sameAtoms, double radius) {
+            this.bond = bond;
+            this.first = first;
+            this.rad1 = rad1;
+            this.rad2 = rad2;
+            this.sameAtoms = sameAtoms;
+            this.radius = radius;
+        }
+
+        public int putPoints(float[] points, int offset) {
+            Atom atom1 = this.bond.getAtom1();
+            Atom atom2 = this.bond.getAtom2();
+            double dx = atom2.getX() - atom1.getX();
+            double dy = atom2.getY() - atom1.getY();
+            double dz = atom2.getZ() - atom1.getZ();
+            double rr = dx * dx + dy * dy + dz * dz;
+
+            double rshow = VisibleBond.SHOWING_RADIUS_SCALE * (this.rad1 + this.rad2);
+            boolean inRange = rr <= rshow * rshow;
+
+            double sqrt1 = Math.sqrt(Math.max(this.rad1, 0.0));
+            double sqrt2 = Math.sqrt(Math.max(this.rad2, 0.0));
+            double rate1 = (sqrt1 + sqrt2) > 0.0 ? (sqrt1 / (sqrt1 + sqrt2)) : 0.5;
+            if (this.sameAtoms) {
+                rate1 = 0.999;
+            }
+
+            double rate = this.first ? rate1 : -(1.0 - rate1);
+            Atom atom = this.first ? atom1 : atom2;
+            double px = atom.getX();
+            double py = atom.getY();
+            double pz = atom.getZ();
+            double lx = rate * dx;
+            double ly = rate * dy;
+            double lz = rate * dz;
+            double ll = Math.sqrt(lx * lx + ly * ly + lz * lz);
+
+            double radius = this.radius;
+            double ex = 0.0;
+            double ey = 0.0;
+            double ez = 1.0;
+            if (!inRange || ll < LMIN) {
+                // degenerated to a point, which is not drawn
+                radius = 0.0;
+                lx = 0.0;
+                ly = 0.0;
+                lz = 0.0;
+            } else {
+                ex = lx / ll;
+                ey = ly / ll;
+                ez = lz / ll;
+            }
+
+            // (u, v, l) is a right-handed basis
+            double ux, uy, uz;
+            if (Math.abs(ex) <= Math.abs(ey) && Math.abs(ex) <= Math.abs(ez)) {
+                ux = 0.0;
+                uy = ez;
+                uz = -ey;
+            } else if (Math.abs(ey) <= Math.abs(ez)) {
+                ux = -ez;
+                uy = 0.0;
+                uz = ex;
+            } else {
+                ux = ey;
+                uy = -ex;
+                uz = 0.0;
+            }
+
+            double uu = Math.sqrt(ux * ux + uy * uy + uz * uz);
+            ux /= uu;
+            uy /= uu;
+            uz /= uu;
+            double vx = ey * uz - ez * uy;
+            double vy = ez * ux - ex * uz;
+            double vz = ex * uy - ey * ux;
+
+            int k = offset;
+            for (int i = 0; i < CYLINDER_POINTS.length; i += 3) {
+                double a = radius * CYLINDER_POINTS[i + 0];
+                double b = radius * CYLINDER_POINTS[i + 1];
+                double t = CYLINDER_POINTS[i + 2];
+                points[k++] = (float) (px + a * ux + b * vx + t * lx);
+                points[k++] = (float) (py + a * uy + b * vy + t * ly);
+                points[k++] = (float) (pz + a * uz + b * vz + t * lz);
+            }
+
+            return k;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.visible;
+
+import burai.atoms.model.VolumeGrid;
+import javafx.application.Platform;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * isosurface of volumetric data, which is placed in VisibleCell.
+ * the mesh is computed by MarchingCubes in background, and a stale computation is cancelled
+ * when the isovalue is changed again, so that a slider of isovalue keeps responsive.
+ */
+public class Isosurface extends MeshView {
+
+    private static final Color DEFAULT_COLOR = Color.color(1.0, 0.85, 0.0, 0.6);
+
+    private MarchingCubes marchingCubes;
+
+    private double isovalue;
+
+    private MarchingCubes.Surface surface;
+
+    private boolean disposed;
+
+    public Isosurface(VolumeGrid grid) {
+        this(grid, true);
+    }
+
+    /**
+     * @param periodic true if values of the grid are periodic in the cell (e.g. a cube file of pp.x).
+     */
+    public Isosurface(VolumeGrid grid, boolean periodic) {
+        super();
+
+        if (grid == null) {
+            throw new IllegalArgumentException("grid is null.");
+        }
+
+        this.marchingCubes = new MarchingCubes(grid, periodic);
+        this.isovalue = 0.0;
+        this.surface = null;
+        this.disposed = false;
+
+        TriangleMesh mesh = new TriangleMesh();
+        mesh.getTexCoords().setAll(0.0f, 0.0f);
+        this.setMesh(mesh);
+
+        this.setCullFace(CullFace.NONE);
+        this.setMouseTransparent(true);
+        this.setColor(DEFAULT_COLOR);
+    }
+
+    public VolumeGrid getGrid() {
+        return this.marchingCubes.getGrid();
+    }
+
+    public void setColor(Color color) {
+        if (color == null) {
+            return;
+        }
+
+        PhongMaterial material = new PhongMaterial();
+        material.setDiffuseColor(color);
+        material.setSpecularColor(Color.SILVER);
+        this.setMaterial(material);
+    }
+
+    public synchronized double getIsovalue() {
+        return this.isovalue;
+    }
+
+    /**
+     * the mesh is replaced later, on the FX application thread.
+     */
+    public synchronized void setIsovalue(double isovalue) {
+        if (this.disposed) {
+            return;
+        }
+
+        if (this.surface != null) {
+            this.surface.cancel();
+        }
+
+        this.isovalue = isovalue;
+        MarchingCubes.Surface surface = this.marchingCubes.createSurface(isovalue);
+        this.surface = surface;
+
+        Thread thread = new Thread(() -> {
+            if (!surface.run()) {
+                return;
+            }
+
+            float[] points = surface.getPoints();
+            int[] faces = toMeshFaces(surface.getFaces());
+
+            Platform.runLater(() -> {
+                if (this.isLatestSurface(surface)) {
+                    TriangleMesh mesh = (TriangleMesh) this.getMesh();
+                    mesh.getPoints().setAll(points);
+                    mesh.getFaces().setAll(faces);
+                }
+            });
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private synchronized boolean isLatestSurface(MarchingCubes.Surface surface) {
+        return (!this.disposed) && this.surface == surface;
+    }
+
+    private static int[] toMeshFaces(int[] faces) {
+        int[] faces2 = new int[2 * faces.length];
+        for (int i = 0; i < faces.length; i++) {
+            faces2[2 * i] = faces[i];
+            // faces2[2 * i + 1] = 0; // texture
+        }
+
+        return faces2;
+    }
+
+    /**
+     * cancel the computation, and the mesh is not changed any more.
+     */
+    public synchronized void dispose() {
+        this.disposed = true;
+
+        if (this.surface != null) {
+            this.surface.cancel();
+            this.surface = null;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.atoms.visible;
+
+import java.util.Arrays;
+
+import burai.atoms.model.VolumeGrid;
+import burai.com.parallel.ParallelRange;
+
+/**
+ * marching cubes on VolumeGrid, which is performed by layers of x in parallel.
+ *
+ * a vertex is shared among triangles, and is identified by a bit of (point, axis) of its edge,
+ * so that vertices are numbered by counting bits, without any hash map.
+ * if periodic, points of index n are wrapped to 0, and are placed at the end of lattice vectors.
+ * rows of the grid whose values do not cross the isovalue are skipped.
+ */
+public class MarchingCubes {
+
+    // corner c of a cube is at (c & 1, (c >> 1) & 1, (c >> 2) & 1)
+    private static final int NUM_CORNERS = 8;
+
+    private static final int NUM_EDGES = 12;
+
+    private static final int[] EDGE_CORNERS = new int[NUM_EDGES];
+
+    private static final int[] EDGE_AXES = new int[NUM_EDGES];
+
+    // triangles of each case, as edges
+    private static final int[][] TRIANGLES = new int[1 << NUM_CORNERS][];
+
+    static {
+        setupEdges();
+        setupTriangles();
+    }
+
+    private static void setupEdges() {
+        int iedge = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            for (int corner = 0; corner < NUM_CORNERS; corner++) {
+                if ((corner & (1 << axis)) == 0) {
+                    EDGE_CORNERS[iedge] = corner;
+                    EDGE_AXES[iedge] = axis;
+                    iedge++;
+                }
+            }
+        }
+    }
+
+    private static int toEdge(int corner1, int corner2) {
+        int corner = Math.min(corner1, corner2);
+        int axis = Integer.numberOfTrailingZeros(corner1 ^ corner2);
+        for (int iedge = 0; iedge < NUM_EDGES; iedge++) {
+            if (EDGE_CORNERS[iedge] == corner && EDGE_AXES[iedge] == axis) {
+                return iedge;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * the table of triangles is not written by hand, but is built from contours on faces of a cube.
+     * each face is walked counterclockwise from outside, and a segment is drawn
+     * from the edge entering a positive corner to the next edge leaving it.
+     * an ambiguous face always separates positive corners, so that adjacent cubes are matched.
+     * segments are chained into loops, and loops are divided into triangles as fans,
+     * whose diagonals do not lie on faces of the cube if possible.
+     */
+    private static void setupTriangles() {
+        int[][] faces = new int[6][];
+        for (int axis = 0; axis < 3; axis++) {
+            int u = 1 << ((axis + 1) % 3);
+            int v = 1 << ((axis + 2) % 3);
+            int w = 1 << axis;
+            faces[2 * axis + 0] = new int[] { 0, v, u | v, u };
+            faces[2 * axis + 1] = new int[] { w, w | u, w | u | v, w | v };
+        }
+
+        // faces which each edge belongs to
+        int[] edgeFaces = new int[NUM_EDGES];
+        for (int iface = 0; iface < faces.length; iface++) {
+            for (int k = 0; k < 4; k++) {
+                edgeFaces[toEdge(faces[iface][k], faces[iface][(k + 1) % 4])] |= 1 << iface;
+            }
+        }
+
+        for (int icase = 0; icase < TRIANGLES.length; icase++) {
+            int[] nextEdges = new int[NUM_EDGES];
+            Arrays.fill(nextEdges, -1);
+
+            for (int[] face : faces) {
+                int[] crossings = new int[4];
+                boolean[] entering = new boolean[4];
+                int numCrossings = 0;
+
+                for (int k = 0; k < 4; k++) {
+                    int corner1 = face[k];
+                    int corner2 = face[(k + 1) % 4];
+                    boolean positive1 = (icase & (1 << corner1)) != 0;
+                    boolean positive2 = (icase & (1 << corner2)) != 0;
+                    if (positive1 != positive2) {
+                        crossings[numCrossings] = toEdge(corner1, corner2);
+                        entering[numCrossings] = positive2;
+                        numCrossings++;
+                    }
+                }
+
+                for (int k = 0; k < numCrossings; k++) {
+                    if (entering[k]) {
+                        int k2 = (k + 1) % numCrossings;
+                        nextEdges[crossings[k]] = crossings[k2];
+                    }
+                }
+            }
+
+            int[] triangles = new int[3 * NUM_EDGES];
+            int numTriangles = 0;
+
+            boolean[] used = new boolean[NUM_EDGES];
+            for (int iedge = 0; iedge < NUM_EDGES; iedge++) {
+                if (used[iedge] || nextEdges[iedge] < 0) {
+                    continue;
+                }
+
+                int[] loop = new int[NUM_EDGES];
+                int lenLoop = 0;
+                int iedge2 = iedge;
+                while (iedge2 >= 0 && !used[iedge2]) {
+                    used[iedge2] = true;
+                    loop[lenLoop++] = iedge2;
+                    iedge2 = nextEdges[iedge2];
+                }
+
+                int apex = 0;
+                int minOnFaces = Integer.MAX_VALUE;
+                for (int k = 0; k < lenLoop; k++) {
+                    int numOnFaces = 0;
+                    for (int k2 = 2; k2 < (lenLoop - 1); k2++) {
+                        if ((edgeFaces[loop[k]] & edgeFaces[loop[(k + k2) % lenLoop]]) != 0) {
+                            numOnFaces++;
+                        }
+                    }
+
+                    if (numOnFaces < minOnFaces) {
+                        apex = k;
+                        minOnFaces = numOnFaces;
+                    }
+                }
+
+                for (int k = 1; k < (lenLoop - 1); k++) {
+                    triangles[3 * numTriangles + 0] = loop[apex];
+                    triangles[3 * numTriangles + 1] = loop[(apex + k) % lenLoop];
+                    triangles[3 * numTriangles + 2] = loop[(apex + k + 1) % lenLoop];
+                    numTriangles++;
+                }
+            }
+
+            TRIANGLES[icase] = Arrays.copyOf(triangles, 3 * numTriangles);
+        }
+    }
+
+    private VolumeGrid grid;
+
+    private boolean periodic;
+
+    // sizes of points, including wrapped points if periodic
+    private int sizeX;
+    private int sizeY;
+    private int sizeZ;
+
+    private int[] wrapX;
+    private int[] wrapY;
+    private int[] wrapZ;
+
+    // number of bits of each layer of x, which is a multiple of 64
+    private int layerBits;
+
+    // range of values in each row (ix..ix+1, iy..iy+1)
+    private float[] rowMin;
+    private float[] rowMax;
+
+    public MarchingCubes(VolumeGrid grid, boolean periodic) {
+        if (grid == null) {
+            throw new IllegalArgumentException("grid is null.");
+        }
+
+        this.grid = grid;
+        this.periodic = periodic;
+
+        this.sizeX = grid.sizeX() + (periodic ? 1 : 0);
+        this.sizeY = grid.sizeY() + (periodic ? 1 : 0);
+        this.sizeZ = grid.sizeZ() + (periodic ? 1 : 0);
+
+        this.wrapX = createWraps(this.sizeX, grid.sizeX());
+        this.wrapY = createWraps(this.sizeY, grid.sizeY());
+        this.wrapZ = createWraps(this.sizeZ, grid.sizeZ());
+
+        this.layerBits = 64 * ((3 * this.sizeY * this.sizeZ + 63) / 64);
+
+        this.rowMin = null;
+        this.rowMax = null;
+    }
+
+    private static int[] createWraps(int size, int size0) {
+        int[] wraps = new int[size];
+        for (int i = 0; i < size; i++) {
+            wraps[i] = i % size0;
+        }
+
+        return wraps;
+    }
+
+    public VolumeGrid getGrid() {
+        return this.grid;
+    }
+
+    public boolean isPeriodic() {
+        return this.periodic;
+    }
+
+    private synchronized void setupRows() {
+        if (this.rowMin != null && this.rowMax != null) {
+            return;
+        }
+
+        float[] rowMin = new float[this.sizeX * this.sizeY];
+        float[] rowMax = new float[this.sizeX * this.sizeY];
+        float[] values = this.grid.getValues();
+        int ny0 = this.grid.sizeY();
+        int nz0 = this.grid.sizeZ();
+
+        ParallelRange<Object> parallel = new ParallelRange<Object>(this.sizeX);
+        parallel.forEach(ix -> {
+            int ix2 = Math.min(ix + 1, this.sizeX - 1);
+            for (int iy = 0; iy < this.sizeY; iy++) {
+                int iy2 = Math.min(iy + 1, this.sizeY - 1);
+                float min = Float.POSITIVE_INFINITY;
+                float max = Float.NEGATIVE_INFINITY;
+                for (int jx : new int[] { this.wrapX[ix], this.wrapX[ix2] }) {
+                    for (int jy : new int[] { this.wrapY[iy], this.wrapY[iy2] }) {
+                        int offset = (jx * ny0 + jy) * nz0;
+                        for (int iz = 0; iz < nz0; iz++) {
+                            float value = values[offset + iz];
+                            min = Math.min(min, value);
+                            max = Math.max(max, value);
+                        }
+                    }
+                }
+
+                rowMin[ix * this.sizeY + iy] = min;
+                rowMax[ix * this.sizeY + iy] = max;
+            }
+
+            return null;
+        });
+
+        this.rowMin = rowMin;
+        this.rowMax = rowMax;
+    }
+
+    public Surface createSurface(double isovalue) {
+        return new Surface(isovalue);
+    }
+
+    /**
+     * an isosurface, which is computed by run, and can be cancelled from any thread.
+     */
+    public class Surface {
+
+        private float isovalue;
+
+        private volatile boolean cancelled;
+
+        private volatile ParallelRange<?> parallel;
+
+        private float[] points;
+
+        private int[] faces;
+
+        private Surface(double isovalue) {
+            this.isovalue = (float) isovalue;
+            this.cancelled = false;
+            this.parallel = null;
+            this.points = null;
+            this.faces = null;
+        }
+
+        public double getIsovalue() {
+            return this.isovalue;
+        }
+
+        public void cancel() {
+            this.cancelled = true;
+
+            ParallelRange<?> parallel = this.parallel;
+            if (parallel != null) {
+                parallel.cancel();
+            }
+        }
+
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        /**
+         * @return x, y, z of vertices, in Angstrom.
+         */
+        public float[] getPoints() {
+            return this.points;
+        }
+
+        /**
+         * @return indexes of vertices, three for each triangle.
+         */
+        public int[] getFaces() {
+            return this.faces;
+        }
+
+        public int numVertices() {
+            return this.points == null ? 0 : (this.points.length / 3);
+        }
+
+        public int numTriangles() {
+            return this.faces == null ? 0 : (this.faces.length / 3);
+        }
+
+        private void forEachLayer(int numLayers, ParallelRange<Object> parallel, LayerPerformance performance) {
+            this.parallel = parallel;
+            if (this.cancelled) {
+                return;
+            }
+
+            parallel.forEach(ix -> {
+                if (!this.cancelled) {
+                    performance.perform(ix);
+                }
+                return null;
+            });
+        }
+
+        private boolean isSkippedRow(int ix, int iy) {
+            int index = ix * MarchingCubes.this.sizeY + iy;
+            return MarchingCubes.this.rowMax[index] < this.isovalue || MarchingCubes.this.rowMin[index] >= this.isovalue;
+        }
+
+        /**
+         * @return false if cancelled.
+         */
+        public boolean run() {
+            MarchingCubes.this.setupRows();
+
+            int sizeX = MarchingCubes.this.sizeX;
+            int sizeY = MarchingCubes.this.sizeY;
+            int sizeZ = MarchingCubes.this.sizeZ;
+            int layerBits = MarchingCubes.this.layerBits;
+            int layerWords = layerBits / 64;
+            float[] values = MarchingCubes.this.grid.getValues();
+            int ny0 = MarchingCubes.this.grid.sizeY();
+            int nz0 = MarchingCubes.this.grid.sizeZ();
+            int[] wrapX = MarchingCubes.this.wrapX;
+            int[] wrapY = MarchingCubes.this.wrapY;
+            int[] wrapZ = MarchingCubes.this.wrapZ;
+            float isovalue = this.isovalue;
+
+            /*
+             * mark edges which cross the isovalue
+             */
+            long[] bits = new long[sizeX * layerWords];
+
+            this.forEachLayer(sizeX, new ParallelRange<Object>(sizeX), ix -> {
+                int ix0 = wrapX[ix];
+                int ix1 = ix + 1 < sizeX ? wrapX[ix + 1] : -1;
+                int base = ix * layerBits;
+
+                for (int iy = 0; iy < sizeY; iy++) {
+                    if (this.isSkippedRow(ix, iy)) {
+                        continue;
+                    }
+
+                    int iy0 = wrapY[iy];
+                    int iy1 = iy + 1 < sizeY ? wrapY[iy + 1] : -1;
+
+                    for (int iz = 0; iz < sizeZ; iz++) {
+                        int iz0 = wrapZ[iz];
+                        int iz1 = iz + 1 < sizeZ ? wrapZ[iz + 1] : -1;
+
+                        boolean positive = values[(ix0 * ny0 + iy0) * nz0 + iz0] >= isovalue;
+                        int bit = base + 3 * (iy * sizeZ + iz);
+
+                        if (ix1 >= 0 && (values[(ix1 * ny0 + iy0) * nz0 + iz0] >= isovalue) != positive) {
+                            bits[bit >>> 6] |= 1L << bit;
+                        }
+                        if (iy1 >= 0 && (values[(ix0 * ny0 + iy1) * nz0 + iz0] >= isovalue) != positive) {
+                            bits[(bit + 1) >>> 6] |= 1L << (bit + 1);
+                        }
+                        if (iz1 >= 0 && (values[(ix0 * ny0 + iy0) * nz0 + iz1] >= isovalue) != positive) {
+                            bits[(bit + 2) >>> 6] |= 1L << (bit + 2);
+                        }
+                    }
+                }
+            });
+
+            if (this.cancelled) {
+                return false;
+            }
+
+            /*
+             * number vertices, by counting bits
+             */
+            int[] offsets = new int[bits.length];
+            int numVertices = 0;
+            for (int i = 0; i < bits.length; i++) {
+                offsets[i] = numVertices;
+                numVertices += Long.bitCount(bits[i]);
+            }
+
+            /*
+             * positions of vertices
+             */
+            double[] step0 = MarchingCubes.this.grid.getStep(0);
+            double[] step1 = MarchingCubes.this.grid.getStep(1);
+            double[] step2 = MarchingCubes.this.grid.getStep(2);
+            double[][] steps = { step0, step1, step2 };
+            float[] points = new float[3 * numVertices];
+
+            this.forEachLayer(sizeX, new ParallelRange<Object>(sizeX), ix -> {
+                for (int iword = ix * layerWords; iword < (ix + 1) * layerWords; iword++) {
+                    long word = bits[iword];
+                    int ivert = offsets[iword];
+                    while (word != 0L) {
+                        int local = 64 * iword + Long.numberOfTrailingZeros(word) - ix * layerBits;
+                        word &= word - 1L;
+
+                        int axis = local % 3;
+                        int iy = (local / 3) / sizeZ;
+                        int iz = (local / 3) % sizeZ;
+
+                        float value0 = values[(wrapX[ix] * ny0 + wrapY[iy]) * nz0 + wrapZ[iz]];
+                        int jx = axis == 0 ? ix + 1 : ix;
+                        int jy = axis == 1 ? iy + 1 : iy;
+                        int jz = axis == 2 ? iz + 1 : iz;
+                        float value1 = values[(wrapX[jx] * ny0 + wrapY[jy]) * nz0 + wrapZ[jz]];
+
+                        double t = (isovalue - value0) / (double) (value1 - value0);
+                        double[] step = steps[axis];
+                        for (int k = 0; k < 3; k++) {
+                            double r = ix * step0[k] + iy * step1[k] + iz * step2[k] + t * step[k];
+                            points[3 * ivert + k] = (float) r;
+                        }
+
+                        ivert++;
+                    }
+                }
+            });
+
+            if (this.cancelled) {
+                return false;
+            }
+
+            /*
+             * triangles of cubes
+             */
+            int numCubesX = Math.max(0, sizeX - 1);
+            int[][] layerFaces = new int[numCubesX][];
+
+            int[] edgeBits = new int[NUM_EDGES];
+            for (int iedge = 0; iedge < NUM_EDGES; iedge++) {
+                int corner = EDGE_CORNERS[iedge];
+                int dx = corner & 1;
+                int dy = (corner >> 1) & 1;
+                int dz = (corner >> 2) & 1;
+                edgeBits[iedge] = dx * layerBits + 3 * (dy * sizeZ + dz) + EDGE_AXES[iedge];
+            }
+
+            this.forEachLayer(numCubesX, new ParallelRange<Object>(numCubesX), ix -> {
+                int[] faces = new int[0];
+                int numFaces = 0;
+                float[] corners = new float[NUM_CORNERS];
+
+                for (int iy = 0; iy < (sizeY - 1); iy++) {
+                    if (this.isSkippedRow(ix, iy)) {
+                        continue;
+                    }
+
+                    for (int iz = 0; iz < (sizeZ - 1); iz++) {
+                        int icase = 0;
+                        for (int corner = 0; corner < NUM_CORNERS; corner++) {
+                            int jx = wrapX[ix + (corner & 1)];
+                            int jy = wrapY[iy + ((corner >> 1) & 1)];
+                            int jz = wrapZ[iz + ((corner >> 2) & 1)];
+                            corners[corner] = values[(jx * ny0 + jy) * nz0 + jz];
+                            if (corners[corner] >= isovalue) {
+                                icase |= 1 << corner;
+                            }
+                        }
+
+                        int[] triangles = TRIANGLES[icase];
+                        if (triangles.length < 1) {
+                            continue;
+                        }
+
+                        if (faces.length < numFaces + triangles.length) {
+                            faces = Arrays.copyOf(faces, Math.max(2 * faces.length, numFaces + triangles.length + 64));
+                        }
+
+                        int base = ix * layerBits + 3 * (iy * sizeZ + iz);
+                        for (int iedge : triangles) {
+                            int bit = base + edgeBits[iedge];
+                            long mask = (1L << bit) - 1L;
+                            faces[numFaces++] = offsets[bit >>> 6] + Long.bitCount(bits[bit >>> 6] & mask);
+                        }
+                    }
+                }
+
+                layerFaces[ix] = Arrays.copyOf(faces, numFaces);
+            });
+
+            if (this.cancelled) {
+                return false;
+            }
+
+            int numFaces = 0;
+            for (int[] faces : layerFaces) {
+                numFaces += faces == null ? 0 : faces.length;
+            }
+
+            int[] faces = new int[numFaces];
+            int offset = 0;
+            for (int[] faces2 : layerFaces) {
+                if (faces2 != null) {
+                    System.arraycopy(faces2, 0, faces, offset, faces2.length);
+                    offset += faces2.length;
+                }
+            }
+
+            this.points = points;
+            this.faces = faces;
+            this.parallel = null;
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    private static interface LayerPerformance {
+
+        public abstract void perform(int ix);
+
+    }
+}
@@ -34,10 +34,10 @@ public class VisibleAtom extends Visible<Atom> implements AtomEventListener, Ato
 
     private static final String KEY_SELECTED = AtomProperty.SELECTED;
 
-    private static final double RADIUS_SCALE_NORM = 0.5;
-    private static final double RADIUS_SCALE_BOLD = 1.4 * RADIUS_SCALE_NORM;
+    public static final double RADIUS_SCALE_NORM = 0.5;
+    protected static final double RADIUS_SCALE_BOLD = 1.4 * RADIUS_SCALE_NORM;
 
-    protected static final double BOND_SCALE = 0.1;
+    public static final double BOND_SCALE = 0.1;
 
     protected static final double RMIN = 5.0e-3;
     private static final double RRMIN = RMIN * RMIN;
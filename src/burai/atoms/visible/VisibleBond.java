@@ -34,12 +34,12 @@ import javafx.scene.shape.Cylinder;
 
 public class VisibleBond extends Visible<Bond> implements BondEventListener, AtomDesignListener {
 
-    private static final double CYLINDER_SCALE_NORM = VisibleAtom.BOND_SCALE;
-    private static final double CYLINDER_SCALE_BOLD = 1.2 * CYLINDER_SCALE_NORM;
+    protected static final double CYLINDER_SCALE_NORM = VisibleAtom.BOND_SCALE;
+    protected static final double CYLINDER_SCALE_BOLD = 1.2 * CYLINDER_SCALE_NORM;
 
     private static final int CYLINDER_DIV = 12;
 
-    private static final double SHOWING_RADIUS_SCALE = 1.15;
+    public static final double SHOWING_RADIUS_SCALE = 1.15;
 
     private static final double RMIN = VisibleAtom.RMIN;
     private static final double RRMIN = RMIN * RMIN;
@@ -16,7 +16,12 @@
 
 package burai.atoms.visible;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import burai.atoms.design.Design;
 import burai.atoms.model.Atom;
@@ -25,6 +30,7 @@ import burai.atoms.model.Cell;
 import burai.atoms.model.event.CellEvent;
 import burai.atoms.model.event.CellEventListener;
 import burai.atoms.model.property.CellProperty;
+import burai.com.env.Environments;
 import burai.com.math.Matrix3D;
 import javafx.geometry.Point3D;
 import javafx.scene.Node;
@@ -41,12 +47,42 @@ public class VisibleCell extends Visible<Cell> implements CellEventListener {
 
     private static final double WMIN = 1.0e-3;
 
+    private static final String PROP_KEY_BULK = "atoms_bulk_threshold";
+
+    private static final int DEFAULT_BULK_THRESHOLD = 2000;
+
+    private static Integer bulkThreshold = null;
+
+    /**
+     * @return the number of atoms, above which atoms and bonds are drawn as merged meshes (BulkAtoms).
+     * zero or negative value means that the bulk mode is not used.
+     */
+    public static synchronized int getBulkThreshold() {
+        if (bulkThreshold == null) {
+            bulkThreshold = Environments.getIntProperty(PROP_KEY_BULK, DEFAULT_BULK_THRESHOLD);
+        }
+
+        return bulkThreshold;
+    }
+
+    public static synchronized void setBulkThreshold(int threshold) {
+        bulkThreshold = threshold;
+    }
+
     private boolean boldMode;
 
     private boolean disableToSelect;
 
     private Cylinder[] latticeCylinders;
 
+    private BulkAtoms bulkAtoms;
+
+    private Isosurface isosurface;
+
+    private Map<Atom, VisibleAtom> visibleAtoms;
+
+    private Map<Bond, VisibleBond> visibleBonds;
+
     private boolean currentShowing;
     private double currentWidth;
     private Color currentColor;
@@ -72,6 +108,13 @@ public class VisibleCell extends Visible<Cell> implements CellEventListener {
             this.latticeCylinders[i] = new Cylinder(0.1, 1.0, CYLINDER_DIV);
         }
 
+        this.bulkAtoms = null;
+
+        this.isosurface = null;
+
+        this.visibleAtoms = new IdentityHashMap<Atom, VisibleAtom>();
+        this.visibleBonds = new IdentityHashMap<Bond, VisibleBond>();
+
         this.currentShowing = false;
         this.currentWidth = -1.0;
         this.currentColor = null;
@@ -90,12 +133,24 @@ public class VisibleCell extends Visible<Cell> implements CellEventListener {
         this.initChildren();
     }
 
-    private VisibleAtom createVisibleAtom(Atom atom) {
+    protected VisibleAtom createVisibleAtom(Atom atom) {
         VisibleAtom visibleAtom = new VisibleAtom(atom, this.design, this.disableToSelect, this.boldMode);
         this.toBeFlushedProperty().addListener(o -> visibleAtom.setToBeFlushed(this.isToBeFlushed()));
         return visibleAtom;
     }
 
+    private VisibleAtom putVisibleAtom(Atom atom) {
+        VisibleAtom visibleAtom = this.createVisibleAtom(atom);
+        this.visibleAtoms.put(atom, visibleAtom);
+        return visibleAtom;
+    }
+
+    private VisibleBond putVisibleBond(Bond bond) {
+        VisibleBond visibleBond = this.createVisibleBond(bond);
+        this.visibleBonds.put(bond, visibleBond);
+        return visibleBond;
+    }
+
     private VisibleBond createVisibleBond(Bond bond) {
         VisibleBond visibleBond = new VisibleBond(bond, this.design, this.boldMode);
         this.toBeFlushedProperty().addListener(o -> visibleBond.setToBeFlushed(this.isToBeFlushed()));
@@ -103,21 +158,157 @@ public class VisibleCell extends Visible<Cell> implements CellEventListener {
     }
 
     private void initChildren() {
+        if (this.toBeBulkMode(false)) {
+            this.bulkAtoms = new BulkAtoms(this, this.disableToSelect, this.boldMode);
+            this.getChildren().add(this.bulkAtoms);
+            return;
+        }
+
         List<Node> children = this.getChildren();
 
         Atom[] atoms = this.model.listAtoms();
         if (atoms != null) {
             for (Atom atom : atoms) {
-                children.add(this.createVisibleAtom(atom));
+                children.add(this.putVisibleAtom(atom));
+            }
+        }
+
+        Bond[] bonds = this.model.listBonds();
+        if (bonds != null) {
+            for (Bond bond : bonds) {
+                children.add(this.putVisibleBond(bond));
+            }
+        }
+    }
+
+    public Isosurface getIsosurface() {
+        return this.isosurface;
+    }
+
+    /**
+     * the isosurface is drawn in coordinates of the cell, and the previous one is disposed.
+     * @param isosurface null to remove the isosurface.
+     */
+    public void setIsosurface(Isosurface isosurface) {
+        if (this.isosurface == isosurface) {
+            return;
+        }
+
+        if (this.isosurface != null) {
+            this.isosurface.dispose();
+            this.getChildren().remove(this.isosurface);
+        }
+
+        this.isosurface = isosurface;
+
+        if (this.isosurface != null) {
+            this.getChildren().add(this.isosurface);
+        }
+    }
+
+    public boolean isBulkMode() {
+        return this.bulkAtoms != null;
+    }
+
+    /**
+     * bulk mode is left below a half of the threshold, so that modes are not switched too often.
+     */
+    private boolean toBeBulkMode(boolean bulkMode) {
+        int threshold = getBulkThreshold();
+        if (threshold <= 0) {
+            return false;
+        }
+
+        int numAtoms = this.model.numAtoms();
+        if (bulkMode) {
+            return numAtoms > (threshold / 2);
+        } else {
+            return numAtoms > threshold;
+        }
+    }
+
+    private void switchMode() {
+        boolean bulkMode = this.isBulkMode();
+        if (this.toBeBulkMode(bulkMode) == bulkMode) {
+            return;
+        }
+
+        if (bulkMode) {
+            this.switchToNormalMode();
+        } else {
+            this.switchToBulkMode();
+        }
+    }
+
+    private void switchToBulkMode() {
+        List<Node> children = this.getChildren();
+        List<VisibleAtom> visibleAtoms = new ArrayList<VisibleAtom>();
+        List<Node> nodesToKeep = new ArrayList<Node>();
+
+        for (Node child : children) {
+            if (child instanceof VisibleAtom) {
+                visibleAtoms.add((VisibleAtom) child);
+
+            } else if (child instanceof VisibleBond) {
+                VisibleBond visibleBond = (VisibleBond) child;
+                visibleBond.setToBeFlushed(true);
+                visibleBond.getModel().flushListeners();
+
+            } else {
+                nodesToKeep.add(child);
             }
         }
 
+        this.getChildren().setAll(nodesToKeep);
+        this.visibleAtoms.clear();
+        this.visibleBonds.clear();
+
+        this.bulkAtoms = new BulkAtoms(this, this.disableToSelect, this.boldMode);
+        for (VisibleAtom visibleAtom : visibleAtoms) {
+            this.bulkAtoms.putVisibleAtom(visibleAtom);
+        }
+
+        children.add(this.bulkAtoms);
+    }
+
+    private void switchToNormalMode() {
+        List<VisibleAtom> visibleAtoms = this.bulkAtoms.listVisibleAtoms();
+        this.bulkAtoms.dispose();
+
+        List<Node> children = this.getChildren();
+        children.remove(this.bulkAtoms);
+        this.bulkAtoms = null;
+
+        for (VisibleAtom visibleAtom : visibleAtoms) {
+            this.visibleAtoms.put(visibleAtom.getModel(), visibleAtom);
+        }
+
+        children.addAll(visibleAtoms);
+
         Bond[] bonds = this.model.listBonds();
         if (bonds != null) {
             for (Bond bond : bonds) {
-                children.add(this.createVisibleBond(bond));
+                children.add(this.putVisibleBond(bond));
+            }
+        }
+    }
+
+    /**
+     * @return VisibleAtoms of all atoms, which are created in the bulk mode if they do not exist.
+     */
+    public List<VisibleAtom> listVisibleAtoms() {
+        if (this.bulkAtoms != null) {
+            return this.bulkAtoms.listVisibleAtoms();
+        }
+
+        List<VisibleAtom> visibleAtoms = new ArrayList<VisibleAtom>();
+        for (Node child : this.getChildren()) {
+            if (child instanceof VisibleAtom) {
+                visibleAtoms.add((VisibleAtom) child);
             }
         }
+
+        return visibleAtoms;
     }
 
     private void updateVisibleCylinders() {
@@ -217,57 +408,121 @@ public class VisibleCell extends Visible<Cell> implements CellEventListener {
 
     @Override
     public void onAtomAdded(CellEvent event) {
-        Atom atom = event.getAtom();
-        this.getChildren().add(this.createVisibleAtom(atom));
+        if (this.bulkAtoms != null) {
+            this.bulkAtoms.requestUpdate(true);
+        } else {
+            Atom atom = event.getAtom();
+            this.getChildren().add(this.putVisibleAtom(atom));
+        }
+
+        this.switchMode();
     }
 
     @Override
     public void onAtomRemoved(CellEvent event) {
-        Atom notifiedAtom = event.getAtom();
-        List<Node> children = this.getChildren();
-
-        int index = -1;
-        for (int i = 0; i < children.size(); i++) {
-            Node child = children.get(i);
-            if (child instanceof VisibleAtom) {
-                Atom atom = ((VisibleAtom) child).getModel();
-                if (notifiedAtom == atom) {
-                    index = i;
-                    break;
-                }
-            }
+        if (this.bulkAtoms != null) {
+            this.bulkAtoms.requestUpdate(true);
+        } else {
+            this.removeVisibleAtom(event.getAtom());
         }
 
-        if (index > -1) {
-            children.remove(index);
+        this.switchMode();
+    }
+
+    private void removeVisibleAtom(Atom notifiedAtom) {
+        VisibleAtom visibleAtom = this.visibleAtoms.remove(notifiedAtom);
+        if (visibleAtom != null) {
+            this.getChildren().remove(visibleAtom);
         }
     }
 
     @Override
     public void onBondAdded(CellEvent event) {
+        if (this.bulkAtoms != null) {
+            this.bulkAtoms.requestUpdate(true);
+            return;
+        }
+
         Bond bond = event.getBond();
-        this.getChildren().add(this.createVisibleBond(bond));
+        this.getChildren().add(this.putVisibleBond(bond));
     }
 
     @Override
     public void onBondRemoved(CellEvent event) {
-        Bond notifiedBond = event.getBond();
-        List<Node> children = this.getChildren();
+        if (this.bulkAtoms != null) {
+            this.bulkAtoms.requestUpdate(true);
+            return;
+        }
+
+        VisibleBond visibleBond = this.visibleBonds.remove(event.getBond());
+        if (visibleBond != null) {
+            this.getChildren().remove(visibleBond);
+        }
+    }
+
+    @Override
+    public void onBatchCommitted(CellEvent event) {
+        if (this.bulkAtoms != null) {
+            this.bulkAtoms.requestUpdate(true);
+            this.switchMode();
+            return;
+        }
+
+        // nodes are removed and added in one pass of children
+        Set<Node> nodesToRemove = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+        List<Bond> removedBonds = event.getRemovedBonds();
+        if (removedBonds != null) {
+            for (Bond bond : removedBonds) {
+                VisibleBond visibleBond = this.visibleBonds.remove(bond);
+                if (visibleBond != null) {
+                    nodesToRemove.add(visibleBond);
+                }
+            }
+        }
+
+        List<Atom> removedAtoms = event.getRemovedAtoms();
+        if (removedAtoms != null) {
+            for (Atom atom : removedAtoms) {
+                VisibleAtom visibleAtom = this.visibleAtoms.remove(atom);
+                if (visibleAtom != null) {
+                    nodesToRemove.add(visibleAtom);
+                }
+            }
+        }
+
+        if (!nodesToRemove.isEmpty()) {
+            this.getChildren().removeAll(nodesToRemove);
+        }
+
+        if (this.toBeBulkMode(false)) {
+            // added atoms are drawn by BulkAtoms, without creating nodes
+            this.switchToBulkMode();
+            return;
+        }
+
+        List<Node> nodesToAdd = new ArrayList<Node>();
+
+        List<Atom> addedAtoms = event.getAddedAtoms();
+        if (addedAtoms != null) {
+            for (Atom atom : addedAtoms) {
+                if (!this.visibleAtoms.containsKey(atom)) {
+                    nodesToAdd.add(this.putVisibleAtom(atom));
+                }
+            }
+        }
 
-        int index = -1;
-        for (int i = 0; i < children.size(); i++) {
-            Node child = children.get(i);
-            if (child instanceof VisibleBond) {
-                Bond bond = ((VisibleBond) child).getModel();
-                if (notifiedBond == bond) {
-                    index = i;
-                    break;
+        List<Bond> addedBonds = event.getAddedBonds();
+        if (addedBonds != null) {
+            for (Bond bond : addedBonds) {
+                if (!this.visibleBonds.containsKey(bond)) {
+                    nodesToAdd.add(this.putVisibleBond(bond));
                 }
             }
         }
 
-        if (index > -1) {
-            children.remove(index);
+        if (!nodesToAdd.isEmpty()) {
+            this.getChildren().addAll(nodesToAdd);
         }
     }
 
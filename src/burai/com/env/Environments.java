@@ -40,6 +40,10 @@ public final class Environments {
 
     private static final String RECENTS_NAME = ".recent";
 
+    private static final String RUNNING_NAME = ".running";
+
+    private static final String SCFCACHE_NAME = ".scfcache";
+
     private static final String WEBDATA_NAME = ".webdata";
 
     private static final String WEBSITES_NAME = ".websites";
@@ -318,6 +322,46 @@ public final class Environments {
         return sshFile.getPath();
     }
 
+    public static String getRunningName() {
+        return RUNNING_NAME;
+    }
+
+    public static String getRunningPath() {
+        File runningFile = null;
+        String projPath = getProjectsPath();
+        if (projPath == null) {
+            runningFile = new File(RUNNING_NAME);
+        } else {
+            runningFile = new File(projPath, RUNNING_NAME);
+        }
+
+        return runningFile.getPath();
+    }
+
+    public static String getScfCacheName() {
+        return SCFCACHE_NAME;
+    }
+
+    public static String getScfCachePath() {
+        File cacheFile = null;
+        String projPath = getProjectsPath();
+        if (projPath == null) {
+            cacheFile = new File(SCFCACHE_NAME);
+        } else {
+            cacheFile = new File(projPath, SCFCACHE_NAME);
+        }
+
+        try {
+            if (!cacheFile.isDirectory()) {
+                cacheFile.mkdirs();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return cacheFile.getPath();
+    }
+
     public static String getRecentsName() {
         return RECENTS_NAME;
     }
@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.com.io;
+
+/**
+ * splits a line, held in a reusable char buffer, into tokens without creating Strings.
+ * numbers are read by a Fortran-aware parser, which accepts exponents of D (e.g. 1.0D-03)
+ * and returns NaN for overflowed fields (e.g. *****).
+ */
+public class LineTokenizer {
+
+    private static final int SIZE_TOKENS = 16;
+
+    private static final int MAX_FAST_DIGITS = 15;
+
+    private static final int MAX_FAST_EXPONENT = 22;
+
+    private static final double[] POWERS_OF_TEN = {
+            1.0e0, 1.0e1, 1.0e2, 1.0e3, 1.0e4, 1.0e5, 1.0e6, 1.0e7,
+            1.0e8, 1.0e9, 1.0e10, 1.0e11, 1.0e12, 1.0e13, 1.0e14, 1.0e15,
+            1.0e16, 1.0e17, 1.0e18, 1.0e19, 1.0e20, 1.0e21, 1.0e22
+    };
+
+    private char[] chars;
+
+    private int start;
+
+    private int end;
+
+    private boolean tokenized;
+
+    private int numTokens;
+
+    private int[] tokenStarts;
+
+    private int[] tokenEnds;
+
+    public LineTokenizer() {
+        this.chars = new char[0];
+        this.start = 0;
+        this.end = 0;
+        this.tokenized = true;
+        this.numTokens = 0;
+        this.tokenStarts = new int[SIZE_TOKENS];
+        this.tokenEnds = new int[SIZE_TOKENS];
+    }
+
+    /**
+     * the buffer is referred to, not copied, so it must not be changed until the next line is set.
+     * the line is trimmed as String#trim.
+     */
+    public void setLine(char[] chars, int length) {
+        if (chars == null) {
+            throw new IllegalArgumentException("chars is null.");
+        }
+
+        int start = 0;
+        int end = Math.max(0, Math.min(length, chars.length));
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (start < end && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        this.chars = chars;
+        this.start = start;
+        this.end = end;
+        this.tokenized = false;
+        this.numTokens = 0;
+    }
+
+    public void setLine(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("line is null.");
+        }
+
+        char[] chars = line.toCharArray();
+        this.setLine(chars, chars.length);
+    }
+
+    public int length() {
+        return this.end - this.start;
+    }
+
+    public boolean isEmpty() {
+        return this.end <= this.start;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length()) {
+            throw new IndexOutOfBoundsException("index = " + index);
+        }
+
+        return this.chars[this.start + index];
+    }
+
+    public boolean startsWith(String prefix) {
+        return this.startsWith(prefix, 0);
+    }
+
+    public boolean startsWith(String prefix, int from) {
+        if (prefix == null || from < 0) {
+            return false;
+        }
+
+        int length = prefix.length();
+        if ((from + length) > this.length()) {
+            return false;
+        }
+
+        int offset = this.start + from;
+        for (int i = 0; i < length; i++) {
+            if (this.chars[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int indexOf(char c) {
+        for (int i = this.start; i < this.end; i++) {
+            if (this.chars[i] == c) {
+                return i - this.start;
+            }
+        }
+
+        return -1;
+    }
+
+    public int indexOf(String str) {
+        if (str == null) {
+            return -1;
+        }
+
+        int last = this.length() - str.length();
+        for (int i = 0; i <= last; i++) {
+            if (this.startsWith(str, i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * tokenize the whole line, with white spaces as delimiters.
+     */
+    public void tokenize() {
+        this.tokenize(0, null);
+    }
+
+    /**
+     * tokenize the line from the position, with white spaces and extra delimiters.
+     * @param from position in the line, where tokenizing starts.
+     * @param delimiters extra delimiters (e.g. "()="), or null.
+     */
+    public void tokenize(int from, String delimiters) {
+        this.tokenized = true;
+        this.numTokens = 0;
+
+        int i = this.start + Math.max(0, from);
+        while (i < this.end) {
+            while (i < this.end && isDelimiter(this.chars[i], delimiters)) {
+                i++;
+            }
+            if (i >= this.end) {
+                break;
+            }
+
+            int tokenStart = i;
+            while (i < this.end && !isDelimiter(this.chars[i], delimiters)) {
+                i++;
+            }
+
+            this.addToken(tokenStart, i);
+        }
+    }
+
+    private static boolean isDelimiter(char c, String delimiters) {
+        if (Character.isWhitespace(c)) {
+            return true;
+        }
+
+        return delimiters != null && delimiters.indexOf(c) > -1;
+    }
+
+    private void addToken(int tokenStart, int tokenEnd) {
+        if (this.numTokens >= this.tokenStarts.length) {
+            int size = 2 * this.tokenStarts.length;
+            int[] tokenStarts2 = new int[size];
+            int[] tokenEnds2 = new int[size];
+            System.arraycopy(this.tokenStarts, 0, tokenStarts2, 0, this.numTokens);
+            System.arraycopy(this.tokenEnds, 0, tokenEnds2, 0, this.numTokens);
+            this.tokenStarts = tokenStarts2;
+            this.tokenEnds = tokenEnds2;
+        }
+
+        this.tokenStarts[this.numTokens] = tokenStart;
+        this.tokenEnds[this.numTokens] = tokenEnd;
+        this.numTokens++;
+    }
+
+    public int numTokens() {
+        if (!this.tokenized) {
+            this.tokenize();
+        }
+
+        return this.numTokens;
+    }
+
+    private boolean hasToken(int index) {
+        return index >= 0 && index < this.numTokens();
+    }
+
+    /**
+     * this method creates a String, so should be used only for values to be kept.
+     * @return the token, or null if not exists.
+     */
+    public String getToken(int index) {
+        if (!this.hasToken(index)) {
+            return null;
+        }
+
+        int tokenStart = this.tokenStarts[index];
+        return new String(this.chars, tokenStart, this.tokenEnds[index] - tokenStart);
+    }
+
+    public boolean equalsToken(int index, String str) {
+        if (str == null || !this.hasToken(index)) {
+            return false;
+        }
+
+        int tokenStart = this.tokenStarts[index];
+        int length = this.tokenEnds[index] - tokenStart;
+        if (length != str.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (this.chars[tokenStart + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the value of the token, or NaN if not exists or not a number.
+     */
+    public double getDouble(int index) {
+        if (!this.hasToken(index)) {
+            return Double.NaN;
+        }
+
+        return parseDouble(this.chars, this.tokenStarts[index], this.tokenEnds[index]);
+    }
+
+    /**
+     * @return the value of the token, or defaultValue if not exists or not an integer.
+     */
+    public int getInt(int index, int defaultValue) {
+        if (!this.hasToken(index)) {
+            return defaultValue;
+        }
+
+        int i = this.tokenStarts[index];
+        int tokenEnd = this.tokenEnds[index];
+
+        boolean negative = false;
+        if (this.chars[i] == '+' || this.chars[i] == '-') {
+            negative = this.chars[i] == '-';
+            i++;
+        }
+        if (i >= tokenEnd) {
+            return defaultValue;
+        }
+
+        long value = 0L;
+        for (; i < tokenEnd; i++) {
+            char c = this.chars[i];
+            if (c < '0' || c > '9') {
+                return defaultValue;
+            }
+
+            value = 10L * value + (c - '0');
+            if (value > ((long) Integer.MAX_VALUE + 1L)) {
+                return defaultValue;
+            }
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            return defaultValue;
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * read a number in the fixed columns of the line, such as Fortran's F7.4.
+     * @return the value, or NaN if not a number.
+     */
+    public double getDouble(int from, int to) {
+        if (from < 0 || to > this.length() || from >= to) {
+            return Double.NaN;
+        }
+
+        int i = this.start + from;
+        int j = this.start + to;
+        while (i < j && this.chars[i] <= ' ') {
+            i++;
+        }
+        while (i < j && this.chars[j - 1] <= ' ') {
+            j--;
+        }
+
+        return parseDouble(this.chars, i, j);
+    }
+
+    /**
+     * parse a number written by Fortran programs.
+     * in addition to Java's format, D or Q can be an exponent (e.g. 1.0D-03),
+     * and the exponent character can be omitted (e.g. 1.0-100).
+     * @return the value, or NaN if not a number (including overflowed fields, e.g. *****).
+     */
+    public static double parseDouble(char[] chars, int start, int end) {
+        if (chars == null || start < 0 || end > chars.length || start >= end) {
+            return Double.NaN;
+        }
+
+        int i = start;
+
+        boolean negative = false;
+        if (chars[i] == '+' || chars[i] == '-') {
+            negative = chars[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0L;
+        int numDigits = 0;
+        int numSignificants = 0;
+        int exponent = 0;
+        boolean hasPoint = false;
+
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                numDigits++;
+                if (mantissa == 0L && c == '0') {
+                    // leading zero is not significant
+                } else if (numSignificants < 18) {
+                    mantissa = 10L * mantissa + (c - '0');
+                    numSignificants++;
+                } else {
+                    numSignificants++;
+                    if (!hasPoint) {
+                        exponent++;
+                    }
+                    continue;
+                }
+                if (hasPoint) {
+                    exponent--;
+                }
+
+            } else if (c == '.' && !hasPoint) {
+                hasPoint = true;
+
+            } else {
+                break;
+            }
+        }
+
+        if (numDigits < 1) {
+            return Double.NaN;
+        }
+
+        if (i < end) {
+            char c = chars[i];
+            if (c == 'e' || c == 'E' || c == 'd' || c == 'D' || c == 'q' || c == 'Q') {
+                i++;
+            } else if (c != '+' && c != '-') {
+                return Double.NaN;
+            }
+
+            boolean negativeExp = false;
+            if (i < end && (chars[i] == '+' || chars[i] == '-')) {
+                negativeExp = chars[i] == '-';
+                i++;
+            }
+            if (i >= end) {
+                return Double.NaN;
+            }
+
+            int exponent2 = 0;
+            for (; i < end; i++) {
+                c = chars[i];
+                if (c < '0' || c > '9') {
+                    return Double.NaN;
+                }
+                if (exponent2 < 100000) {
+                    exponent2 = 10 * exponent2 + (c - '0');
+                }
+            }
+
+            exponent += negativeExp ? -exponent2 : exponent2;
+        }
+
+        double value = 0.0;
+        if (mantissa == 0L) {
+            value = 0.0;
+
+        } else if (numSignificants <= MAX_FAST_DIGITS && Math.abs(exponent) <= MAX_FAST_EXPONENT) {
+            // both of mantissa and 10^|exponent| are exact, so the result is correctly rounded.
+            if (exponent < 0) {
+                value = ((double) mantissa) / POWERS_OF_TEN[-exponent];
+            } else {
+                value = ((double) mantissa) * POWERS_OF_TEN[exponent];
+            }
+
+        } else {
+            return parseDoubleSlowly(chars, start, end);
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlowly(char[] chars, int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start + 1);
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == 'd' || c == 'D' || c == 'q' || c == 'Q') {
+                builder.append('E');
+            } else if ((c == '+' || c == '-') && i > start && (chars[i - 1] == '.' || Character.isDigit(chars[i - 1]))) {
+                builder.append('E');
+                builder.append(c);
+            } else {
+                builder.append(c);
+            }
+        }
+
+        try {
+            return Double.parseDouble(builder.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.com.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * reads lines of a growing (append-only) text file, from a byte offset.
+ * a line is returned only if it is terminated by a line feed,
+ * so that an incomplete line at the tail is read again after the file grows.
+ * once the tail is reached, readLine returns null until seek is called.
+ */
+public class TailReader implements Closeable {
+
+    private static final int SIZE_BUFFER = 64 * 1024;
+
+    private static final int SIZE_LINE = 256;
+
+    private File file;
+
+    private RandomAccessFile accessFile;
+
+    private long offset;
+
+    private byte[] buffer;
+
+    private long bufferOffset;
+
+    private int bufferPosition;
+
+    private int bufferLength;
+
+    private char[] line;
+
+    private boolean tailReached;
+
+    public TailReader(String path) {
+        this(path == null ? null : new File(path));
+    }
+
+    public TailReader(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        this.file = file;
+        this.accessFile = null;
+        this.offset = 0L;
+        this.buffer = new byte[SIZE_BUFFER];
+        this.bufferOffset = 0L;
+        this.bufferPosition = 0;
+        this.bufferLength = 0;
+        this.line = new char[SIZE_LINE];
+        this.tailReached = false;
+    }
+
+    /**
+     * @return the offset of the head of the next line.
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public void seek(long offset) {
+        this.offset = Math.max(0L, offset);
+        this.bufferOffset = this.offset;
+        this.bufferPosition = 0;
+        this.bufferLength = 0;
+        this.tailReached = false;
+    }
+
+    /**
+     * @return true if the file has become shorter than the offset, which means it was rewritten.
+     */
+    public boolean isTruncated() {
+        return this.file.length() < this.offset;
+    }
+
+    public boolean isTailReached() {
+        return this.tailReached;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (this.accessFile == null) {
+            if (!this.file.isFile()) {
+                throw new FileNotFoundException(this.file.getPath());
+            }
+            this.accessFile = new RandomAccessFile(this.file, "r");
+        }
+
+        this.bufferOffset += this.bufferLength;
+        this.bufferPosition = 0;
+        this.bufferLength = 0;
+
+        this.accessFile.seek(this.bufferOffset);
+        int length = this.accessFile.read(this.buffer, 0, this.buffer.length);
+        if (length < 1) {
+            return false;
+        }
+
+        this.bufferLength = length;
+        return true;
+    }
+
+    /**
+     * @return the next line without line-feed code, or null if no complete line is left.
+     */
+    public String readLine() throws IOException {
+        int length = this.readLineKernel();
+        if (length < 0) {
+            return null;
+        }
+
+        return new String(this.line, 0, length);
+    }
+
+    /**
+     * read the next line into the tokenizer, without creating a String.
+     * @return false if no complete line is left.
+     */
+    public boolean readLine(LineTokenizer tokenizer) throws IOException {
+        if (tokenizer == null) {
+            throw new IllegalArgumentException("tokenizer is null.");
+        }
+
+        int length = this.readLineKernel();
+        if (length < 0) {
+            return false;
+        }
+
+        tokenizer.setLine(this.line, length);
+        return true;
+    }
+
+    private int readLineKernel() throws IOException {
+        if (this.tailReached) {
+            return -1;
+        }
+
+        int length = 0;
+        long lineOffset = this.offset;
+
+        while (true) {
+            if (this.bufferPosition >= this.bufferLength) {
+                if (!this.fillBuffer()) {
+                    // incomplete line is left for the next reading
+                    this.seek(lineOffset);
+                    this.tailReached = true;
+                    return -1;
+                }
+            }
+
+            byte b = this.buffer[this.bufferPosition];
+            this.bufferPosition++;
+
+            if (b == '\n') {
+                break;
+            }
+
+            if (length >= this.line.length) {
+                char[] line2 = new char[2 * this.line.length];
+                System.arraycopy(this.line, 0, line2, 0, length);
+                this.line = line2;
+            }
+
+            this.line[length] = (char) (b & 0xff);
+            length++;
+        }
+
+        if (length > 0 && this.line[length - 1] == '\r') {
+            length--;
+        }
+
+        this.offset = this.bufferOffset + this.bufferPosition;
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.accessFile != null) {
+            try {
+                this.accessFile.close();
+            } finally {
+                this.accessFile = null;
+            }
+        }
+
+        this.seek(this.offset);
+    }
+}
@@ -20,9 +20,10 @@ public class Parallel<E, R> {
 
     public static SumRule<Boolean> booleanAndRule() {
         return (b1, b2) -> {
-            boolean b3 = false;
-            b3 = b3 && (b1 == null ? false : b1);
-            b3 = b3 && (b2 == null ? false : b2);
+            // null is a result, which is not summed yet
+            boolean b3 = true;
+            b3 = b3 && (b1 == null ? true : b1);
+            b3 = b3 && (b2 == null ? true : b2);
             return b3;
         };
     }
@@ -56,24 +57,27 @@ public class Parallel<E, R> {
 
     private int numThreads;
 
-    private int threadCounter;
-
     private E[] elements;
 
     private R result;
 
     private SumRule<R> sumRule;
 
+    private volatile boolean cancelled;
+
+    private volatile ParallelRange<R> range;
+
     public Parallel(E[] elements) {
         if (elements == null) {
             throw new IllegalArgumentException("elements is null.");
         }
 
         this.numThreads = 1;
-        this.threadCounter = 0;
         this.elements = elements;
         this.result = null;
         this.sumRule = null;
+        this.cancelled = false;
+        this.range = null;
     }
 
     public synchronized void setNumThreads(int numThreads) {
@@ -88,52 +92,52 @@ public class Parallel<E, R> {
         this.sumRule = sumRule;
     }
 
+    /**
+     * stop performing the rest of elements, which can be called from any thread.
+     * a cancelled Parallel is not performed any more, even if cancelled before forEach.
+     */
+    public void cancel() {
+        this.cancelled = true;
+
+        ParallelRange<R> range = this.range;
+        if (range != null) {
+            range.cancel();
+        }
+    }
+
+    /**
+     * @return wall time [nsec] of the last forEach.
+     */
+    public long getElapsedTime() {
+        ParallelRange<R> range = this.range;
+        return range == null ? 0L : range.getElapsedTime();
+    }
+
+    /**
+     * @return total time [nsec] spent in tasks of the last forEach.
+     */
+    public long getTaskTime() {
+        ParallelRange<R> range = this.range;
+        return range == null ? 0L : range.getTaskTime();
+    }
+
     public synchronized R forEach(Performance<E, R> performance) {
         if (performance == null) {
             return null;
         }
 
-        this.threadCounter = 0;
-        int numThreads2 = this.numThreads;
+        ParallelRange<R> range = new ParallelRange<R>(this.elements.length);
+        range.setNumThreads(this.numThreads);
+        range.setSumRule(this.sumRule);
+        this.range = range;
 
-        for (int iThread = 0; iThread < numThreads2; iThread++) {
-            this.forEachKernel(iThread, numThreads2, performance);
+        // cancel may be called between creating and publishing the range
+        if (this.cancelled) {
+            range.cancel();
         }
 
-        while (this.threadCounter < numThreads2) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+        this.result = range.forEach(i -> performance.perform(this.elements[i]));
 
         return this.result;
     }
-
-    private void forEachKernel(int iThread, int numThreads, Performance<E, R> performance) {
-        Thread thread = new Thread(() -> {
-            R result1 = null;
-            for (int iElement = 0; iElement < this.elements.length; iElement++) {
-                if ((iElement % numThreads) == iThread) {
-                    E element = this.elements[iElement];
-                    R result2 = performance.perform(element);
-                    if (this.sumRule != null) {
-                        result1 = this.sumRule.sum(result1, result2);
-                    }
-                }
-            }
-
-            synchronized (this) {
-                this.threadCounter++;
-                if (this.sumRule != null) {
-                    this.result = this.sumRule.sum(this.result, result1);
-                }
-
-                this.notifyAll();
-            }
-        });
-
-        thread.start();
-    }
 }
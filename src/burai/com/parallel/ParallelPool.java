@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.com.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+
+import burai.com.env.Environments;
+
+public final class ParallelPool {
+
+    private ParallelPool() {
+        // NOP
+    }
+
+    private static ForkJoinPool pool = null;
+
+    /**
+     * a work-stealing pool shared by all parallel sections.
+     * its worker threads are daemons, and bounded by the number of CPUs.
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int numThreads = Math.max(1, Environments.getNumCUPs());
+            pool = new ForkJoinPool(numThreads);
+        }
+
+        return pool;
+    }
+
+    public static int getParallelism() {
+        return getPool().getParallelism();
+    }
+}
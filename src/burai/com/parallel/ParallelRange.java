@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.com.parallel;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * performs on int indexes [start, end), which are divided into chunks,
+ * with the work-stealing pool of ParallelPool.
+ */
+public class ParallelRange<R> {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private int start;
+
+    private int end;
+
+    private int numThreads;
+
+    private int chunkSize;
+
+    private R result;
+
+    private SumRule<R> sumRule;
+
+    private volatile boolean cancelled;
+
+    private AtomicInteger numTasks;
+
+    private AtomicLong taskTime;
+
+    private AtomicLong maxTaskTime;
+
+    private long elapsedTime;
+
+    public ParallelRange(int end) {
+        this(0, end);
+    }
+
+    public ParallelRange(int start, int end) {
+        if (start > end) {
+            throw new IllegalArgumentException("start is larger than end.");
+        }
+
+        this.start = start;
+        this.end = end;
+        this.numThreads = ParallelPool.getParallelism();
+        this.chunkSize = 0;
+        this.result = null;
+        this.sumRule = null;
+        this.cancelled = false;
+        this.numTasks = new AtomicInteger(0);
+        this.taskTime = new AtomicLong(0L);
+        this.maxTaskTime = new AtomicLong(0L);
+        this.elapsedTime = 0L;
+    }
+
+    public synchronized void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param chunkSize number of indexes performed by one task, or 0 to be decided automatically.
+     */
+    public synchronized void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(0, chunkSize);
+    }
+
+    public synchronized R getResult() {
+        return this.result;
+    }
+
+    public synchronized void setSumRule(SumRule<R> sumRule) {
+        this.sumRule = sumRule;
+    }
+
+    /**
+     * stop performing the rest of indexes, which can be called from any thread.
+     * a cancelled range is not performed any more, even if cancelled before forEach.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * @return number of tasks (chunks) performed in the last forEach.
+     */
+    public int getNumTasks() {
+        return this.numTasks.get();
+    }
+
+    /**
+     * @return total time [nsec] spent in tasks of the last forEach.
+     */
+    public long getTaskTime() {
+        return this.taskTime.get();
+    }
+
+    /**
+     * @return time [nsec] of the slowest task of the last forEach.
+     */
+    public long getMaxTaskTime() {
+        return this.maxTaskTime.get();
+    }
+
+    /**
+     * @return wall time [nsec] of the last forEach.
+     */
+    public synchronized long getElapsedTime() {
+        return this.elapsedTime;
+    }
+
+    public synchronized R forEach(IntPerformance<R> performance) {
+        if (performance == null) {
+            return null;
+        }
+
+        this.numTasks.set(0);
+        this.taskTime.set(0L);
+        this.maxTaskTime.set(0L);
+
+        long time0 = System.nanoTime();
+
+        int size = this.end - this.start;
+        int numThreads2 = Math.min(this.numThreads, ParallelPool.getParallelism());
+
+        if (size < 1) {
+            this.result = null;
+
+        } else if (numThreads2 < 2 || size < 2) {
+            // serial calculation
+            this.result = this.forEachKernel(this.start, this.end, performance);
+
+        } else {
+            // parallel calculation
+            int chunkSize2 = this.chunkSize;
+            if (chunkSize2 < 1) {
+                chunkSize2 = Math.max(1, size / (CHUNKS_PER_THREAD * numThreads2));
+            }
+
+            ForkJoinPool pool = ParallelPool.getPool();
+            this.result = pool.invoke(new RangeTask(this.start, this.end, chunkSize2, performance));
+        }
+
+        this.elapsedTime = System.nanoTime() - time0;
+
+        return this.result;
+    }
+
+    private R forEachKernel(int start, int end, IntPerformance<R> performance) {
+        long time1 = System.nanoTime();
+
+        R result1 = null;
+        for (int i = start; i < end; i++) {
+            if (this.cancelled) {
+                break;
+            }
+
+            R result2 = performance.perform(i);
+            if (this.sumRule != null) {
+                result1 = this.sumRule.sum(result1, result2);
+            }
+        }
+
+        long time2 = System.nanoTime() - time1;
+        this.numTasks.incrementAndGet();
+        this.taskTime.addAndGet(time2);
+        this.maxTaskTime.accumulateAndGet(time2, Math::max);
+
+        return result1;
+    }
+
+    private class RangeTask extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int start;
+
+        private int end;
+
+        private int chunkSize;
+
+        private IntPerformance<R> performance;
+
+        public RangeTask(int start, int end, int chunkSize, IntPerformance<R> performance) {
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.performance = performance;
+        }
+
+        @Override
+        protected R compute() {
+            if (ParallelRange.this.cancelled) {
+                return null;
+            }
+
+            if ((this.end - this.start) <= this.chunkSize) {
+                return ParallelRange.this.forEachKernel(this.start, this.end, this.performance);
+            }
+
+            int middle = (this.start + this.end) >>> 1;
+            RangeTask task1 = new RangeTask(this.start, middle, this.chunkSize, this.performance);
+            RangeTask task2 = new RangeTask(middle, this.end, this.chunkSize, this.performance);
+            task2.fork();
+            R result1 = task1.compute();
+            R result2 = task2.join();
+
+            if (ParallelRange.this.sumRule != null) {
+                return ParallelRange.this.sumRule.sum(result1, result2);
+            }
+
+            return null;
+        }
+    }
+}
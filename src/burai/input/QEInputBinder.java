@@ -16,6 +16,9 @@
 
 package burai.input;
 
+import java.util.Arrays;
+import java.util.List;
+
 import burai.atoms.model.Atom;
 import burai.atoms.model.Cell;
 import burai.atoms.model.event.AtomEvent;
@@ -478,6 +481,96 @@ public class QEInputBinder implements AtomEventListener, CellEventListener {
         // NOP
     }
 
+    @Override
+    public void onBatchCommitted(CellEvent event) {
+        if (event == null) {
+            return;
+        }
+
+        Object source = event.getSource();
+        if (source == null || !(source instanceof Cell)) {
+            return;
+        }
+        Cell cell = (Cell) source;
+
+        List<Atom> removedAtoms = event.getRemovedAtoms();
+        if (removedAtoms != null && !(removedAtoms.isEmpty())) {
+            this.removeAtoms(cell, removedAtoms);
+        }
+
+        List<Atom> addedAtoms = event.getAddedAtoms();
+        if (addedAtoms != null) {
+            for (Atom atom : addedAtoms) {
+                CellEvent event2 = new CellEvent(cell);
+                event2.setAtom(atom);
+                this.onAtomAdded(event2);
+            }
+        }
+    }
+
+    /**
+     * removed atoms are no longer in the cell, so positions are removed from the last index,
+     * and indexes of the remaining atoms are shifted at once.
+     */
+    private void removeAtoms(Cell cell, List<Atom> removedAtoms) {
+        if (this.input.isBusyWithActions()) {
+            return;
+        }
+
+        int numIndexes = 0;
+        int[] indexes = new int[removedAtoms.size()];
+        for (Atom atom : removedAtoms) {
+            if (atom != null && (!atom.isSlaveAtom())) {
+                indexes[numIndexes++] = atom.intProperty(AtomProperty.INPUT_INDEX);
+            }
+        }
+
+        if (numIndexes < 1) {
+            return;
+        }
+
+        indexes = Arrays.copyOf(indexes, numIndexes);
+        Arrays.sort(indexes);
+
+        cell.setProperty(QEGeometryInput.MODEL_BUSY, true);
+
+        QECard card = this.input.getCard(QEAtomicPositions.CARD_NAME);
+        if (card != null && card instanceof QEAtomicPositions) {
+            QEAtomicPositions atomicPositions = (QEAtomicPositions) card;
+            for (int i = (indexes.length - 1); i >= 0; i--) {
+                int index = indexes[i];
+                if (0 <= index && index < atomicPositions.numPositions()) {
+                    atomicPositions.removePosition(index);
+                }
+            }
+        }
+
+        Atom[] atoms = cell.listAtoms(true);
+        for (int i = 0; atoms != null && i < atoms.length; i++) {
+            if (atoms[i] == null || !(atoms[i].hasProperty(AtomProperty.INPUT_INDEX))) {
+                continue;
+            }
+
+            int myIndex = atoms[i].intProperty(AtomProperty.INPUT_INDEX);
+            int numShift = 0;
+            int upper = indexes.length;
+            while (numShift < upper) {
+                int middle = (numShift + upper) / 2;
+                if (indexes[middle] <= myIndex) {
+                    numShift = middle + 1;
+                } else {
+                    upper = middle;
+                }
+            }
+
+            if (numShift > 0) {
+                atoms[i].setProperty(AtomProperty.INPUT_INDEX, myIndex - numShift);
+            }
+        }
+
+        cell.setProperty(QEGeometryInput.MODEL_BUSY, false);
+    }
+
     @Override
     public void onAtomRenamed(AtomEvent event) {
         if (this.input.isBusyWithActions()) {
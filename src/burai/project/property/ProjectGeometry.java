@@ -39,7 +39,11 @@ public class ProjectGeometry {
 
     private List<Atom> atoms;
 
+    private transient boolean modified;
+
     public ProjectGeometry() {
+        this.modified = true;
+
         this.converged = false;
 
         this.time = 0.0;
@@ -53,12 +57,24 @@ public class ProjectGeometry {
         this.atoms = null;
     }
 
+    /**
+     * @return true if this geometry has been changed after it was saved.
+     */
+    protected synchronized boolean isModified() {
+        return this.modified;
+    }
+
+    protected synchronized void setModified(boolean modified) {
+        this.modified = modified;
+    }
+
     public synchronized boolean isConverged() {
         return this.converged;
     }
 
     public synchronized void setConverged(boolean converged) {
         this.converged = converged;
+        this.modified = true;
     }
 
     public synchronized double getTime() {
@@ -67,6 +83,7 @@ public class ProjectGeometry {
 
     public synchronized void setTime(double time) {
         this.time = time;
+        this.modified = true;
     }
 
     public synchronized double getEnergy() {
@@ -75,6 +92,7 @@ public class ProjectGeometry {
 
     public synchronized void setEnergy(double energy) {
         this.energy = energy;
+        this.modified = true;
     }
 
     public synchronized double getTotalForce() {
@@ -83,6 +101,7 @@ public class ProjectGeometry {
 
     public synchronized void setTotalForce(double totalForce) {
         this.totalForce = totalForce;
+        this.modified = true;
     }
 
     public synchronized double getTemperature() {
@@ -91,6 +110,7 @@ public class ProjectGeometry {
 
     public synchronized void setTemperature(double temperature) {
         this.temperature = temperature;
+        this.modified = true;
     }
 
     public synchronized double getKinetic() {
@@ -99,6 +119,7 @@ public class ProjectGeometry {
 
     public synchronized void setKinetic(double kinetic) {
         this.kinetic = kinetic;
+        this.modified = true;
     }
 
     private double convertDouble(Double obj) {
@@ -124,6 +145,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void setCell(double[][] cellArray) {
+        this.modified = true;
+
         if (cellArray == null || cellArray.length < 3) {
             throw new IllegalArgumentException("cellArray is incorrect.");
         }
@@ -170,6 +193,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void setStress(double[][] stressArray) {
+        this.modified = true;
+
         if (stressArray == null || stressArray.length < 3) {
             throw new IllegalArgumentException("stressArray is incorrect.");
         }
@@ -245,6 +270,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void removeAtom(int i) throws IndexOutOfBoundsException {
+        this.modified = true;
+
         if (this.atoms == null || i < 0 || i >= this.atoms.size()) {
             throw new IndexOutOfBoundsException("incorrect index of atoms: " + i + ".");
         }
@@ -253,6 +280,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void removeAtom(String name, double x, double y, double z) {
+        this.modified = true;
+
         if (name == null) {
             throw new IllegalArgumentException("name is null.");
         }
@@ -273,6 +302,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void addAtom(String name, double x, double y, double z) {
+        this.modified = true;
+
         if (name == null) {
             throw new IllegalArgumentException("name is null.");
         }
@@ -290,6 +321,8 @@ public class ProjectGeometry {
     }
 
     public synchronized void setForce(int i, double fx, double fy, double fz) throws IndexOutOfBoundsException {
+        this.modified = true;
+
         Atom atom = this.getAtom(i);
         if (atom != null) {
             atom.fx = fx;
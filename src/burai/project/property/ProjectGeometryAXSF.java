@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.project.property;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import burai.atoms.model.AtomsBuffer;
+import burai.atoms.reader.AXSFTrajectory;
+import burai.com.consts.Constants;
+
+/**
+ * frames of an AXSF file, which are read as geometries of ProjectGeometryList.
+ * the file is only read, and geometries are written into a binary file of ProjectGeometryFile.
+ */
+public class ProjectGeometryAXSF extends ProjectGeometryFile {
+
+    // Hartree/Angstrom -> Ry/Bohr
+    private static final double FORCE_SCALE = 2.0 * Constants.BOHR_RADIUS_ANGS;
+
+    private AXSFTrajectory trajectory;
+
+    protected ProjectGeometryAXSF(File file) {
+        super(file);
+        this.trajectory = new AXSFTrajectory(file);
+    }
+
+    @Override
+    protected boolean isFile(File file) {
+        // AXSF file is never written
+        return false;
+    }
+
+    @Override
+    protected int numFrames() {
+        return this.trajectory.numFrames();
+    }
+
+    @Override
+    protected int getGeneration() {
+        return 0;
+    }
+
+    @Override
+    protected int numValidFrames(int generation, int numFrames) {
+        return Math.min(numFrames, this.trajectory.numFrames());
+    }
+
+    @Override
+    protected String getCellAxis() {
+        return null;
+    }
+
+    @Override
+    protected boolean isMolecule() {
+        return this.trajectory.isMolecule();
+    }
+
+    @Override
+    protected boolean isConverged() {
+        return false;
+    }
+
+    @Override
+    protected void readIndex() throws IOException {
+        this.trajectory.index();
+    }
+
+    @Override
+    protected ProjectGeometry[] readGeometries(int from, int to) throws IOException {
+        AXSFTrajectory.Frame[] frames = this.trajectory.readFrames(from, to);
+
+        ProjectGeometry[] geometries = new ProjectGeometry[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            geometries[i] = toGeometry(frames[i]);
+        }
+
+        return geometries;
+    }
+
+    @Override
+    protected ProjectGeometry readGeometry(int index) throws IOException {
+        return toGeometry(this.trajectory.readFrame(index));
+    }
+
+    @Override
+    protected void writeGeometries(ProjectGeometryList geometryList, List<ProjectGeometry> geometries, int start)
+            throws IOException {
+
+        throw new IOException("cannot write into a AXSF file.");
+    }
+
+    private static ProjectGeometry toGeometry(AXSFTrajectory.Frame frame) throws IOException {
+        if (frame.lattice == null) {
+            throw new IOException("no lattice in a AXSF file.");
+        }
+
+        double[][] lattice = new double[3][3];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                lattice[i][j] = frame.lattice[i][j] / Constants.BOHR_RADIUS_ANGS;
+            }
+        }
+
+        ProjectGeometry geometry = new ProjectGeometry();
+        geometry.setCell(lattice);
+
+        AtomsBuffer atoms = frame.atoms;
+        int natom = atoms == null ? 0 : atoms.numAtoms();
+        for (int i = 0; i < natom; i++) {
+            double x = atoms.getX(i) / Constants.BOHR_RADIUS_ANGS;
+            double y = atoms.getY(i) / Constants.BOHR_RADIUS_ANGS;
+            double z = atoms.getZ(i) / Constants.BOHR_RADIUS_ANGS;
+            geometry.addAtom(atoms.getName(i), x, y, z);
+
+            if (frame.forces != null) {
+                double fx = frame.forces[3 * i + 0] * FORCE_SCALE;
+                double fy = frame.forces[3 * i + 1] * FORCE_SCALE;
+                double fz = frame.forces[3 * i + 2] * FORCE_SCALE;
+                geometry.setForce(i, fx, fy, fz);
+            }
+        }
+
+        geometry.setModified(false);
+        return geometry;
+    }
+}
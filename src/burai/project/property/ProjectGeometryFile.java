@@ -0,0 +1,595 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.project.property;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * binary file of ProjectGeometryList, which can be appended frame by frame.
+ *
+ * header (HEADER_SIZE bytes):
+ *   magic, version, number of frames, converged, molecule, cellAxis.
+ * frame:
+ *   size of frame, number of atoms, converged, time, energy, totalForce, kinetic, temperature,
+ *   cell(9), stress(9), columns of x, y, z, fx, fy, fz, and names of atoms.
+ *
+ * the number of frames in the header is written after frames,
+ * so that an incomplete frame (e.g. by a crash while saving) is not read.
+ * offsets of frames are also written in the index file (*.idx), so that the file can be opened
+ * without reading all frames. the index file is only a cache, and is rebuilt if broken.
+ *
+ * the file is read by positional reading, not by memory-mapping,
+ * because a mapped file cannot be truncated or deleted on Windows, until the mapping is garbage-collected.
+ *
+ * the file may be shared by copies of ProjectGeometryList, which read it while it is written,
+ * so that the index and frames are read and written with the lock of this object.
+ */
+public class ProjectGeometryFile {
+
+    private static final byte[] MAGIC = { 'B', 'U', 'R', 'A', 'I', 'G', 'E', 'O' };
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 128;
+
+    private static final int MAX_CELL_AXIS = HEADER_SIZE - 20;
+
+    private static final byte[] INDEX_MAGIC = { 'B', 'U', 'R', 'A', 'I', 'I', 'D', 'X' };
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    private static final int FRAME_HEAD_SIZE = 4 + 4 + 1 + 5 * 8 + (1 + 9 * 8) + (1 + 9 * 8);
+
+    public static boolean isGeometryFile(File file) {
+        if (file == null || !file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(file, "r")) {
+            accessFile.readFully(magic);
+        } catch (IOException e) {
+            return false;
+        }
+
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    private File file;
+
+    private File indexFile;
+
+    private int numFrames;
+
+    private long[] offsets;
+
+    private long endOffset;
+
+    private String cellAxis;
+
+    private boolean molecule;
+
+    private boolean converged;
+
+    private int generation;
+
+    private int[] truncations;
+
+    protected ProjectGeometryFile(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        this.file = file;
+        this.indexFile = new File(file.getPath() + INDEX_EXTENSION);
+        this.numFrames = 0;
+        this.offsets = new long[16];
+        this.endOffset = HEADER_SIZE;
+        this.cellAxis = null;
+        this.molecule = false;
+        this.converged = false;
+        this.generation = 0;
+        this.truncations = new int[0];
+    }
+
+    protected boolean isFile(File file) {
+        if (file == null) {
+            return false;
+        }
+
+        return this.file.getAbsoluteFile().equals(file.getAbsoluteFile());
+    }
+
+    protected synchronized int numFrames() {
+        return this.numFrames;
+    }
+
+    /**
+     * generation is incremented, when frames are overwritten.
+     */
+    protected synchronized int getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @return number of frames, which have not been overwritten since the generation.
+     */
+    protected synchronized int numValidFrames(int generation, int numFrames) {
+        int numFrames2 = Math.min(numFrames, this.numFrames);
+        for (int i = Math.max(0, generation); i < this.generation; i++) {
+            numFrames2 = Math.min(numFrames2, this.truncations[i]);
+        }
+
+        return numFrames2;
+    }
+
+    protected synchronized String getCellAxis() {
+        return this.cellAxis;
+    }
+
+    protected synchronized boolean isMolecule() {
+        return this.molecule;
+    }
+
+    protected synchronized boolean isConverged() {
+        return this.converged;
+    }
+
+    private void addOffset(long offset) {
+        if (this.numFrames >= this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, 2 * this.offsets.length);
+        }
+
+        this.offsets[this.numFrames] = offset;
+        this.numFrames++;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long position2 = position;
+        while (buffer.hasRemaining()) {
+            int length = channel.read(buffer, position2);
+            if (length < 0) {
+                throw new IOException("unexpected end of file.");
+            }
+            position2 += length;
+        }
+
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+
+        long position2 = position;
+        while (buffer.hasRemaining()) {
+            position2 += channel.write(buffer, position2);
+        }
+    }
+
+    /**
+     * read the header, and the index of frames (offsets).
+     * frames are not read here.
+     */
+    protected synchronized void readIndex() throws IOException {
+        this.numFrames = 0;
+        this.endOffset = HEADER_SIZE;
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = accessFile.getChannel();
+            long fileSize = channel.size();
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, buffer, 0L);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("incorrect format: " + this.file.getPath());
+            }
+
+            int version = buffer.getInt();
+            if (version > VERSION) {
+                throw new IOException("unsupported version " + version + ": " + this.file.getPath());
+            }
+
+            int numFrames = buffer.getInt();
+            this.converged = buffer.get() != 0;
+            this.molecule = buffer.get() != 0;
+
+            int lenCellAxis = buffer.getShort();
+            if (lenCellAxis < 0 || lenCellAxis > MAX_CELL_AXIS) {
+                this.cellAxis = null;
+            } else {
+                byte[] bytes = new byte[lenCellAxis];
+                buffer.get(bytes);
+                this.cellAxis = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            long offset = this.readIndexFile(numFrames, fileSize);
+
+            ByteBuffer sizeBuffer = ByteBuffer.allocate(4);
+            if (this.numFrames > 0) {
+                long lastOffset = this.offsets[this.numFrames - 1];
+                readFully(channel, sizeBuffer, lastOffset);
+                if ((lastOffset + sizeBuffer.getInt()) != offset) {
+                    // the index file is not of this file
+                    this.numFrames = 0;
+                    offset = HEADER_SIZE;
+                }
+            }
+
+            for (int i = this.numFrames; i < numFrames; i++) {
+                if ((offset + FRAME_HEAD_SIZE) > fileSize) {
+                    break;
+                }
+
+                sizeBuffer.clear();
+                readFully(channel, sizeBuffer, offset);
+                int frameSize = sizeBuffer.getInt();
+                if (frameSize < FRAME_HEAD_SIZE || (offset + frameSize) > fileSize) {
+                    break;
+                }
+
+                this.addOffset(offset);
+                offset += frameSize;
+            }
+
+            this.endOffset = offset;
+        }
+    }
+
+    /**
+     * read offsets from the index file, as long as they are consistent.
+     * the index file has the end offset of each frame.
+     * @return offset of the next frame.
+     */
+    private long readIndexFile(int numFrames, long fileSize) {
+        if (!this.indexFile.isFile()) {
+            return HEADER_SIZE;
+        }
+
+        long offset = HEADER_SIZE;
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.indexFile, "r")) {
+            FileChannel channel = accessFile.getChannel();
+            long size = Math.min(channel.size(), INDEX_MAGIC.length + 8L * numFrames);
+            if (size < INDEX_MAGIC.length) {
+                return HEADER_SIZE;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            readFully(channel, buffer, 0L);
+
+            byte[] magic = new byte[INDEX_MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, INDEX_MAGIC)) {
+                return HEADER_SIZE;
+            }
+
+            while (buffer.remaining() >= 8) {
+                long endOffset = buffer.getLong();
+                if (endOffset < (offset + FRAME_HEAD_SIZE) || endOffset > fileSize) {
+                    break;
+                }
+
+                this.addOffset(offset);
+                offset = endOffset;
+            }
+
+        } catch (IOException e) {
+            this.numFrames = 0;
+            return HEADER_SIZE;
+        }
+
+        return offset;
+    }
+
+    private void writeIndexFile(int start) throws IOException {
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.indexFile, "rw")) {
+            FileChannel channel = accessFile.getChannel();
+
+            int start2 = start;
+            long position = INDEX_MAGIC.length + 8L * start2;
+            if (channel.size() < position) {
+                start2 = 0;
+                position = INDEX_MAGIC.length;
+            }
+
+            channel.truncate(position);
+
+            ByteBuffer buffer = ByteBuffer.allocate(INDEX_MAGIC.length + 8 * (this.numFrames - start2));
+            if (start2 < 1) {
+                position = 0L;
+                buffer.put(INDEX_MAGIC);
+            }
+
+            for (int i = start2; i < this.numFrames; i++) {
+                buffer.putLong((i + 1) < this.numFrames ? this.offsets[i + 1] : this.endOffset);
+            }
+
+            writeFully(channel, buffer, position);
+        }
+    }
+
+    /**
+     * @return geometries of frames [from, to).
+     */
+    protected synchronized ProjectGeometry[] readGeometries(int from, int to) throws IOException {
+        if (from < 0 || to > this.numFrames || from > to) {
+            throw new IndexOutOfBoundsException("incorrect range of frames: " + from + ", " + to + ".");
+        }
+
+        ProjectGeometry[] geometries = new ProjectGeometry[to - from];
+        if (geometries.length < 1) {
+            return geometries;
+        }
+
+        long start = this.offsets[from];
+        long end = to < this.numFrames ? this.offsets[to] : this.endOffset;
+        if ((end - start) > Integer.MAX_VALUE) {
+            throw new IOException("too large range of frames: " + from + ", " + to + ".");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.file, "r")) {
+            readFully(accessFile.getChannel(), buffer, start);
+        }
+
+        for (int i = from; i < to; i++) {
+            buffer.position((int) (this.offsets[i] - start));
+            geometries[i - from] = readGeometry(buffer);
+        }
+
+        return geometries;
+    }
+
+    protected ProjectGeometry readGeometry(int index) throws IOException {
+        return this.readGeometries(index, index + 1)[0];
+    }
+
+    /**
+     * read frames [from, to), only if they have not been overwritten since the generation.
+     * the frames are checked and read atomically, so that they are not truncated while reading.
+     * @return geometries of frames, or null if they have been overwritten.
+     */
+    protected ProjectGeometry[] readValidGeometries(int generation, int numFrames, int from, int to)
+            throws IOException {
+
+        synchronized (this) {
+            if (from < 0 || to > this.numValidFrames(generation, numFrames)) {
+                return null;
+            }
+
+            return this.readGeometries(from, to);
+        }
+    }
+
+    private static void readMatrix(ByteBuffer buffer, double[][] matrix) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                matrix[i][j] = buffer.getDouble();
+            }
+        }
+    }
+
+    private static ProjectGeometry readGeometry(ByteBuffer buffer) throws IOException {
+        buffer.getInt(); // size of frame
+        int natom = buffer.getInt();
+        if (natom < 0) {
+            throw new IOException("incorrect number of atoms: " + natom + ".");
+        }
+
+        ProjectGeometry geometry = new ProjectGeometry();
+        geometry.setConverged(buffer.get() != 0);
+        geometry.setTime(buffer.getDouble());
+        geometry.setEnergy(buffer.getDouble());
+        geometry.setTotalForce(buffer.getDouble());
+        geometry.setKinetic(buffer.getDouble());
+        geometry.setTemperature(buffer.getDouble());
+
+        double[][] matrix = new double[3][3];
+        boolean hasCell = buffer.get() != 0;
+        readMatrix(buffer, matrix);
+        if (hasCell) {
+            geometry.setCell(matrix);
+        }
+
+        boolean hasStress = buffer.get() != 0;
+        readMatrix(buffer, matrix);
+        if (hasStress) {
+            geometry.setStress(matrix);
+        }
+
+        int posX = buffer.position();
+        int posName = posX + 6 * 8 * natom;
+
+        for (int i = 0; i < natom; i++) {
+            buffer.position(posName);
+            int lenName = buffer.getShort();
+            byte[] bytes = new byte[Math.max(0, lenName)];
+            buffer.get(bytes);
+            posName = buffer.position();
+
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            double x = buffer.getDouble(posX + 8 * (i));
+            double y = buffer.getDouble(posX + 8 * (i + natom));
+            double z = buffer.getDouble(posX + 8 * (i + 2 * natom));
+            double fx = buffer.getDouble(posX + 8 * (i + 3 * natom));
+            double fy = buffer.getDouble(posX + 8 * (i + 4 * natom));
+            double fz = buffer.getDouble(posX + 8 * (i + 5 * natom));
+
+            geometry.addAtom(name.isEmpty() ? "X" : name, x, y, z);
+            geometry.setForce(i, fx, fy, fz);
+        }
+
+        geometry.setModified(false);
+        return geometry;
+    }
+
+    /**
+     * write frames from index start, and the header.
+     * frames before start are kept in the file, and frames after start are overwritten.
+     */
+    protected synchronized void writeGeometries(ProjectGeometryList geometryList, List<ProjectGeometry> geometries, int start)
+            throws IOException {
+
+        if (geometryList == null) {
+            throw new IllegalArgumentException("geometryList is null.");
+        }
+
+        int start2 = Math.max(0, Math.min(start, this.numFrames));
+        if (!this.file.isFile()) {
+            start2 = 0;
+        }
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(this.file, "rw")) {
+            FileChannel channel = accessFile.getChannel();
+
+            long offset = start2 < this.numFrames ? this.offsets[start2] : this.endOffset;
+            if (start2 < 1) {
+                offset = HEADER_SIZE;
+            }
+
+            if (start2 < this.numFrames) {
+                this.truncations = Arrays.copyOf(this.truncations, this.generation + 1);
+                this.truncations[this.generation] = start2;
+                this.generation++;
+            }
+
+            this.numFrames = start2;
+            this.endOffset = offset;
+
+            // frames which have been read from the file, are not valid after truncation
+            this.writeHeader(channel, geometryList, start2);
+            channel.truncate(offset);
+
+            int numGeoms = geometries == null ? 0 : geometries.size();
+            for (int i = start2; i < numGeoms; i++) {
+                ByteBuffer buffer = toBuffer(geometries.get(i));
+                writeFully(channel, buffer, offset);
+                this.addOffset(offset);
+                offset += buffer.limit();
+            }
+
+            this.endOffset = offset;
+            this.writeIndexFile(start2);
+            this.writeHeader(channel, geometryList, this.numFrames);
+        }
+    }
+
+    private void writeHeader(FileChannel channel, ProjectGeometryList geometryList, int numFrames) throws IOException {
+        this.cellAxis = geometryList.getCellAxis();
+        this.molecule = geometryList.isMolecule();
+        this.converged = geometryList.isConverged();
+
+        byte[] bytesCellAxis = this.cellAxis == null ? null : this.cellAxis.getBytes(StandardCharsets.UTF_8);
+        if (bytesCellAxis != null && bytesCellAxis.length > MAX_CELL_AXIS) {
+            bytesCellAxis = null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(numFrames);
+        buffer.put((byte) (this.converged ? 1 : 0));
+        buffer.put((byte) (this.molecule ? 1 : 0));
+        buffer.putShort((short) (bytesCellAxis == null ? -1 : bytesCellAxis.length));
+        if (bytesCellAxis != null) {
+            buffer.put(bytesCellAxis);
+        }
+
+        buffer.position(HEADER_SIZE);
+        writeFully(channel, buffer, 0L);
+    }
+
+    private static void writeMatrix(ByteBuffer buffer, double[][] matrix) {
+        buffer.put((byte) (matrix == null ? 0 : 1));
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                buffer.putDouble(matrix == null ? 0.0 : matrix[i][j]);
+            }
+        }
+    }
+
+    private static ByteBuffer toBuffer(ProjectGeometry geometry) {
+        if (geometry == null) {
+            geometry = new ProjectGeometry();
+        }
+
+        synchronized (geometry) {
+            int natom = geometry.numAtoms();
+
+            byte[][] names = new byte[natom][];
+            int sizeNames = 0;
+            for (int i = 0; i < natom; i++) {
+                String name = geometry.getName(i);
+                names[i] = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+                sizeNames += 2 + names[i].length;
+            }
+
+            int frameSize = FRAME_HEAD_SIZE + 6 * 8 * natom + sizeNames;
+            ByteBuffer buffer = ByteBuffer.allocate(frameSize);
+
+            buffer.putInt(frameSize);
+            buffer.putInt(natom);
+            buffer.put((byte) (geometry.isConverged() ? 1 : 0));
+            buffer.putDouble(geometry.getTime());
+            buffer.putDouble(geometry.getEnergy());
+            buffer.putDouble(geometry.getTotalForce());
+            buffer.putDouble(geometry.getKinetic());
+            buffer.putDouble(geometry.getTemperature());
+            writeMatrix(buffer, geometry.getCell());
+            writeMatrix(buffer, geometry.getStress());
+
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getX(i));
+            }
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getY(i));
+            }
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getZ(i));
+            }
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getForceX(i));
+            }
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getForceY(i));
+            }
+            for (int i = 0; i < natom; i++) {
+                buffer.putDouble(geometry.getForceZ(i));
+            }
+
+            for (int i = 0; i < natom; i++) {
+                buffer.putShort((short) names[i].length);
+                buffer.put(names[i]);
+            }
+
+            geometry.setModified(false);
+            return buffer;
+        }
+    }
+}
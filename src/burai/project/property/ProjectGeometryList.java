@@ -16,25 +16,167 @@
 
 package burai.project.property;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * geometries of optimization or MD.
+ * if the list is read from a binary file, geometries are read block by block (in the direction of access),
+ * and only a window of them are cached, so that memory does not depend on the length of trajectory.
+ */
 public class ProjectGeometryList {
 
+    private static final int SIZE_READ_BLOCK = 64;
+
+    private static final int SIZE_CACHE = 4 * SIZE_READ_BLOCK;
+
     private String cellAxis;
 
     private boolean molecule;
 
     private boolean converged;
 
+    // an element is null, if the geometry is in geometryFile and not read yet.
     private List<ProjectGeometry> geometries;
 
+    // geometries are read lazily from this file, and appended to this file.
+    private transient ProjectGeometryFile geometryFile;
+
+    // geometries in geometryFile, which this list refers to.
+    private transient int numFileFrames;
+
+    // frames of geometryFile, whose geometries are removed from this list (in ascending order).
+    private transient List<Integer> removedFrames;
+
+    // generation of geometryFile, when numFileFrames is set.
+    private transient int fileGeneration;
+
+    // geometries from this index have to be rewritten in geometryFile.
+    private transient int changedIndex;
+
+    // geometries read from geometryFile, in order of access.
+    private transient Map<Integer, ProjectGeometry> cache;
+
+    private transient int lastIndex;
+
     public ProjectGeometryList() {
         this.cellAxis = null;
         this.molecule = false;
 
         this.converged = false;
         this.geometries = null;
+
+        this.geometryFile = null;
+        this.numFileFrames = 0;
+        this.removedFrames = null;
+        this.fileGeneration = 0;
+        this.changedIndex = 0;
+        this.cache = null;
+        this.lastIndex = -1;
+    }
+
+    /**
+     * read the header and the index of frames from the binary file.
+     * each geometry is read when it is got.
+     */
+    protected static ProjectGeometryList readGeometryFile(File file) throws IOException {
+        return readGeometryFile(new ProjectGeometryFile(file));
+    }
+
+    /**
+     * index frames of the AXSF file (animated XSF), by one pass of scanning.
+     * each geometry is decoded when it is got, as well as the binary file.
+     */
+    public static ProjectGeometryList readAXSFFile(File file) throws IOException {
+        return readGeometryFile(new ProjectGeometryAXSF(file));
+    }
+
+    private static ProjectGeometryList readGeometryFile(ProjectGeometryFile geometryFile) throws IOException {
+        geometryFile.readIndex();
+
+        ProjectGeometryList geometryList = new ProjectGeometryList();
+        geometryList.cellAxis = geometryFile.getCellAxis();
+        geometryList.molecule = geometryFile.isMolecule();
+        geometryList.converged = geometryFile.isConverged();
+
+        int numFrames = geometryFile.numFrames();
+        geometryList.geometries = new ArrayList<ProjectGeometry>(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            geometryList.geometries.add(null);
+        }
+
+        geometryList.bindGeometryFile(geometryFile);
+        return geometryList;
+    }
+
+    private void bindGeometryFile(ProjectGeometryFile geometryFile) {
+        this.geometryFile = geometryFile;
+        this.numFileFrames = geometryFile == null ? 0 : geometryFile.numFrames();
+        this.removedFrames = null;
+        this.fileGeneration = geometryFile == null ? 0 : geometryFile.getGeneration();
+        this.changedIndex = this.numFileFrames;
+
+        if (this.cache != null) {
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * write geometries into the binary file.
+     * if the file has been written by this object, only new or changed geometries are written.
+     */
+    protected synchronized void writeGeometryFile(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null.");
+        }
+
+        int numGeoms = this.geometries == null ? 0 : this.geometries.size();
+
+        int start = 0;
+        if (this.geometryFile != null && this.geometryFile.isFile(file)
+                && this.fileGeneration == this.geometryFile.getGeneration()) {
+            start = Math.min(this.changedIndex, this.numFileFrames);
+        }
+
+        for (int i = 0; i < Math.min(start, numGeoms); i++) {
+            ProjectGeometry geometry = this.geometries.get(i);
+            if (geometry != null && geometry.isModified()) {
+                start = i;
+                break;
+            }
+        }
+
+        if (this.cache != null) {
+            for (Map.Entry<Integer, ProjectGeometry> entry : this.cache.entrySet()) {
+                if (entry.getValue().isModified()) {
+                    start = Math.min(start, entry.getKey());
+                }
+            }
+        }
+
+        // geometries to be overwritten, have to be read before writing
+        for (int i = start; i < numGeoms; i++) {
+            this.holdGeometry(i);
+        }
+
+        ProjectGeometryFile geometryFile = this.geometryFile;
+        if (geometryFile == null || !geometryFile.isFile(file)) {
+            geometryFile = new ProjectGeometryFile(file);
+        }
+
+        try {
+            geometryFile.writeGeometries(this, this.geometries, start);
+
+        } catch (IOException e) {
+            this.changedIndex = Math.min(this.changedIndex, start);
+            throw e;
+        }
+
+        this.bindGeometryFile(geometryFile);
     }
 
     public synchronized String getCellAxis() {
@@ -67,6 +209,13 @@ public class ProjectGeometryList {
         if (this.geometries != null) {
             this.geometries.clear();
         }
+
+        this.numFileFrames = 0;
+        this.removedFrames = null;
+        this.changedIndex = 0;
+        if (this.cache != null) {
+            this.cache.clear();
+        }
     }
 
     public synchronized int numGeometries() {
@@ -78,7 +227,140 @@ public class ProjectGeometryList {
             throw new IndexOutOfBoundsException("incorrect index of geometries: " + i + ".");
         }
 
-        return this.geometries.get(i);
+        return this.getGeometryKernel(i);
+    }
+
+    private ProjectGeometry getGeometryKernel(int i) {
+        ProjectGeometry geometry = this.geometries.get(i);
+        if (geometry != null) {
+            return geometry;
+        }
+
+        geometry = this.cache == null ? null : this.cache.get(i);
+        if (geometry != null) {
+            this.lastIndex = i;
+            return geometry;
+        }
+
+        if (!this.isFileFrame(i)) {
+            return null;
+        }
+
+        // a block of geometries is read, in the direction of access, from successive frames of the file
+        int from = i;
+        int to = i + 1;
+        int fileFrom = this.toFileFrame(i);
+        if (i < this.lastIndex) {
+            while (from > 0 && (to - from) < SIZE_READ_BLOCK && this.isToRead(from - 1)
+                    && this.toFileFrame(from - 1) == (fileFrom - 1)) {
+                from--;
+                fileFrom--;
+            }
+        } else {
+            while ((to - from) < SIZE_READ_BLOCK && this.isToRead(to)
+                    && this.toFileFrame(to) == (fileFrom + to - from)) {
+                to++;
+            }
+        }
+
+        this.lastIndex = i;
+
+        ProjectGeometry[] geometries2 = null;
+        try {
+            geometries2 = this.geometryFile.readValidGeometries(
+                    this.fileGeneration, this.numFileFrames, fileFrom, fileFrom + to - from);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        // frames have been overwritten, after they are checked
+        if (geometries2 == null) {
+            return null;
+        }
+
+        if (this.cache == null) {
+            this.cache = this.createCache();
+        }
+
+        for (int j = from; j < to; j++) {
+            this.cache.put(j, geometries2[j - from]);
+        }
+
+        return geometries2[i - from];
+    }
+
+    private Map<Integer, ProjectGeometry> createCache() {
+        return new LinkedHashMap<Integer, ProjectGeometry>(2 * SIZE_CACHE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ProjectGeometry> eldest) {
+                if (this.size() <= SIZE_CACHE) {
+                    return false;
+                }
+
+                // a changed geometry must not be lost
+                ProjectGeometry geometry = eldest.getValue();
+                if (geometry != null && geometry.isModified()) {
+                    geometries.set(eldest.getKey(), geometry);
+                }
+
+                return true;
+            }
+        };
+    }
+
+    private boolean isFileFrame(int i) {
+        if (this.geometryFile == null) {
+            return false;
+        }
+
+        int numFrames = this.geometryFile.numValidFrames(this.fileGeneration, this.numFileFrames);
+        return i >= 0 && this.toFileFrame(i) < numFrames;
+    }
+
+    /**
+     * @return frame of geometryFile, which the i-th geometry refers to.
+     */
+    private int toFileFrame(int i) {
+        int frame = i;
+        if (this.removedFrames != null) {
+            for (int removedFrame : this.removedFrames) {
+                if (removedFrame > frame) {
+                    break;
+                }
+                frame++;
+            }
+        }
+
+        return frame;
+    }
+
+    private boolean isToRead(int i) {
+        if (i < 0 || i >= this.geometries.size() || this.geometries.get(i) != null) {
+            return false;
+        }
+
+        if (this.cache != null && this.cache.containsKey(i)) {
+            return false;
+        }
+
+        return this.isFileFrame(i);
+    }
+
+    /**
+     * keep the geometry in this list, not in the cache.
+     */
+    private void holdGeometry(int i) {
+        if (this.geometries.get(i) != null) {
+            return;
+        }
+
+        ProjectGeometry geometry = this.getGeometryKernel(i);
+        if (this.cache != null) {
+            this.cache.remove(i);
+        }
+
+        this.geometries.set(i, geometry);
     }
 
     public synchronized void removeGeometry(int i) throws IndexOutOfBoundsException {
@@ -86,7 +368,34 @@ public class ProjectGeometryList {
             throw new IndexOutOfBoundsException("incorrect index of geometries: " + i + ".");
         }
 
+        // changed geometries in the cache are kept, before their indexes are shifted
+        if (this.cache != null) {
+            for (Map.Entry<Integer, ProjectGeometry> entry : this.cache.entrySet()) {
+                if (entry.getValue().isModified()) {
+                    this.geometries.set(entry.getKey(), entry.getValue());
+                }
+            }
+
+            this.cache.clear();
+        }
+
+        // following geometries are still read from the file, skipping the removed frame
+        int frame = this.toFileFrame(i);
+        if (frame < this.numFileFrames) {
+            if (this.removedFrames == null) {
+                this.removedFrames = new ArrayList<Integer>();
+            }
+
+            int index = 0;
+            while (index < this.removedFrames.size() && this.removedFrames.get(index) < frame) {
+                index++;
+            }
+
+            this.removedFrames.add(index, frame);
+        }
+
         this.geometries.remove(i);
+        this.changedIndex = Math.min(this.changedIndex, i);
     }
 
     public synchronized void addGeometry(ProjectGeometry geometry) {
@@ -106,7 +415,8 @@ public class ProjectGeometryList {
             return false;
         }
 
-        for (ProjectGeometry geometry : geometries) {
+        for (int i = 0; i < this.geometries.size(); i++) {
+            ProjectGeometry geometry = this.getGeometryKernel(i);
             if (geometry != null && geometry.isConverged()) {
                 return true;
             }
@@ -120,7 +430,8 @@ public class ProjectGeometryList {
             return false;
         }
 
-        for (ProjectGeometry geometry : geometries) {
+        for (int i = 0; i < this.geometries.size(); i++) {
+            ProjectGeometry geometry = this.getGeometryKernel(i);
             if (geometry == null || (!geometry.isConverged())) {
                 return false;
             }
@@ -144,6 +455,13 @@ public class ProjectGeometryList {
             other.geometries = new ArrayList<ProjectGeometry>(this.geometries);
         }
 
+        // geometries not read yet, are read by the copy, as long as they are not rewritten in the file.
+        other.geometryFile = this.geometryFile;
+        other.numFileFrames = this.numFileFrames;
+        other.removedFrames = this.removedFrames == null ? null : new ArrayList<Integer>(this.removedFrames);
+        other.fileGeneration = this.fileGeneration;
+        other.changedIndex = 0;
+
         return other;
     }
 }
@@ -226,7 +226,7 @@ public class ProjectProperty {
 
     private void createOptList() {
         try {
-            this.optList = this.<ProjectGeometryList> readFile(FILE_NAME_OPT, ProjectGeometryList.class);
+            this.optList = this.readGeometryList(FILE_NAME_OPT);
         } catch (IOException e) {
             this.optList = null;
         }
@@ -238,7 +238,7 @@ public class ProjectProperty {
 
     private void createMdList() {
         try {
-            this.mdList = this.<ProjectGeometryList> readFile(FILE_NAME_MD, ProjectGeometryList.class);
+            this.mdList = this.readGeometryList(FILE_NAME_MD);
         } catch (IOException e) {
             this.mdList = null;
         }
@@ -293,7 +293,7 @@ public class ProjectProperty {
 
     public synchronized void saveOptList() {
         try {
-            this.<ProjectGeometryList> writeFile(FILE_NAME_OPT, this.optList);
+            this.writeGeometryList(FILE_NAME_OPT, this.optList);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -302,7 +302,7 @@ public class ProjectProperty {
 
     public synchronized void saveMdList() {
         try {
-            this.<ProjectGeometryList> writeFile(FILE_NAME_MD, this.mdList);
+            this.writeGeometryList(FILE_NAME_MD, this.mdList);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -318,6 +318,37 @@ public class ProjectProperty {
         }
     }
 
+    /**
+     * a binary file is read lazily, and a JSON file (of an old project) is read by Gson.
+     */
+    private ProjectGeometryList readGeometryList(String fileName) throws IOException {
+        if (fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+
+        File file = new File(this.directoryPath, fileName);
+        if (ProjectGeometryFile.isGeometryFile(file)) {
+            return ProjectGeometryList.readGeometryFile(file);
+        }
+
+        return this.<ProjectGeometryList> readFile(fileName, ProjectGeometryList.class);
+    }
+
+    /**
+     * geometries are always written in a binary file, where only new or changed geometries are appended.
+     */
+    private void writeGeometryList(String fileName, ProjectGeometryList geometryList) throws IOException {
+        if (fileName == null || fileName.isEmpty()) {
+            return;
+        }
+
+        if (geometryList == null) {
+            return;
+        }
+
+        geometryList.writeGeometryFile(new File(this.directoryPath, fileName));
+    }
+
     private <T> T readFile(String fileName, Class<T> classT) throws IOException {
         if (fileName == null || fileName.isEmpty()) {
             return null;
@@ -25,15 +25,24 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import burai.com.env.Environments;
 import burai.com.life.Life;
@@ -52,6 +61,8 @@ public class PseudoLibrary {
 
     private static final long SLEEPING_TIME = 2500L;
 
+    private static final long SETTLING_TIME = 500L;
+
     private static final int NUM_LOADING_THREADS =
             Math.min(Math.max(1, (int) (0.5 * Environments.getNumCUPs())), Environments.getNumCUPs() - 1);
 
@@ -71,12 +82,19 @@ public class PseudoLibrary {
 
     private Object loadedLock;
 
-    private Map<File, PseudoPotential> pseudoPots;
+    private WatchService watcher;
+
+    /**
+     * an immutable snapshot, which is replaced (copy-on-write) by the reloading thread,
+     * so that readers do not need to lock.
+     */
+    private volatile Map<File, PseudoPotential> pseudoPots;
 
     private PseudoLibrary() {
         this.alive = true;
         this.loaded = false;
         this.loadedLock = new Object();
+        this.watcher = null;
         this.pseudoPots = null;
 
         this.runReloadingThread();
@@ -126,35 +144,163 @@ public class PseudoLibrary {
         }
     }
 
+    /**
+     * the pseudos directory is scanned once, then only created, modified or deleted files are reloaded,
+     * which are notified by WatchService. if the directory cannot be watched, it is scanned at intervals.
+     */
     private void runReloadingThread() {
         Thread thread = new Thread(() -> {
             while (this.isAlive()) {
+                // the watcher is registered before scanning, so that no changes are missed
+                WatchService watcher = this.createWatcher();
+
                 this.reload();
 
-                if (!this.isAlive()) {
-                    break;
+                if (watcher == null) {
+                    this.sleep(SLEEPING_TIME);
+                    continue;
                 }
 
-                synchronized (this) {
-                    try {
-                        this.wait(SLEEPING_TIME);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+                this.watchChanges(watcher);
+                this.closeWatcher(watcher);
             }
         });
 
         thread.start();
     }
 
+    private synchronized void sleep(long time) {
+        if (!this.alive) {
+            return;
+        }
+
+        try {
+            this.wait(time);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private WatchService createWatcher() {
+        String pseudosPath = Environments.getPseudosPath();
+        File pseudosDir = pseudosPath == null || pseudosPath.isEmpty() ? null : new File(pseudosPath);
+        if (pseudosDir == null || !pseudosDir.isDirectory()) {
+            return null;
+        }
+
+        WatchService watcher = null;
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            pseudosDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            this.closeWatcher(watcher);
+            return null;
+        }
+
+        synchronized (this) {
+            if (!this.alive) {
+                this.closeWatcher(watcher);
+                return null;
+            }
+
+            this.watcher = watcher;
+        }
+
+        return watcher;
+    }
+
+    private void closeWatcher(WatchService watcher) {
+        if (watcher == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (this.watcher == watcher) {
+                this.watcher = null;
+            }
+        }
+
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * reload changed files, until the watcher is closed or events are lost.
+     */
+    private void watchChanges(WatchService watcher) {
+        while (this.isAlive()) {
+            Set<File> files = new LinkedHashSet<File>();
+            boolean valid = true;
+
+            try {
+                WatchKey key = watcher.take();
+
+                // a file is written many times in a short time, so that events are gathered for a while
+                while (key != null) {
+                    valid = this.pollEvents(key, files) && valid;
+                    key = watcher.poll(SETTLING_TIME, TimeUnit.MILLISECONDS);
+                }
+
+            } catch (ClosedWatchServiceException e) {
+                return;
+
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            if (!valid) {
+                return;
+            }
+
+            this.reload(files);
+        }
+    }
+
+    /**
+     * @return false if events are lost, or the directory is no longer watched.
+     */
+    private boolean pollEvents(WatchKey key, Set<File> files) {
+        boolean valid = true;
+
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                valid = false;
+                continue;
+            }
+
+            Object context = event.context();
+            if (context instanceof Path) {
+                files.add(directory.resolve((Path) context).toFile());
+            }
+        }
+
+        return key.reset() && valid;
+    }
+
     public void touch() {
         // NOP
     }
 
-    public synchronized void stop() {
-        this.alive = false;
-        this.notifyAll();
+    public void stop() {
+        WatchService watcher = null;
+
+        synchronized (this) {
+            this.alive = false;
+            watcher = this.watcher;
+            this.notifyAll();
+        }
+
+        this.closeWatcher(watcher);
     }
 
     public synchronized void reload() {
@@ -167,7 +313,7 @@ public class PseudoLibrary {
 
             if (pseudosDir == null || (!pseudosDir.isDirectory())) {
                 if (this.pseudoPots != null) {
-                    this.pseudoPots.clear();
+                    this.pseudoPots = Collections.emptyMap();
                 }
                 return;
             }
@@ -179,6 +325,7 @@ public class PseudoLibrary {
             }
 
             int numReloaded = 0;
+            Map<File, PseudoPotential> pseudoPots1 = this.pseudoPots;
             Map<File, PseudoPotential> pseudoPots2 = new HashMap<File, PseudoPotential>();
 
             File[] pseudosFiles = pseudosDir.listFiles();
@@ -192,19 +339,9 @@ public class PseudoLibrary {
                         return 0;
                     }
 
-                    boolean reloaded = false;
-                    PseudoPotential pseudoPot = null;
-
-                    if (this.pseudoPots != null && this.pseudoPots.containsKey(pseudoFile)) {
-                        pseudoPot = this.pseudoPots.get(pseudoFile);
-                        if (pseudoPot != null) {
-                            reloaded = pseudoPot.reload();
-                        }
-
-                    } else {
-                        pseudoPot = new PseudoPotential(pseudoFile);
-                        reloaded = true;
-                    }
+                    PseudoPotential pseudoPot1 = pseudoPots1 == null ? null : pseudoPots1.get(pseudoFile);
+                    PseudoPotential pseudoPot = this.loadPseudoPotential(pseudoFile, pseudoPot1);
+                    boolean reloaded = pseudoPot != pseudoPot1;
 
                     if (pseudoPot != null && pseudoPot.isAvairable()) {
                         synchronized (pseudoPots2) {
@@ -216,9 +353,9 @@ public class PseudoLibrary {
                 });
             }
 
-            int numPseudos1 = this.pseudoPots == null ? 0 : this.pseudoPots.size();
+            int numPseudos1 = pseudoPots1 == null ? 0 : pseudoPots1.size();
             int numPseudos2 = pseudoPots2.size();
-            this.pseudoPots = pseudoPots2;
+            this.pseudoPots = Collections.unmodifiableMap(pseudoPots2);
 
             if (numReloaded > 0 || numPseudos1 != numPseudos2) {
                 try {
@@ -231,7 +368,7 @@ public class PseudoLibrary {
         } catch (Exception e3) {
             e3.printStackTrace();
             if (this.pseudoPots != null) {
-                this.pseudoPots.clear();
+                this.pseudoPots = Collections.emptyMap();
             }
 
         } finally {
@@ -239,6 +376,70 @@ public class PseudoLibrary {
         }
     }
 
+    /**
+     * reload only the specified files, which are created, modified or deleted.
+     */
+    private synchronized void reload(Collection<File> pseudoFiles) {
+        if (pseudoFiles == null || pseudoFiles.isEmpty()) {
+            return;
+        }
+
+        Map<File, PseudoPotential> pseudoPots1 = this.pseudoPots;
+        Map<File, PseudoPotential> pseudoPots2 = new HashMap<File, PseudoPotential>();
+        if (pseudoPots1 != null) {
+            pseudoPots2.putAll(pseudoPots1);
+        }
+
+        boolean changed = false;
+
+        for (File pseudoFile : pseudoFiles) {
+            if (pseudoFile == null || (!this.isUPF(pseudoFile))) {
+                continue;
+            }
+
+            PseudoPotential pseudoPot1 = pseudoPots2.get(pseudoFile);
+            PseudoPotential pseudoPot = pseudoFile.isFile() ? this.loadPseudoPotential(pseudoFile, pseudoPot1) : null;
+
+            if (pseudoPot != null && pseudoPot.isAvairable()) {
+                if (pseudoPot != pseudoPot1) {
+                    pseudoPots2.put(pseudoFile, pseudoPot);
+                    changed = true;
+                }
+
+            } else if (pseudoPot1 != null) {
+                pseudoPots2.remove(pseudoFile);
+                changed = true;
+            }
+        }
+
+        if (!changed) {
+            return;
+        }
+
+        this.pseudoPots = Collections.unmodifiableMap(pseudoPots2);
+
+        try {
+            this.writePseudoList();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * a published PseudoPotential is not modified, so that a new one is created if the file is changed.
+     * @return pseudoPot itself if the file is not changed.
+     */
+    private PseudoPotential loadPseudoPotential(File pseudoFile, PseudoPotential pseudoPot) {
+        if (pseudoPot != null && pseudoPot.isAvairable()) {
+            long timeStamp = pseudoPot.getData().getUpfTimeStamp();
+            if (timeStamp == pseudoFile.lastModified()) {
+                return pseudoPot;
+            }
+        }
+
+        return new PseudoPotential(pseudoFile);
+    }
+
     private boolean isUPF(File file) {
         if (file == null) {
             return false;
@@ -332,11 +533,12 @@ public class PseudoLibrary {
             }
         }
 
-        this.pseudoPots = pseudoPots2;
+        this.pseudoPots = Collections.unmodifiableMap(pseudoPots2);
     }
 
     private void writePseudoList() throws IOException {
-        if (this.pseudoPots == null) {
+        Map<File, PseudoPotential> pseudoPots = this.pseudoPots;
+        if (pseudoPots == null) {
             return;
         }
 
@@ -347,7 +549,7 @@ public class PseudoLibrary {
 
         Map<String, PseudoData> pseudoMap = new PseudoDataMap();
 
-        Set<Entry<File, PseudoPotential>> pseudoEntries = this.pseudoPots.entrySet();
+        Set<Entry<File, PseudoPotential>> pseudoEntries = pseudoPots.entrySet();
         if (pseudoEntries != null) {
             for (Entry<File, PseudoPotential> pseudoEntry : pseudoEntries) {
                 if (pseudoEntry == null) {
@@ -414,13 +616,14 @@ public class PseudoLibrary {
         return this.peekPseudoPotential(pseudoFile);
     }
 
-    public synchronized PseudoPotential peekPseudoPotential(File pseudoFile) {
+    public PseudoPotential peekPseudoPotential(File pseudoFile) {
         if (pseudoFile == null) {
             return null;
         }
 
-        if (this.pseudoPots != null && this.pseudoPots.containsKey(pseudoFile)) {
-            return this.pseudoPots.get(pseudoFile);
+        Map<File, PseudoPotential> pseudoPots = this.pseudoPots;
+        if (pseudoPots != null && pseudoPots.containsKey(pseudoFile)) {
+            return pseudoPots.get(pseudoFile);
         }
 
         return null;
@@ -556,34 +759,35 @@ public class PseudoLibrary {
 
         List<PseudoPotential> pseudoList = null;
 
-        synchronized (this) {
-            if (this.pseudoPots != null && (!this.pseudoPots.isEmpty())) {
-                pseudoList = new ArrayList<PseudoPotential>();
-                Collection<PseudoPotential> pseudoColl = this.pseudoPots.values();
-
-                for (PseudoPotential pseudoPot : pseudoColl) {
-                    String element2 = pseudoPot.getData().getElement();
-                    if (element2 == null) {
-                        continue;
-                    }
+        // the snapshot is not modified, so that it is read without locking
+        Map<File, PseudoPotential> pseudoPots = this.pseudoPots;
 
-                    String elementTrim2 = element2.trim();
-                    if (elementTrim2 == null || elementTrim2.isEmpty()) {
-                        continue;
-                    }
+        if (pseudoPots != null && (!pseudoPots.isEmpty())) {
+            pseudoList = new ArrayList<PseudoPotential>();
+            Collection<PseudoPotential> pseudoColl = pseudoPots.values();
 
-                    if (elementTrim.equalsIgnoreCase(elementTrim2)) {
-                        int pseudoType2 = pseudoPot.getData().getPseudoType();
-                        boolean okPseudoType =
-                                (pseudoType == PseudoData.PSEUDO_TYPE_UNKNOWN || pseudoType == pseudoType2);
+            for (PseudoPotential pseudoPot : pseudoColl) {
+                String element2 = pseudoPot.getData().getElement();
+                if (element2 == null) {
+                    continue;
+                }
 
-                        int functional2 = pseudoPot.getData().getFunctional();
-                        boolean okFunctional =
-                                (functional == PseudoData.FUNCTIONAL_UNKNOWN || functional == functional2);
+                String elementTrim2 = element2.trim();
+                if (elementTrim2 == null || elementTrim2.isEmpty()) {
+                    continue;
+                }
 
-                        if (okPseudoType && okFunctional) {
-                            pseudoList.add(pseudoPot);
-                        }
+                if (elementTrim.equalsIgnoreCase(elementTrim2)) {
+                    int pseudoType2 = pseudoPot.getData().getPseudoType();
+                    boolean okPseudoType =
+                            (pseudoType == PseudoData.PSEUDO_TYPE_UNKNOWN || pseudoType == pseudoType2);
+
+                    int functional2 = pseudoPot.getData().getFunctional();
+                    boolean okFunctional =
+                            (functional == PseudoData.FUNCTIONAL_UNKNOWN || functional == functional2);
+
+                    if (okPseudoType && okFunctional) {
+                        pseudoList.add(pseudoPot);
                     }
                 }
             }
@@ -17,21 +17,18 @@
 package burai.pseudo;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import burai.input.namelist.QEValue;
 import burai.input.namelist.QEValueBase;
@@ -138,186 +135,90 @@ public class PseudoPotential implements Comparable<PseudoPotential> {
         return false;
     }
 
+    /**
+     * only PP_HEADER is read by a streaming parser, which stops reading before radial grids (PP_MESH, ...).
+     */
     private void readUpfFile() throws IOException {
 
-        InputStream inputStream = null;
+        Reader upfReader = null;
+        XMLStreamReader xmlReader = null;
 
         try {
-            inputStream = this.getUpfInputStream();
-            if (inputStream == null) {
-                throw new IOException("cannot create InputStream.");
-            }
-
-            DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+            XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+            xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+            upfReader = new UpfReader(this.upfFile);
+            xmlReader = xmlFactory.createXMLStreamReader(upfReader);
+
+            int depth = 0;
+            boolean isUPFv2 = false;
+            boolean hasElement = false;
+            StringBuilder headerBuilder = null;
+
+            while (xmlReader.hasNext()) {
+                int event = xmlReader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = xmlReader.getLocalName();
+
+                    if (depth == 2 && !hasElement) {
+                        hasElement = true;
+                        isUPFv2 = "UPF".equals(name);
+                        this.data.setUpfVersion(isUPFv2 ? PseudoData.UPF_VERSION_2 : PseudoData.UPF_VERSION_1);
+                    }
 
-            DocumentBuilder documentBuilder = null;
-            if (documentFactory != null) {
-                documentBuilder = documentFactory.newDocumentBuilder();
-            }
+                    int headerDepth = isUPFv2 ? 3 : 2;
+                    if (depth == headerDepth && "PP_HEADER".equals(name)) {
+                        if (isUPFv2) {
+                            this.parseUpfV2PPHeader(xmlReader);
+                            return;
+                        }
 
-            Document document = null;
-            if (documentBuilder != null) {
-                document = documentBuilder.parse(inputStream);
-            }
+                        headerBuilder = new StringBuilder();
+                    }
 
-            Node rootNode = null;
-            if (document != null) {
-                rootNode = document.getDocumentElement();
-            }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
 
-            if (rootNode == null) {
-                throw new IOException("cannot create DocumentElement.");
-            }
+                    if (headerBuilder != null) {
+                        this.parseUpfV1PPHeader(headerBuilder.toString());
+                        return;
+                    }
 
-            Node firstNode = null;
-            if (rootNode.hasChildNodes()) {
-                NodeList nodeList = rootNode.getChildNodes();
-                if (nodeList != null) {
-                    for (int i = 0; i < nodeList.getLength(); i++) {
-                        Node node = nodeList.item(i);
-                        if (node.getNodeType() == Node.ELEMENT_NODE) {
-                            firstNode = node;
-                            break;
-                        }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    if (headerBuilder != null) {
+                        headerBuilder.append(xmlReader.getText());
                     }
                 }
             }
 
-            if (firstNode == null) {
+            if (!hasElement) {
                 throw new IOException("DocumentElement does not have ChildNodes.");
             }
 
-            String firstName = firstNode.getNodeName();
-            if (!"UPF".equals(firstName)) {
-                this.data.setUpfVersion(PseudoData.UPF_VERSION_1);
-                this.parseUpf(false, rootNode);
-
-            } else {
-                this.data.setUpfVersion(PseudoData.UPF_VERSION_2);
-                this.parseUpf(true, firstNode);
-            }
-
-        } catch (IOException e1) {
-            throw e1;
-
-        } catch (Exception e2) {
-            throw new IOException(e2);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
 
         } finally {
-            if (inputStream != null) {
+            if (xmlReader != null) {
                 try {
-                    inputStream.close();
-                } catch (IOException e3) {
-                    throw e3;
+                    xmlReader.close();
+                } catch (XMLStreamException e) {
+                    e.printStackTrace();
                 }
             }
-        }
-    }
-
-    private InputStream getUpfInputStream() throws IOException {
-        InputStream inputStream = null;
-
-        BufferedReader reader = null;
-
-        try {
-            reader = new BufferedReader(new FileReader(this.upfFile));
-
-            StringBuilder strBuilder = new StringBuilder("<root>");
-
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                line = line.replace('&', '#');
-                strBuilder.append(line);
-                strBuilder.append(System.lineSeparator());
-            }
-
-            strBuilder.append("</root>");
-
-            String str = strBuilder.toString();
-            if (str != null) {
-                byte[] strBytes = str.getBytes();
-                if (strBytes != null && strBytes.length > 0) {
-                    inputStream = new ByteArrayInputStream(strBytes);
-                }
-            }
-
-        } catch (FileNotFoundException e1) {
-            throw e1;
-
-        } catch (IOException e2) {
-            throw e2;
-
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e3) {
-                    throw e3;
-                }
-            }
-        }
-
-        return inputStream;
-    }
-
-    private void parseUpf(boolean isUPFv2, Node rootNode) {
-        if (rootNode == null || !rootNode.hasChildNodes()) {
-            throw new IllegalArgumentException("rootNode is incorrect.");
-        }
-
-        NodeList nodeList = rootNode.getChildNodes();
-        if (nodeList == null) {
-            return;
-        }
-
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
-            if (node == null) {
-                continue;
-            }
-
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                String name = node.getNodeName();
-                if ("PP_INFO".equals(name)) {
-                    if (!isUPFv2) {
-                        this.parseUpfV1PPInfo(node);
-                    } else {
-                        this.parseUpfV2PPInfo(node);
-                    }
 
-                } else if ("PP_HEADER".equals(name)) {
-                    if (!isUPFv2) {
-                        this.parseUpfV1PPHeader(node);
-                    } else {
-                        this.parseUpfV2PPHeader(node);
-                    }
-                }
+            // XMLStreamReader does not close the underlying reader
+            if (upfReader != null) {
+                upfReader.close();
             }
         }
     }
 
-    private void parseUpfV1PPInfo(Node node) {
-        if (node == null) {
-            return;
-        }
-
-        // NOP
-    }
-
-    private void parseUpfV2PPInfo(Node node) {
-        if (node == null) {
-            return;
-        }
-
-        // NOP
-    }
-
-    private void parseUpfV1PPHeader(Node node) {
-        if (node == null) {
-            return;
-        }
-
-        String content = node.getTextContent();
+    private void parseUpfV1PPHeader(String content) {
         if (content == null || content.isEmpty()) {
             return;
         }
@@ -463,197 +364,257 @@ public class PseudoPotential implements Comparable<PseudoPotential> {
         }
     }
 
-    private void parseUpfV2PPHeader(Node node) {
-        if (node == null || !node.hasAttributes()) {
+    private void parseUpfV2PPHeader(XMLStreamReader xmlReader) {
+        if (xmlReader == null || xmlReader.getAttributeCount() < 1) {
             return;
         }
 
-        Node attNode = null;
-        NamedNodeMap attributes = node.getAttributes();
+        String attValue = null;
+        Map<String, String> attributes = new HashMap<String, String>();
+        for (int i = 0; i < xmlReader.getAttributeCount(); i++) {
+            attributes.put(xmlReader.getAttributeLocalName(i), xmlReader.getAttributeValue(i));
+        }
 
-        attNode = attributes.getNamedItem("generated");
-        if (attNode != null) {
-            this.data.setGenerated(attNode.getNodeValue());
+        attValue = attributes.get("generated");
+        if (attValue != null) {
+            this.data.setGenerated(attValue);
         }
 
-        attNode = attributes.getNamedItem("author");
-        if (attNode != null) {
-            this.data.setAuthor(attNode.getNodeValue());
+        attValue = attributes.get("author");
+        if (attValue != null) {
+            this.data.setAuthor(attValue);
         }
 
-        attNode = attributes.getNamedItem("date");
-        if (attNode != null) {
-            this.data.setDate(attNode.getNodeValue());
+        attValue = attributes.get("date");
+        if (attValue != null) {
+            this.data.setDate(attValue);
         }
 
-        attNode = attributes.getNamedItem("comment");
-        if (attNode != null) {
-            this.data.setComment(attNode.getNodeValue());
+        attValue = attributes.get("comment");
+        if (attValue != null) {
+            this.data.setComment(attValue);
         }
 
-        attNode = attributes.getNamedItem("element");
-        if (attNode != null) {
-            String element = attNode.getNodeValue();
-            this.data.setElement(element == null ? element : element.trim());
+        attValue = attributes.get("element");
+        if (attValue != null) {
+            this.data.setElement(attValue.trim());
         }
 
-        attNode = attributes.getNamedItem("pseudo_type");
-        if (attNode != null) {
-            this.data.setPseudoType(attNode.getNodeValue());
+        attValue = attributes.get("pseudo_type");
+        if (attValue != null) {
+            this.data.setPseudoType(attValue);
         }
 
-        attNode = attributes.getNamedItem("relativistic");
-        if (attNode != null) {
-            this.data.setRelativistic(attNode.getNodeValue());
+        attValue = attributes.get("relativistic");
+        if (attValue != null) {
+            this.data.setRelativistic(attValue);
         }
 
-        attNode = attributes.getNamedItem("is_ultrasoft");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("is_ultrasoft");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setUltrasoft(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("is_paw");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("is_paw");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setPaw(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("is_coulomb");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("is_coulomb");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setCoulomb(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("has_so");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("has_so");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setWithSo(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("has_wfc");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("has_wfc");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setWithWfc(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("has_gipaw");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("has_gipaw");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setWithGipaw(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("paw_as_gipaw");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("paw_as_gipaw");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setPawAsGipaw(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("core_correction");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("core_correction");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setCoreCorrection(value.getLogicalValue());
             }
         }
 
-        attNode = attributes.getNamedItem("functional");
-        if (attNode != null) {
-            this.data.setFunctional(attNode.getNodeValue());
+        attValue = attributes.get("functional");
+        if (attValue != null) {
+            this.data.setFunctional(attValue);
         }
 
-        attNode = attributes.getNamedItem("z_valence");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("z_valence");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setZValence(value.getRealValue());
             }
         }
 
-        attNode = attributes.getNamedItem("total_psenergy");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("total_psenergy");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setTotalPsenergy(value.getRealValue());
             }
         }
 
-        attNode = attributes.getNamedItem("wfc_cutoff");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("wfc_cutoff");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setWfcCutoff(value.getRealValue());
             }
         }
 
-        attNode = attributes.getNamedItem("rho_cutoff");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("rho_cutoff");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setRhoCutoff(value.getRealValue());
             }
         }
 
-        attNode = attributes.getNamedItem("l_max");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("l_max");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setLMax(value.getIntegerValue());
             }
         }
 
-        attNode = attributes.getNamedItem("l_max_rho");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("l_max_rho");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setLMaxRho(value.getIntegerValue());
             }
         }
 
-        attNode = attributes.getNamedItem("l_local");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("l_local");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setLLocal(value.getIntegerValue());
             }
         }
 
-        attNode = attributes.getNamedItem("mesh_size");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("mesh_size");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setMeshSize(value.getIntegerValue());
             }
         }
 
-        attNode = attributes.getNamedItem("number_of_wfc");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("number_of_wfc");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setNumberOfWfc(value.getIntegerValue());
             }
         }
 
-        attNode = attributes.getNamedItem("number_of_proj");
-        if (attNode != null) {
-            QEValue value = QEValueBase.getInstance("x", attNode.getNodeValue());
+        attValue = attributes.get("number_of_proj");
+        if (attValue != null) {
+            QEValue value = QEValueBase.getInstance("x", attValue);
             if (value != null) {
                 this.data.setNumberOfProj(value.getIntegerValue());
             }
         }
     }
+
+    /**
+     * a UPF file as a XML document: all elements are enclosed by <root>, because UPF v1 has many root elements.
+     * the XML declaration is removed, and '&' (e.g. in PP_INFO) is replaced by '#'.
+     */
+    private static class UpfReader extends Reader {
+
+        private BufferedReader reader;
+
+        private String head;
+
+        private int headPos;
+
+        public UpfReader(File file) throws IOException {
+            this.reader = new BufferedReader(new FileReader(file));
+
+            String line = null;
+            try {
+                line = this.reader.readLine();
+            } catch (IOException e) {
+                this.reader.close();
+                throw e;
+            }
+
+            line = line == null ? "" : line;
+            if (line.trim().startsWith("<?xml")) {
+                int index = line.indexOf("?>");
+                line = index < 0 ? "" : line.substring(index + 2);
+            }
+
+            this.head = ("<root>" + line + System.lineSeparator()).replace('&', '#');
+            this.headPos = 0;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (this.headPos < this.head.length()) {
+                int len2 = Math.min(len, this.head.length() - this.headPos);
+                this.head.getChars(this.headPos, this.headPos + len2, cbuf, off);
+                this.headPos += len2;
+                return len2;
+            }
+
+            int len2 = this.reader.read(cbuf, off, len);
+            for (int i = off; i < (off + len2); i++) {
+                if (cbuf[i] == '&') {
+                    cbuf[i] = '#';
+                }
+            }
+
+            return len2;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import burai.com.env.Environments;
+
+/**
+ * operations of a process by its PID, which may be started by the previous session of this application.
+ * ProcessHandle is used if available (Java 9 or later), otherwise the pid of UNIXProcess and commands of OS are used.
+ */
+final class ProcessTools {
+
+    private static final String PROC_PATH = "/proc";
+
+    private ProcessTools() {
+        // NOP
+    }
+
+    /**
+     * @return PID of the process, or -1 if unknown.
+     */
+    public static long getPID(Process process) {
+        if (process == null) {
+            return -1L;
+        }
+
+        try {
+            Method method = Process.class.getMethod("pid");
+            Object pid = method.invoke(process);
+            if (pid != null && pid instanceof Number) {
+                return ((Number) pid).longValue();
+            }
+
+        } catch (NoSuchMethodException e) {
+            // NOP
+
+        } catch (Exception e) {
+            return -1L;
+        }
+
+        try {
+            Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * @param directory working directory of the process, which is checked if possible,
+     * so that a PID reused by another process is not regarded.
+     */
+    public static boolean isAlive(long pid, File directory) {
+        if (pid <= 0L) {
+            return false;
+        }
+
+        File procFile = new File(PROC_PATH, Long.toString(pid));
+        if (procFile.isDirectory()) {
+            return isSameDirectory(new File(procFile, "cwd"), directory);
+        }
+
+        Object handle = getProcessHandle(pid);
+        if (handle != null) {
+            return invokeBoolean(handle, "isAlive");
+        }
+
+        if (Environments.isWindows()) {
+            return false;
+        }
+
+        return execute("kill", "-0", Long.toString(pid));
+    }
+
+    public static boolean destroy(long pid) {
+        if (pid <= 0L) {
+            return false;
+        }
+
+        Object handle = getProcessHandle(pid);
+        if (handle != null) {
+            return invokeBoolean(handle, "destroy");
+        }
+
+        if (Environments.isWindows()) {
+            return execute("taskkill", "/T", "/F", "/PID", Long.toString(pid));
+        }
+
+        return execute("kill", Long.toString(pid));
+    }
+
+    private static boolean isSameDirectory(File cwdFile, File directory) {
+        if (directory == null) {
+            return true;
+        }
+
+        try {
+            Path cwdPath = Files.readSymbolicLink(cwdFile.toPath());
+            return Files.isSameFile(cwdPath, directory.toPath());
+
+        } catch (Exception e) {
+            // the process is not owned by this user, or has just been finished
+            return false;
+        }
+    }
+
+    private static Object getProcessHandle(long pid) {
+        try {
+            Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            Method method = handleClass.getMethod("of", long.class);
+            Object optional = method.invoke(null, pid);
+            if (optional != null && optional instanceof Optional<?>) {
+                return ((Optional<?>) optional).orElse(null);
+            }
+
+        } catch (Exception e) {
+            // NOP
+        }
+
+        return null;
+    }
+
+    private static boolean invokeBoolean(Object handle, String name) {
+        try {
+            Method method = Class.forName("java.lang.ProcessHandle").getMethod(name);
+            Object value = method.invoke(handle);
+            return value != null && Boolean.TRUE.equals(value);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean execute(String... command) {
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            process.getInputStream().close();
+            return process.waitFor() == 0;
+
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
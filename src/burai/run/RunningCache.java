@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burai.com.env.Environments;
+import burai.com.file.FileTools;
+import burai.input.QEInput;
+import burai.input.card.QEAtomicSpecies;
+import burai.input.namelist.QENamelist;
+import burai.pseudo.PseudoLibrary;
+import burai.pseudo.PseudoPotential;
+import burai.run.RunningCommand.RunningCommandType;
+
+/**
+ * results of SCF calculations (the save directory and the log files), which are keyed by a hash of
+ * the normalized input, the command of pw.x and digests of pseudopotentials.
+ * entries are evicted in order of the last use, when their total size exceeds the budget.
+ */
+class RunningCache {
+
+    private static final String PROP_KEY_MAX_SIZE = "scf_cache_megabytes";
+
+    private static final int DEFAULT_MAX_SIZE = 2048;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final String DIR_NAME_SAVE = "save";
+    private static final String FILE_NAME_LOG = "log";
+    private static final String FILE_NAME_ERR = "err";
+    private static final String FILE_NAME_SIZE = "size";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static RunningCache instance = null;
+
+    public static synchronized RunningCache getInstance() {
+        if (instance == null) {
+            instance = new RunningCache();
+        }
+
+        return instance;
+    }
+
+    private File directory;
+
+    private Map<File, PseudoDigest> pseudoDigests;
+
+    private RunningCache() {
+        this.directory = null;
+        this.pseudoDigests = new HashMap<File, PseudoDigest>();
+    }
+
+    private long getMaxSize() {
+        int maxSize = Environments.getIntProperty(PROP_KEY_MAX_SIZE, DEFAULT_MAX_SIZE);
+        return Math.max(0L, ((long) maxSize) * 1024L * 1024L);
+    }
+
+    private File getDirectory() {
+        if (this.directory == null) {
+            String path = Environments.getScfCachePath();
+            this.directory = path == null ? null : new File(path);
+        }
+
+        return this.directory;
+    }
+
+    /**
+     * the title and paths (outdir, wfcdir, pseudo_dir), which do not affect results, are removed from the input.
+     * @return key of the input, or null if the input cannot be cached.
+     */
+    public String getKey(QEInput input) {
+        if (input == null) {
+            return null;
+        }
+
+        if (this.getMaxSize() <= 0L) {
+            return null;
+        }
+
+        QEInput input2 = input.copy();
+        if (input2 == null) {
+            return null;
+        }
+
+        QENamelist nmlControl = input2.getNamelist(QEInput.NAMELIST_CONTROL);
+        if (nmlControl != null) {
+            nmlControl.removeValue("title");
+            nmlControl.removeValue("outdir");
+            nmlControl.removeValue("wfcdir");
+            nmlControl.removeValue("pseudo_dir");
+        }
+
+        StringBuilder builder = new StringBuilder();
+
+        String command = RunningCommandType.PWSCF.getCommand();
+        builder.append(command == null ? "" : command).append('\n');
+        builder.append(input2.toString()).append('\n');
+
+        QEAtomicSpecies atomicSpecies = input2.getCard(QEAtomicSpecies.class);
+        int numSpecies = atomicSpecies == null ? 0 : atomicSpecies.numSpecies();
+        for (int i = 0; i < numSpecies; i++) {
+            if (!atomicSpecies.hasPseudoPotential(i)) {
+                continue;
+            }
+
+            String pseudoName = atomicSpecies.getPseudoName(i).trim();
+            String digest = this.getPseudoDigest(pseudoName);
+            if (digest == null) {
+                return null;
+            }
+
+            builder.append(pseudoName).append('=').append(digest).append('\n');
+        }
+
+        return toHex(digestOf(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String getPseudoDigest(String pseudoName) {
+        File pseudoFile = null;
+        PseudoPotential pseudoPot = PseudoLibrary.getInstance().peekPseudoPotential(pseudoName);
+        if (pseudoPot != null) {
+            pseudoFile = pseudoPot.getFile();
+        } else {
+            pseudoFile = new File(Environments.getPseudosPath(), pseudoName);
+        }
+
+        if (pseudoFile == null || !pseudoFile.isFile()) {
+            return null;
+        }
+
+        long length = pseudoFile.length();
+        long modified = pseudoFile.lastModified();
+
+        synchronized (this.pseudoDigests) {
+            PseudoDigest pseudoDigest = this.pseudoDigests.get(pseudoFile);
+            if (pseudoDigest != null && pseudoDigest.length == length && pseudoDigest.modified == modified) {
+                return pseudoDigest.value;
+            }
+        }
+
+        String value = null;
+
+        try {
+            value = toHex(digestOf(pseudoFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        synchronized (this.pseudoDigests) {
+            this.pseudoDigests.put(pseudoFile, new PseudoDigest(length, modified, value));
+        }
+
+        return value;
+    }
+
+    /**
+     * copy the cached results into the project directory.
+     * @return true if the results are restored.
+     */
+    public synchronized boolean restore(String key, File directory, String prefix, File logFile, File errFile) {
+        if (key == null || directory == null || prefix == null || logFile == null) {
+            return false;
+        }
+
+        File cacheDirectory = this.getDirectory();
+        File entry = cacheDirectory == null ? null : new File(cacheDirectory, key);
+        if (entry == null || !entry.isDirectory()) {
+            return false;
+        }
+
+        File srcSave = new File(entry, DIR_NAME_SAVE);
+        File srcLog = new File(entry, FILE_NAME_LOG);
+        File srcErr = new File(entry, FILE_NAME_ERR);
+        if (!srcSave.isDirectory() || !srcLog.isFile()) {
+            return false;
+        }
+
+        File dstSave = new File(directory, prefix + ".save");
+        if (dstSave.exists()) {
+            FileTools.deleteAllFiles(dstSave, false);
+        }
+
+        boolean status = FileTools.copyAllFiles(srcSave, dstSave, false);
+        status = status && FileTools.copyFile(srcLog, logFile, false);
+        if (status && errFile != null && srcErr.isFile()) {
+            status = FileTools.copyFile(srcErr, errFile, false);
+        }
+
+        if (!status) {
+            FileTools.deleteAllFiles(dstSave, false);
+            return false;
+        }
+
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * copy results of the project directory into the cache, and evict old entries.
+     */
+    public synchronized void store(String key, File directory, String prefix, File logFile, File errFile) {
+        if (key == null || directory == null || prefix == null || logFile == null) {
+            return;
+        }
+
+        File cacheDirectory = this.getDirectory();
+        if (cacheDirectory == null) {
+            return;
+        }
+
+        File srcSave = new File(directory, prefix + ".save");
+        if (!srcSave.isDirectory() || !logFile.isFile()) {
+            return;
+        }
+
+        File entry = new File(cacheDirectory, key);
+        if (entry.isDirectory()) {
+            entry.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        File tmpEntry = new File(cacheDirectory, key + TMP_SUFFIX);
+        if (tmpEntry.exists()) {
+            FileTools.deleteAllFiles(tmpEntry, false);
+        }
+
+        boolean status = tmpEntry.mkdirs();
+        status = status && FileTools.copyAllFiles(srcSave, new File(tmpEntry, DIR_NAME_SAVE), false);
+        status = status && FileTools.copyFile(logFile, new File(tmpEntry, FILE_NAME_LOG), false);
+        if (status && errFile != null && errFile.isFile()) {
+            status = FileTools.copyFile(errFile, new File(tmpEntry, FILE_NAME_ERR), false);
+        }
+
+        if (status) {
+            long size = sizeOf(tmpEntry);
+
+            try {
+                Files.write(new File(tmpEntry, FILE_NAME_SIZE).toPath(),
+                        Long.toString(size).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            status = tmpEntry.renameTo(entry);
+        }
+
+        if (!status) {
+            FileTools.deleteAllFiles(tmpEntry, false);
+            return;
+        }
+
+        this.evict();
+    }
+
+    private void evict() {
+        File cacheDirectory = this.getDirectory();
+        File[] files = cacheDirectory == null ? null : cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        List<CacheEntry> entries = new ArrayList<CacheEntry>();
+        long totalSize = 0L;
+
+        for (File file : files) {
+            if (!file.isDirectory() || file.getName().endsWith(TMP_SUFFIX)) {
+                continue;
+            }
+
+            CacheEntry entry = new CacheEntry(file, readSize(file), file.lastModified());
+            entries.add(entry);
+            totalSize += entry.size;
+        }
+
+        long maxSize = this.getMaxSize();
+        if (totalSize <= maxSize) {
+            return;
+        }
+
+        entries.sort((entry1, entry2) -> Long.compare(entry1.used, entry2.used));
+
+        for (CacheEntry entry : entries) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+
+            if (FileTools.deleteAllFiles(entry.file, false)) {
+                totalSize -= entry.size;
+            }
+        }
+    }
+
+    private static long readSize(File entry) {
+        File sizeFile = new File(entry, FILE_NAME_SIZE);
+
+        try {
+            if (sizeFile.isFile()) {
+                String value = new String(Files.readAllBytes(sizeFile.toPath()), StandardCharsets.UTF_8);
+                return Long.parseLong(value.trim());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return sizeOf(entry);
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isDirectory()) {
+            long size = 0L;
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File file2 : files) {
+                    size += sizeOf(file2);
+                }
+            }
+
+            return size;
+        }
+
+        return file.length();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] digestOf(byte[] bytes) {
+        return createDigest().digest(bytes);
+    }
+
+    private static byte[] digestOf(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        InputStream stream = null;
+
+        try {
+            stream = new FileInputStream(file);
+
+            int length = 0;
+            while ((length = stream.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        return digest.digest();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            builder.append(Character.forDigit(b & 0x0f, 16));
+        }
+
+        return builder.toString();
+    }
+
+    private static class PseudoDigest {
+
+        public long length;
+
+        public long modified;
+
+        public String value;
+
+        public PseudoDigest(long length, long modified, String value) {
+            this.length = length;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+
+    private static class CacheEntry {
+
+        public File file;
+
+        public long size;
+
+        public long used;
+
+        public CacheEntry(File file, long size, long used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+}
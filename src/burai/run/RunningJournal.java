@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * append-only log of RunningManager, so that queued and running nodes are restored after exiting or crashing.
+ * each line is an event of a node: add, remove, start (of a command) and finish.
+ * the log is compacted when it is restored, and deleted when no nodes are left.
+ */
+class RunningJournal {
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private static final String SEP = "\t";
+
+    private static final String EVENT_ADD = "add";
+    private static final String EVENT_REMOVE = "remove";
+    private static final String EVENT_START = "start";
+    private static final String EVENT_FINISH = "finish";
+
+    private static final String NULL_TYPE = "-";
+
+    private File file;
+
+    private FileOutputStream stream;
+
+    public RunningJournal(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            throw new IllegalArgumentException("path is empty.");
+        }
+
+        this.file = new File(path.trim());
+        this.stream = null;
+    }
+
+    /**
+     * @return nodes which are not finished, in order of id.
+     */
+    public synchronized List<Record> restore() {
+        Map<Long, Record> records = new LinkedHashMap<Long, Record>();
+
+        if (this.file.isFile()) {
+            BufferedReader reader = null;
+
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), CHARSET));
+
+                String line = null;
+                while ((line = reader.readLine()) != null) {
+                    this.readEvent(line, records);
+                }
+
+            } catch (IOException e) {
+                e.printStackTrace();
+
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        List<Record> recordList = new ArrayList<Record>(records.values());
+        this.compact(recordList);
+        return recordList;
+    }
+
+    private void readEvent(String line, Map<Long, Record> records) {
+        // the last line may be broken by crashing
+        String[] subLines = line.split(SEP, 7);
+        if (subLines.length < 2) {
+            return;
+        }
+
+        long id = 0L;
+        try {
+            id = Long.parseLong(subLines[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        String event = subLines[0];
+
+        if (EVENT_ADD.equals(event)) {
+            if (subLines.length < 7 || subLines[6].isEmpty()) {
+                return;
+            }
+
+            try {
+                Record record = new Record(id, subLines[6]);
+                record.type = NULL_TYPE.equals(subLines[2]) ? null : RunningType.valueOf(subLines[2]);
+                record.numProcesses = Integer.parseInt(subLines[3]);
+                record.numThreads = Integer.parseInt(subLines[4]);
+                record.priority = Integer.parseInt(subLines[5]);
+                records.put(id, record);
+
+            } catch (IllegalArgumentException e) {
+                // NOP
+            }
+
+        } else if (EVENT_START.equals(event)) {
+            Record record = records.get(id);
+            if (record == null || subLines.length < 4) {
+                return;
+            }
+
+            try {
+                int index = Integer.parseInt(subLines[2]);
+                long pid = Long.parseLong(subLines[3].trim());
+                record.index = index;
+                record.pid = pid;
+
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+
+        } else if (EVENT_REMOVE.equals(event) || EVENT_FINISH.equals(event)) {
+            records.remove(id);
+        }
+    }
+
+    private void compact(List<Record> records) {
+        this.closeStream();
+
+        try {
+            if (records.isEmpty()) {
+                Files.deleteIfExists(this.file.toPath());
+                return;
+            }
+
+            StringBuilder builder = new StringBuilder();
+            for (Record record : records) {
+                builder.append(toAddLine(record.id, record.directory,
+                        record.type, record.numProcesses, record.numThreads, record.priority));
+                if (record.index > 0 || record.pid > 0L) {
+                    builder.append(toStartLine(record.id, record.index, record.pid));
+                }
+            }
+
+            File tmpFile = new File(this.file.getPath() + ".tmp");
+            FileOutputStream tmpStream = new FileOutputStream(tmpFile);
+
+            try {
+                tmpStream.write(builder.toString().getBytes(CHARSET));
+                tmpStream.getFD().sync();
+            } finally {
+                tmpStream.close();
+            }
+
+            Files.move(tmpFile.toPath(), this.file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void add(long id, RunningNode node) {
+        if (node == null) {
+            return;
+        }
+
+        String directory = node.getProject().getDirectoryPath();
+        if (directory == null || directory.trim().isEmpty()) {
+            return;
+        }
+
+        this.write(toAddLine(id, directory.trim(),
+                node.getType(), node.getNumProcesses(), node.getNumThreads(), node.getPriority()));
+    }
+
+    public synchronized void remove(long id) {
+        this.write(EVENT_REMOVE + SEP + id + "\n");
+    }
+
+    public synchronized void start(long id, int index, long pid) {
+        this.write(toStartLine(id, index, pid));
+    }
+
+    public synchronized void finish(long id) {
+        this.write(EVENT_FINISH + SEP + id + "\n");
+    }
+
+    /**
+     * delete the log, when no nodes are left.
+     */
+    public synchronized void clear() {
+        this.closeStream();
+
+        try {
+            Files.deleteIfExists(this.file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void close() {
+        this.closeStream();
+    }
+
+    private static String toAddLine(long id, String directory,
+            RunningType type, int numProcesses, int numThreads, int priority) {
+
+        String strType = type == null ? NULL_TYPE : type.name();
+        return EVENT_ADD + SEP + id + SEP + strType + SEP + numProcesses + SEP + numThreads + SEP + priority
+                + SEP + directory + "\n";
+    }
+
+    private static String toStartLine(long id, int index, long pid) {
+        return EVENT_START + SEP + id + SEP + index + SEP + pid + "\n";
+    }
+
+    private void write(String line) {
+        try {
+            if (this.stream == null) {
+                this.stream = new FileOutputStream(this.file, true);
+            }
+
+            // events are rare, so that every event is synchronized to the disk
+            this.stream.write(line.getBytes(CHARSET));
+            this.stream.getFD().sync();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.closeStream();
+        }
+    }
+
+    private void closeStream() {
+        if (this.stream == null) {
+            return;
+        }
+
+        try {
+            this.stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.stream = null;
+    }
+
+    public static class Record {
+
+        public long id;
+
+        public String directory;
+
+        public RunningType type;
+
+        public int numProcesses;
+
+        public int numThreads;
+
+        public int priority;
+
+        public int index;
+
+        public long pid;
+
+        public Record(long id, String directory) {
+            this.id = id;
+            this.directory = directory;
+            this.type = null;
+            this.numProcesses = 1;
+            this.numThreads = 1;
+            this.priority = 0;
+            this.index = 0;
+            this.pid = -1L;
+        }
+    }
+}
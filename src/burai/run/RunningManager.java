@@ -16,16 +16,29 @@
 
 package burai.run;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
+import burai.com.env.Environments;
 import burai.com.life.Life;
 import burai.project.Project;
 
+/**
+ * runs nodes concurrently, as long as their cores (#processes x #threads) are within the budget.
+ * queued nodes are started in order of priority and arrival, and a smaller node can overtake a larger one,
+ * which is not overtaken more than MAX_BYPASSED times. nodes of one project are run one by one.
+ * nodes are recorded in RunningJournal, and restored when this manager is created at the next session.
+ * on exiting, running processes are not killed, and they are attached by the restored nodes.
+ */
 public class RunningManager implements Runnable {
 
+    private static final String PROP_KEY_MAX_CORES = "running_max_cores";
+
+    private static final int MAX_BYPASSED = 8;
+
     private static RunningManager instance = null;
 
     public static RunningManager getInstance() {
@@ -38,26 +51,89 @@ public class RunningManager implements Runnable {
 
     private boolean alive;
 
-    private RunningNode currentNode;
+    private int maxCores;
+
+    private int usedCores;
+
+    private long numArrivals;
 
-    private Queue<RunningNode> nodes;
+    private List<NodeEntry> runningNodes;
+
+    private List<NodeEntry> nodes;
 
     private List<RunningManagerListener> listeners;
 
+    private RunningJournal journal;
+
     private RunningManager() {
         this.alive = true;
 
-        this.currentNode = null;
-        this.nodes = new LinkedList<RunningNode>();
+        this.maxCores = Environments.getIntProperty(PROP_KEY_MAX_CORES, Environments.getNumCUPs());
+        if (this.maxCores < 1) {
+            this.maxCores = Math.max(1, Environments.getNumCUPs());
+        }
+
+        this.usedCores = 0;
+        this.numArrivals = 0L;
+
+        this.runningNodes = new ArrayList<NodeEntry>();
+        this.nodes = new LinkedList<NodeEntry>();
 
         this.listeners = null;
 
+        this.journal = new RunningJournal(Environments.getRunningPath());
+        this.restoreNodes();
+
         Thread thread = new Thread(this);
         thread.start();
 
         Life.getInstance().addOnDead(() -> this.stop());
     }
 
+    /**
+     * a process, which is still running after the previous session, is waited for instead of being started again.
+     */
+    private void restoreNodes() {
+        List<RunningJournal.Record> records = this.journal.restore();
+
+        for (RunningJournal.Record record : records) {
+            this.numArrivals = Math.max(this.numArrivals, record.id + 1L);
+
+            if (!Project.isProjectDirectory(record.directory)) {
+                this.journal.remove(record.id);
+                continue;
+            }
+
+            Project project = null;
+            try {
+                project = Project.getInstance(record.directory);
+            } catch (Exception e) {
+                e.printStackTrace();
+                this.journal.remove(record.id);
+                continue;
+            }
+
+            RunningNode node = new RunningNode(project);
+            node.setType(record.type);
+            node.setNumProcesses(record.numProcesses);
+            node.setNumThreads(record.numThreads);
+            node.setPriority(record.priority);
+
+            long pid = record.pid;
+            if (!ProcessTools.isAlive(pid, new File(record.directory))) {
+                pid = -1L;
+            }
+
+            node.resume(record.index, pid);
+
+            this.addEntry(new NodeEntry(node, record.id), false);
+        }
+
+        if (this.nodes.isEmpty()) {
+            this.journal.clear();
+        }
+    }
+
     private synchronized boolean isAlive() {
         return this.alive;
     }
@@ -65,49 +141,99 @@ public class RunningManager implements Runnable {
     public synchronized void stop() {
         this.alive = false;
 
-        if (this.currentNode != null) {
-            this.currentNode.stop();
+        for (NodeEntry entry : this.runningNodes) {
+            entry.node.detach();
         }
 
+        // nodes which are detached here, are left in the journal as running
+        this.journal.close();
+
+        this.notifyAll();
+    }
+
+    public synchronized int getMaxCores() {
+        return this.maxCores;
+    }
+
+    /**
+     * nodes which are already running are not stopped, even if the budget is reduced.
+     */
+    public synchronized void setMaxCores(int maxCores) {
+        this.maxCores = Math.max(1, maxCores);
         this.notifyAll();
     }
 
+    public synchronized int getUsedCores() {
+        return this.usedCores;
+    }
+
+    private static int coresOf(RunningNode node) {
+        return Math.max(1, node.getNumProcesses()) * Math.max(1, node.getNumThreads());
+    }
+
     public synchronized boolean addNode(RunningNode node) {
         if (node != null) {
-            boolean status = this.nodes.offer(node);
+            return this.addEntry(new NodeEntry(node, this.numArrivals++), true);
+        }
 
-            if (status) {
-                node.setStatus(RunningStatus.QUEUED);
+        return false;
+    }
 
-                this.notifyAll();
+    private synchronized boolean addEntry(NodeEntry entry, boolean journaling) {
+        RunningNode node = entry.node;
 
-                if (this.listeners != null) {
-                    for (RunningManagerListener listener : this.listeners) {
-                        if (listener != null) {
-                            listener.onNodeAdded(node);
-                        }
+        boolean status = this.nodes.add(entry);
+
+        if (status) {
+            if (journaling) {
+                this.journal.add(entry.arrival, node);
+            }
+
+            node.setOnProcessStarted((index, pid) -> this.journal.start(entry.arrival, index, pid));
+
+            node.setStatus(RunningStatus.QUEUED);
+
+            this.notifyAll();
+
+            if (this.listeners != null) {
+                for (RunningManagerListener listener : this.listeners) {
+                    if (listener != null) {
+                        listener.onNodeAdded(node);
                     }
                 }
             }
-
-            return status;
         }
 
-        return false;
+        return status;
     }
 
     public synchronized boolean removeNode(RunningNode node) {
         if (node != null) {
-            if (node == this.currentNode) {
-                this.currentNode.stop();
-                return true;
+            for (NodeEntry entry : this.runningNodes) {
+                if (entry.node == node) {
+                    entry.node.stop();
+                    return true;
+                }
+            }
+
+            NodeEntry removedEntry = null;
+            for (NodeEntry entry : this.nodes) {
+                if (entry.node == node) {
+                    removedEntry = entry;
+                    break;
+                }
             }
 
-            boolean status = this.nodes.remove(node);
+            boolean status = removedEntry != null && this.nodes.remove(removedEntry);
 
             if (status) {
                 node.setStatus(RunningStatus.IDLE);
 
+                this.journal.remove(removedEntry.arrival);
+                if (this.isEmpty()) {
+                    this.journal.clear();
+                }
+
                 if (this.listeners != null) {
                     for (RunningManagerListener listener : this.listeners) {
                         if (listener != null) {
@@ -147,14 +273,106 @@ public class RunningManager implements Runnable {
         this.listeners.remove(listener);
     }
 
+    /**
+     * @return queued nodes, in order to be started.
+     */
+    private List<NodeEntry> sortedNodes() {
+        List<NodeEntry> entries = new ArrayList<NodeEntry>(this.nodes);
+        for (NodeEntry entry : entries) {
+            entry.priority = entry.node.getPriority();
+        }
+
+        entries.sort((entry1, entry2) -> {
+            if (entry1.priority != entry2.priority) {
+                return Integer.compare(entry2.priority, entry1.priority);
+            }
+
+            return Long.compare(entry1.arrival, entry2.arrival);
+        });
+
+        return entries;
+    }
+
+    private boolean isRunningProject(Project project) {
+        if (project == null) {
+            return false;
+        }
+
+        for (NodeEntry entry : this.runningNodes) {
+            Project project2 = entry.node.getProject();
+            if (project2 != null && project2.isSameAs(project)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return a node which fits free cores, or null if no nodes can be started now.
+     */
+    private NodeEntry pollNextNode() {
+        // a restored node, whose process is still running, has already used cores
+        for (NodeEntry entry : this.nodes) {
+            if (entry.node.isAttached()) {
+                this.nodes.remove(entry);
+                entry.cores = Math.min(coresOf(entry.node), this.maxCores);
+                return entry;
+            }
+        }
+
+        int freeCores = this.maxCores - this.usedCores;
+        if (freeCores < 1 || this.nodes.isEmpty()) {
+            return null;
+        }
+
+        List<NodeEntry> waitingEntries = null;
+
+        for (NodeEntry entry : this.sortedNodes()) {
+            if (this.isRunningProject(entry.node.getProject())) {
+                continue;
+            }
+
+            // a node larger than the budget, is run alone
+            int cores = Math.min(coresOf(entry.node), this.maxCores);
+
+            if (cores <= freeCores) {
+                if (waitingEntries != null) {
+                    for (NodeEntry waitingEntry : waitingEntries) {
+                        waitingEntry.bypassed++;
+                    }
+                }
+
+                this.nodes.remove(entry);
+                entry.cores = cores;
+                return entry;
+            }
+
+            if (entry.bypassed >= MAX_BYPASSED) {
+                return null;
+            }
+
+            if (waitingEntries == null) {
+                waitingEntries = new ArrayList<NodeEntry>();
+            }
+
+            waitingEntries.add(entry);
+        }
+
+        return null;
+    }
+
     @Override
     public void run() {
         while (this.isAlive()) {
+            NodeEntry entry = null;
 
             synchronized (this) {
                 while (this.alive) {
-                    this.currentNode = this.nodes.poll();
-                    if (this.currentNode != null) {
+                    entry = this.pollNextNode();
+                    if (entry != null) {
+                        this.runningNodes.add(entry);
+                        this.usedCores += entry.cores;
                         break;
                     }
 
@@ -166,35 +384,53 @@ public class RunningManager implements Runnable {
                 }
             }
 
-            if (this.currentNode != null && this.isAlive()) {
-                this.currentNode.setStatus(RunningStatus.RUNNING);
+            if (entry != null && this.isAlive()) {
+                this.startNode(entry);
+            }
+        }
+    }
 
-                this.currentNode.run();
+    private void startNode(NodeEntry entry) {
+        Thread thread = new Thread(() -> {
+            entry.node.setStatus(RunningStatus.RUNNING);
 
-                this.currentNode.setStatus(RunningStatus.DONE);
+            entry.node.run();
 
-                synchronized (this) {
-                    if (this.listeners != null) {
-                        for (RunningManagerListener listener : this.listeners) {
-                            if (listener != null) {
-                                listener.onNodeRemoved(this.currentNode);
-                            }
-                        }
+            entry.node.setStatus(RunningStatus.DONE);
+
+            synchronized (this) {
+                this.runningNodes.remove(entry);
+                this.usedCores -= entry.cores;
+
+                if (this.alive) {
+                    this.journal.finish(entry.arrival);
+                    if (this.isEmpty()) {
+                        this.journal.clear();
                     }
+                }
 
-                    this.currentNode = null;
+                if (this.listeners != null) {
+                    for (RunningManagerListener listener : this.listeners) {
+                        if (listener != null) {
+                            listener.onNodeRemoved(entry.node);
+                        }
+                    }
                 }
+
+                this.notifyAll();
             }
-        }
+        });
+
+        thread.start();
     }
 
     public synchronized RunningQueue getQueue() {
         Queue<RunningNode> nodes2 = new LinkedList<RunningNode>();
-        if (this.currentNode != null) {
-            nodes2.add(this.currentNode);
+        for (NodeEntry entry : this.runningNodes) {
+            nodes2.add(entry.node);
         }
-        if (!this.nodes.isEmpty()) {
-            nodes2.addAll(this.nodes);
+        for (NodeEntry entry : this.sortedNodes()) {
+            nodes2.add(entry.node);
         }
 
         RunningQueue queue = new RunningQueue(this, nodes2);
@@ -209,15 +445,17 @@ public class RunningManager implements Runnable {
     }
 
     public synchronized RunningNode getNode(String path) {
-        Project currentProject = this.currentNode == null ? null : this.currentNode.getProject();
-        if (currentProject != null && currentProject.isRelatedFile(path)) {
-            return this.currentNode;
+        for (NodeEntry entry : this.runningNodes) {
+            Project project = entry.node.getProject();
+            if (project != null && project.isRelatedFile(path)) {
+                return entry.node;
+            }
         }
 
-        for (RunningNode node : this.nodes) {
-            Project project = node == null ? null : node.getProject();
+        for (NodeEntry entry : this.nodes) {
+            Project project = entry.node.getProject();
             if (project != null && project.isRelatedFile(path)) {
-                return node;
+                return entry.node;
             }
         }
 
@@ -225,15 +463,17 @@ public class RunningManager implements Runnable {
     }
 
     public synchronized RunningNode getNode(Project project) {
-        Project currentProject = this.currentNode == null ? null : this.currentNode.getProject();
-        if (currentProject != null && currentProject.isSameAs(project)) {
-            return this.currentNode;
+        for (NodeEntry entry : this.runningNodes) {
+            Project project2 = entry.node.getProject();
+            if (project2 != null && project2.isSameAs(project)) {
+                return entry.node;
+            }
         }
 
-        for (RunningNode node : this.nodes) {
-            Project project2 = node == null ? null : node.getProject();
+        for (NodeEntry entry : this.nodes) {
+            Project project2 = entry.node.getProject();
             if (project2 != null && project2.isSameAs(project)) {
-                return node;
+                return entry.node;
             }
         }
 
@@ -241,6 +481,27 @@ public class RunningManager implements Runnable {
     }
 
     public synchronized boolean isEmpty() {
-        return this.currentNode == null && this.nodes.isEmpty();
+        return this.runningNodes.isEmpty() && this.nodes.isEmpty();
+    }
+
+    private static class NodeEntry {
+
+        public RunningNode node;
+
+        public long arrival;
+
+        public int priority;
+
+        public int bypassed;
+
+        public int cores;
+
+        public NodeEntry(RunningNode node, long arrival) {
+            this.node = node;
+            this.arrival = arrival;
+            this.priority = 0;
+            this.bypassed = 0;
+            this.cores = 1;
+        }
     }
 }
@@ -38,8 +38,12 @@ public class RunningNode implements Runnable {
 
     private static final RunningType DEFAULT_TYPE = RunningType.SCF;
 
+    private static final long ATTACHED_SLEEP_TIME = 2000L;
+
     private boolean alive;
 
+    private boolean detached;
+
     private Project project;
 
     private RunningStatus status;
@@ -52,7 +56,15 @@ public class RunningNode implements Runnable {
 
     private int numThreads;
 
-    private Process objProcess;
+    private int priority;
+
+    private List<Process> objProcesses;
+
+    private int attachedIndex;
+
+    private long attachedPID;
+
+    private RunningProcessStarted onProcessStarted;
 
     public RunningNode(Project project) {
         if (project == null) {
@@ -60,6 +72,7 @@ public class RunningNode implements Runnable {
         }
 
         this.alive = true;
+        this.detached = false;
 
         this.project = project;
 
@@ -70,7 +83,13 @@ public class RunningNode implements Runnable {
         this.numProcesses = 1;
         this.numThreads = 1;
 
-        this.objProcess = null;
+        this.priority = 0;
+
+        this.objProcesses = new ArrayList<Process>();
+
+        this.attachedIndex = -1;
+        this.attachedPID = -1L;
+        this.onProcessStarted = null;
     }
 
     public Project getProject() {
@@ -139,12 +158,57 @@ public class RunningNode implements Runnable {
         this.numThreads = numThreads;
     }
 
+    public synchronized int getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * a node of higher priority is started earlier by RunningManager.
+     */
+    public synchronized void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * the process of PID is waited for instead of the step of the index, and completed steps are skipped by RunningWorkflow.
+     * this is used to restore a node which has been run by the previous session.
+     */
+    synchronized void resume(int index, long pid) {
+        this.attachedIndex = index;
+        this.attachedPID = pid;
+    }
+
+    synchronized boolean isAttached() {
+        return this.attachedPID > 0L;
+    }
+
+    synchronized void setOnProcessStarted(RunningProcessStarted onProcessStarted) {
+        this.onProcessStarted = onProcessStarted;
+    }
+
     public synchronized void stop() {
         this.alive = false;
 
-        if (this.objProcess != null) {
-            this.objProcess.destroy();
+        for (Process objProcess : this.objProcesses) {
+            objProcess.destroy();
         }
+
+        if (this.attachedPID > 0L) {
+            ProcessTools.destroy(this.attachedPID);
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * stop this node without killing its processes, which are left running after exiting.
+     * they are recorded as running in RunningJournal, and attached at the next session.
+     */
+    synchronized void detach() {
+        this.alive = false;
+        this.detached = true;
+
+        this.notifyAll();
     }
 
     @Override
@@ -163,11 +227,15 @@ public class RunningNode implements Runnable {
         RunningType type2 = null;
         int numProcesses2 = -1;
         int numThreads2 = -1;
+        int attachedIndex2 = -1;
+        long attachedPID2 = -1L;
 
         synchronized (this) {
             type2 = this.type;
             numProcesses2 = this.numProcesses;
             numThreads2 = this.numThreads;
+            attachedIndex2 = this.attachedIndex;
+            attachedPID2 = this.attachedPID;
         }
 
         if (type2 == null) {
@@ -187,158 +255,354 @@ public class RunningNode implements Runnable {
 
         String inpName = this.project.getInpFileName();
         inpName = inpName == null ? null : inpName.trim();
-        File inpFile = (inpName == null || inpName.isEmpty()) ? null : new File(directory, inpName);
-        if (inpFile == null) {
+        if (inpName == null || inpName.isEmpty()) {
+            return;
+        }
+
+        RunningWorkflow workflow = null;
+        try {
+            workflow = new RunningWorkflow(type2, directory, this.project.getPrefixName());
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        int numSteps = workflow.numSteps();
+        if (numSteps < 1) {
             return;
         }
 
-        List<String[]> commandList = type2.getCommandList(inpName, numProcesses2);
-        if (commandList == null || commandList.isEmpty()) {
+        List<String> inpNameList = type2.getInpNameList(this.project);
+        if (inpNameList == null || inpNameList.size() < numSteps) {
             return;
         }
 
         List<RunningCondition> conditionList = type2.getConditionList();
-        if (conditionList == null || conditionList.size() < commandList.size()) {
+        if (conditionList == null || conditionList.size() < numSteps) {
             return;
         }
 
         List<InputEditor> inputEditorList = type2.getInputEditorList(this.project);
-        if (inputEditorList == null || inputEditorList.size() < commandList.size()) {
+        if (inputEditorList == null || inputEditorList.size() < numSteps) {
             return;
         }
 
         List<String> logNameList = type2.getLogNameList(this.project);
-        if (logNameList == null || logNameList.size() < commandList.size()) {
+        if (logNameList == null || logNameList.size() < numSteps) {
             return;
         }
 
         List<String> errNameList = type2.getErrNameList(this.project);
-        if (errNameList == null || errNameList.size() < commandList.size()) {
+        if (errNameList == null || errNameList.size() < numSteps) {
             return;
         }
 
         List<LogParser> parserList = type2.getParserList(this.project);
-        if (parserList == null || parserList.size() < commandList.size()) {
+        if (parserList == null || parserList.size() < numSteps) {
             return;
         }
 
         List<PostOperation> postList = type2.getPostList();
-        if (postList == null || postList.size() < commandList.size()) {
+        if (postList == null || postList.size() < numSteps) {
             return;
         }
 
-        this.deleteExitFile(directory);
+        if (attachedPID2 <= 0L) {
+            this.deleteExitFile(directory);
+        }
+
+        RunningWorkflow.Step failedStep = null;
 
-        ProcessBuilder builder = null;
-        boolean errOccurred = false;
+        while (true) {
+            List<RunningWorkflow.Step> readySteps = new ArrayList<RunningWorkflow.Step>();
 
-        for (int i = 0; i < commandList.size(); i++) {
             synchronized (this) {
-                if (!this.alive) {
-                    return;
+                int numRunning = 0;
+                for (int i = 0; i < numSteps; i++) {
+                    RunningWorkflow.Step step = workflow.getStep(i);
+                    if (step.status == RunningWorkflow.STEP_RUNNING) {
+                        numRunning++;
+                    } else if (step.status == RunningWorkflow.STEP_FAILED && failedStep == null) {
+                        failedStep = step;
+                    }
                 }
-            }
 
-            String[] command = commandList.get(i);
-            if (command == null || command.length < 1) {
-                continue;
-            }
+                boolean toStart = this.alive && failedStep == null;
 
-            RunningCondition condition = conditionList.get(i);
-            if (condition == null) {
-                continue;
-            }
+                if (toStart) {
+                    for (int i = 0; i < numSteps; i++) {
+                        RunningWorkflow.Step step = workflow.getStep(i);
+                        if (step.status == RunningWorkflow.STEP_WAITING && workflow.isReady(step)) {
+                            readySteps.add(step);
+                        }
+                    }
+                }
 
-            InputEditor inputEditor = inputEditorList.get(i);
-            if (inputEditor == null) {
-                continue;
-            }
+                if (readySteps.isEmpty()) {
+                    if (numRunning < 1 || this.detached) {
+                        break;
+                    }
 
-            String logName = logNameList.get(i);
-            logName = logName == null ? null : logName.trim();
-            if (logName == null || logName.isEmpty()) {
-                continue;
-            }
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
 
-            String errName = errNameList.get(i);
-            errName = errName == null ? null : errName.trim();
-            if (errName == null || errName.isEmpty()) {
-                continue;
+                    continue;
+                }
             }
 
-            LogParser parser = parserList.get(i);
-            if (parser == null) {
-                continue;
-            }
+            for (RunningWorkflow.Step step : readySteps) {
+                int i = step.index;
 
-            PostOperation post = postList.get(i);
-            if (post == null) {
-                continue;
-            }
+                String strInput = null;
+                String logName = logNameList.get(i);
+                logName = logName == null ? null : logName.trim();
+                String errName = errNameList.get(i);
+                errName = errName == null ? null : errName.trim();
+
+                // parallel steps have their own input files
+                String inpName2 = step.width > 1 ? inpNameList.get(i) : inpName;
+                inpName2 = inpName2 == null ? null : inpName2.trim();
+
+                int numProcesses3 = Math.max(1, numProcesses2 / step.width);
+                List<String[]> commandList = null;
+                if (inpName2 != null && !inpName2.isEmpty()) {
+                    commandList = type2.getCommandList(inpName2, numProcesses3);
+                }
+
+                String[] command2 = (commandList == null || commandList.size() <= i) ? null : commandList.get(i);
+                RunningCondition condition = conditionList.get(i);
+                InputEditor inputEditor = inputEditorList.get(i);
+                LogParser parser = parserList.get(i);
+                PostOperation post = postList.get(i);
+
+                boolean available = command2 != null && command2.length > 0 && condition != null && inputEditor != null
+                        && logName != null && !logName.isEmpty() && errName != null && !errName.isEmpty()
+                        && parser != null && post != null;
+
+                QEInput input2 = available ? inputEditor.editInput(input) : null;
+                strInput = input2 == null ? null : input2.toString();
+
+                File logFile = available ? new File(directory, logName) : null;
+
+                if (strInput != null && i == attachedIndex2 && attachedPID2 > 0L) {
+                    workflow.isCompleted(step, strInput, logFile);
+                    this.startAttachedStep(workflow, step, attachedPID2, directory, logFile, parser, post);
+                    continue;
+                }
+
+                // a step, which is not to be run, is regarded as done
+                if (strInput == null || (!condition.toRun(this.project, input2)) || workflow.isCompleted(step, strInput, logFile)) {
+                    synchronized (this) {
+                        step.status = RunningWorkflow.STEP_DONE;
+                    }
+                    continue;
+                }
+
+                File inpFile = new File(directory, inpName2);
+                if (!this.writeQEInput(input2, inpFile)) {
+                    synchronized (this) {
+                        step.status = RunningWorkflow.STEP_DONE;
+                    }
+                    continue;
+                }
+
+                File errFile = new File(directory, errName);
+                this.deleteLogFiles(logFile, errFile);
+
+                // the same SCF has been calculated, in this or other projects
+                if (step.cacheable) {
+                    step.cacheKey = RunningCache.getInstance().getKey(input2);
+                    if (this.restoreStep(workflow, step, directory, logFile, errFile, parser, post)) {
+                        continue;
+                    }
+                }
+
+                ProcessBuilder builder = new ProcessBuilder();
+                builder.directory(directory);
+                builder.command(command2);
+                builder.redirectOutput(logFile);
+                builder.redirectError(errFile);
+                builder.environment().put("OMP_NUM_THREADS", Integer.toString(numThreads2));
+                this.setPathToBuilder(builder);
 
-            QEInput input2 = inputEditor.editInput(input);
-            if (input2 == null) {
-                continue;
+                this.startStep(workflow, step, builder, logFile, errFile, parser, post);
             }
+        }
 
-            if (!condition.toRun(this.project, input2)) {
-                continue;
+        synchronized (this) {
+            if (this.detached) {
+                return;
             }
+        }
+
+        if (failedStep != null) {
+            this.showErrorDialog(failedStep.builder);
+            return;
+        }
 
-            boolean inpStatus = this.writeQEInput(input2, inpFile);
-            if (!inpStatus) {
-                continue;
+        synchronized (this) {
+            if (!this.alive) {
+                return;
             }
+        }
+
+        type2.setProjectStatus(this.project);
+    }
 
-            File logFile = new File(directory, logName);
-            File errFile = new File(directory, errName);
-            this.deleteLogFiles(logFile, errFile);
+    private void startStep(RunningWorkflow workflow, RunningWorkflow.Step step,
+            ProcessBuilder builder, File logFile, File errFile, LogParser parser, PostOperation post) {
 
-            builder = new ProcessBuilder();
-            builder.directory(directory);
-            builder.command(command);
-            builder.redirectOutput(logFile);
-            builder.redirectError(errFile);
-            builder.environment().put("OMP_NUM_THREADS", Integer.toString(numThreads2));
-            this.setPathToBuilder(builder);
+        synchronized (this) {
+            step.status = RunningWorkflow.STEP_RUNNING;
+            step.builder = builder;
+        }
+
+        workflow.markStarted(step);
+
+        Thread thread = new Thread(() -> {
+            boolean success = false;
+            Process process = null;
 
             try {
+                RunningProcessStarted onProcessStarted2 = null;
+                long pid = -1L;
+
                 synchronized (this) {
-                    this.objProcess = builder.start();
+                    if (this.alive) {
+                        process = builder.start();
+                        this.objProcesses.add(process);
+                        onProcessStarted2 = this.onProcessStarted;
+                        if (onProcessStarted2 != null) {
+                            pid = ProcessTools.getPID(process);
+                        }
+                    }
                 }
 
-                parser.startParsing(logFile);
+                if (onProcessStarted2 != null) {
+                    onProcessStarted2.onRunningProcessStarted(step.index, pid);
+                }
 
-                if (this.objProcess != null) {
-                    if (this.objProcess.waitFor() != 0) {
-                        errOccurred = true;
-                        break;
-                    }
+                if (process != null) {
+                    parser.startParsing(logFile);
+                    success = process.waitFor() == 0;
                 }
 
             } catch (Exception e) {
                 e.printStackTrace();
-                errOccurred = true;
-                break;
+                success = false;
 
             } finally {
-                synchronized (this) {
-                    this.objProcess = null;
+                if (process != null) {
+                    synchronized (this) {
+                        this.objProcesses.remove(process);
+                    }
+
+                    parser.endParsing();
                 }
+            }
 
-                parser.endParsing();
+            if (success && step.cacheKey != null) {
+                RunningCache.getInstance().store(
+                        step.cacheKey, builder.directory(), this.project.getPrefixName(), logFile, errFile);
             }
 
-            if (!errOccurred) {
-                post.operate(this.project);
+            this.endStep(workflow, step, success, post);
+        });
+
+        // the process may be left running after exiting, see detach()
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return true if results of the step are restored from RunningCache.
+     */
+    private boolean restoreStep(RunningWorkflow workflow, RunningWorkflow.Step step,
+            File directory, File logFile, File errFile, LogParser parser, PostOperation post) {
+
+        if (step.cacheKey == null) {
+            return false;
+        }
+
+        workflow.markStarted(step);
+
+        if (!RunningCache.getInstance().restore(step.cacheKey, directory, this.project.getPrefixName(), logFile, errFile)) {
+            return false;
+        }
+
+        try {
+            parser.parse(logFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.endStep(workflow, step, true, post);
+        return true;
+    }
+
+    private void startAttachedStep(RunningWorkflow workflow, RunningWorkflow.Step step,
+            long pid, File directory, File logFile, LogParser parser, PostOperation post) {
+
+        synchronized (this) {
+            step.status = RunningWorkflow.STEP_RUNNING;
+        }
+
+        Thread thread = new Thread(() -> {
+            boolean success = false;
+
+            parser.startParsing(logFile);
+
+            try {
+                success = this.waitForAttached(pid, directory);
+            } finally {
+                parser.endParsing();
             }
+
+            this.endStep(workflow, step, success, post);
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void endStep(RunningWorkflow workflow, RunningWorkflow.Step step, boolean success, PostOperation post) {
+        if (success) {
+            post.operate(this.project);
+            workflow.markCompleted(step);
         }
 
-        if (!errOccurred) {
-            type2.setProjectStatus(this.project);
+        synchronized (this) {
+            step.status = success ? RunningWorkflow.STEP_DONE : RunningWorkflow.STEP_FAILED;
+            this.notifyAll();
+        }
+    }
 
-        } else {
-            this.showErrorDialog(builder);
+    /**
+     * the exit status of the process, which is not a child of this session, is unknown.
+     * @return false if this node is stopped.
+     */
+    private boolean waitForAttached(long pid, File directory) {
+        while (ProcessTools.isAlive(pid, directory)) {
+            synchronized (this) {
+                if (!this.alive) {
+                    return false;
+                }
+
+                try {
+                    this.wait(ATTACHED_SLEEP_TIME);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+        }
+
+        synchronized (this) {
+            this.attachedPID = -1L;
+            return this.alive;
         }
     }
 
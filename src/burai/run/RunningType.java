@@ -47,6 +47,14 @@ public enum RunningType {
     DOS("DOS", Project.INPUT_MODE_DOS),
     BAND("Band", Project.INPUT_MODE_BAND);
 
+    // data in outdir, which are read or written by steps
+    private static final String DATA_CHARGE = "charge";
+    private static final String DATA_WFC = "wfc";
+    private static final String DATA_DOS = "dos";
+    private static final String DATA_PDOS = "pdos";
+    private static final String DATA_BAND_UP = "band.up";
+    private static final String DATA_BAND_DOWN = "band.down";
+
     private String label;
 
     private int inputMode;
@@ -559,6 +567,179 @@ public enum RunningType {
         return inpList;
     }
 
+    /**
+     * @return names of steps, which are shared among RunningTypes, so that a completed step can be skipped.
+     */
+    public List<String> getStepNameList() {
+        List<String> stepList = new ArrayList<String>();
+
+        switch (this.inputMode) {
+        case Project.INPUT_MODE_SCF:
+            stepList.add("scf");
+            break;
+
+        case Project.INPUT_MODE_OPTIMIZ:
+            stepList.add("opt");
+            break;
+
+        case Project.INPUT_MODE_MD:
+            stepList.add("md");
+            break;
+
+        case Project.INPUT_MODE_DOS:
+            stepList.add("scf");
+            stepList.add("nscf");
+            stepList.add("dos");
+            stepList.add("pdos");
+            break;
+
+        case Project.INPUT_MODE_BAND:
+            stepList.add("scf");
+            stepList.add("bands");
+            stepList.add("band.up");
+            stepList.add("band.down");
+            break;
+
+        default:
+            // NOP
+            break;
+        }
+
+        return stepList;
+    }
+
+    /**
+     * @return data read by each step, which must be written by preceding steps.
+     */
+    public List<String[]> getReadDataList() {
+        List<String[]> dataList = new ArrayList<String[]>();
+
+        switch (this.inputMode) {
+        case Project.INPUT_MODE_SCF:
+        case Project.INPUT_MODE_OPTIMIZ:
+        case Project.INPUT_MODE_MD:
+            dataList.add(new String[] {});
+            break;
+
+        case Project.INPUT_MODE_DOS:
+            dataList.add(new String[] {});
+            dataList.add(new String[] { DATA_CHARGE });
+            dataList.add(new String[] { DATA_WFC });
+            dataList.add(new String[] { DATA_WFC });
+            break;
+
+        case Project.INPUT_MODE_BAND:
+            dataList.add(new String[] {});
+            dataList.add(new String[] { DATA_CHARGE });
+            dataList.add(new String[] { DATA_WFC });
+            dataList.add(new String[] { DATA_WFC });
+            break;
+
+        default:
+            // NOP
+            break;
+        }
+
+        return dataList;
+    }
+
+    /**
+     * @return data written by each step.
+     */
+    public List<String[]> getWriteDataList() {
+        List<String[]> dataList = new ArrayList<String[]>();
+
+        switch (this.inputMode) {
+        case Project.INPUT_MODE_SCF:
+        case Project.INPUT_MODE_OPTIMIZ:
+        case Project.INPUT_MODE_MD:
+            dataList.add(new String[] { DATA_CHARGE, DATA_WFC });
+            break;
+
+        case Project.INPUT_MODE_DOS:
+            dataList.add(new String[] { DATA_CHARGE, DATA_WFC });
+            dataList.add(new String[] { DATA_WFC });
+            dataList.add(new String[] { DATA_DOS });
+            dataList.add(new String[] { DATA_PDOS });
+            break;
+
+        case Project.INPUT_MODE_BAND:
+            dataList.add(new String[] { DATA_CHARGE, DATA_WFC });
+            dataList.add(new String[] { DATA_WFC });
+            dataList.add(new String[] { DATA_BAND_UP });
+            dataList.add(new String[] { DATA_BAND_DOWN });
+            break;
+
+        default:
+            // NOP
+            break;
+        }
+
+        return dataList;
+    }
+
+    /**
+     * @return name of the file (or the directory) of the data in the project directory, or null if unknown.
+     */
+    public static String getDataFileName(String data, String prefix) {
+        if (data == null || prefix == null) {
+            return null;
+        }
+
+        switch (data) {
+        case DATA_CHARGE:
+        case DATA_WFC:
+            return prefix + ".save";
+
+        case DATA_DOS:
+            return prefix + ".dos";
+
+        case DATA_PDOS:
+            return prefix + ".pdos_tot";
+
+        case DATA_BAND_UP:
+            return prefix + ".band1.gnu";
+
+        case DATA_BAND_DOWN:
+            return prefix + ".band2.gnu";
+
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return true for each step of SCF, whose results can be restored from RunningCache.
+     */
+    public List<Boolean> getCacheableList() {
+        List<Boolean> cacheableList = new ArrayList<Boolean>();
+
+        switch (this.inputMode) {
+        case Project.INPUT_MODE_SCF:
+            cacheableList.add(true);
+            break;
+
+        case Project.INPUT_MODE_OPTIMIZ:
+        case Project.INPUT_MODE_MD:
+            cacheableList.add(false);
+            break;
+
+        case Project.INPUT_MODE_DOS:
+        case Project.INPUT_MODE_BAND:
+            cacheableList.add(true);
+            cacheableList.add(false);
+            cacheableList.add(false);
+            cacheableList.add(false);
+            break;
+
+        default:
+            // NOP
+            break;
+        }
+
+        return cacheableList;
+    }
+
     public List<String> getLogNameList(Project project) {
         if (project == null) {
             return null;
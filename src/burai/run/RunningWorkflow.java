@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * steps of a RunningType as a DAG, whose edges are derived from data (in outdir) read and written by each step.
+ * a step waits for the last writer of data it reads or writes, and for the readers of data it overwrites,
+ * so that independent steps (e.g. dos.x and projwfc.x) can be run at once.
+ * fingerprints of completed steps are recorded in the project directory,
+ * and a step is skipped if its input and data it reads are not changed, and its outputs are not overwritten.
+ * files of the data and the log are also checked, because the user may delete them after the step is completed.
+ */
+class RunningWorkflow {
+
+    public static final int STEP_WAITING = 0;
+    public static final int STEP_RUNNING = 1;
+    public static final int STEP_DONE = 2;
+    public static final int STEP_FAILED = 3;
+
+    private static final String FILE_NAME_STEPS = ".burai.steps";
+
+    private static final String KEY_STEP = "step.";
+    private static final String KEY_DATA = "data.";
+
+    private static final String FINGERPRINT_ALGORITHM = "SHA-1";
+
+    private File directory;
+
+    private String prefix;
+
+    private File recordFile;
+
+    private Properties record;
+
+    private List<Step> steps;
+
+    public RunningWorkflow(RunningType type, File directory, String prefix) {
+        if (type == null) {
+            throw new IllegalArgumentException("type is null.");
+        }
+
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is null.");
+        }
+
+        this.directory = directory;
+        this.prefix = prefix == null ? null : prefix.trim();
+        this.recordFile = new File(directory, FILE_NAME_STEPS);
+        this.record = null;
+
+        this.steps = new ArrayList<Step>();
+        this.createSteps(type);
+        this.setupDependencies();
+    }
+
+    private void createSteps(RunningType type) {
+        List<String> nameList = type.getStepNameList();
+        List<String[]> readList = type.getReadDataList();
+        List<String[]> writeList = type.getWriteDataList();
+        List<Boolean> cacheableList = type.getCacheableList();
+
+        int numSteps = nameList.size();
+        if (readList.size() < numSteps || writeList.size() < numSteps || cacheableList.size() < numSteps) {
+            throw new IllegalArgumentException("data of steps are not declared.");
+        }
+
+        for (int i = 0; i < numSteps; i++) {
+            Step step = new Step(i, nameList.get(i), readList.get(i), writeList.get(i));
+            step.cacheable = Boolean.TRUE.equals(cacheableList.get(i));
+            this.steps.add(step);
+        }
+    }
+
+    private void setupDependencies() {
+        Map<String, Step> writers = new HashMap<String, Step>();
+        Map<String, List<Step>> readers = new HashMap<String, List<Step>>();
+
+        for (Step step : this.steps) {
+            Set<Step> dependencies = new LinkedHashSet<Step>();
+
+            for (String data : step.reads) {
+                Step writer = writers.get(data);
+                if (writer != null) {
+                    dependencies.add(writer);
+                    writer.consumed.add(data);
+                }
+
+                List<Step> readers2 = readers.get(data);
+                if (readers2 == null) {
+                    readers2 = new ArrayList<Step>();
+                    readers.put(data, readers2);
+                }
+
+                readers2.add(step);
+            }
+
+            for (String data : step.writes) {
+                Step writer = writers.get(data);
+                if (writer != null) {
+                    dependencies.add(writer);
+                }
+
+                List<Step> readers2 = readers.get(data);
+                if (readers2 != null) {
+                    dependencies.addAll(readers2);
+                }
+
+                writers.put(data, step);
+                readers.put(data, new ArrayList<Step>());
+            }
+
+            dependencies.remove(step);
+            step.dependencies.addAll(dependencies);
+        }
+
+        // steps of the same dependencies are run at once, and share processes
+        for (Step step : this.steps) {
+            int width = 0;
+            for (Step step2 : this.steps) {
+                if (step2.dependencies.equals(step.dependencies)) {
+                    width++;
+                }
+            }
+
+            step.width = Math.max(1, width);
+        }
+    }
+
+    public int numSteps() {
+        return this.steps.size();
+    }
+
+    public Step getStep(int index) {
+        return this.steps.get(index);
+    }
+
+    /**
+     * @return true if all dependencies of the step are done.
+     */
+    public boolean isReady(Step step) {
+        if (step == null) {
+            return false;
+        }
+
+        for (Step dependency : step.dependencies) {
+            if (dependency.status != STEP_DONE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * a single step (e.g. SCF) is always run, because it is requested explicitly.
+     */
+    public boolean isSkippable() {
+        return this.steps.size() > 1;
+    }
+
+    /**
+     * the fingerprint of the step is computed from the input and data it reads.
+     * @return true if the step has been completed with the same fingerprint, and its outputs are not overwritten.
+     */
+    public synchronized boolean isCompleted(Step step, String input, File logFile) {
+        if (step == null) {
+            return false;
+        }
+
+        Properties record = this.getRecord();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(step.name).append('\n');
+        builder.append(input == null ? "" : input).append('\n');
+        for (String data : step.reads) {
+            builder.append(data).append('=').append(record.getProperty(KEY_DATA + data, "")).append('\n');
+        }
+
+        step.fingerprint = toFingerprint(builder.toString());
+
+        if (!this.isSkippable()) {
+            return false;
+        }
+
+        if (!step.fingerprint.equals(record.getProperty(KEY_STEP + step.name))) {
+            return false;
+        }
+
+        // outputs of the last step are results, otherwise only outputs read by following steps are checked
+        Set<String> outputs = step.consumed;
+        if (outputs.isEmpty()) {
+            outputs = new LinkedHashSet<String>();
+            for (String data : step.writes) {
+                outputs.add(data);
+            }
+        }
+
+        for (String data : outputs) {
+            if (!step.fingerprint.equals(record.getProperty(KEY_DATA + data))) {
+                return false;
+            }
+        }
+
+        if (logFile == null || !logFile.isFile()) {
+            return false;
+        }
+
+        for (String data : step.reads) {
+            if (!this.existsData(data)) {
+                return false;
+            }
+        }
+
+        for (String data : step.writes) {
+            if (!this.existsData(data)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean existsData(String data) {
+        if (this.prefix == null || this.prefix.isEmpty()) {
+            return false;
+        }
+
+        String fileName = RunningType.getDataFileName(data, this.prefix);
+        if (fileName == null) {
+            return true;
+        }
+
+        return new File(this.directory, fileName).exists();
+    }
+
+    /**
+     * outputs of the step are invalidated until it is completed.
+     */
+    public synchronized void markStarted(Step step) {
+        if (step == null) {
+            return;
+        }
+
+        Properties record = this.getRecord();
+        record.remove(KEY_STEP + step.name);
+        for (String data : step.writes) {
+            record.remove(KEY_DATA + data);
+        }
+
+        this.saveRecord();
+    }
+
+    public synchronized void markCompleted(Step step) {
+        if (step == null || step.fingerprint == null) {
+            return;
+        }
+
+        Properties record = this.getRecord();
+        record.setProperty(KEY_STEP + step.name, step.fingerprint);
+        for (String data : step.writes) {
+            record.setProperty(KEY_DATA + data, step.fingerprint);
+        }
+
+        this.saveRecord();
+    }
+
+    private Properties getRecord() {
+        if (this.record != null) {
+            return this.record;
+        }
+
+        this.record = new Properties();
+        if (!this.recordFile.isFile()) {
+            return this.record;
+        }
+
+        InputStream stream = null;
+
+        try {
+            stream = new FileInputStream(this.recordFile);
+            this.record.load(stream);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.record.clear();
+
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return this.record;
+    }
+
+    private void saveRecord() {
+        if (this.record == null) {
+            return;
+        }
+
+        OutputStream stream = null;
+
+        try {
+            stream = new FileOutputStream(this.recordFile);
+            this.record.store(stream, null);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static String toFingerprint(String text) {
+        MessageDigest digest = null;
+
+        try {
+            digest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return Integer.toHexString(text.hashCode());
+        }
+
+        byte[] bytes = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            builder.append(Character.forDigit(b & 0x0f, 16));
+        }
+
+        return builder.toString();
+    }
+
+    public static class Step {
+
+        public int index;
+
+        public String name;
+
+        public String[] reads;
+
+        public String[] writes;
+
+        public List<Step> dependencies;
+
+        public Set<String> consumed;
+
+        public int width;
+
+        public boolean cacheable;
+
+        public String cacheKey;
+
+        public String fingerprint;
+
+        public int status;
+
+        public ProcessBuilder builder;
+
+        public Step(int index, String name, String[] reads, String[] writes) {
+            this.index = index;
+            this.name = name;
+            this.reads = reads == null ? new String[0] : reads;
+            this.writes = writes == null ? new String[0] : writes;
+            this.dependencies = new ArrayList<Step>();
+            this.consumed = new LinkedHashSet<String>();
+            this.width = 1;
+            this.cacheable = false;
+            this.cacheKey = null;
+            this.fingerprint = null;
+            this.status = STEP_WAITING;
+            this.builder = null;
+        }
+    }
+}
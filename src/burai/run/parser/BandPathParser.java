@@ -16,16 +16,10 @@
 
 package burai.run.parser;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-
 import burai.project.property.ProjectBandPaths;
 import burai.project.property.ProjectProperty;
 
-public class BandPathParser extends LogParser {
+public class BandPathParser extends LogParser implements LogEventListener {
 
     private ProjectBandPaths bandPaths;
 
@@ -36,104 +30,35 @@ public class BandPathParser extends LogParser {
     }
 
     @Override
-    public void parse(File file) throws IOException {
-        if (this.bandPaths != null) {
-            this.bandPaths.clearBandPaths();
-        }
-
-        try {
-            this.parseKernel(file);
+    protected void setupScanner(LogScanner scanner) {
+        scanner.addListener(this);
+    }
 
-        } catch (IOException e) {
-            if (this.bandPaths != null) {
-                this.bandPaths.clearBandPaths();
-            }
-            throw e;
+    @Override
+    protected void saveResults() {
+        this.property.saveBandPaths();
+    }
 
-        } finally {
-            this.property.saveBandPaths();
+    @Override
+    public void onLogReset() {
+        if (this.bandPaths != null) {
+            this.bandPaths.clearBandPaths();
         }
     }
 
-    private void parseKernel(File file) throws IOException {
-
-        BufferedReader reader = null;
-
-        try {
-            reader = new BufferedReader(new FileReader(file));
-
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-
-                String strPoint = null;
-                final String header = "high-symmetry point: ";
-                if (line.startsWith(header)) {
-                    strPoint = line.substring(header.length());
-                }
-
-                if (strPoint == null || strPoint.length() < 21) {
-                    continue;
-                }
-
-                String strKx = strPoint.substring(0, 7);
-                if (strKx == null) {
-                    continue;
-                }
-
-                String strKy = strPoint.substring(7, 14);
-                if (strKy == null) {
-                    continue;
-                }
-
-                String strKz = strPoint.substring(14, 21);
-                if (strKz == null) {
-                    continue;
-                }
-
-                strPoint = strPoint.substring(21);
-                strPoint = strPoint == null ? null : strPoint.trim();
-                if (strPoint == null || strPoint.isEmpty()) {
-                    continue;
-                }
-
-                String strCoord = null;
-                String[] subStr = strPoint.split("\\s+");
-                if (subStr != null && subStr.length > 2) {
-                    strCoord = subStr[2];
-                }
-
-                if (strCoord == null) {
-                    continue;
-                }
-
-                try {
-                    double kx = Double.parseDouble(strKx);
-                    double ky = Double.parseDouble(strKy);
-                    double kz = Double.parseDouble(strKz);
-                    double coord = Double.parseDouble(strCoord);
-                    if (this.bandPaths != null) {
-                        this.bandPaths.addPoint(kx, ky, kz, coord);
-                    }
-                } catch (NumberFormatException e) {
-                    // NOP
-                }
-            }
-
-        } catch (FileNotFoundException e1) {
-            throw e1;
+    @Override
+    public void onLogEvent(LogEvent event) {
+        if (event == null || event.getType() != LogEvent.HIGH_SYMMETRY_POINT) {
+            return;
+        }
 
-        } catch (IOException e2) {
-            throw e2;
+        double[] kpoint = event.getVector();
+        if (kpoint == null || kpoint.length < 3) {
+            return;
+        }
 
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e3) {
-                    throw e3;
-                }
-            }
+        if (this.bandPaths != null) {
+            this.bandPaths.addPoint(kpoint[0], kpoint[1], kpoint[2], event.getValue());
         }
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run.parser;
+
+public class LogEvent {
+
+    public static final int NUM_ATOMS = 0;
+    public static final int ALAT = 1;
+    public static final int INITIAL_CELL = 2;
+    public static final int INITIAL_ATOMS = 3;
+    public static final int SCF_ENERGY = 4;
+    public static final int TOTAL_ENERGY = 5;
+    public static final int FERMI_ENERGY = 6;
+    public static final int FORCES = 7;
+    public static final int TOTAL_FORCE = 8;
+    public static final int STRESS = 9;
+    public static final int MD_TIME = 10;
+    public static final int FINAL_COORDINATES = 11;
+    public static final int CELL_PARAMETERS = 12;
+    public static final int ATOMIC_POSITIONS = 13;
+    public static final int EKIN = 14;
+    public static final int KINETIC_ENERGY = 15;
+    public static final int TEMPERATURE = 16;
+    public static final int HIGH_SYMMETRY_POINT = 17;
+
+    private int type;
+
+    private double value;
+
+    private double value2;
+
+    private boolean converged;
+
+    private String unit;
+
+    private String[] labels;
+
+    private double[] vector;
+
+    private double[][] matrix;
+
+    public LogEvent(int type) {
+        this.type = type;
+        this.value = Double.NaN;
+        this.value2 = Double.NaN;
+        this.converged = false;
+        this.unit = null;
+        this.labels = null;
+        this.vector = null;
+        this.matrix = null;
+    }
+
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * @return the value, or NaN if it cannot be read.
+     */
+    public double getValue() {
+        return this.value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the second value (temperature of EKIN), or NaN if it cannot be read.
+     */
+    public double getValue2() {
+        return this.value2;
+    }
+
+    public void setValue2(double value2) {
+        this.value2 = value2;
+    }
+
+    public boolean isConverged() {
+        return this.converged;
+    }
+
+    public void setConverged(boolean converged) {
+        this.converged = converged;
+    }
+
+    public String getUnit() {
+        return this.unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @return labels of atoms, where an element is null if it cannot be read.
+     */
+    public String[] getLabels() {
+        return this.labels;
+    }
+
+    public void setLabels(String[] labels) {
+        this.labels = labels;
+    }
+
+    public double[] getVector() {
+        return this.vector;
+    }
+
+    public void setVector(double[] vector) {
+        this.vector = vector;
+    }
+
+    /**
+     * @return rows of a matrix (cell, stress, forces or coordinates), where a row is null if it cannot be read.
+     */
+    public double[][] getMatrix() {
+        return this.matrix;
+    }
+
+    public void setMatrix(double[][] matrix) {
+        this.matrix = matrix;
+    }
+}
@@ -18,6 +18,14 @@ package burai.run.parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
 
 import burai.project.property.ProjectProperty;
 
@@ -25,10 +33,16 @@ public abstract class LogParser {
 
     private static final long SLEEP_TIME = 5000L;
 
+    private static final long MIN_SLEEP_TIME = 500L;
+
     private boolean parsing;
 
     private boolean ending;
 
+    private WatchService watcher;
+
+    private LogScanner scanner;
+
     protected ProjectProperty property;
 
     public LogParser(ProjectProperty property) {
@@ -38,19 +52,82 @@ public abstract class LogParser {
 
         this.parsing = false;
         this.ending = false;
+        this.watcher = null;
+        this.scanner = null;
         this.property = property;
     }
 
-    public abstract void parse(File file) throws IOException;
+    /**
+     * add listeners of this parser (and its sub-parsers) to the scanner.
+     */
+    protected abstract void setupScanner(LogScanner scanner);
+
+    /**
+     * save results of parsing to the property.
+     */
+    protected abstract void saveResults();
+
+    /**
+     * parse the log file from the beginning.
+     */
+    public void parse(File file) throws IOException {
+        this.parseKernel(file, true);
+    }
+
+    /**
+     * parse only lines appended to the log file after the last parsing.
+     * the log file is parsed from the beginning, if it is not parsed yet or it is rewritten.
+     */
+    public void parseTail(File file) throws IOException {
+        this.parseKernel(file, false);
+    }
+
+    private void parseKernel(File file, boolean fromBeginning) throws IOException {
+        boolean fromBeginning2 = fromBeginning;
+
+        if (this.scanner == null) {
+            this.scanner = new LogScanner();
+            this.setupScanner(this.scanner);
+
+            // results of the previous parsing (e.g. of the previous session) are discarded
+            fromBeginning2 = true;
+        }
+
+        boolean updated = false;
+
+        try {
+            if (fromBeginning2) {
+                this.scanner.reset();
+                updated = true;
+            }
+
+            if (this.scanner.scan(file)) {
+                updated = true;
+            }
+
+        } catch (IOException e) {
+            this.scanner.reset();
+            updated = true;
+            throw e;
+
+        } finally {
+            if (updated) {
+                this.saveResults();
+            }
+        }
+    }
 
     public void startParsing(File file) {
         if (file == null) {
             return;
         }
 
+        WatchService watcher = this.createWatcher(file);
+
         synchronized (this) {
             this.parsing = true;
             this.ending = false;
+            this.watcher = watcher;
         }
 
         Thread thread = new Thread(() -> {
@@ -62,26 +139,16 @@ public abstract class LogParser {
                 }
 
                 try {
-                    this.parse(file);
+                    this.parseTail(file);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
 
-                synchronized (this) {
-                    if (!this.parsing) {
-                        break;
-                    }
-
-                    try {
-                        this.wait(SLEEP_TIME);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+                this.waitForUpdate(file, watcher);
             }
 
             try {
-                this.parse(file);
+                this.parseTail(file);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -92,10 +159,110 @@ public abstract class LogParser {
             }
         });
 
+        // the log may be still written by a process, which is left running after exiting
+        thread.setDaemon(true);
         thread.start();
     }
 
+    private WatchService createWatcher(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory == null || !directory.isDirectory()) {
+            return null;
+        }
+
+        WatchService watcher = null;
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            directory.toPath().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            this.closeWatcher(watcher);
+            watcher = null;
+        }
+
+        return watcher;
+    }
+
+    private void closeWatcher(WatchService watcher) {
+        if (watcher == null) {
+            return;
+        }
+
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * wait until the log file is modified, or SLEEP_TIME has passed.
+     */
+    private void waitForUpdate(File file, WatchService watcher) {
+        if (watcher == null) {
+            this.sleep(SLEEP_TIME);
+            return;
+        }
+
+        Path fileName = file.toPath().getFileName();
+        long time0 = System.currentTimeMillis();
+
+        while (true) {
+            long time = SLEEP_TIME - (System.currentTimeMillis() - time0);
+            if (time <= 0L) {
+                return;
+            }
+
+            WatchKey key = null;
+
+            try {
+                key = watcher.poll(time, TimeUnit.MILLISECONDS);
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            if (key == null) {
+                return;
+            }
+
+            boolean updated = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                    updated = true;
+                }
+            }
+
+            key.reset();
+
+            if (updated) {
+                // wait a little, because a log file is written many times in a short time
+                this.sleep(MIN_SLEEP_TIME);
+                return;
+            }
+        }
+    }
+
+    private synchronized void sleep(long time) {
+        if (!this.parsing) {
+            return;
+        }
+
+        try {
+            this.wait(time);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     public void endParsing() {
+        WatchService watcher = null;
+
         synchronized (this) {
             if (!this.parsing) {
                 return;
@@ -103,9 +270,13 @@ public abstract class LogParser {
 
             this.parsing = false;
             this.ending = true;
+            watcher = this.watcher;
+            this.watcher = null;
             this.notifyAll();
         }
 
+        this.closeWatcher(watcher);
+
         synchronized (this) {
             while (this.ending) {
                 try {
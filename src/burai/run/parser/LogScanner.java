@@ -0,0 +1,532 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.run.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import burai.com.io.LineTokenizer;
+import burai.com.io.TailReader;
+
+/**
+ * reads a log file of Quantum ESPRESSO once, and emits LogEvents to all listeners.
+ * a block of lines (cell, atoms, forces, ...) is emitted only when it is complete,
+ * and an incomplete block at the tail is read again at the next scanning.
+ * lines are read into a LineTokenizer, so that no String is created for lines without events.
+ */
+public class LogScanner {
+
+    private static final int BLOCK_NONE = 0;
+    private static final int BLOCK_INITIAL_CELL = 1;
+    private static final int BLOCK_INITIAL_ATOMS = 2;
+    private static final int BLOCK_FORCES_HEAD = 3;
+    private static final int BLOCK_FORCES_WAIT = 4;
+    private static final int BLOCK_FORCES = 5;
+    private static final int BLOCK_STRESS = 6;
+    private static final int BLOCK_DYNAMICS = 7;
+    private static final int BLOCK_CELL = 8;
+    private static final int BLOCK_POSITIONS = 9;
+
+    private static final String HEADER_NUM_ATOMS = "number of atoms/cell";
+    private static final String HEADER_ALAT = "celldm(1)=";
+    private static final String HEADER_INITIAL_CELL = "crystal axes: (cart. coord. in units of alat)";
+    private static final String HEADER_INITIAL_ATOMS = "site n.     atom                  positions (alat units)";
+    private static final String HEADER_ENERGY = "total energy";
+    private static final String HEADER_FERMI1 = "the Fermi energy";
+    private static final String HEADER_FERMI2 = "highest occupied";
+    private static final String HEADER_FORCES = "Forces acting on atoms";
+    private static final String HEADER_FORCE_ATOM = "atom";
+    private static final String HEADER_TOTAL_FORCE = "Total force =";
+    private static final String HEADER_STRESS = "total   stress";
+    private static final String HEADER_DYNAMICS = "Entering Dynamics";
+    private static final String HEADER_PICO_SECONDS = "pico-seconds";
+    private static final String HEADER_FINAL_COORDINATES = "Begin final coordinates";
+    private static final String HEADER_CELL = "CELL_PARAMETERS";
+    private static final String HEADER_POSITIONS = "ATOMIC_POSITIONS";
+    private static final String HEADER_EKIN = "Ekin";
+    private static final String HEADER_KINETIC = "kinetic energy";
+    private static final String HEADER_TEMPERATURE = "temperature";
+    private static final String HEADER_HIGH_SYMMETRY = "high-symmetry point: ";
+
+    private List<LogEventListener> listeners;
+
+    private LineTokenizer line;
+
+    private long offset;
+
+    private int numAtoms;
+
+    private int numEvents;
+
+    private int blockType;
+
+    private int blockIndex;
+
+    private long blockOffset;
+
+    private LogEvent blockEvent;
+
+    public LogScanner() {
+        this.listeners = null;
+        this.line = new LineTokenizer();
+        this.offset = 0L;
+        this.numAtoms = -1;
+        this.numEvents = 0;
+        this.clearBlock();
+    }
+
+    public void addListener(LogEventListener listener) {
+        if (listener == null) {
+            return;
+        }
+
+        if (this.listeners == null) {
+            this.listeners = new ArrayList<LogEventListener>();
+        }
+
+        this.listeners.add(listener);
+    }
+
+    /**
+     * the log file will be scanned from the beginning.
+     */
+    public void reset() {
+        this.offset = 0L;
+        this.numAtoms = -1;
+        this.clearBlock();
+
+        if (this.listeners != null) {
+            for (LogEventListener listener : this.listeners) {
+                listener.onLogReset();
+            }
+        }
+    }
+
+    /**
+     * scan lines appended after the last scanning.
+     * @return true if any events are emitted, or the log file is scanned from the beginning.
+     */
+    public boolean scan(File file) throws IOException {
+        if (file == null) {
+            return false;
+        }
+
+        boolean updated = false;
+
+        TailReader reader = new TailReader(file);
+        reader.seek(this.offset);
+
+        if (reader.isTruncated()) {
+            this.reset();
+            reader.seek(0L);
+            updated = true;
+        }
+
+        this.numEvents = 0;
+        this.clearBlock();
+
+        try {
+            long lineOffset = reader.getOffset();
+            while (reader.readLine(this.line)) {
+                this.scanLine(lineOffset);
+                lineOffset = reader.getOffset();
+            }
+
+            if (this.blockType == BLOCK_NONE) {
+                this.offset = reader.getOffset();
+            } else {
+                this.offset = this.blockOffset;
+            }
+
+        } finally {
+            reader.close();
+        }
+
+        return updated || this.numEvents > 0;
+    }
+
+    private void emit(LogEvent event) {
+        if (event == null) {
+            return;
+        }
+
+        this.numEvents++;
+
+        if (this.listeners != null) {
+            for (LogEventListener listener : this.listeners) {
+                listener.onLogEvent(event);
+            }
+        }
+    }
+
+    private void clearBlock() {
+        this.blockType = BLOCK_NONE;
+        this.blockIndex = 0;
+        this.blockOffset = 0L;
+        this.blockEvent = null;
+    }
+
+    private void startBlock(int blockType, long blockOffset, LogEvent blockEvent) {
+        this.blockType = blockType;
+        this.blockIndex = 0;
+        this.blockOffset = blockOffset;
+        this.blockEvent = blockEvent;
+    }
+
+    private void endBlock() {
+        LogEvent event = this.blockEvent;
+        this.clearBlock();
+        this.emit(event);
+    }
+
+    private void scanLine(long lineOffset) {
+        LineTokenizer line = this.line;
+
+        switch (this.blockType) {
+        case BLOCK_NONE:
+            this.scanHeader(lineOffset);
+            break;
+
+        case BLOCK_INITIAL_CELL:
+            this.blockEvent.getMatrix()[this.blockIndex] = this.readVector(3, 3);
+            this.blockIndex++;
+            if (this.blockIndex >= 3) {
+                this.endBlock();
+            }
+            break;
+
+        case BLOCK_INITIAL_ATOMS:
+            this.scanInitialAtom();
+            this.blockIndex++;
+            if (this.blockIndex >= this.numAtoms) {
+                this.endBlock();
+            }
+            break;
+
+        case BLOCK_FORCES_HEAD:
+            this.blockType = BLOCK_FORCES_WAIT;
+            break;
+
+        case BLOCK_FORCES_WAIT:
+            if (line.startsWith(HEADER_FORCE_ATOM)) {
+                this.blockType = BLOCK_FORCES;
+                this.scanForceLine();
+            } else {
+                // forces are not printed, and this line may be another header
+                this.clearBlock();
+                this.scanHeader(lineOffset);
+            }
+            break;
+
+        case BLOCK_FORCES:
+            this.scanForceLine();
+            break;
+
+        case BLOCK_STRESS:
+            this.blockEvent.getMatrix()[this.blockIndex] = this.readVector(0, 3);
+            this.blockIndex++;
+            if (this.blockIndex >= 3) {
+                this.endBlock();
+            }
+            break;
+
+        case BLOCK_DYNAMICS:
+            this.scanTime();
+            this.endBlock();
+            break;
+
+        case BLOCK_CELL:
+            this.blockEvent.getMatrix()[this.blockIndex] = this.readVector(0, 3);
+            this.blockIndex++;
+            if (this.blockIndex >= 3) {
+                this.endBlock();
+            }
+            break;
+
+        case BLOCK_POSITIONS:
+            this.scanPosition();
+            this.blockIndex++;
+            if (this.blockIndex >= this.numAtoms) {
+                this.endBlock();
+            }
+            break;
+
+        default:
+            this.clearBlock();
+            break;
+        }
+    }
+
+    private void scanHeader(long lineOffset) {
+        LineTokenizer line = this.line;
+        if (line.isEmpty()) {
+            return;
+        }
+
+        LogEvent event = null;
+
+        if (line.charAt(0) == '!') {
+            this.scanEnergy();
+
+        } else if (line.startsWith(HEADER_ENERGY)) {
+            this.scanEnergy();
+
+        } else if (line.startsWith(HEADER_FERMI1)) {
+            this.emitValue(LogEvent.FERMI_ENERGY, line.getDouble(4), true);
+
+        } else if (line.startsWith(HEADER_FERMI2)) {
+            int index = line.indexOf(':');
+            if (index > -1) {
+                line.tokenize(index + 1, ":");
+                this.emitValue(LogEvent.FERMI_ENERGY, line.getDouble(0), true);
+            }
+
+        } else if (line.startsWith(HEADER_FORCES)) {
+            if (this.numAtoms > 0) {
+                event = new LogEvent(LogEvent.FORCES);
+                event.setMatrix(new double[this.numAtoms][]);
+                this.startBlock(BLOCK_FORCES_HEAD, lineOffset, event);
+            }
+
+        } else if (line.startsWith(HEADER_TOTAL_FORCE)) {
+            this.emitValue(LogEvent.TOTAL_FORCE, line.getDouble(3), false);
+
+        } else if (line.startsWith(HEADER_STRESS)) {
+            event = new LogEvent(LogEvent.STRESS);
+            event.setMatrix(new double[3][]);
+            this.startBlock(BLOCK_STRESS, lineOffset, event);
+
+        } else if (line.startsWith(HEADER_DYNAMICS)) {
+            event = new LogEvent(LogEvent.MD_TIME);
+            this.startBlock(BLOCK_DYNAMICS, lineOffset, event);
+            if (this.scanTime()) {
+                this.endBlock();
+            }
+
+        } else if (line.startsWith(HEADER_FINAL_COORDINATES)) {
+            this.emit(new LogEvent(LogEvent.FINAL_COORDINATES));
+
+        } else if (line.startsWith(HEADER_CELL)) {
+            line.tokenize(0, "()=");
+            event = new LogEvent(LogEvent.CELL_PARAMETERS);
+            event.setUnit(line.getToken(1));
+            event.setValue(line.getDouble(2));
+            event.setMatrix(new double[3][]);
+            this.startBlock(BLOCK_CELL, lineOffset, event);
+
+        } else if (line.startsWith(HEADER_POSITIONS)) {
+            if (this.numAtoms > 0) {
+                line.tokenize(0, "()=");
+                event = new LogEvent(LogEvent.ATOMIC_POSITIONS);
+                event.setUnit(line.getToken(1));
+                event.setLabels(new String[this.numAtoms]);
+                event.setMatrix(new double[this.numAtoms][]);
+                this.startBlock(BLOCK_POSITIONS, lineOffset, event);
+            }
+
+        } else if (line.startsWith(HEADER_EKIN)) {
+            event = new LogEvent(LogEvent.EKIN);
+            event.setValue(line.getDouble(2));
+            event.setValue2(line.getDouble(6));
+            this.emit(event);
+
+        } else if (line.startsWith(HEADER_KINETIC)) {
+            this.emitValue(LogEvent.KINETIC_ENERGY, line.getDouble(4), false);
+
+        } else if (line.startsWith(HEADER_TEMPERATURE)) {
+            this.emitValue(LogEvent.TEMPERATURE, line.getDouble(2), false);
+
+        } else if (line.startsWith(HEADER_HIGH_SYMMETRY)) {
+            this.scanHighSymmetryPoint(HEADER_HIGH_SYMMETRY.length());
+
+        } else if (line.startsWith(HEADER_NUM_ATOMS)) {
+            int numAtoms = line.getInt(4, -1);
+            if (this.numAtoms < 1) {
+                this.numAtoms = numAtoms;
+            }
+
+            event = new LogEvent(LogEvent.NUM_ATOMS);
+            event.setValue(numAtoms);
+            this.emit(event);
+
+        } else if (line.startsWith(HEADER_ALAT)) {
+            line.tokenize(0, "=");
+            this.emitValue(LogEvent.ALAT, line.getDouble(1), false);
+
+        } else if (line.startsWith(HEADER_INITIAL_CELL)) {
+            event = new LogEvent(LogEvent.INITIAL_CELL);
+            event.setMatrix(new double[3][]);
+            this.startBlock(BLOCK_INITIAL_CELL, lineOffset, event);
+
+        } else if (line.startsWith(HEADER_INITIAL_ATOMS)) {
+            if (this.numAtoms > 0) {
+                event = new LogEvent(LogEvent.INITIAL_ATOMS);
+                event.setLabels(new String[this.numAtoms]);
+                event.setMatrix(new double[this.numAtoms][]);
+                this.startBlock(BLOCK_INITIAL_ATOMS, lineOffset, event);
+            }
+        }
+    }
+
+    private void emitValue(int type, double value, boolean onlyValid) {
+        if (onlyValid && Double.isNaN(value)) {
+            return;
+        }
+
+        LogEvent event = new LogEvent(type);
+        event.setValue(value);
+        this.emit(event);
+    }
+
+    /**
+     * "!    total energy  =  -XXX Ry" is a converged energy (TOTAL_ENERGY and SCF_ENERGY),
+     * and "total energy  =  -XXX Ry" is an energy of SCF iteration (SCF_ENERGY).
+     */
+    private void scanEnergy() {
+        LineTokenizer line = this.line;
+
+        boolean converged = false;
+        int start = 0;
+
+        if (line.charAt(0) == '!') {
+            if (line.indexOf(HEADER_ENERGY) > -1) {
+                this.emitValue(LogEvent.TOTAL_ENERGY, line.getDouble(4), false);
+            }
+
+            start = 1;
+            while (start < line.length() && line.charAt(start) <= ' ') {
+                start++;
+            }
+            converged = true;
+        }
+
+        if (!line.startsWith(HEADER_ENERGY, start)) {
+            return;
+        }
+
+        line.tokenize(start, null);
+        double value = line.getDouble(3);
+        if (!Double.isNaN(value)) {
+            LogEvent event = new LogEvent(LogEvent.SCF_ENERGY);
+            event.setValue(value);
+            event.setConverged(converged);
+            this.emit(event);
+        }
+    }
+
+    private void scanInitialAtom() {
+        if (this.line.numTokens() > 8) {
+            double[] coord = this.readVector(6, 3);
+            if (coord != null) {
+                this.blockEvent.getLabels()[this.blockIndex] = this.line.getToken(1);
+                this.blockEvent.getMatrix()[this.blockIndex] = coord;
+            }
+        }
+    }
+
+    private void scanForceLine() {
+        this.scanForce();
+        this.blockIndex++;
+        if (this.blockEvent.getMatrix() == null || this.blockIndex >= this.numAtoms) {
+            this.endBlock();
+        }
+    }
+
+    private void scanForce() {
+        double[][] forces = this.blockEvent.getMatrix();
+        if (forces == null) {
+            return;
+        }
+
+        double[] force = this.readVector(6, 3);
+        if (force == null) {
+            this.blockEvent.setMatrix(null);
+        } else {
+            forces[this.blockIndex] = force;
+        }
+    }
+
+    private boolean scanTime() {
+        int numTokens = this.line.numTokens();
+        if (numTokens > 1 && this.line.equalsToken(numTokens - 1, HEADER_PICO_SECONDS)) {
+            this.blockEvent.setValue(this.line.getDouble(numTokens - 2));
+            return true;
+        }
+
+        return false;
+    }
+
+    private void scanPosition() {
+        if (this.line.numTokens() > 3) {
+            double[] coord = this.readVector(1, 3);
+            if (coord != null) {
+                this.blockEvent.getLabels()[this.blockIndex] = this.line.getToken(0);
+                this.blockEvent.getMatrix()[this.blockIndex] = coord;
+            }
+        }
+    }
+
+    /**
+     * k-point is written in the fixed columns, as 3f7.4 .
+     */
+    private void scanHighSymmetryPoint(int start) {
+        LineTokenizer line = this.line;
+        if ((line.length() - start) < 21) {
+            return;
+        }
+
+        double kx = line.getDouble(start, start + 7);
+        double ky = line.getDouble(start + 7, start + 14);
+        double kz = line.getDouble(start + 14, start + 21);
+
+        line.tokenize(start + 21, null);
+        if (line.numTokens() < 3) {
+            return;
+        }
+
+        double coord = line.getDouble(2);
+        if (Double.isNaN(kx) || Double.isNaN(ky) || Double.isNaN(kz) || Double.isNaN(coord)) {
+            return;
+        }
+
+        LogEvent event = new LogEvent(LogEvent.HIGH_SYMMETRY_POINT);
+        event.setVector(new double[] { kx, ky, kz });
+        event.setValue(coord);
+        this.emit(event);
+    }
+
+    /**
+     * @return values of the current tokens from index start, or null if they cannot be read.
+     */
+    private double[] readVector(int start, int size) {
+        if (this.line.numTokens() < (start + size)) {
+            return null;
+        }
+
+        double[] vector = new double[size];
+        for (int i = 0; i < size; i++) {
+            vector[i] = this.line.getDouble(start + i);
+            if (Double.isNaN(vector[i])) {
+                return null;
+            }
+        }
+
+        return vector;
+    }
+}
@@ -27,6 +27,16 @@ public class VoidParser extends LogParser {
         super(property);
     }
 
+    @Override
+    protected void setupScanner(LogScanner scanner) {
+        // NOP
+    }
+
+    @Override
+    protected void saveResults() {
+        // NOP
+    }
+
     @Override
     public void parse(File file) throws IOException {
         // NOP
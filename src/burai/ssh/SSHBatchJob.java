@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import burai.run.RunningStatus;
+
+/**
+ * SSHJobs of many projects, which are submitted to the job scheduler as one packed script.
+ * the packed script is rendered from the job script of the SSHServer, where NMPI and NOMP mean the allocation,
+ * and projects are run concurrently as long as their processes fit in the allocation.
+ * statuses of each project are reported by its SSHJob.
+ */
+public class SSHBatchJob {
+
+    private static final String BATCH_NAME = ".batch";
+
+    private static final String SCRIPT_PREFIX = "batch";
+
+    private SSHServer sshServer;
+
+    private List<SSHJob> jobs;
+
+    private int numProcesses;
+
+    private int numThreads;
+
+    private String jobID;
+
+    public SSHBatchJob(SSHServer sshServer) {
+        if (sshServer == null) {
+            throw new IllegalArgumentException("sshServer is null.");
+        }
+
+        this.sshServer = sshServer;
+        this.jobs = new ArrayList<SSHJob>();
+        this.numProcesses = 1;
+        this.numThreads = 1;
+        this.jobID = null;
+    }
+
+    public SSHServer getSSHServer() {
+        return this.sshServer;
+    }
+
+    public void addJob(SSHJob job) {
+        if (job == null) {
+            throw new IllegalArgumentException("job is null.");
+        }
+
+        if (!this.sshServer.equals(job.getSSHServer())) {
+            throw new IllegalArgumentException("job is not of " + this.sshServer.toString() + ".");
+        }
+
+        this.jobs.add(job);
+    }
+
+    public List<SSHJob> getJobs() {
+        return this.jobs;
+    }
+
+    public int numJobs() {
+        return this.jobs.size();
+    }
+
+    /**
+     * @return number of MPI processes of the allocation.
+     */
+    public int getNumProcesses() {
+        return this.numProcesses;
+    }
+
+    public void setNumProcesses(int numProcesses) {
+        if (numProcesses > 0) {
+            this.numProcesses = numProcesses;
+        }
+    }
+
+    /**
+     * @return number of OpenMP threads of the allocation.
+     */
+    public int getNumThreads() {
+        return this.numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        if (numThreads > 0) {
+            this.numThreads = numThreads;
+        }
+    }
+
+    public String getJobID() {
+        return this.jobID;
+    }
+
+    /**
+     * files of all projects are uploaded over one session, and one job is submitted.
+     * projects which cannot be staged are excluded, and their statuses are left IDLE.
+     * @return true if the job is submitted.
+     */
+    public boolean postJobsToServer() {
+        this.jobID = null;
+
+        if (this.jobs.isEmpty()) {
+            return false;
+        }
+
+        SSHTransport transport = new SSHTransport(this.sshServer);
+
+        List<SSHJob> stagedJobs = new ArrayList<SSHJob>();
+
+        File scriptFile = null;
+
+        try {
+            for (SSHJob job : this.jobs) {
+                job.stopMonitoring();
+
+                try {
+                    if (job.stageFiles(transport, true)) {
+                        stagedJobs.add(job);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            if (stagedJobs.isEmpty()) {
+                return false;
+            }
+
+            String scriptContent = this.sshServer.getJobScript(
+                    this.createCommands(stagedJobs), this.numProcesses, this.numThreads);
+            if (scriptContent == null || scriptContent.isEmpty()) {
+                return false;
+            }
+
+            scriptFile = File.createTempFile(SCRIPT_PREFIX, SSHJob.getScriptExtension(scriptContent));
+            if (!SSHJob.writeScriptFile(scriptFile, scriptContent)) {
+                return false;
+            }
+
+            String remoteDir = SSHJob.getRemoteRoot(transport) + "/" + BATCH_NAME;
+            transport.mkdirs(remoteDir);
+
+            List<File> files = new ArrayList<File>();
+            files.add(scriptFile);
+            if (!transport.upload(files, remoteDir)) {
+                return false;
+            }
+
+            String jobCommand = this.sshServer.getJobCommand(SSHTransport.quote(scriptFile.getName()));
+            String output = transport.exec("cd " + SSHTransport.quote(remoteDir) + " && " + jobCommand);
+            this.jobID = output == null ? null : output.trim();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+
+        } finally {
+            if (scriptFile != null) {
+                scriptFile.delete();
+            }
+        }
+
+        SSHJobMonitor monitor = new SSHJobMonitor(new SSHTransport(this.sshServer));
+
+        for (SSHJob job : stagedJobs) {
+            job.setJobID(this.jobID);
+            job.setStatus(RunningStatus.QUEUED);
+            monitor.addJob(job);
+        }
+
+        monitor.start();
+
+        return true;
+    }
+
+    /**
+     * projects are run in the background in groups, whose processes fit in the allocation,
+     * and the next group is started after the previous group is finished.
+     */
+    private List<String> createCommands(List<SSHJob> stagedJobs) {
+        int maxCPUs = Math.max(1, this.numProcesses * this.numThreads);
+
+        List<String> commands = new ArrayList<String>();
+
+        int numCPUs = 0;
+        for (SSHJob job : stagedJobs) {
+            int numCPUs2 = Math.max(1, job.getNumProcesses() * job.getNumThreads());
+            if (numCPUs > 0 && (numCPUs + numCPUs2) > maxCPUs) {
+                commands.add("wait");
+                numCPUs = 0;
+            }
+
+            String remoteDir = SSHTransport.quote(job.getRemoteDirectory());
+            String scriptName = SSHTransport.quote(job.getScriptFile().getName());
+            commands.add("( cd " + remoteDir + " && env OMP_NUM_THREADS=" + job.getNumThreads()
+                    + " sh ./" + scriptName + " ) &");
+
+            numCPUs += numCPUs2;
+        }
+
+        commands.add("wait");
+
+        return commands;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.ssh;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
+import burai.app.QEFXMain;
+
+import com.jcraft.jsch.UserInfo;
+
+/**
+ * UserInfo of JSch, which asks the user to accept a host key, that is not in known_hosts.
+ * a changed host key is only shown, and the connection is refused by JSch.
+ * passwords and passphrases are given by SSHServer, so that they are never prompted.
+ */
+class SSHHostKeyPrompt implements UserInfo {
+
+    public SSHHostKeyPrompt() {
+        // NOP
+    }
+
+    @Override
+    public String getPassphrase() {
+        return null;
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public boolean promptPassword(String message) {
+        return false;
+    }
+
+    @Override
+    public boolean promptPassphrase(String message) {
+        return false;
+    }
+
+    @Override
+    public boolean promptYesNo(String message) {
+        Boolean answer = this.showAlert(AlertType.CONFIRMATION, message);
+        return answer != null && answer.booleanValue();
+    }
+
+    @Override
+    public void showMessage(String message) {
+        this.showAlert(AlertType.WARNING, message);
+    }
+
+    /**
+     * JSch calls a UserInfo from a thread of the connection, which waits for the answer of the user.
+     * @return true if OK is pressed, or null if the alert cannot be shown.
+     */
+    private Boolean showAlert(AlertType alertType, String message) {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(() -> {
+            Alert alert = new Alert(alertType);
+            QEFXMain.initializeDialogOwner(alert);
+            alert.setHeaderText(message);
+            Optional<ButtonType> optButtonType = alert.showAndWait();
+            return optButtonType != null && optButtonType.isPresent() && optButtonType.get() == ButtonType.OK;
+        });
+
+        try {
+            if (Platform.isFxApplicationThread()) {
+                task.run();
+            } else {
+                Platform.runLater(task);
+            }
+
+            return task.get();
+
+        } catch (IllegalStateException e) {
+            // FX toolkit is not running
+            return null;
+
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -26,19 +26,27 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import burai.com.env.Environments;
 import burai.com.file.FileTools;
 import burai.input.QEInput;
 import burai.input.card.QEAtomicSpecies;
+import burai.input.namelist.QENamelist;
 import burai.project.Project;
 import burai.pseudo.PseudoPotential;
 import burai.run.InputEditor;
 import burai.run.RunningCondition;
+import burai.run.RunningStatus;
+import burai.run.RunningStatusChanged;
 import burai.run.RunningType;
 
 public class SSHJob {
 
     private static final String DUMMY_INP_NAME = "__INP_NAME__";
 
+    private static final String STATUS_NAME = ".burai.status";
+
+    private static final String DONE_NAME = ".burai.done";
+
     private Project project;
 
     private SSHServer sshServer;
@@ -55,6 +63,24 @@ public class SSHJob {
 
     private Set<File> pseudoFiles;
 
+    private List<Integer> stepIndexes;
+
+    private List<File> logFiles;
+
+    private List<File> errFiles;
+
+    private String remoteDirectory;
+
+    private String jobID;
+
+    private String errorMessage;
+
+    private SSHJobMonitor monitor;
+
+    private RunningStatus status;
+
+    private List<RunningStatusChanged> onStatusChangedList;
+
     public SSHJob(Project project, SSHServer sshServer) {
         if (project == null) {
             throw new IllegalArgumentException("project is null.");
@@ -75,6 +101,18 @@ public class SSHJob {
         this.scriptFile = null;
         this.inpFiles = null;
         this.pseudoFiles = null;
+
+        this.stepIndexes = null;
+        this.logFiles = null;
+        this.errFiles = null;
+
+        this.remoteDirectory = null;
+        this.jobID = null;
+        this.errorMessage = null;
+        this.monitor = null;
+
+        this.status = RunningStatus.IDLE;
+        this.onStatusChangedList = null;
     }
 
     public Project getProject() {
@@ -115,54 +153,223 @@ public class SSHJob {
         }
     }
 
+    /**
+     * @return directory of the job on the server, or null if the job is not posted.
+     */
+    public String getRemoteDirectory() {
+        return this.remoteDirectory;
+    }
+
+    /**
+     * @return output of the job command (usually ID of the job), or null if the job is not posted.
+     */
+    public String getJobID() {
+        return this.jobID;
+    }
+
+    /**
+     * @return message of an error in the posted job, which is set before the status becomes DONE,
+     * or null if the job has no error.
+     */
+    public synchronized String getErrorMessage() {
+        return this.errorMessage;
+    }
+
+    synchronized void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public synchronized RunningStatus getStatus() {
+        return this.status;
+    }
+
+    protected synchronized void setStatus(RunningStatus status) {
+        if (status == null) {
+            return;
+        }
+
+        this.status = status;
+
+        if (this.onStatusChangedList != null) {
+            for (RunningStatusChanged onStatusChanged : this.onStatusChangedList) {
+                if (onStatusChanged != null) {
+                    onStatusChanged.onRunningStatusChanged(this.status);
+                }
+            }
+        }
+    }
+
+    public synchronized void addOnStatusChanged(RunningStatusChanged onStatusChanged) {
+        if (onStatusChanged != null) {
+            if (this.onStatusChangedList == null) {
+                this.onStatusChangedList = new ArrayList<RunningStatusChanged>();
+            }
+
+            this.onStatusChangedList.add(onStatusChanged);
+        }
+    }
+
+    public synchronized void removeOnStatusChanged(RunningStatusChanged onStatusChanged) {
+        if (onStatusChanged != null) {
+            if (this.onStatusChangedList != null) {
+                this.onStatusChangedList.remove(onStatusChanged);
+            }
+        }
+    }
+
+    /**
+     * the session of the server is shared by jobs, so that posting many jobs needs only one handshake.
+     * the project is uploaded to ~/.burai/(name of the project directory) on the server,
+     * and pseudopotentials are uploaded to ~/.burai/.pseudopot, only if they are changed.
+     */
     public boolean postJobToServer() {
-        this.setupFiles();
+        this.stopMonitoring();
+
+        SSHTransport transport = new SSHTransport(this.sshServer);
+
+        try {
+            if (!this.stageFiles(transport, false)) {
+                return false;
+            }
+
+            String jobCommand = this.sshServer.getJobCommand(SSHTransport.quote(this.scriptFile.getName()));
+            String output = transport.exec("cd " + SSHTransport.quote(this.remoteDirectory) + " && " + jobCommand);
+            this.jobID = output == null ? null : output.trim();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        this.setStatus(RunningStatus.QUEUED);
+
+        SSHJobMonitor monitor = new SSHJobMonitor(new SSHTransport(this.sshServer));
+        monitor.addJob(this);
+        monitor.start();
+
+        return true;
+    }
+
+    /**
+     * write and upload files of the job, and remove outputs of the previous job on the server.
+     * @param batch true if the script is run by SSHBatchJob, which has no header of the job scheduler.
+     * @return true if the job is ready to be submitted.
+     */
+    boolean stageFiles(SSHTransport transport, boolean batch) throws IOException {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport is null.");
+        }
+
+        this.remoteDirectory = null;
+        this.jobID = null;
+        this.setErrorMessage(null);
+
+        File directory = this.getDirectory();
+        if (directory == null) {
+            return false;
+        }
+
+        String remoteRoot = getRemoteRoot(transport);
+        String remoteDir = remoteRoot + "/" + directory.getName();
+        String remotePseudoDir = remoteRoot + "/" + Environments.getPseudosName();
+
+        this.setupFiles(remotePseudoDir, batch);
 
         if (this.scriptFile == null) {
             return false;
         }
 
-        this.ftpFile(this.scriptFile);
+        transport.mkdirs(remoteDir);
+        transport.mkdirs(remotePseudoDir);
 
+        List<File> files = new ArrayList<File>();
+        files.add(this.scriptFile);
         if (this.inpFiles != null) {
-            for (File inpFile : this.inpFiles) {
-                if (inpFile != null) {
-                    this.ftpFile(inpFile);
-                }
-            }
+            files.addAll(this.inpFiles);
         }
 
-        if (this.pseudoFiles != null) {
-            for (File pseudoFile : this.pseudoFiles) {
-                if (pseudoFile != null) {
-                    this.ftpFile(pseudoFile);
-                }
-            }
+        if (!transport.upload(files, remoteDir)) {
+            return false;
         }
 
-        // TODO
+        if (!transport.uploadIfChanged(this.pseudoFiles, remotePseudoDir)) {
+            return false;
+        }
 
+        // logs of the previous job are removed, so that they are not synchronized
+        StringBuilder removing = new StringBuilder("rm -f");
+        removing.append(' ').append(STATUS_NAME).append(' ').append(DONE_NAME);
+        for (File file : this.logFiles) {
+            removing.append(' ').append(SSHTransport.quote(file.getName()));
+        }
+        for (File file : this.errFiles) {
+            removing.append(' ').append(SSHTransport.quote(file.getName()));
+        }
+
+        transport.exec("cd " + SSHTransport.quote(remoteDir) + " && " + removing.toString());
+
+        this.remoteDirectory = remoteDir;
         return true;
     }
 
-    private void ftpFile(File file) {
-        if (file == null) {
-            return;
+    /**
+     * @return ~/.burai on the server.
+     */
+    static String getRemoteRoot(SSHTransport transport) throws IOException {
+        String remoteHome = transport.getHome();
+        remoteHome = remoteHome == null ? "." : remoteHome;
+        return remoteHome + "/" + Environments.getProjectsName();
+    }
+
+    File getScriptFile() {
+        return this.scriptFile;
+    }
+
+    void setJobID(String jobID) {
+        this.jobID = jobID;
+    }
+
+    synchronized void setMonitor(SSHJobMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * stop synchronizing logs and results of the posted job.
+     * if the job is posted by SSHBatchJob, the other jobs of the batch are also stopped.
+     */
+    public void stopMonitoring() {
+        SSHJobMonitor monitor = null;
+        synchronized (this) {
+            monitor = this.monitor;
+            this.monitor = null;
         }
 
-        try {
-            if (!file.isFile()) {
-                return;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
+        if (monitor != null) {
+            monitor.stop();
         }
+    }
 
-        // TODO
+    static String getStatusName() {
+        return STATUS_NAME;
     }
 
-    private void setupFiles() {
+    static String getDoneName() {
+        return DONE_NAME;
+    }
+
+    List<Integer> getStepIndexes() {
+        return this.stepIndexes;
+    }
+
+    List<File> getLogFiles() {
+        return this.logFiles;
+    }
+
+    List<File> getErrFiles() {
+        return this.errFiles;
+    }
+
+    private void setupFiles(String remotePseudoDir, boolean batch) {
 
         this.scriptFile = null;
 
@@ -178,6 +385,10 @@ public class SSHJob {
             this.pseudoFiles.clear();
         }
 
+        this.stepIndexes = new ArrayList<Integer>();
+        this.logFiles = new ArrayList<File>();
+        this.errFiles = new ArrayList<File>();
+
         File directory = this.getDirectory();
         if (directory == null) {
             return;
@@ -262,6 +473,11 @@ public class SSHJob {
                 continue;
             }
 
+            QENamelist nmlControl = input2.getNamelist(QEInput.NAMELIST_CONTROL);
+            if (nmlControl != null && remotePseudoDir != null) {
+                nmlControl.setValue("pseudo_dir = '" + remotePseudoDir + "'");
+            }
+
             if (!condition.toRun(this.project, input2)) {
                 continue;
             }
@@ -302,8 +518,12 @@ public class SSHJob {
             this.deleteLogFiles(logFile, errFile);
 
             qeCommands.add(command0);
+            qeCommands.add("echo \"" + i + " $?\" >> " + STATUS_NAME);
 
             this.inpFiles.add(inpFile);
+            this.stepIndexes.add(i);
+            this.logFiles.add(logFile);
+            this.errFiles.add(errFile);
 
             QEAtomicSpecies atomicSpecies = input2.getCard(QEAtomicSpecies.class);
             if (atomicSpecies != null) {
@@ -319,7 +539,9 @@ public class SSHJob {
         }
 
         if (qeCommands != null && (!qeCommands.isEmpty())) {
-            this.scriptFile = this.writeScript(directory, qeCommands);
+            // the job is finished, when statuses of all commands are written
+            qeCommands.add("mv -f " + STATUS_NAME + " " + DONE_NAME);
+            this.scriptFile = this.writeScript(directory, qeCommands, batch);
         }
     }
 
@@ -376,7 +598,7 @@ public class SSHJob {
         return true;
     }
 
-    private File writeScript(File directory, List<String> commands) {
+    private File writeScript(File directory, List<String> commands, boolean batch) {
         if (directory == null) {
             return null;
         }
@@ -385,13 +607,34 @@ public class SSHJob {
             return null;
         }
 
-        String scriptContent = this.sshServer.getJobScript(commands, this.numProcesses, this.numThreads);
+        String scriptContent = null;
+        if (batch) {
+            scriptContent = "#!/bin/sh" + System.lineSeparator() + String.join(System.lineSeparator(), commands)
+                    + System.lineSeparator();
+        } else {
+            scriptContent = this.sshServer.getJobScript(commands, this.numProcesses, this.numThreads);
+        }
+
         if (scriptContent == null || scriptContent.isEmpty()) {
             return null;
         }
 
+        String name = this.project.getPrefixName();
+        name = name == null ? null : name.trim() + getScriptExtension(scriptContent);
+        File file = new File(directory, name);
+
+        if (!writeScriptFile(file, scriptContent)) {
+            return null;
+        }
+
+        return file;
+    }
+
+    static String getScriptExtension(String scriptContent) {
         String ext = ".sh";
-        if (scriptContent.startsWith("#!/bin/sh")) {
+        if (scriptContent == null) {
+            ext = ".sh";
+        } else if (scriptContent.startsWith("#!/bin/sh")) {
             ext = ".sh";
         } else if (scriptContent.startsWith("#!/bin/bash")) {
             ext = ".bash";
@@ -403,19 +646,20 @@ public class SSHJob {
             ext = ".zsh";
         }
 
-        String name = this.project.getPrefixName();
-        name = name == null ? null : name.trim() + ext;
-        File file = new File(directory, name);
+        return ext;
+    }
 
+    static boolean writeScriptFile(File file, String scriptContent) {
         PrintWriter writer = null;
 
         try {
             writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
-            writer.print(scriptContent.replaceAll("[\\r\\n]+", "\\n"));
+            // scripts run on UNIX servers, so that line feeds are of UNIX
+            writer.print(scriptContent.replaceAll("[\\r\\n]+", "\n"));
 
         } catch (IOException e) {
             e.printStackTrace();
-            return null;
+            return false;
 
         } finally {
             if (writer != null) {
@@ -423,7 +667,13 @@ public class SSHJob {
             }
         }
 
-        return file;
+        try {
+            file.setExecutable(true);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return true;
     }
 
     private void deleteExitFile(File directory) {
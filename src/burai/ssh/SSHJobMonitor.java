@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import burai.project.Project;
+import burai.run.PostOperation;
+import burai.run.RunningStatus;
+import burai.run.RunningType;
+import burai.run.parser.LogParser;
+
+import com.jcraft.jsch.SftpATTRS;
+
+/**
+ * synchronize posted SSHJobs with their local project directories.
+ * while a job is running, only bytes appended to the remote logs are copied into the local logs,
+ * which are parsed incrementally by LogParsers, as logs of RunningNode.
+ * other outputs (e.g. *.dos, *.pdos_*, *.band*.gnu) are fetched in parallel only when the job is finished.
+ * jobs of a batch are polled by one thread over one session.
+ * a job is regarded as lost, if it is not started, or its outputs are not updated, for a long time,
+ * or if the server cannot be reached, because the job scheduler may remove a job without any outputs.
+ */
+class SSHJobMonitor {
+
+    private static final long POLLING_TIME = 5000L;
+
+    private static final long MAX_QUEUED_TIME = 7L * 24L * 3600L * 1000L;
+
+    private static final long MAX_SILENT_TIME = 24L * 3600L * 1000L;
+
+    private static final int MAX_POLL_ERRORS = 720;
+
+    private SSHTransport transport;
+
+    private List<JobEntry> entries;
+
+    private boolean alive;
+
+    public SSHJobMonitor(SSHTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport is null.");
+        }
+
+        this.transport = transport;
+        this.entries = new ArrayList<JobEntry>();
+        this.alive = false;
+    }
+
+    public synchronized void addJob(SSHJob job) {
+        if (job == null) {
+            return;
+        }
+
+        if (this.alive) {
+            throw new IllegalStateException("monitor has been started.");
+        }
+
+        this.entries.add(new JobEntry(job));
+        job.setMonitor(this);
+    }
+
+    public synchronized void start() {
+        if (this.alive) {
+            return;
+        }
+
+        this.alive = true;
+
+        Thread thread = new Thread(() -> this.monitor());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        this.alive = false;
+        this.notifyAll();
+    }
+
+    private synchronized boolean isAlive() {
+        return this.alive;
+    }
+
+    private synchronized void sleep(long time) {
+        if (!this.alive) {
+            return;
+        }
+
+        try {
+            this.wait(time);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void monitor() {
+        List<JobEntry> entries = null;
+        synchronized (this) {
+            entries = new ArrayList<JobEntry>(this.entries);
+        }
+
+        for (JobEntry entry : entries) {
+            entry.setup();
+        }
+
+        while (this.isAlive()) {
+            boolean finished = true;
+
+            for (JobEntry entry : entries) {
+                if (!this.isAlive()) {
+                    break;
+                }
+
+                if (entry.finished) {
+                    continue;
+                }
+
+                if (this.poll(entry)) {
+                    this.finish(entry);
+                    continue;
+                }
+
+                String message = this.checkLost(entry);
+                if (message != null) {
+                    this.abandon(entry, message);
+                } else if (!entry.finished) {
+                    finished = false;
+                }
+            }
+
+            if (finished) {
+                break;
+            }
+
+            this.sleep(POLLING_TIME);
+        }
+
+        for (JobEntry entry : entries) {
+            if (!entry.finished) {
+                entry.endParsing();
+            }
+        }
+    }
+
+    /**
+     * @return true if the job is finished.
+     */
+    private boolean poll(JobEntry entry) {
+        if (entry.remoteDir == null) {
+            entry.finished = true;
+            return false;
+        }
+
+        try {
+            entry.remoteFiles = this.transport.listFiles(entry.remoteDir);
+            boolean done = entry.remoteFiles.containsKey(SSHJob.getDoneName());
+
+            entry.numErrors = 0;
+            long stamp = stampOf(entry.remoteFiles);
+            if (stamp != entry.stamp) {
+                entry.stamp = stamp;
+                entry.lastTime = System.currentTimeMillis();
+            }
+
+            for (int i = 0; i < entry.logFiles.size(); i++) {
+                File logFile = entry.logFiles.get(i);
+                if (!entry.remoteFiles.containsKey(logFile.getName())) {
+                    continue;
+                }
+
+                this.transport.syncTail(entry.remoteDir + "/" + logFile.getName(), logFile);
+
+                // a parser is started when its log appears, and watches the local log
+                if (entry.parsers[i] == null) {
+                    entry.parsers[i] = entry.parserList.get(entry.stepIndexes.get(i));
+                    entry.parsers[i].startParsing(logFile);
+                    entry.job.setStatus(RunningStatus.RUNNING);
+                }
+            }
+
+            return done;
+
+        } catch (IOException e) {
+            // the session is reconnected at the next polling
+            e.printStackTrace();
+            entry.numErrors++;
+            return false;
+        }
+    }
+
+    /**
+     * @return message of the reason, if the job is lost, or null.
+     */
+    private String checkLost(JobEntry entry) {
+        if (entry.finished) {
+            return null;
+        }
+
+        if (entry.numErrors >= MAX_POLL_ERRORS) {
+            return "Cannot connect to " + entry.job.getSSHServer().toString() + ".";
+        }
+
+        long time = System.currentTimeMillis() - entry.lastTime;
+
+        if (!entry.isStarted()) {
+            if (time > MAX_QUEUED_TIME) {
+                return "The job has not been started for a long time.";
+            }
+
+        } else {
+            if (time > MAX_SILENT_TIME) {
+                return "Outputs of the job have not been updated for a long time.";
+            }
+        }
+
+        return null;
+    }
+
+    private static long stampOf(Map<String, SftpATTRS> remoteFiles) {
+        long stamp = 0L;
+        for (Map.Entry<String, SftpATTRS> fileEntry : remoteFiles.entrySet()) {
+            SftpATTRS attrs = fileEntry.getValue();
+            stamp = 31L * stamp + fileEntry.getKey().hashCode();
+            stamp = 31L * stamp + (attrs == null ? 0L : attrs.getSize());
+            stamp = 31L * stamp + (attrs == null ? 0L : attrs.getMTime());
+        }
+
+        return stamp;
+    }
+
+    private void abandon(JobEntry entry, String message) {
+        entry.finished = true;
+        entry.endParsing();
+
+        entry.job.setErrorMessage(message);
+        entry.job.setStatus(RunningStatus.DONE);
+    }
+
+    private void finish(JobEntry entry) {
+        entry.finished = true;
+        entry.endParsing();
+
+        Project project = entry.job.getProject();
+        RunningType type = entry.job.getType();
+        File directory = new File(project.getDirectoryPath());
+
+        Map<Integer, Integer> statuses = this.fetchResults(entry, directory);
+
+        for (int i = 0; i < entry.stepIndexes.size(); i++) {
+            Integer status = statuses.get(entry.stepIndexes.get(i));
+            if (status != null && status.intValue() == 0 && entry.parsers[i] != null) {
+                entry.postList.get(entry.stepIndexes.get(i)).operate(project);
+            }
+        }
+
+        type.setProjectStatus(project);
+        entry.job.setStatus(RunningStatus.DONE);
+    }
+
+    /**
+     * @return exit statuses of commands, keyed by their indexes in RunningType.
+     */
+    private Map<Integer, Integer> fetchResults(JobEntry entry, File directory) {
+        String remoteDir = entry.remoteDir;
+        Map<String, SftpATTRS> remoteFiles = entry.remoteFiles;
+
+        String prefix = entry.job.getProject().getPrefixName();
+        prefix = prefix == null ? null : (prefix.trim() + ".");
+
+        List<String> names = new ArrayList<String>();
+        names.add(SSHJob.getDoneName());
+
+        for (File errFile : entry.errFiles) {
+            if (remoteFiles.containsKey(errFile.getName())) {
+                names.add(errFile.getName());
+            }
+        }
+
+        for (Map.Entry<String, SftpATTRS> fileEntry : remoteFiles.entrySet()) {
+            String name = fileEntry.getKey();
+            if (prefix == null || !name.startsWith(prefix)) {
+                continue;
+            }
+
+            // a file is not fetched twice, which is written over by another thread
+            if (names.contains(name)) {
+                continue;
+            }
+
+            // results which have been fetched are not fetched again
+            SftpATTRS attrs = fileEntry.getValue();
+            File file = new File(directory, name);
+            if (file.isFile() && file.length() == attrs.getSize()
+                    && file.lastModified() == 1000L * ((long) attrs.getMTime())) {
+                continue;
+            }
+
+            names.add(name);
+        }
+
+        if (!this.transport.download(names, remoteDir, directory)) {
+            entry.job.setErrorMessage("Some results of the job are not fetched from " + remoteDir + ".");
+        }
+
+        Map<Integer, Integer> statuses = new HashMap<Integer, Integer>();
+
+        File doneFile = new File(directory, SSHJob.getDoneName());
+
+        try {
+            if (doneFile.isFile()) {
+                for (String line : Files.readAllLines(doneFile.toPath(), StandardCharsets.UTF_8)) {
+                    String[] subLines = line.trim().split("\\s+");
+                    if (subLines.length < 2) {
+                        continue;
+                    }
+
+                    try {
+                        statuses.put(Integer.parseInt(subLines[0]), Integer.parseInt(subLines[1]));
+                    } catch (NumberFormatException e) {
+                        // NOP
+                    }
+                }
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return statuses;
+    }
+
+    private static class JobEntry {
+
+        public SSHJob job;
+
+        public String remoteDir;
+
+        public List<Integer> stepIndexes;
+
+        public List<File> logFiles;
+
+        public List<File> errFiles;
+
+        public List<LogParser> parserList;
+
+        public List<PostOperation> postList;
+
+        public LogParser[] parsers;
+
+        public Map<String, SftpATTRS> remoteFiles;
+
+        public long stamp;
+
+        public long lastTime;
+
+        public int numErrors;
+
+        public boolean finished;
+
+        public JobEntry(SSHJob job) {
+            this.job = job;
+            this.remoteDir = null;
+            this.stepIndexes = null;
+            this.logFiles = null;
+            this.errFiles = null;
+            this.parserList = null;
+            this.postList = null;
+            this.parsers = null;
+            this.remoteFiles = null;
+            this.stamp = 0L;
+            this.lastTime = System.currentTimeMillis();
+            this.numErrors = 0;
+            this.finished = false;
+        }
+
+        public void setup() {
+            this.remoteDir = this.job.getRemoteDirectory();
+            this.stepIndexes = this.job.getStepIndexes();
+            this.logFiles = this.job.getLogFiles();
+            this.errFiles = this.job.getErrFiles();
+            if (this.stepIndexes == null || this.logFiles == null || this.errFiles == null) {
+                this.remoteDir = null;
+                return;
+            }
+
+            this.parserList = this.job.getType().getParserList(this.job.getProject());
+            this.postList = this.job.getType().getPostList();
+            this.parsers = new LogParser[this.stepIndexes.size()];
+        }
+
+        /**
+         * @return true if a log of the job has appeared.
+         */
+        public boolean isStarted() {
+            if (this.parsers == null) {
+                return false;
+            }
+
+            for (LogParser parser : this.parsers) {
+                if (parser != null) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        public void endParsing() {
+            if (this.parsers == null) {
+                return;
+            }
+
+            for (LogParser parser : this.parsers) {
+                if (parser != null) {
+                    parser.endParsing();
+                }
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package burai.ssh;
 
 import java.util.List;
+import java.util.regex.Matcher;
 
 public class SSHServer {
 
@@ -125,9 +126,9 @@ public class SSHServer {
 
         String scriptName_ = scriptName == null ? null : scriptName.trim();
         if (scriptName_ != null && (!scriptName_.isEmpty())) {
-            jobCommand_ = jobCommand_.replaceAll("\\$" + WORD_JOB_SCRIPT, scriptName_);
-            jobCommand_ = jobCommand_.replaceAll("\\$\\(" + WORD_JOB_SCRIPT + "\\)", scriptName_);
-            jobCommand_ = jobCommand_.replaceAll("\\$\\{" + WORD_JOB_SCRIPT + "\\}", scriptName_);
+            jobCommand_ = jobCommand_.replaceAll("\\$" + WORD_JOB_SCRIPT, Matcher.quoteReplacement(scriptName_));
+            jobCommand_ = jobCommand_.replaceAll("\\$\\(" + WORD_JOB_SCRIPT + "\\)", Matcher.quoteReplacement(scriptName_));
+            jobCommand_ = jobCommand_.replaceAll("\\$\\{" + WORD_JOB_SCRIPT + "\\}", Matcher.quoteReplacement(scriptName_));
         }
 
         return jobCommand_;
@@ -150,31 +151,31 @@ public class SSHServer {
 
         String qeCommand_ = qeCommand == null ? null : qeCommand.trim();
         if (qeCommand_ != null && (!qeCommand_.isEmpty())) {
-            jobScript_ = jobScript_.replaceAll("\\$" + WORD_QE_COMMAND, qeCommand_);
-            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_QE_COMMAND + "\\)", qeCommand_);
-            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_QE_COMMAND + "\\}", qeCommand_);
+            jobScript_ = jobScript_.replaceAll("\\$" + WORD_QE_COMMAND, Matcher.quoteReplacement(qeCommand_));
+            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_QE_COMMAND + "\\)", Matcher.quoteReplacement(qeCommand_));
+            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_QE_COMMAND + "\\}", Matcher.quoteReplacement(qeCommand_));
         }
 
         String strMPI = numMPI < 1 ? null : Integer.toString(numMPI);
         if (strMPI != null && (!strMPI.isEmpty())) {
-            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_MPIS, strMPI);
-            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_MPIS + "\\)", strMPI);
-            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_MPIS + "\\}", strMPI);
+            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_MPIS, Matcher.quoteReplacement(strMPI));
+            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_MPIS + "\\)", Matcher.quoteReplacement(strMPI));
+            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_MPIS + "\\}", Matcher.quoteReplacement(strMPI));
         }
 
         String strOMP = numOMP < 1 ? null : Integer.toString(numOMP);
         if (strOMP != null && (!strOMP.isEmpty())) {
-            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_OMPS, strOMP);
-            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_OMPS + "\\)", strOMP);
-            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_OMPS + "\\}", strOMP);
+            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_OMPS, Matcher.quoteReplacement(strOMP));
+            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_OMPS + "\\)", Matcher.quoteReplacement(strOMP));
+            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_OMPS + "\\}", Matcher.quoteReplacement(strOMP));
         }
 
         int numCPU = Math.max(0, numMPI) * Math.max(0, numOMP);
         String strCPU = numCPU < 1 ? null : Integer.toString(numCPU);
         if (strCPU != null && (!strCPU.isEmpty())) {
-            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_CPUS, strCPU);
-            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_CPUS + "\\)", strCPU);
-            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_CPUS + "\\}", strCPU);
+            jobScript_ = jobScript_.replaceAll("\\$" + WORD_NUM_CPUS, Matcher.quoteReplacement(strCPU));
+            jobScript_ = jobScript_.replaceAll("\\$\\(" + WORD_NUM_CPUS + "\\)", Matcher.quoteReplacement(strCPU));
+            jobScript_ = jobScript_.replaceAll("\\$\\{" + WORD_NUM_CPUS + "\\}", Matcher.quoteReplacement(strCPU));
         }
 
         return jobScript_;
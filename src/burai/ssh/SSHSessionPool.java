@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.ssh;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+
+/**
+ * one JSch session for each SSHServer, which is reused by jobs while it is connected.
+ * SFTP channels of a session are also kept idle, so that following transfers need no handshakes.
+ * the session is reconnected, if the host, the user or the identity of the server is changed.
+ * host keys are checked with known_hosts, where an unknown key is added if the user accepts it,
+ * and a changed key is refused.
+ * a session is connected out of the lock of the pool, so that a slow server (or an unanswered prompt)
+ * does not block sessions of other servers. connections to one server are serialized by its own lock.
+ */
+class SSHSessionPool {
+
+    private static final int CONNECT_TIMEOUT = 15000;
+
+    private static final int ALIVE_INTERVAL = 30000;
+
+    private static final int MAX_IDLE_CHANNELS = 4;
+
+    private static final String KNOWN_HOSTS = ".ssh" + File.separator + "known_hosts";
+
+    private static SSHSessionPool instance = null;
+
+    public static synchronized SSHSessionPool getInstance() {
+        if (instance == null) {
+            instance = new SSHSessionPool();
+        }
+
+        return instance;
+    }
+
+    private Map<SSHServer, SessionEntry> entries;
+
+    private Map<SSHServer, Object> connectLocks;
+
+    private SSHSessionPool() {
+        this.entries = new HashMap<SSHServer, SessionEntry>();
+        this.connectLocks = new HashMap<SSHServer, Object>();
+    }
+
+    public Session getSession(SSHServer sshServer) throws JSchException {
+        if (sshServer == null) {
+            throw new IllegalArgumentException("sshServer is null.");
+        }
+
+        String signature = toSignature(sshServer);
+
+        Session session = this.getConnectedSession(sshServer, signature);
+        if (session != null) {
+            return session;
+        }
+
+        Object connectLock = null;
+        synchronized (this) {
+            connectLock = this.connectLocks.get(sshServer);
+            if (connectLock == null) {
+                connectLock = new Object();
+                this.connectLocks.put(sshServer, connectLock);
+            }
+        }
+
+        synchronized (connectLock) {
+            // the session may be connected by another thread, while waiting
+            session = this.getConnectedSession(sshServer, signature);
+            if (session != null) {
+                return session;
+            }
+
+            session = createSession(sshServer);
+
+            SessionEntry oldEntry = null;
+            synchronized (this) {
+                oldEntry = this.entries.put(sshServer, new SessionEntry(signature, session));
+            }
+
+            if (oldEntry != null) {
+                closeEntry(oldEntry);
+            }
+
+            return session;
+        }
+    }
+
+    /**
+     * @return the session, if it is connected with the signature, or null.
+     */
+    private Session getConnectedSession(SSHServer sshServer, String signature) {
+        SessionEntry oldEntry = null;
+
+        synchronized (this) {
+            SessionEntry entry = this.entries.get(sshServer);
+            if (entry == null) {
+                return null;
+            }
+
+            if (signature.equals(entry.signature) && entry.session.isConnected()) {
+                return entry.session;
+            }
+
+            oldEntry = this.entries.remove(sshServer);
+        }
+
+        closeEntry(oldEntry);
+        return null;
+    }
+
+    /**
+     * @return an idle SFTP channel, or a new one if no channel is idle.
+     */
+    public ChannelSftp borrowSftp(SSHServer sshServer) throws JSchException {
+        Session session = this.getSession(sshServer);
+
+        synchronized (this) {
+            SessionEntry entry = this.entries.get(sshServer);
+            if (entry != null && entry.session != session) {
+                entry = null;
+            }
+
+            while (entry != null && !entry.sftpChannels.isEmpty()) {
+                ChannelSftp channel = entry.sftpChannels.poll();
+                if (channel != null && channel.isConnected()) {
+                    return channel;
+                }
+            }
+        }
+
+        // opening a channel needs a round trip, which is not performed in the monitor
+        Channel channel = session.openChannel("sftp");
+        channel.connect(CONNECT_TIMEOUT);
+        return (ChannelSftp) channel;
+    }
+
+    public void returnSftp(SSHServer sshServer, ChannelSftp channel) {
+        if (sshServer == null || channel == null) {
+            return;
+        }
+
+        synchronized (this) {
+            SessionEntry entry = this.entries.get(sshServer);
+
+            boolean reusable = entry != null && channel.isConnected();
+            try {
+                reusable = reusable && channel.getSession() == entry.session;
+            } catch (JSchException e) {
+                reusable = false;
+            }
+
+            if (reusable && entry.sftpChannels.size() < MAX_IDLE_CHANNELS) {
+                entry.sftpChannels.push(channel);
+                return;
+            }
+        }
+
+        channel.disconnect();
+    }
+
+    /**
+     * @return digest of a remote file, which has been uploaded or checked over the current session.
+     */
+    public synchronized String getRemoteDigest(SSHServer sshServer, String remotePath) {
+        SessionEntry entry = sshServer == null ? null : this.entries.get(sshServer);
+        return entry == null ? null : entry.remoteDigests.get(remotePath);
+    }
+
+    public synchronized void putRemoteDigest(SSHServer sshServer, String remotePath, String digest) {
+        SessionEntry entry = sshServer == null ? null : this.entries.get(sshServer);
+        if (entry != null && remotePath != null && digest != null) {
+            entry.remoteDigests.put(remotePath, digest);
+        }
+    }
+
+    public synchronized void disconnect(SSHServer sshServer) {
+        if (sshServer == null) {
+            return;
+        }
+
+        SessionEntry entry = this.entries.remove(sshServer);
+        if (entry != null) {
+            closeEntry(entry);
+        }
+    }
+
+    public synchronized void disconnectAll() {
+        for (SessionEntry entry : this.entries.values()) {
+            closeEntry(entry);
+        }
+
+        this.entries.clear();
+    }
+
+    private static Session createSession(SSHServer sshServer) throws JSchException {
+        String host = sshServer.getHost();
+        host = host == null ? null : host.trim();
+        if (host == null || host.isEmpty()) {
+            throw new JSchException("host is empty.");
+        }
+
+        String user = sshServer.getUser();
+        user = user == null ? null : user.trim();
+        if (user == null || user.isEmpty()) {
+            user = System.getProperty("user.name");
+        }
+
+        JSch jsch = new JSch();
+
+        String userHome = System.getProperty("user.home");
+        File knownHosts = userHome == null ? null : new File(userHome, KNOWN_HOSTS);
+        if (knownHosts != null) {
+            // known_hosts is created by JSch, when a host key is accepted at first
+            jsch.setKnownHosts(knownHosts.getPath());
+        }
+
+        String keyPath = sshServer.getKeyPath();
+        keyPath = keyPath == null ? null : keyPath.trim();
+        if (keyPath != null && (!keyPath.isEmpty())) {
+            jsch.addIdentity(keyPath);
+        }
+
+        Session session = jsch.getSession(user, host, sshServer.intPort());
+
+        String password = sshServer.getPassword();
+        if (password != null && (!password.isEmpty())) {
+            session.setPassword(password);
+        }
+
+        session.setConfig("StrictHostKeyChecking", "ask");
+        session.setUserInfo(new SSHHostKeyPrompt());
+        session.setServerAliveInterval(ALIVE_INTERVAL);
+        session.setDaemonThread(true);
+        session.connect(CONNECT_TIMEOUT);
+
+        return session;
+    }
+
+    private static void closeEntry(SessionEntry entry) {
+        for (ChannelSftp channel : entry.sftpChannels) {
+            channel.disconnect();
+        }
+
+        entry.sftpChannels.clear();
+        entry.session.disconnect();
+    }
+
+    private static String toSignature(SSHServer sshServer) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(sshServer.getHost()).append('\n');
+        builder.append(sshServer.intPort()).append('\n');
+        builder.append(sshServer.getUser()).append('\n');
+        builder.append(sshServer.getPassword()).append('\n');
+        builder.append(sshServer.getKeyPath()).append('\n');
+        return builder.toString();
+    }
+
+    private static class SessionEntry {
+
+        public String signature;
+
+        public Session session;
+
+        public Deque<ChannelSftp> sftpChannels;
+
+        public Map<String, String> remoteDigests;
+
+        public SessionEntry(String signature, Session session) {
+            this.signature = signature;
+            this.session = session;
+            this.sftpChannels = new ArrayDeque<ChannelSftp>();
+            this.remoteDigests = new HashMap<String, String>();
+        }
+    }
+}
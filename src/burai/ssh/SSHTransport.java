@@ -0,0 +1,623 @@
+/*
+ * Copyright (C) 2018 Satomichi Nishihara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package burai.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.ChannelSftp.LsEntry;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+/**
+ * file transfers and commands on a SSHServer, over sessions of SSHSessionPool.
+ * files are uploaded in parallel over several SFTP channels, and each file is written as a temporary file,
+ * then renamed, so that a broken transfer never leaves a partial file.
+ * transfers are performed by threads of its own, which are not of ParallelPool,
+ * so that at most MAX_CHANNELS channels are opened, and CPU workers are not blocked by network IO.
+ */
+class SSHTransport {
+
+    private static final int MAX_CHANNELS = 4;
+
+    private static ExecutorService executor = null;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(MAX_CHANNELS, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    private static final String TMP_SUFFIX = ".part";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String DIGEST_COMMAND = "sha256sum";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final long WAIT_TIME = 50L;
+
+    private SSHServer sshServer;
+
+    private SSHSessionPool pool;
+
+    public SSHTransport(SSHServer sshServer) {
+        if (sshServer == null) {
+            throw new IllegalArgumentException("sshServer is null.");
+        }
+
+        this.sshServer = sshServer;
+        this.pool = SSHSessionPool.getInstance();
+    }
+
+    public SSHServer getSSHServer() {
+        return this.sshServer;
+    }
+
+    public String getHome() throws IOException {
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            return channel.getHome();
+
+        } catch (SftpException e) {
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+    }
+
+    public void mkdirs(String remotePath) throws IOException {
+        if (remotePath == null || remotePath.isEmpty()) {
+            return;
+        }
+
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            String path = remotePath.startsWith("/") ? "" : ".";
+            for (String name : remotePath.split("/")) {
+                if (name.isEmpty()) {
+                    continue;
+                }
+
+                path = path + "/" + name;
+                if (this.statOf(channel, path) == null) {
+                    channel.mkdir(path);
+                }
+            }
+
+        } catch (SftpException e) {
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+    }
+
+    /**
+     * @return true if all files are uploaded.
+     */
+    public boolean upload(Collection<File> files, String remoteDir) {
+        if (files == null || files.isEmpty()) {
+            return true;
+        }
+
+        if (remoteDir == null) {
+            return false;
+        }
+
+        return transferAll(files, file -> this.uploadFile(file, remoteDir));
+    }
+
+    /**
+     * files which the server already has (of the same size and digest) are not uploaded.
+     * @return true if all files are uploaded or skipped.
+     */
+    public boolean uploadIfChanged(Collection<File> files, String remoteDir) {
+        if (files == null || files.isEmpty()) {
+            return true;
+        }
+
+        if (remoteDir == null) {
+            return false;
+        }
+
+        List<File> uploadingFiles = new ArrayList<File>();
+        Map<String, File> checkingFiles = new LinkedHashMap<String, File>();
+
+        ChannelSftp channel = null;
+
+        try {
+            channel = this.borrowSftp();
+
+            for (File file : files) {
+                if (file == null) {
+                    continue;
+                }
+
+                String remotePath = remoteDir + "/" + file.getName();
+                SftpATTRS attrs = this.statOf(channel, remotePath);
+                if (attrs == null || attrs.getSize() != file.length()) {
+                    uploadingFiles.add(file);
+                } else if (!this.isKnownDigest(remotePath, file)) {
+                    checkingFiles.put(remotePath, file);
+                }
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+
+        } finally {
+            if (channel != null) {
+                this.pool.returnSftp(this.sshServer, channel);
+            }
+        }
+
+        if (!checkingFiles.isEmpty()) {
+            uploadingFiles.addAll(this.checkDigests(checkingFiles));
+        }
+
+        if (!this.upload(uploadingFiles, remoteDir)) {
+            return false;
+        }
+
+        for (File file : uploadingFiles) {
+            String digest = digestOf(file);
+            if (digest != null) {
+                this.pool.putRemoteDigest(this.sshServer, remoteDir + "/" + file.getName(), digest);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isKnownDigest(String remotePath, File file) {
+        String remoteDigest = this.pool.getRemoteDigest(this.sshServer, remotePath);
+        if (remoteDigest == null) {
+            return false;
+        }
+
+        return remoteDigest.equals(digestOf(file));
+    }
+
+    /**
+     * digests of all remote files are computed by one command.
+     * if the command is not available, files of the same size are regarded as the same.
+     * @return files whose digests are different.
+     */
+    private List<File> checkDigests(Map<String, File> files) {
+        StringBuilder command = new StringBuilder(DIGEST_COMMAND);
+        for (String remotePath : files.keySet()) {
+            command.append(' ').append(quote(remotePath));
+        }
+
+        Map<String, String> remoteDigests = new LinkedHashMap<String, String>();
+
+        try {
+            String output = this.exec(command.toString());
+            for (String line : output.split("[\\r\\n]+")) {
+                String[] subLines = line.trim().split("\\s+", 2);
+                if (subLines.length < 2) {
+                    continue;
+                }
+
+                String remotePath = subLines[1].startsWith("*") ? subLines[1].substring(1) : subLines[1];
+                remoteDigests.put(remotePath, subLines[0].toLowerCase());
+            }
+
+        } catch (IOException e) {
+            // NOP
+        }
+
+        List<File> changedFiles = new ArrayList<File>();
+
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String remotePath = entry.getKey();
+            File file = entry.getValue();
+
+            if (remoteDigests.isEmpty()) {
+                continue;
+            }
+
+            String digest = digestOf(file);
+            if (digest != null && digest.equals(remoteDigests.get(remotePath))) {
+                this.pool.putRemoteDigest(this.sshServer, remotePath, digest);
+            } else {
+                changedFiles.add(file);
+            }
+        }
+
+        return changedFiles;
+    }
+
+    private void uploadFile(File file, String remoteDir) throws IOException {
+        if (file == null || !file.isFile()) {
+            throw new IOException("cannot read file: " + file);
+        }
+
+        String remotePath = remoteDir + "/" + file.getName();
+        String tmpPath = remotePath + TMP_SUFFIX;
+
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            channel.put(file.getPath(), tmpPath);
+            if (file.canExecute()) {
+                channel.chmod(0755, tmpPath);
+            }
+
+            if (this.statOf(channel, remotePath) != null) {
+                channel.rm(remotePath);
+            }
+
+            channel.rename(tmpPath, remotePath);
+
+        } catch (SftpException e) {
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+    }
+
+    /**
+     * append bytes of the remote file after the end of the local file, so that a broken transfer is resumed.
+     * the local file is truncated, if the remote file is rewritten (i.e. it gets shorter than the local file).
+     * @return size of the remote file, or -1 if the remote file does not exist.
+     */
+    public long syncTail(String remotePath, File localFile) throws IOException {
+        if (remotePath == null || localFile == null) {
+            return -1L;
+        }
+
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            SftpATTRS attrs = this.statOf(channel, remotePath);
+            if (attrs == null) {
+                return -1L;
+            }
+
+            long remoteSize = attrs.getSize();
+            long localSize = localFile.isFile() ? localFile.length() : 0L;
+
+            boolean truncated = remoteSize < localSize;
+            if (truncated) {
+                localSize = 0L;
+            }
+
+            if (remoteSize > localSize) {
+                InputStream input = channel.get(remotePath, null, localSize);
+                OutputStream output = new FileOutputStream(localFile, !truncated);
+                try {
+                    copyStream(input, output);
+                } finally {
+                    output.close();
+                    input.close();
+                }
+
+            } else if (truncated || !localFile.isFile()) {
+                // an empty log is also created, so that it can be parsed
+                new FileOutputStream(localFile, false).close();
+            }
+
+            return remoteSize;
+
+        } catch (SftpException e) {
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+    }
+
+    /**
+     * @return attributes of regular files in the remote directory, keyed by their names.
+     */
+    public Map<String, SftpATTRS> listFiles(String remoteDir) throws IOException {
+        if (remoteDir == null) {
+            return null;
+        }
+
+        Map<String, SftpATTRS> files = new LinkedHashMap<String, SftpATTRS>();
+
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            Vector<?> entries = channel.ls(remoteDir);
+            if (entries != null) {
+                for (Object entry : entries) {
+                    if (!(entry instanceof LsEntry)) {
+                        continue;
+                    }
+
+                    LsEntry lsEntry = (LsEntry) entry;
+                    SftpATTRS attrs = lsEntry.getAttrs();
+                    if (attrs != null && attrs.isReg()) {
+                        files.put(lsEntry.getFilename(), attrs);
+                    }
+                }
+            }
+
+        } catch (SftpException e) {
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+
+        return files;
+    }
+
+    /**
+     * @return true if all files are downloaded.
+     */
+    public boolean download(Collection<String> names, String remoteDir, File localDir) {
+        if (names == null || names.isEmpty()) {
+            return true;
+        }
+
+        if (remoteDir == null || localDir == null) {
+            return false;
+        }
+
+        return transferAll(names, name -> this.downloadFile(remoteDir + "/" + name, new File(localDir, name)));
+    }
+
+    /**
+     * all elements are transferred, even if some of them are failed.
+     * @return true if all elements are transferred.
+     */
+    private static <E> boolean transferAll(Collection<E> elements, Transfer<E> transfer) {
+        ExecutorService executor = getExecutor();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (E element : elements) {
+            futures.add(executor.submit(() -> {
+                transfer.transfer(element);
+                return null;
+            }));
+        }
+
+        boolean status = true;
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                (cause == null ? e : cause).printStackTrace();
+                status = false;
+
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                for (Future<?> future2 : futures) {
+                    future2.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return status;
+    }
+
+    @FunctionalInterface
+    private static interface Transfer<E> {
+        public abstract void transfer(E element) throws IOException;
+    }
+
+    private void downloadFile(String remotePath, File localFile) throws IOException {
+        File tmpFile = new File(localFile.getPath() + TMP_SUFFIX);
+
+        ChannelSftp channel = this.borrowSftp();
+
+        try {
+            SftpATTRS attrs = channel.stat(remotePath);
+
+            OutputStream output = new FileOutputStream(tmpFile);
+            try {
+                channel.get(remotePath, output);
+            } finally {
+                output.close();
+            }
+
+            Files.move(tmpFile.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            localFile.setLastModified(1000L * ((long) attrs.getMTime()));
+
+        } catch (SftpException e) {
+            tmpFile.delete();
+            throw new IOException(e);
+
+        } finally {
+            this.pool.returnSftp(this.sshServer, channel);
+        }
+    }
+
+    /**
+     * @return the standard output of the command.
+     * @throws IOException if the command is failed.
+     */
+    public String exec(String command) throws IOException {
+        if (command == null || command.trim().isEmpty()) {
+            throw new IllegalArgumentException("command is empty.");
+        }
+
+        ChannelExec channel = null;
+
+        try {
+            Session session = this.pool.getSession(this.sshServer);
+            channel = (ChannelExec) session.openChannel("exec");
+            channel.setCommand(command);
+            channel.setInputStream(null);
+
+            ByteArrayOutputStream errStream = new ByteArrayOutputStream();
+            channel.setErrStream(errStream);
+
+            InputStream stream = channel.getInputStream();
+            channel.connect();
+
+            ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+            copyStream(stream, outStream);
+
+            while (!channel.isClosed()) {
+                try {
+                    Thread.sleep(WAIT_TIME);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            int exitStatus = channel.getExitStatus();
+            if (exitStatus != 0) {
+                String message = new String(errStream.toByteArray(), StandardCharsets.UTF_8).trim();
+                throw new IOException("exit status " + exitStatus + ": " + command
+                        + (message.isEmpty() ? "" : (System.lineSeparator() + message)));
+            }
+
+            return new String(outStream.toByteArray(), StandardCharsets.UTF_8);
+
+        } catch (JSchException e) {
+            throw new IOException(e);
+
+        } finally {
+            if (channel != null) {
+                channel.disconnect();
+            }
+        }
+    }
+
+    private ChannelSftp borrowSftp() throws IOException {
+        try {
+            return this.pool.borrowSftp(this.sshServer);
+        } catch (JSchException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private SftpATTRS statOf(ChannelSftp channel, String remotePath) throws IOException {
+        try {
+            return channel.stat(remotePath);
+
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return null;
+            }
+
+            throw new IOException(e);
+        }
+    }
+
+    private static void copyStream(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        while ((length = input.read(buffer)) >= 0) {
+            output.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * @return the string quoted for shells of the server.
+     */
+    public static String quote(String str) {
+        if (str == null) {
+            return "''";
+        }
+
+        return "'" + str.replace("'", "'\\''") + "'";
+    }
+
+    private static String digestOf(File file) {
+        MessageDigest digest = null;
+
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        InputStream stream = null;
+
+        try {
+            stream = new FileInputStream(file);
+
+            int length = 0;
+            while ((length = stream.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            builder.append(Character.forDigit(b & 0x0f, 16));
+        }
+
+        return builder.toString();
+    }
+}